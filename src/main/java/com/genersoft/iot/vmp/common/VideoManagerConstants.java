@@ -21,6 +21,13 @@ public class VideoManagerConstants {
 	public static final String DEVICE_PREFIX = "VMP_DEVICE_INFO";
 
 	public static final String INVITE_PREFIX = "VMP_GB_INVITE_INFO";
+	public static final String INVITE_INDEX_PREFIX = INVITE_PREFIX + ":INDEX:";
+	public static final String INVITE_INDEX_CHANNEL = INVITE_PREFIX + ":INDEX:CHANNEL:";
+	public static final String INVITE_INDEX_STREAM = INVITE_PREFIX + ":INDEX:STREAM";
+	public static final String INVITE_INDEX_SSRC = INVITE_PREFIX + ":INDEX:SSRC";
+	public static final String INVITE_INDEX_DEVICE = INVITE_PREFIX + ":INDEX:DEVICE:";
+	public static final String INVITE_INDEX_MEDIA_SERVER = INVITE_PREFIX + ":INDEX:MEDIA_SERVER:";
+	public static final String INVITE_INDEX_PENDING = INVITE_PREFIX + ":INDEX:PENDING";
 
 	public static final String SEND_RTP_PORT = "VM_SEND_RTP_PORT:";
 	public static final String SEND_RTP_INFO_CALLID = "VMP_SEND_RTP_INFO:CALL_ID:";
@@ -61,6 +68,11 @@ public class VideoManagerConstants {
 	 */
 	public static final String WVP_MSG_STREAM_CHANGE_PREFIX = "WVP_MSG_STREAM_CHANGE_";
 
+	/**
+	 * 流变化的汇总通知, 流媒体节点上线对账时一批流的变化只发送一条
+	 */
+	public static final String WVP_MSG_STREAM_CHANGE_BATCH_PREFIX = "WVP_MSG_STREAM_CHANGE_BATCH_";
+
 	/**
 	 * 接收推流设备的GPS变化通知
 	 */
@@ -106,6 +118,16 @@ public class VideoManagerConstants {
 	 */
 	public static final String VM_MSG_STREAM_PUSH_CLOSE = "VM_MSG_STREAM_PUSH_CLOSE";
 
+	/**
+	 * redis 消息通知各节点清除鉴权缓存, 用户或者api-key变化时发送
+	 */
+	public static final String VM_MSG_AUTH_CACHE_INVALIDATE = "VM_MSG_AUTH_CACHE_INVALIDATE";
+
+	/**
+	 * redis 消息通知各节点清除部标终端缓存, 终端或者通道变化时发送
+	 */
+	public static final String VM_MSG_JT_TERMINAL_INVALIDATE = "VM_MSG_JT_TERMINAL_INVALIDATE";
+
 	/**
 	 * redis 消息请求所有的在线通道
 	 */
@@ -153,10 +175,22 @@ public class VideoManagerConstants {
 	 */
 	public static final String REDIS_RECORD_INFO_RES_COUNT_PRE = "GB_RECORD_INFO_RES_COUNT:";
 
+	/**
+	 * 云端录像按天的位图, 偏移量为日期距1970-01-01的天数
+	 */
+	public static final String CLOUD_RECORD_DAY = "VMP_CLOUD_RECORD_DAY:";
+	/**
+	 * 云端录像位图中已从数据库加载的月份
+	 */
+	public static final String CLOUD_RECORD_DAY_LOADED = "VMP_CLOUD_RECORD_DAY_LOADED:";
+	/**
+	 * 云端录像每天合并后的连续时间段
+	 */
+	public static final String CLOUD_RECORD_TIMELINE = "VMP_CLOUD_RECORD_TIMELINE:";
+
 	//**************************    1078  ****************************************
 
 
-	public static final String INVITE_INFO_1078_POSITION = "INVITE_INFO_1078_POSITION:";
 	public static final String INVITE_INFO_1078_PLAY = "INVITE_INFO_1078_PLAY:";
 	public static final String INVITE_INFO_1078_PLAYBACK = "INVITE_INFO_1078_PLAYBACK:";
 	public static final String INVITE_INFO_1078_TALK = "INVITE_INFO_1078_TALK:";
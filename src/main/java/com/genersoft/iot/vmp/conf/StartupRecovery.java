@@ -0,0 +1,123 @@
+package com.genersoft.iot.vmp.conf;
+
+import com.genersoft.iot.vmp.utils.DateUtil;
+import com.genersoft.iot.vmp.vmanager.bean.StartupPhaseInfo;
+import com.genersoft.iot.vmp.vmanager.bean.StartupStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 启动恢复的协调, 记录各阶段的耗时, 互不依赖的阶段在线程池中并行执行
+ * 所有启动任务(CommandLineRunner)执行完成后标记为就绪, 通过健康检查接口对外提供
+ */
+@Slf4j
+@Component
+public class StartupRecovery {
+
+    @Autowired
+    private UserSetting userSetting;
+
+    @Autowired
+    private ThreadPoolTaskExecutor taskExecutor;
+
+    private final List<StartupPhaseInfo> phases = new ArrayList<>();
+
+    private final long startTime = System.currentTimeMillis();
+
+    private volatile String readyTime;
+
+    public void runPhase(String name, Runnable runnable) {
+        runPhase(name, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * 阶段可能在线程池中执行, 阶段信息的读写都在phases的锁内进行
+     */
+    public <T> T runPhase(String name, Supplier<T> supplier) {
+        StartupPhaseInfo phase = new StartupPhaseInfo();
+        phase.setName(name);
+        phase.setStartTime(DateUtil.getNow());
+        synchronized (phases) {
+            phases.add(phase);
+        }
+        log.info("[启动恢复] 开始： {}", name);
+        long start = System.currentTimeMillis();
+        boolean failed = true;
+        try {
+            T result = supplier.get();
+            failed = false;
+            return result;
+        }finally {
+            long cost = System.currentTimeMillis() - start;
+            synchronized (phases) {
+                phase.setFailed(failed);
+                phase.setCost(cost);
+                phase.setFinished(true);
+            }
+            log.info("[启动恢复] 结束： {}, 耗时: {}ms", name, cost);
+        }
+    }
+
+    /**
+     * 在线程池中执行, 用于与其他阶段没有依赖的恢复步骤
+     */
+    public CompletableFuture<Void> runPhaseAsync(String name, Runnable runnable) {
+        return CompletableFuture.runAsync(() -> runPhase(name, runnable), taskExecutor);
+    }
+
+    public <T> CompletableFuture<T> runPhaseAsync(String name, Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(() -> runPhase(name, supplier), taskExecutor);
+    }
+
+    @EventListener
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        readyTime = DateUtil.getNow();
+        log.info("[启动恢复] 全部完成, 节点就绪, 启动恢复耗时: {}ms", System.currentTimeMillis() - startTime);
+    }
+
+    public boolean isReady() {
+        return readyTime != null;
+    }
+
+    /**
+     * 健康检查使用, 只包含是否就绪, 不需要登录即可访问
+     */
+    public StartupStatus getHealth() {
+        StartupStatus status = new StartupStatus();
+        status.setReady(isReady());
+        return status;
+    }
+
+    public StartupStatus getStatus() {
+        StartupStatus status = new StartupStatus();
+        status.setServerId(userSetting.getServerId());
+        status.setReady(isReady());
+        status.setReadyTime(readyTime);
+        List<StartupPhaseInfo> phaseList = new ArrayList<>();
+        synchronized (phases) {
+            for (StartupPhaseInfo phase : phases) {
+                StartupPhaseInfo copy = new StartupPhaseInfo();
+                copy.setName(phase.getName());
+                copy.setStartTime(phase.getStartTime());
+                copy.setFinished(phase.isFinished());
+                copy.setFailed(phase.isFailed());
+                copy.setCost(phase.getCost());
+                phaseList.add(copy);
+            }
+        }
+        status.setPhases(phaseList);
+        return status;
+    }
+}
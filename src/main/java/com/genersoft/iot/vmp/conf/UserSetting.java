@@ -6,7 +6,9 @@ import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 配置文件 user-settings 映射的配置信息
@@ -209,4 +211,105 @@ public class UserSetting {
      */
     private boolean disableDateHeader = false;
 
+    /**
+     * 热点通道预热池, 开启后观看频率高的通道在无人观看时延迟释放, 再次点播可以直接返回
+     */
+    private boolean warmPoolEnable = false;
+
+    /**
+     * 热点通道预热池, 保留热度最高的通道个数
+     */
+    private int warmPoolSize = 20;
+
+    /**
+     * 热点通道预热池, 无人观看的热点通道保留时长，单位：秒
+     */
+    private int warmPoolIdleTtl = 300;
+
+    /**
+     * 热点通道预热池, 每个流媒体节点用于保留热点通道的带宽上限，单位：kbps， 0为不限制
+     * 只有设置了上限时, 新的点播才会从预热池中抢占资源; 为0时保留的流只在超过保留时长或者热度下降后释放
+     */
+    private long warmPoolBandwidthPerMediaServer = 0;
+
+    /**
+     * 热点通道预热池, 是否在无人观看时主动拉起热点通道
+     */
+    private boolean warmPoolPrefetch = false;
+
+    /**
+     * 云端录像打包导出时生成的压缩包存放路径
+     */
+    private String cloudRecordExportPath = "./record-export";
+
+    /**
+     * 云端录像打包导出, 每个用户同时进行的任务数上限
+     */
+    private int cloudRecordExportMaxTaskPerUser = 2;
+
+    /**
+     * 云端录像按应用或者流设置保存天数, key为 app 或者 app/stream, 未设置的使用流媒体节点的录像保存天数
+     */
+    private Map<String, Integer> cloudRecordRetention = new HashMap<>();
+
+    /**
+     * 云端录像清理, 每秒最多删除的文件或者目录数
+     */
+    private int cloudRecordDeleteIops = 20;
+
+    /**
+     * 云端录像清理, 每秒最多删除的数据量，单位：MB， 0为不限制
+     */
+    private int cloudRecordDeleteSpeed = 0;
+
+    /**
+     * 云端录像清理, 每个流媒体节点的录像存储配额，单位：GB， 0为不限制
+     */
+    private long cloudRecordStorageQuota = 0;
+
+    /**
+     * 云端录像清理, 录像占用超过配额的此百分比时开始删除最早的录像
+     */
+    private int cloudRecordStorageHighWatermark = 90;
+
+    /**
+     * 云端录像清理, 删除最早的录像直到占用低于配额的此百分比
+     */
+    private int cloudRecordStorageLowWatermark = 80;
+
+    /**
+     * 流媒体节点上线时同时进行流状态对账的节点数量
+     */
+    private int mediaServerReconcileConcurrency = 4;
+
+    /**
+     * 分组树与行政区划树内存索引的全量刷新间隔, 单位：秒
+     */
+    private int channelTreeRefreshInterval = 60;
+
+    /**
+     * 通道列表的关键字查询使用内存中的搜索索引, 关闭后直接查询数据库
+     */
+    private Boolean channelSearchIndex = Boolean.TRUE;
+
+    /**
+     * 通道搜索索引的全量重建间隔, 单位：秒
+     */
+    private int channelSearchRefreshInterval = 600;
+
+    /**
+     * 游标分页列表总数的缓存时间, 翻页时在缓存时间内不再重复统计总数, 偏移量分页始终精确统计, 0为不缓存, 单位：秒
+     */
+    private int listCountCacheTtl = 30;
+
+    /**
+     * 设备录像查询结果的缓存时间, 缓存覆盖的时间范围不再向设备查询, 0为不缓存, 单位：秒
+     */
+    private int recordInfoCacheTtl = 600;
+
+    /**
+     * 设备录像查询结果缓存的录像条数上限, 超出后淘汰最久未使用的通道
+     */
+    private int recordInfoCacheMaxItems = 200000;
+
 }
@@ -0,0 +1,108 @@
+package com.genersoft.iot.vmp.conf.broadcast;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * 广播的客户端, 每个客户端有自己的有界队列, 由广播的发送线程逐个发送, 慢的客户端只影响自己
+ */
+public abstract class BroadcastClient {
+
+    private final String id;
+
+    private final Predicate<BroadcastMessage> filter;
+
+    private final ArrayDeque<BroadcastMessage> queue = new ArrayDeque<>();
+
+    /**
+     * 是否已经提交了发送任务, 保证同一个客户端同时只有一个线程在发送
+     */
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    volatile boolean closed;
+
+    private volatile long sendCount;
+
+    private volatile long dropCount;
+
+    /**
+     * @param filter 消息过滤, 为空时接收所有消息
+     */
+    protected BroadcastClient(String id, Predicate<BroadcastMessage> filter) {
+        this.id = id;
+        this.filter = filter;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * 发送消息, 在广播的发送线程中调用, 可以阻塞
+     */
+    protected abstract void send(BroadcastMessage message) throws Exception;
+
+    /**
+     * 关闭连接, 发送失败或者延迟过大时调用
+     */
+    protected abstract void close(String reason);
+
+    boolean accept(BroadcastMessage message) {
+        return filter == null || filter.test(message);
+    }
+
+    /**
+     * 消息入队, 队列已满时丢弃最早的消息
+     * @return 入队后队列中最早的消息已等待的毫秒数
+     */
+    synchronized long offer(BroadcastMessage message, int capacity) {
+        if (message.isCoalesce()) {
+            // 消息对象在多个客户端间共享, 不能直接修改, 移除旧的消息后再入队
+            Iterator<BroadcastMessage> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                BroadcastMessage queued = iterator.next();
+                if (queued.getEvent().equals(message.getEvent()) && Objects.equals(queued.getKey(), message.getKey())) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+        if (queue.size() >= capacity) {
+            queue.pollFirst();
+            dropCount++;
+        }
+        queue.offerLast(message);
+        return message.getTime() - queue.peekFirst().getTime();
+    }
+
+    synchronized BroadcastMessage poll() {
+        return queue.pollFirst();
+    }
+
+    synchronized boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    void sent() {
+        sendCount++;
+    }
+
+    synchronized void clear() {
+        queue.clear();
+    }
+
+    synchronized BroadcastClientInfo getInfo(String hub) {
+        BroadcastClientInfo info = new BroadcastClientInfo();
+        info.setHub(hub);
+        info.setId(id);
+        info.setQueueSize(queue.size());
+        BroadcastMessage first = queue.peekFirst();
+        info.setLag(first == null ? 0 : System.currentTimeMillis() - first.getTime());
+        info.setSendCount(sendCount);
+        info.setDropCount(dropCount);
+        return info;
+    }
+}
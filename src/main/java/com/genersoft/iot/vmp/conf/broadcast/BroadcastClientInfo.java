@@ -0,0 +1,27 @@
+package com.genersoft.iot.vmp.conf.broadcast;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+@Data
+@Schema(description = "广播客户端状态")
+public class BroadcastClientInfo {
+
+    @Schema(description = "所属的广播, sse或者log")
+    private String hub;
+
+    @Schema(description = "客户端ID")
+    private String id;
+
+    @Schema(description = "队列中等待发送的消息数")
+    private int queueSize;
+
+    @Schema(description = "延迟, 队列中最早的消息已等待的毫秒数")
+    private long lag;
+
+    @Schema(description = "已发送的消息数")
+    private long sendCount;
+
+    @Schema(description = "因队列已满而丢弃的消息数")
+    private long dropCount;
+}
@@ -0,0 +1,148 @@
+package com.genersoft.iot.vmp.conf.broadcast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 消息广播
+ * 发布消息只是放入每个客户端的有界队列, 不在调用线程中发送, 发送由独立的线程完成, 慢的客户端不会阻塞报警处理或者写日志的线程
+ * 队列已满时丢弃最早的消息, 最早的消息等待超过最大延迟时断开该客户端
+ * 注意: 日志广播也使用此类, 发布消息的路径中不能打印日志, 否则会循环调用
+ */
+public class BroadcastHub {
+
+    private static final AtomicInteger THREAD_NUM = new AtomicInteger();
+
+    /**
+     * 所有广播共用的发送线程, 每个客户端同时最多占用一个线程, 线程数不会超过客户端数
+     */
+    private static final ExecutorService SEND_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "broadcast-" + THREAD_NUM.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final String name;
+
+    /**
+     * 每个客户端队列的容量
+     */
+    private final int capacity;
+
+    /**
+     * 最大延迟, 毫秒
+     */
+    private final long maxLag;
+
+    private final Map<String, BroadcastClient> clients = new ConcurrentHashMap<>();
+
+    public BroadcastHub(String name, int capacity, long maxLag) {
+        this.name = name;
+        this.capacity = capacity;
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * 添加客户端, 已存在相同ID的客户端时关闭旧的客户端
+     */
+    public void addClient(BroadcastClient client) {
+        BroadcastClient old = clients.put(client.getId(), client);
+        if (old != null && old != client) {
+            closeClient(old, "相同ID的客户端重新连接");
+        }
+    }
+
+    public void removeClient(BroadcastClient client) {
+        client.closed = true;
+        client.clear();
+        clients.remove(client.getId(), client);
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    public boolean isEmpty() {
+        return clients.isEmpty();
+    }
+
+    /**
+     * 是否有客户端会接收此消息, 用于在生成消息内容之前判断是否需要生成
+     */
+    public boolean hasReceiver(BroadcastMessage message) {
+        for (BroadcastClient client : clients.values()) {
+            if (!client.closed && client.accept(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void publish(String event, Object data) {
+        publish(BroadcastMessage.getInstance(event, null, data, false));
+    }
+
+    /**
+     * 发布消息, 不会阻塞
+     */
+    public void publish(BroadcastMessage message) {
+        for (BroadcastClient client : clients.values()) {
+            if (client.closed || !client.accept(message)) {
+                continue;
+            }
+            long lag = client.offer(message, capacity);
+            if (lag > maxLag) {
+                closeClient(client, "延迟过大: " + lag + "ms");
+                continue;
+            }
+            if (client.scheduled.compareAndSet(false, true)) {
+                SEND_EXECUTOR.execute(() -> drain(client));
+            }
+        }
+    }
+
+    public List<BroadcastClientInfo> getClientInfoList() {
+        List<BroadcastClientInfo> result = new ArrayList<>(clients.size());
+        for (BroadcastClient client : clients.values()) {
+            result.add(client.getInfo(name));
+        }
+        return result;
+    }
+
+    private void drain(BroadcastClient client) {
+        while (true) {
+            BroadcastMessage message;
+            while (!client.closed && (message = client.poll()) != null) {
+                try {
+                    client.send(message);
+                    client.sent();
+                } catch (Exception e) {
+                    removeClient(client);
+                    client.close("发送失败: " + e.getMessage());
+                    return;
+                }
+            }
+            client.scheduled.set(false);
+            // 释放标记后再检查一次, 避免发布线程入队后因标记未释放而没有提交发送任务
+            if (client.closed || client.isEmpty() || !client.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 在发送线程中关闭, 关闭连接可能阻塞, 也可能打印日志
+     */
+    private void closeClient(BroadcastClient client, String reason) {
+        removeClient(client);
+        SEND_EXECUTOR.execute(() -> client.close(reason));
+    }
+}
@@ -0,0 +1,40 @@
+package com.genersoft.iot.vmp.conf.broadcast;
+
+import lombok.Data;
+
+/**
+ * 广播消息
+ */
+@Data
+public class BroadcastMessage {
+
+    /**
+     * 事件名称, SSE中作为event字段
+     */
+    private String event;
+
+    /**
+     * 用于过滤的标识, 例如报警的设备ID, 日志的logger名称
+     */
+    private String key;
+
+    private Object data;
+
+    /**
+     * 是否可合并, 可合并的消息在客户端队列中已有相同event与key的消息时只更新其内容, 不再重复排队
+     * 适用于心跳, 进度这类只关心最新值的消息
+     */
+    private boolean coalesce;
+
+    private long time;
+
+    public static BroadcastMessage getInstance(String event, String key, Object data, boolean coalesce) {
+        BroadcastMessage message = new BroadcastMessage();
+        message.setEvent(event);
+        message.setKey(key);
+        message.setData(data);
+        message.setCoalesce(coalesce);
+        message.setTime(System.currentTimeMillis());
+        return message;
+    }
+}
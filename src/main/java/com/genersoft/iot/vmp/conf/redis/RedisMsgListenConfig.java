@@ -2,6 +2,8 @@ package com.genersoft.iot.vmp.conf.redis;
 
 
 import com.genersoft.iot.vmp.common.VideoManagerConstants;
+import com.genersoft.iot.vmp.conf.security.AuthenticationCache;
+import com.genersoft.iot.vmp.jt1078.session.JTPositionManager;
 import com.genersoft.iot.vmp.service.redisMsg.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -44,6 +46,12 @@ public class RedisMsgListenConfig {
 	@Autowired
 	private RedisPushStreamResponseListener redisPushStreamCloseResponseListener;
 
+	@Autowired
+	private AuthenticationCache authenticationCache;
+
+	@Autowired
+	private JTPositionManager jtPositionManager;
+
 
 	/**
 	 * redis消息监听器容器 可以添加多个监听不同话题的redis监听器，只需要把消息监听器和相应的消息订阅处理器绑定，该消息监听器
@@ -64,6 +72,8 @@ public class RedisMsgListenConfig {
 		container.addMessageListener(redisCloseStreamMsgListener, new PatternTopic(VideoManagerConstants.VM_MSG_STREAM_PUSH_CLOSE));
 		container.addMessageListener(redisRpcConfig, new PatternTopic(RedisRpcConfig.REDIS_REQUEST_CHANNEL_KEY));
 		container.addMessageListener(redisPushStreamCloseResponseListener, new PatternTopic(VideoManagerConstants.VM_MSG_STREAM_PUSH_RESPONSE));
+		container.addMessageListener(authenticationCache, new PatternTopic(VideoManagerConstants.VM_MSG_AUTH_CACHE_INVALIDATE));
+		container.addMessageListener(jtPositionManager, new PatternTopic(VideoManagerConstants.VM_MSG_JT_TERMINAL_INVALIDATE));
         return container;
     }
 }
@@ -0,0 +1,221 @@
+package com.genersoft.iot.vmp.conf.security;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.genersoft.iot.vmp.common.VideoManagerConstants;
+import com.genersoft.iot.vmp.storager.dao.dto.User;
+import com.genersoft.iot.vmp.storager.dao.dto.UserApiKey;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 接口鉴权的本地缓存
+ * 已验证过签名的token缓存到过期为止, 用户与api-key缓存一段时间, 避免每个请求都做RSA验签与数据库查询
+ * 用户或者api-key变化时通过redis通知所有节点清除缓存
+ */
+@Slf4j
+@Component
+public class AuthenticationCache implements MessageListener {
+
+    /**
+     * 缓存的token的最大数量
+     */
+    private static final int MAX_TOKEN_SIZE = 10000;
+
+    /**
+     * 没有过期时间的token的缓存时长
+     */
+    private static final long TOKEN_CACHE_TIME = 10 * 60 * 1000L;
+
+    /**
+     * 用户与api-key的缓存时长, 正常情况下变化时会通过redis通知清除, 这里只作为兜底
+     */
+    private static final long USER_CACHE_TIME = 60 * 1000L;
+
+    private static final String TYPE_USER = "user";
+
+    private static final String TYPE_API_KEY = "apiKey";
+
+    @Autowired
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    /**
+     * 已验证的token, key为token的sha256
+     */
+    private final Map<String, VerifiedToken> tokenMap = new LinkedHashMap<String, VerifiedToken>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+            return size() > MAX_TOKEN_SIZE;
+        }
+    };
+
+    private final Map<String, CacheItem<User>> userMap = new ConcurrentHashMap<>();
+
+    private final Map<Integer, CacheItem<UserApiKey>> apiKeyMap = new ConcurrentHashMap<>();
+
+    /**
+     * 验签通过后token中的内容
+     */
+    public static class VerifiedToken {
+        String userName;
+        Long apiKeyId;
+        /**
+         * 过期时间, 秒, 为空时不过期
+         */
+        Long expirationTime;
+        long cacheExpireTime;
+    }
+
+    private static class CacheItem<T> {
+        T value;
+        long expireTime;
+    }
+
+    public VerifiedToken getToken(String token) {
+        String key = hash(token);
+        synchronized (tokenMap) {
+            VerifiedToken verifiedToken = tokenMap.get(key);
+            if (verifiedToken == null) {
+                return null;
+            }
+            if (verifiedToken.cacheExpireTime < System.currentTimeMillis()) {
+                tokenMap.remove(key);
+                return null;
+            }
+            return verifiedToken;
+        }
+    }
+
+    /**
+     * @param allowedClockSkew 允许的时钟偏差, 秒, 缓存到过期时间加上允许的偏差为止, 之后重新验证以得到过期状态
+     */
+    public VerifiedToken putToken(String token, String userName, Long apiKeyId, Long expirationTime, int allowedClockSkew) {
+        VerifiedToken verifiedToken = new VerifiedToken();
+        verifiedToken.userName = userName;
+        verifiedToken.apiKeyId = apiKeyId;
+        verifiedToken.expirationTime = expirationTime;
+        if (expirationTime == null) {
+            verifiedToken.cacheExpireTime = System.currentTimeMillis() + TOKEN_CACHE_TIME;
+        } else {
+            verifiedToken.cacheExpireTime = (expirationTime + allowedClockSkew) * 1000;
+        }
+        String key = hash(token);
+        synchronized (tokenMap) {
+            tokenMap.put(key, verifiedToken);
+        }
+        return verifiedToken;
+    }
+
+    public User getUser(String username, Function<String, User> loader) {
+        return get(userMap, username, loader);
+    }
+
+    public UserApiKey getApiKey(Integer id, Function<Integer, UserApiKey> loader) {
+        return get(apiKeyMap, id, loader);
+    }
+
+    private <K, T> T get(Map<K, CacheItem<T>> map, K key, Function<K, T> loader) {
+        long now = System.currentTimeMillis();
+        CacheItem<T> item = map.get(key);
+        if (item != null && item.expireTime > now) {
+            return item.value;
+        }
+        T value = loader.apply(key);
+        if (value == null) {
+            map.remove(key);
+            return null;
+        }
+        item = new CacheItem<>();
+        item.value = value;
+        item.expireTime = now + USER_CACHE_TIME;
+        map.put(key, item);
+        return value;
+    }
+
+    /**
+     * 用户修改, 删除后调用, 清除所有节点的缓存
+     */
+    public void invalidateUser(int userId) {
+        removeUser(userId);
+        publish(TYPE_USER, userId);
+    }
+
+    /**
+     * api-key启用, 停用, 重置, 删除后调用, 清除所有节点的缓存
+     */
+    public void invalidateApiKey(int apiKeyId) {
+        apiKeyMap.remove(apiKeyId);
+        publish(TYPE_API_KEY, apiKeyId);
+    }
+
+    private void removeUser(int userId) {
+        userMap.values().removeIf(item -> item.value.getId() == userId);
+    }
+
+    private void publish(String type, int id) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("type", type);
+        jsonObject.put("id", id);
+        try {
+            redisTemplate.convertAndSend(VideoManagerConstants.VM_MSG_AUTH_CACHE_INVALIDATE, jsonObject);
+        } catch (Exception e) {
+            log.warn("[鉴权缓存] 发送清除通知失败, 其他节点的缓存将在{}秒后过期: {}", USER_CACHE_TIME / 1000, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(@NotNull Message message, byte[] bytes) {
+        try {
+            JSONObject jsonObject = JSON.parseObject(message.getBody());
+            String type = jsonObject.getString("type");
+            int id = jsonObject.getIntValue("id");
+            if (TYPE_USER.equals(type)) {
+                removeUser(id);
+            } else if (TYPE_API_KEY.equals(type)) {
+                apiKeyMap.remove(id);
+            }
+        } catch (Exception e) {
+            log.warn("[鉴权缓存] 清除通知解析失败: {}", new String(message.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 定时清理过期的缓存
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void clearExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (tokenMap) {
+            tokenMap.values().removeIf(verifiedToken -> verifiedToken.cacheExpireTime < now);
+        }
+        userMap.values().removeIf(item -> item.expireTime <= now);
+        apiKeyMap.values().removeIf(item -> item.expireTime <= now);
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
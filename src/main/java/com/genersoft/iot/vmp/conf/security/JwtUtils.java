@@ -53,8 +53,20 @@ public class JwtUtils implements InitializingBean {
      */
     public static final long EXPIRATION_TIME = 30;
 
+    /**
+     * 允许的时钟偏差(秒)
+     */
+    private static final int ALLOWED_CLOCK_SKEW = 30;
+
     private static RsaJsonWebKey rsaJsonWebKey;
 
+    /**
+     * 密钥确定后只构建一次, 可以在多个线程中复用
+     */
+    private static JwtConsumer jwtConsumer;
+
+    private static AuthenticationCache authenticationCache;
+
     private static IUserService userService;
 
     private static IUserApiKeyService userApiKeyService;
@@ -80,10 +92,24 @@ public class JwtUtils implements InitializingBean {
         JwtUtils.userSetting = userSetting;
     }
 
+    @Resource
+    public void setAuthenticationCache(AuthenticationCache authenticationCache) {
+        JwtUtils.authenticationCache = authenticationCache;
+    }
+
     @Override
     public void afterPropertiesSet() {
         try {
             rsaJsonWebKey = generateRsaJsonWebKey();
+            jwtConsumer = new JwtConsumerBuilder()
+                    //.setRequireExpirationTime()
+                    //.setMaxFutureValidityInMinutes(5256000)
+                    .setAllowedClockSkewInSeconds(ALLOWED_CLOCK_SKEW)
+                    .setRequireSubject()
+                    //.setExpectedIssuer("")
+                    .setExpectedAudience(AUDIENCE)
+                    .setVerificationKey(rsaJsonWebKey.getPublicKey())
+                    .build();
         } catch (JoseException e) {
             log.error("生成RsaJsonWebKey报错。", e);
         }
@@ -216,22 +242,20 @@ public class JwtUtils implements InitializingBean {
         JwtUser jwtUser = new JwtUser();
 
         try {
-            JwtConsumer consumer = new JwtConsumerBuilder()
-                    //.setRequireExpirationTime()
-                    //.setMaxFutureValidityInMinutes(5256000)
-                    .setAllowedClockSkewInSeconds(30)
-                    .setRequireSubject()
-                    //.setExpectedIssuer("")
-                    .setExpectedAudience(AUDIENCE)
-                    .setVerificationKey(rsaJsonWebKey.getPublicKey())
-                    .build();
-
-            JwtClaims claims = consumer.processToClaims(token);
-            NumericDate expirationTime = claims.getExpirationTime();
+            // 验签通过的token缓存到过期为止, 缓存中没有时才做验签
+            AuthenticationCache.VerifiedToken verifiedToken = authenticationCache.getToken(token);
+            if (verifiedToken == null) {
+                JwtClaims claims = jwtConsumer.processToClaims(token);
+                NumericDate expirationTime = claims.getExpirationTime();
+                verifiedToken = authenticationCache.putToken(token, (String) claims.getClaimValue("userName"),
+                        claims.getClaimValue("apiKeyId", Long.class),
+                        expirationTime == null ? null : expirationTime.getValue(), ALLOWED_CLOCK_SKEW);
+            }
+            Long expirationTime = verifiedToken.expirationTime;
             if (expirationTime != null) {
                 // 判断是否即将过期, 默认剩余时间小于5分钟未即将过期
                 // 剩余时间 （秒）
-                long timeRemaining = expirationTime.getValue() - LocalDateTime.now().toEpochSecond(ZoneOffset.ofHours(8));
+                long timeRemaining = expirationTime - LocalDateTime.now().toEpochSecond(ZoneOffset.ofHours(8));
                 if (timeRemaining < 5 * 60) {
                     jwtUser.setStatus(JwtUser.TokenStatus.EXPIRING_SOON);
                 } else {
@@ -241,16 +265,16 @@ public class JwtUtils implements InitializingBean {
                 jwtUser.setStatus(JwtUser.TokenStatus.NORMAL);
             }
 
-            Long apiKeyId = claims.getClaimValue("apiKeyId", Long.class);
+            Long apiKeyId = verifiedToken.apiKeyId;
             if (apiKeyId != null) {
-                UserApiKey userApiKey = userApiKeyService.getUserApiKeyById(apiKeyId.intValue());
+                UserApiKey userApiKey = authenticationCache.getApiKey(apiKeyId.intValue(), userApiKeyService::getUserApiKeyById);
                 if (userApiKey == null || !userApiKey.isEnable()) {
                     jwtUser.setStatus(JwtUser.TokenStatus.EXPIRED);
                 }
             }
 
-            String username = (String) claims.getClaimValue("userName");
-            User user = userService.getUserByUsername(username);
+            String username = verifiedToken.userName;
+            User user = authenticationCache.getUser(username, userService::getUserByUsername);
 
             jwtUser.setUserName(username);
             jwtUser.setPassword(user.getPassword());
@@ -97,6 +97,7 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
         defaultExcludes.add("/api/emit");
         defaultExcludes.add("/favicon.ico");
         defaultExcludes.add("/api/user/login");
+        defaultExcludes.add("/api/server/health");
         defaultExcludes.add("/index/hook/**");
         defaultExcludes.add("/api/device/query/snap/**");
         defaultExcludes.add("/index/hook/abl/**");
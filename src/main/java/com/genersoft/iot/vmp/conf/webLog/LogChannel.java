@@ -1,21 +1,39 @@
 package com.genersoft.iot.vmp.conf.webLog;
 
+import ch.qos.logback.classic.Level;
+import com.genersoft.iot.vmp.conf.broadcast.BroadcastClient;
+import com.genersoft.iot.vmp.conf.broadcast.BroadcastClientInfo;
+import com.genersoft.iot.vmp.conf.broadcast.BroadcastHub;
+import com.genersoft.iot.vmp.conf.broadcast.BroadcastMessage;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.websocket.*;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
     @ServerEndpoint(value = "/channel/log")
 @Slf4j
 public class LogChannel {
 
-    public static final ConcurrentMap<String, LogChannel> CHANNELS = new ConcurrentHashMap<>();
+    /**
+     * 每个连接最多缓存的日志条数
+     */
+    private static final int QUEUE_CAPACITY = 1000;
+
+    /**
+     * 最大延迟, 超出后断开连接
+     */
+    private static final long MAX_LAG = 30 * 1000L;
+
+    private static final BroadcastHub BROADCAST_HUB = new BroadcastHub("log", QUEUE_CAPACITY, MAX_LAG);
 
     private Session session;
 
+    private BroadcastClient client;
+
     @OnMessage(maxMessageSize = 1) // MaxMessage 1 byte
     public void onMessage(String message) {
 
@@ -30,7 +48,24 @@ public class LogChannel {
     public void onOpen(Session session, EndpointConfig endpointConfig) {
         this.session = session;
         this.session.setMaxIdleTimeout(0);
-        CHANNELS.put(this.session.getId(), this);
+        // 连接参数level: 最低的日志级别, logger: logger名称前缀
+        Map<String, List<String>> params = session.getRequestParameterMap();
+        this.client = new BroadcastClient(session.getId(), getFilter(getParam(params, "level"), getParam(params, "logger"))) {
+            @Override
+            protected void send(BroadcastMessage message) throws Exception {
+                session.getBasicRemote().sendText((String) message.getData());
+            }
+
+            @Override
+            protected void close(String reason) {
+                try {
+                    session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, reason));
+                } catch (IOException e) {
+                    log.error("[Web-Log] 连接关闭失败: id={}, err={}", session.getId(), e.getMessage());
+                }
+            }
+        };
+        BROADCAST_HUB.addClient(this.client);
 
         log.info("[Web-Log] 连接已建立: id={}", this.session.getId());
     }
@@ -39,7 +74,9 @@ public class LogChannel {
     public void onClose(CloseReason closeReason) {
 
         log.info("[Web-Log] 连接已断开: id={}, err={}", this.session.getId(), closeReason);
-        CHANNELS.remove(this.session.getId());
+        if (this.client != null) {
+            BROADCAST_HUB.removeClient(this.client);
+        }
     }
 
     @OnError
@@ -50,16 +87,46 @@ public class LogChannel {
         }
     }
 
+    private static String getParam(Map<String, List<String>> params, String name) {
+        List<String> values = params.get(name);
+        if (values == null || values.isEmpty() || values.get(0).trim().isEmpty()) {
+            return null;
+        }
+        return values.get(0).trim();
+    }
+
+    private static Predicate<BroadcastMessage> getFilter(String level, String logger) {
+        if (level == null && logger == null) {
+            return null;
+        }
+        Level minLevel = Level.toLevel(level, Level.ALL);
+        return message -> Level.toLevel(message.getEvent()).isGreaterOrEqual(minLevel)
+                && (logger == null || message.getKey().startsWith(logger));
+    }
+
+    public static boolean isEmpty() {
+        return BROADCAST_HUB.isEmpty();
+    }
+
     /**
-     * Push messages to all clients
+     * 是否有连接接收此级别与logger的日志
+     */
+    public static boolean hasReceiver(String level, String loggerName) {
+        return BROADCAST_HUB.hasReceiver(BroadcastMessage.getInstance(level, loggerName, null, false));
+    }
+
+    /**
+     * Push messages to all clients, 只放入每个连接的队列, 不会阻塞写日志的线程
      *
-     * @param message
+     * @param level 日志级别
+     * @param loggerName logger名称
+     * @param message 格式化后的日志
      */
-    public static void push(String message) {
-        CHANNELS.values().stream().forEach(endpoint -> {
-            if (endpoint.session.isOpen()) {
-                endpoint.session.getAsyncRemote().sendText(message);
-            }
-        });
+    public static void push(String level, String loggerName, String message) {
+        BROADCAST_HUB.publish(BroadcastMessage.getInstance(level, loggerName, message, false));
+    }
+
+    public static List<BroadcastClientInfo> getClientInfoList() {
+        return BROADCAST_HUB.getClientInfoList();
     }
 }
@@ -1,24 +1,164 @@
 package com.genersoft.iot.vmp.conf.webLog;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.AppenderBase;
-import lombok.Data;
-import lombok.EqualsAndHashCode;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import lombok.Getter;
+import lombok.Setter;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
-@Data
-@EqualsAndHashCode(callSuper = true)
-public class WebSocketAppender  extends AppenderBase<ILoggingEvent> {
+/**
+ * 页面日志推送
+ * 写日志的线程只做过滤, 限流与入队, 格式化与推送在单独的线程中执行, 队列已满时直接丢弃, 不会阻塞写日志的线程
+ * 同一个logger每秒推送的日志超出限制后不再推送, 下一秒推送一条被忽略的数量
+ */
+public class WebSocketAppender  extends UnsynchronizedAppenderBase<ILoggingEvent> {
 
+    @Getter
+    @Setter
     private PatternLayoutEncoder encoder;
 
+    /**
+     * 等待推送的日志的最大数量
+     */
+    @Getter
+    @Setter
+    private int queueSize = 8192;
+
+    /**
+     * 每个logger每秒最多推送的日志数量, 0为不限制
+     */
+    @Getter
+    @Setter
+    private int maxPerSecond = 200;
+
+    private BlockingQueue<ILoggingEvent> queue;
+
+    private final Map<String, LoggerRate> rateMap = new ConcurrentHashMap<>();
+
+    private Thread worker;
+
+    private static class LoggerRate {
+        long second;
+        int count;
+        int suppressed;
+    }
+
+    @Override
+    public void start() {
+        if (encoder == null) {
+            addError("No encoder set for the appender named [" + name + "].");
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        worker = new Thread(this::work, "web-log-appender");
+        worker.setDaemon(true);
+        worker.start();
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
     @Override
     protected void append(ILoggingEvent loggingEvent) {
-        byte[] data = this.encoder.encode(loggingEvent);
-        // Push to client.
-//        LogChannel.push(DateUtil.timestampMsTo_yyyy_MM_dd_HH_mm_ss(loggingEvent.getTimeStamp()) + " " +  loggingEvent.getFormattedMessage());
-        LogChannel.push(new String(data, StandardCharsets.UTF_8));
+        // 没有连接或者没有连接需要此日志时不做任何处理
+        if (LogChannel.isEmpty() || !LogChannel.hasReceiver(loggingEvent.getLevel().toString(), loggingEvent.getLoggerName())) {
+            return;
+        }
+        if (!acquire(loggingEvent.getLoggerName(), loggingEvent.getTimeStamp())) {
+            return;
+        }
+        // 参数与线程名等在当前线程中确定下来, 格式化留给推送线程
+        loggingEvent.prepareForDeferredProcessing();
+        if (!queue.offer(loggingEvent)) {
+            suppress(loggingEvent.getLoggerName());
+        }
+    }
+
+    private boolean acquire(String loggerName, long time) {
+        if (maxPerSecond <= 0) {
+            return true;
+        }
+        LoggerRate rate = rateMap.computeIfAbsent(loggerName, key -> new LoggerRate());
+        long second = time / 1000;
+        synchronized (rate) {
+            if (rate.second != second) {
+                rate.second = second;
+                rate.count = 0;
+            }
+            if (rate.count < maxPerSecond) {
+                rate.count++;
+                return true;
+            }
+            rate.suppressed++;
+            return false;
+        }
+    }
+
+    private void suppress(String loggerName) {
+        LoggerRate rate = rateMap.computeIfAbsent(loggerName, key -> new LoggerRate());
+        synchronized (rate) {
+            rate.suppressed++;
+        }
+    }
+
+    private void work() {
+        long lastReportTime = System.currentTimeMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                ILoggingEvent loggingEvent = queue.poll(1, TimeUnit.SECONDS);
+                if (loggingEvent != null) {
+                    byte[] data = this.encoder.encode(loggingEvent);
+                    LogChannel.push(loggingEvent.getLevel().toString(), loggingEvent.getLoggerName(), new String(data, StandardCharsets.UTF_8));
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastReportTime >= 1000) {
+                    lastReportTime = now;
+                    reportSuppressed(now);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                addError("web log push failed", e);
+            }
+        }
+    }
+
+    /**
+     * 推送每个logger上一秒被忽略的日志数量, 同时清理长时间没有日志的logger
+     */
+    private void reportSuppressed(long now) {
+        long second = now / 1000;
+        Iterator<Map.Entry<String, LoggerRate>> iterator = rateMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, LoggerRate> entry = iterator.next();
+            LoggerRate rate = entry.getValue();
+            int suppressed;
+            synchronized (rate) {
+                suppressed = rate.suppressed;
+                rate.suppressed = 0;
+                if (suppressed == 0 && second - rate.second > 60) {
+                    iterator.remove();
+                    continue;
+                }
+            }
+            if (suppressed > 0) {
+                LogChannel.push(Level.WARN.toString(), entry.getKey(), "[日志推送] " + entry.getKey() + " 日志过多, 已忽略 " + suppressed + " 条\n");
+            }
+        }
     }
 }
@@ -0,0 +1,44 @@
+package com.genersoft.iot.vmp.gb28181.bean;
+
+import lombok.Data;
+
+/**
+ * 通道搜索所需的精简信息, 用于内存中的通道搜索索引
+ */
+@Data
+public class ChannelSearchItem {
+
+    private int id;
+
+    private String deviceId;
+
+    private String name;
+
+    private String civilCode;
+
+    /**
+     * 所属的虚拟组织/业务分组编号
+     */
+    private String parentDeviceId;
+
+    private String status;
+
+    private Integer dataType;
+
+    private Integer dataDeviceId;
+
+    private Integer recordPlanId;
+
+    /**
+     * 编号、名称、名称拼音首字母与行政区划拼接后的小写文本, 由索引生成
+     */
+    private String text;
+
+    public boolean isOnline() {
+        return "ON".equalsIgnoreCase(status);
+    }
+
+    public boolean hasRecordPlan() {
+        return recordPlanId != null && recordPlanId > 0;
+    }
+}
@@ -0,0 +1,22 @@
+package com.genersoft.iot.vmp.gb28181.bean;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 通道搜索索引的查询结果
+ */
+@Data
+public class ChannelSearchResult {
+
+    /**
+     * 符合条件的通道总数
+     */
+    private int total;
+
+    /**
+     * 当前页的通道数据库ID, 按ID升序
+     */
+    private List<Integer> ids;
+}
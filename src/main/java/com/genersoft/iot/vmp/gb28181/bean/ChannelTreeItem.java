@@ -0,0 +1,33 @@
+package com.genersoft.iot.vmp.gb28181.bean;
+
+import lombok.Data;
+
+/**
+ * 通道在分组树/行政区划树中的精简信息, 用于内存中的目录树索引
+ */
+@Data
+public class ChannelTreeItem {
+
+    private int id;
+
+    private String deviceId;
+
+    private String name;
+
+    /**
+     * 所属的虚拟组织/业务分组编号
+     */
+    private String parentDeviceId;
+
+    private String businessGroup;
+
+    private String civilCode;
+
+    private String status;
+
+    private int channelType;
+
+    public boolean isOnline() {
+        return "ON".equalsIgnoreCase(status);
+    }
+}
@@ -0,0 +1,38 @@
+package com.genersoft.iot.vmp.gb28181.bean;
+
+/**
+ * 批量命令类型
+ */
+public enum DeviceBatchCommandType {
+    // 目录同步
+    CATALOG("目录同步", 300),
+
+    // 设备信息查询
+    DEVICE_INFO("设备信息查询", 30),
+
+    // 设备状态查询
+    DEVICE_STATUS("设备状态查询", 30),
+
+    // 预置位查询, 以通道为单位执行
+    PRESET("预置位查询", 30);
+
+    private final String text;
+
+    /**
+     * 默认的单条命令超时时间, 秒
+     */
+    private final int timeout;
+
+    DeviceBatchCommandType(String text, int timeout) {
+        this.text = text;
+        this.timeout = timeout;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,47 @@
+package com.genersoft.iot.vmp.gb28181.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 批量命令中单个设备或者通道的执行结果
+ */
+@Data
+@Schema(description = "批量命令的执行结果")
+public class DeviceBatchResult {
+
+    public static final int STATUS_WAITING = 0;
+    public static final int STATUS_RUNNING = 1;
+    public static final int STATUS_SUCCESS = 2;
+    public static final int STATUS_FAIL = 3;
+    public static final int STATUS_TIMEOUT = 4;
+    public static final int STATUS_SKIP = 5;
+
+    @Schema(description = "设备国标编号")
+    private String deviceId;
+
+    @Schema(description = "通道国标编号， 以通道为单位的命令才有")
+    private String channelId;
+
+    @Schema(description = "状态， 0：等待， 1：执行中， 2：成功， 3：失败， 4：超时， 5：跳过")
+    private volatile int status;
+
+    @Schema(description = "结果描述")
+    private volatile String msg;
+
+    @Schema(description = "设备回复的数据")
+    private volatile Object data;
+
+    @Schema(description = "发送时间")
+    private volatile long sendTime;
+
+    @Schema(description = "耗时， 毫秒")
+    private volatile long costTime;
+
+    public static DeviceBatchResult getInstance(String deviceId, String channelId) {
+        DeviceBatchResult result = new DeviceBatchResult();
+        result.setDeviceId(deviceId);
+        result.setChannelId(channelId);
+        return result;
+    }
+}
@@ -0,0 +1,66 @@
+package com.genersoft.iot.vmp.gb28181.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 批量命令任务
+ */
+@Data
+@Schema(description = "批量命令任务")
+public class DeviceBatchTask {
+
+    @Schema(description = "任务ID")
+    private String taskId;
+
+    @Schema(description = "命令类型")
+    private DeviceBatchCommandType commandType;
+
+    @Schema(description = "状态， 0：进行中， 1：已完成， 2：已取消， 3：失败")
+    private volatile int status;
+
+    @Schema(description = "全局最大并发数")
+    private int maxConcurrency;
+
+    @Schema(description = "单个设备的最大并发数")
+    private int perDeviceConcurrency;
+
+    @Schema(description = "每秒最多发送的命令数")
+    private int rate;
+
+    @Schema(description = "单条命令的超时时间， 秒")
+    private int timeout;
+
+    @Schema(description = "命令总数， 选择设备完成前为0")
+    private volatile int total;
+
+    @Schema(description = "已发送的命令数")
+    private volatile int sentCount;
+
+    @Schema(description = "执行中的命令数")
+    private volatile int runningCount;
+
+    @Schema(description = "成功数")
+    private volatile int successCount;
+
+    @Schema(description = "失败数")
+    private volatile int failCount;
+
+    @Schema(description = "超时数")
+    private volatile int timeoutCount;
+
+    @Schema(description = "跳过数， 设备不存在、离线、不在当前节点或者任务取消")
+    private volatile int skipCount;
+
+    @Schema(description = "平均吞吐量， 每秒完成的命令数")
+    private volatile double throughput;
+
+    @Schema(description = "创建时间")
+    private long createTime;
+
+    @Schema(description = "结束时间")
+    private volatile long endTime;
+
+    @Schema(description = "失败原因")
+    private volatile String msg;
+}
@@ -8,9 +8,17 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
 import org.dom4j.Element;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.ObjectUtils;
 
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 
 @Data
 @Slf4j
@@ -18,6 +26,51 @@ import java.lang.reflect.InvocationTargetException;
 @EqualsAndHashCode(callSuper = true)
 public class DeviceChannel extends CommonGBChannel {
 
+	/**
+	 * 来自设备目录的字段, key为数据库列名, 内容哈希与变化比较都只针对这些列
+	 * 码流ID, 音频开关, 子节点数等由平台维护的列不在其中, 目录更新时不会覆盖
+	 */
+	private static final Map<String, Function<DeviceChannel, Object>> CONTENT_COLUMNS;
+
+	static {
+		Map<String, Function<DeviceChannel, Object>> columns = new LinkedHashMap<>();
+		columns.put("name", DeviceChannel::getName);
+		columns.put("manufacturer", DeviceChannel::getManufacturer);
+		columns.put("model", DeviceChannel::getModel);
+		columns.put("owner", DeviceChannel::getOwner);
+		columns.put("civil_code", DeviceChannel::getCivilCode);
+		columns.put("block", DeviceChannel::getBlock);
+		columns.put("address", DeviceChannel::getAddress);
+		columns.put("parental", DeviceChannel::getParental);
+		columns.put("parent_id", DeviceChannel::getParentId);
+		columns.put("safety_way", DeviceChannel::getSafetyWay);
+		columns.put("register_way", DeviceChannel::getRegisterWay);
+		columns.put("cert_num", DeviceChannel::getCertNum);
+		columns.put("certifiable", DeviceChannel::getCertifiable);
+		columns.put("err_code", DeviceChannel::getErrCode);
+		columns.put("end_time", DeviceChannel::getEndTime);
+		columns.put("secrecy", DeviceChannel::getSecrecy);
+		columns.put("ip_address", DeviceChannel::getIpAddress);
+		columns.put("port", DeviceChannel::getPort);
+		columns.put("password", DeviceChannel::getPassword);
+		columns.put("status", DeviceChannel::getStatus);
+		columns.put("longitude", DeviceChannel::getLongitude);
+		columns.put("latitude", DeviceChannel::getLatitude);
+		columns.put("ptz_type", DeviceChannel::getPtzType);
+		columns.put("position_type", DeviceChannel::getPositionType);
+		columns.put("room_type", DeviceChannel::getRoomType);
+		columns.put("use_type", DeviceChannel::getUseType);
+		columns.put("supply_light_type", DeviceChannel::getSupplyLightType);
+		columns.put("direction_type", DeviceChannel::getDirectionType);
+		columns.put("resolution", DeviceChannel::getResolution);
+		columns.put("business_group_id", DeviceChannel::getBusinessGroupId);
+		columns.put("download_speed", DeviceChannel::getDownloadSpeed);
+		columns.put("svc_space_support_mod", DeviceChannel::getSvcSpaceSupportMod);
+		columns.put("svc_time_support_mode", DeviceChannel::getSvcTimeSupportMode);
+		columns.put("channel_type", DeviceChannel::getChannelType);
+		CONTENT_COLUMNS = Collections.unmodifiableMap(columns);
+	}
+
 	@Schema(description = "数据库自增ID")
 	private int id;
 
@@ -192,6 +245,9 @@ public class DeviceChannel extends CommonGBChannel {
 	@Schema(description = "通道类型， 默认0, 0： 普通通道，1 行政区划 2 业务分组/虚拟组织")
 	private int channelType;
 
+	@Schema(description = "目录内容的哈希, 用于判断目录信息是否变化")
+	private String contentHash;
+
 	private Integer dataType = ChannelDataType.GB28181;
 
 	public void setPtzType(int ptzType) {
@@ -257,5 +313,39 @@ public class DeviceChannel extends CommonGBChannel {
 		return commonGBChannel;
 	}
 
+	/**
+	 * 计算目录内容的哈希, 列的顺序固定, 内容相同的通道得到相同的哈希
+	 * 状态会被上下线、目录订阅等多处单独修改, 不计入哈希, 比较时单独对比
+	 */
+	public String buildContentHash() {
+		StringBuilder builder = new StringBuilder(512);
+		for (Map.Entry<String, Function<DeviceChannel, Object>> entry : CONTENT_COLUMNS.entrySet()) {
+			if ("status".equals(entry.getKey())) {
+				continue;
+			}
+			Object value = entry.getValue().apply(this);
+			builder.append(entry.getKey()).append('=');
+			if (value != null) {
+				builder.append(value);
+			}
+			builder.append('\n');
+		}
+		return DigestUtils.md5DigestAsHex(builder.toString().getBytes(StandardCharsets.UTF_8));
+	}
 
+	/**
+	 * 与数据库中的通道比较目录内容
+	 * @param channelInDb 数据库中的通道, 需要是未经国标编辑覆盖的原始列
+	 * @return 发生变化的列与新的值, key为数据库列名
+	 */
+	public Map<String, Object> diffContent(DeviceChannel channelInDb) {
+		Map<String, Object> changed = new HashMap<>();
+		for (Map.Entry<String, Function<DeviceChannel, Object>> entry : CONTENT_COLUMNS.entrySet()) {
+			Object value = entry.getValue().apply(this);
+			if (!Objects.equals(value, entry.getValue().apply(channelInDb))) {
+				changed.put(entry.getKey(), value);
+			}
+		}
+		return changed;
+	}
 }
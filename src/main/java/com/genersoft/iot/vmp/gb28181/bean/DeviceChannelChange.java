@@ -0,0 +1,32 @@
+package com.genersoft.iot.vmp.gb28181.bean;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 通道目录内容的变化, 只更新发生变化的列
+ */
+@Data
+public class DeviceChannelChange {
+
+    private int id;
+
+    private String updateTime;
+
+    private String contentHash;
+
+    /**
+     * 发生变化的列与新的值, key为数据库列名
+     */
+    private Map<String, Object> columns;
+
+    public static DeviceChannelChange getInstance(int id, String updateTime, String contentHash, Map<String, Object> columns) {
+        DeviceChannelChange change = new DeviceChannelChange();
+        change.setId(id);
+        change.setUpdateTime(updateTime);
+        change.setContentHash(contentHash);
+        change.setColumns(columns);
+        return change;
+    }
+}
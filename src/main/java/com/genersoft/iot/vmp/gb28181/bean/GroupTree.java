@@ -24,4 +24,10 @@ public class GroupTree extends Group{
     @Schema(description = "在线状态")
     private String status;
 
+    @Schema(description = "通道总数, 包含所有下级节点的通道")
+    private int channelCount;
+
+    @Schema(description = "在线通道数, 包含所有下级节点的通道")
+    private int onlineChannelCount;
+
 }
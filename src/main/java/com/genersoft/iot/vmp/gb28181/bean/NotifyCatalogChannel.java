@@ -7,6 +7,11 @@ public class NotifyCatalogChannel {
 
     private DeviceChannel channel;
 
+    /**
+     * 收到的原始事件, 用于向上级转发
+     */
+    private String event;
+
 
     public enum Type {
         ADD, DELETE, UPDATE, STATUS_CHANGED
@@ -20,6 +25,12 @@ public class NotifyCatalogChannel {
         return notifyCatalogChannel;
     }
 
+    public static NotifyCatalogChannel getInstance(Type type, DeviceChannel channel, String event) {
+        NotifyCatalogChannel notifyCatalogChannel = getInstance(type, channel);
+        notifyCatalogChannel.setEvent(event);
+        return notifyCatalogChannel;
+    }
+
     public Type getType() {
         return type;
     }
@@ -35,4 +46,12 @@ public class NotifyCatalogChannel {
     public void setChannel(DeviceChannel channel) {
         this.channel = channel;
     }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public void setEvent(String event) {
+        this.event = event;
+    }
 }
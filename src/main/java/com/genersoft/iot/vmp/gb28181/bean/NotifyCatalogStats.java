@@ -0,0 +1,33 @@
+package com.genersoft.iot.vmp.gb28181.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 目录订阅通知入库统计
+ */
+@Data
+@Schema(description = "目录订阅通知入库统计")
+public class NotifyCatalogStats {
+
+    @Schema(description = "累计收到的通道事件数")
+    private long received;
+
+    @Schema(description = "累计因合并而丢弃的通道事件数")
+    private long coalesced;
+
+    @Schema(description = "累计写入数据库的通道数")
+    private long written;
+
+    @Schema(description = "待处理的通知数")
+    private int pending;
+
+    @Schema(description = "最近一次处理的设备数")
+    private int lastDeviceCount;
+
+    @Schema(description = "最近一次合并后的通道事件数")
+    private int lastBatchSize;
+
+    @Schema(description = "最近一次处理耗时, 单位：毫秒")
+    private long lastFlushCost;
+}
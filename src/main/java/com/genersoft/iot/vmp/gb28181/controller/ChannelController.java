@@ -111,16 +111,18 @@ public class ChannelController {
     @Parameter(name = "online", description = "是否在线")
     @Parameter(name = "hasRecordPlan", description = "是否已设置录制计划")
     @Parameter(name = "channelType", description = "通道类型， 0：国标设备，1：推流设备，2：拉流代理")
+    @Parameter(name = "lastId", description = "上一页最后一个通道的数据库ID, 传入时按游标分页, 忽略page")
     @GetMapping("/list")
     public PageInfo<CommonGBChannel> queryList(int page, int count,
                                                           @RequestParam(required = false) String query,
                                                           @RequestParam(required = false) Boolean online,
                                                           @RequestParam(required = false) Boolean hasRecordPlan,
-                                                          @RequestParam(required = false) Integer channelType){
+                                                          @RequestParam(required = false) Integer channelType,
+                                                          @RequestParam(required = false) Integer lastId){
         if (ObjectUtils.isEmpty(query)){
             query = null;
         }
-        return channelService.queryList(page, count, query, online, hasRecordPlan, channelType);
+        return channelService.queryList(page, count, query, online, hasRecordPlan, channelType, lastId);
     }
 
     @Operation(summary = "获取关联行政区划通道列表", security = @SecurityRequirement(name = JwtUtils.HEADER))
@@ -130,16 +132,18 @@ public class ChannelController {
     @Parameter(name = "online", description = "是否在线")
     @Parameter(name = "channelType", description = "通道类型， 0：国标设备，1：推流设备，2：拉流代理")
     @Parameter(name = "civilCode", description = "行政区划")
+    @Parameter(name = "lastId", description = "上一页最后一个通道的数据库ID, 传入时按游标分页, 忽略page")
     @GetMapping("/civilcode/list")
     public PageInfo<CommonGBChannel> queryListByCivilCode(int page, int count,
                                                @RequestParam(required = false) String query,
                                                @RequestParam(required = false) Boolean online,
                                                @RequestParam(required = false) Integer channelType,
-                                               @RequestParam(required = false) String civilCode){
+                                               @RequestParam(required = false) String civilCode,
+                                               @RequestParam(required = false) Integer lastId){
         if (ObjectUtils.isEmpty(query)){
             query = null;
         }
-        return channelService.queryListByCivilCode(page, count, query, online, channelType, civilCode);
+        return channelService.queryListByCivilCode(page, count, query, online, channelType, civilCode, lastId);
     }
 
 
@@ -199,16 +203,18 @@ public class ChannelController {
     @Parameter(name = "online", description = "是否在线")
     @Parameter(name = "channelType", description = "通道类型， 0：国标设备，1：推流设备，2：拉流代理")
     @Parameter(name = "groupDeviceId", description = "业务分组下的父节点ID")
+    @Parameter(name = "lastId", description = "上一页最后一个通道的数据库ID, 传入时按游标分页, 忽略page")
     @GetMapping("/parent/list")
     public PageInfo<CommonGBChannel> queryListByParentId(int page, int count,
                                                @RequestParam(required = false) String query,
                                                @RequestParam(required = false) Boolean online,
                                                @RequestParam(required = false) Integer channelType,
-                                               @RequestParam(required = false) String groupDeviceId){
+                                               @RequestParam(required = false) String groupDeviceId,
+                                               @RequestParam(required = false) Integer lastId){
         if (ObjectUtils.isEmpty(query)){
             query = null;
         }
-        return channelService.queryListByParentId(page, count, query, online, channelType, groupDeviceId);
+        return channelService.queryListByParentId(page, count, query, online, channelType, groupDeviceId, lastId);
     }
 
     @Operation(summary = "通道设置行政区划", security = @SecurityRequirement(name = JwtUtils.HEADER))
@@ -0,0 +1,65 @@
+package com.genersoft.iot.vmp.gb28181.controller;
+
+import com.genersoft.iot.vmp.conf.security.JwtUtils;
+import com.genersoft.iot.vmp.gb28181.bean.DeviceBatchResult;
+import com.genersoft.iot.vmp.gb28181.bean.DeviceBatchTask;
+import com.genersoft.iot.vmp.gb28181.controller.bean.DeviceBatchParam;
+import com.genersoft.iot.vmp.gb28181.service.IDeviceBatchCommandService;
+import com.github.pagehelper.PageInfo;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@Tag(name = "国标设备批量命令")
+@Slf4j
+@RestController
+@RequestMapping("/api/device/batch")
+public class DeviceBatchController {
+
+    @Autowired
+    private IDeviceBatchCommandService batchCommandService;
+
+    @Operation(summary = "开始批量命令, 进度通过SSE的deviceBatch事件通知", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "param", description = "批量命令参数", required = true)
+    @PostMapping("/start")
+    public DeviceBatchTask start(@RequestBody DeviceBatchParam param) {
+        return batchCommandService.start(param);
+    }
+
+    @Operation(summary = "取消批量命令", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "taskId", description = "任务ID", required = true)
+    @GetMapping("/cancel")
+    public void cancel(String taskId) {
+        batchCommandService.cancel(taskId);
+    }
+
+    @Operation(summary = "查询批量命令的进度", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "taskId", description = "任务ID", required = true)
+    @GetMapping("/task")
+    public DeviceBatchTask getTask(String taskId) {
+        return batchCommandService.getTask(taskId);
+    }
+
+    @Operation(summary = "查询批量命令列表", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @GetMapping("/task/list")
+    public List<DeviceBatchTask> getTaskList() {
+        return batchCommandService.getTaskList();
+    }
+
+    @Operation(summary = "分页查询批量命令的执行结果", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "taskId", description = "任务ID", required = true)
+    @Parameter(name = "status", description = "结果状态， 0：等待， 1：执行中， 2：成功， 3：失败， 4：超时， 5：跳过， 为空时查询全部")
+    @Parameter(name = "page", description = "当前页", required = true)
+    @Parameter(name = "count", description = "每页查询数量", required = true)
+    @GetMapping("/result")
+    public PageInfo<DeviceBatchResult> getResults(String taskId, @RequestParam(required = false) Integer status,
+                                                  int page, int count) {
+        return batchCommandService.getResults(taskId, status, page, count);
+    }
+}
@@ -7,6 +7,7 @@ import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.conf.security.JwtUtils;
 import com.genersoft.iot.vmp.gb28181.bean.Device;
 import com.genersoft.iot.vmp.gb28181.bean.DeviceChannel;
+import com.genersoft.iot.vmp.gb28181.bean.NotifyCatalogStats;
 import com.genersoft.iot.vmp.gb28181.bean.SyncStatus;
 import com.genersoft.iot.vmp.gb28181.service.IDeviceChannelService;
 import com.genersoft.iot.vmp.gb28181.service.IDeviceService;
@@ -14,6 +15,8 @@ import com.genersoft.iot.vmp.gb28181.service.IInviteStreamService;
 import com.genersoft.iot.vmp.gb28181.transmit.callback.DeferredResultHolder;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommander;
 import com.genersoft.iot.vmp.service.redisMsg.IRedisRpcService;
+import com.genersoft.iot.vmp.utils.ListExportWriter;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.genersoft.iot.vmp.vmanager.bean.WVPResult;
 import com.github.pagehelper.PageInfo;
@@ -36,6 +39,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 
 @Tag(name  = "国标设备查询", description = "国标设备查询")
@@ -92,6 +96,35 @@ public class DeviceQuery {
 		return deviceService.getAll(page, count, query, status);
 	}
 
+	@Operation(summary = "游标分页查询国标设备", description = "按数据库ID倒序, 不受页码深度影响, 适合数据量较大时连续翻页", security = @SecurityRequirement(name = JwtUtils.HEADER))
+	@Parameter(name = "cursor", description = "上一页返回的游标, 查询第一页时为空", required = false)
+	@Parameter(name = "count", description = "每页查询数量", required = true)
+	@Parameter(name = "query", description = "搜索", required = false)
+	@Parameter(name = "status", description = "状态", required = false)
+	@GetMapping("/devices/cursor")
+	public CursorPageInfo<Device> devicesByCursor(@RequestParam(required = false) String cursor, int count, String query, Boolean status){
+		if (ObjectUtils.isEmpty(query)){
+			query = null;
+		}
+		return deviceService.getAllByCursor(cursor, count, query, status);
+	}
+
+	@Operation(summary = "导出国标设备", security = @SecurityRequirement(name = JwtUtils.HEADER))
+	@Parameter(name = "query", description = "搜索", required = false)
+	@Parameter(name = "status", description = "状态", required = false)
+	@Parameter(name = "format", description = "导出格式, csv或者ndjson, 默认csv", required = false)
+	@GetMapping("/devices/export")
+	public void exportDevices(HttpServletResponse response, String query, Boolean status, @RequestParam(required = false) String format){
+		if (ObjectUtils.isEmpty(query)){
+			query = null;
+		}
+		try (ListExportWriter writer = ListExportWriter.open(response, "devices", format)) {
+			deviceService.exportList(query, status, writer::write);
+		} catch (IOException | UncheckedIOException e) {
+			log.warn("[导出国标设备] 写出失败： {}", e.getMessage());
+		}
+	}
+
 
 	@GetMapping("/devices/{deviceId}/channels")
 	@Operation(summary = "分页查询通道", security = @SecurityRequirement(name = JwtUtils.HEADER))
@@ -386,6 +419,12 @@ public class DeviceQuery {
 		deviceService.subscribeCatalog(id, cycle);
 	}
 
+	@GetMapping("/subscribe/catalog/stats")
+	@Operation(summary = "目录订阅通知的入库统计", security = @SecurityRequirement(name = JwtUtils.HEADER))
+	public NotifyCatalogStats getNotifyCatalogStats() {
+		return deviceService.getNotifyCatalogStats();
+	}
+
 	@GetMapping("/subscribe/mobile-position")
 	@Operation(summary = "开启/关闭移动位置订阅")
 	@Parameter(name = "id", description = "通道的Id", required = true)
@@ -4,6 +4,8 @@ import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.gb28181.bean.Group;
 import com.genersoft.iot.vmp.gb28181.bean.GroupTree;
 import com.genersoft.iot.vmp.gb28181.service.IGroupService;
+import com.genersoft.iot.vmp.utils.ListExportWriter;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.github.pagehelper.PageInfo;
 import io.swagger.v3.oas.annotations.Operation;
@@ -15,6 +17,9 @@ import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @Slf4j
@@ -61,6 +66,39 @@ public class GroupController {
         return groupService.queryList(page, count, query);
     }
 
+    @Operation(summary = "游标分页查询分组", description = "按数据库ID升序, 不受页码深度影响, 适合数据量较大时连续翻页")
+    @Parameter(name = "cursor", description = "上一页返回的游标, 查询第一页时为空")
+    @Parameter(name = "count", description = "每页查询数量", required = true)
+    @Parameter(name = "query", description = "要搜索的内容")
+    @ResponseBody
+    @GetMapping("/tree/query/cursor")
+    public CursorPageInfo<Group> queryTreeByCursor(@RequestParam(required = false) String cursor, int count,
+                                                   @RequestParam(required = false) String query
+    ){
+        if (ObjectUtils.isEmpty(query)) {
+            query = null;
+        }
+        return groupService.queryListByCursor(cursor, count, query);
+    }
+
+    @Operation(summary = "导出分组")
+    @Parameter(name = "query", description = "要搜索的内容")
+    @Parameter(name = "format", description = "导出格式, csv或者ndjson, 默认csv")
+    @GetMapping("/export")
+    public void export(HttpServletResponse response,
+                       @RequestParam(required = false) String query,
+                       @RequestParam(required = false) String format
+    ){
+        if (ObjectUtils.isEmpty(query)) {
+            query = null;
+        }
+        try (ListExportWriter writer = ListExportWriter.open(response, "group", format)) {
+            groupService.exportList(query, writer::write);
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("[导出分组] 写出失败： {}", e.getMessage());
+        }
+    }
+
     @Operation(summary = "更新分组")
     @Parameter(name = "group", description = "Group", required = true)
     @ResponseBody
@@ -11,6 +11,8 @@ import com.genersoft.iot.vmp.gb28181.controller.bean.UpdateChannelParam;
 import com.genersoft.iot.vmp.gb28181.service.IPlatformChannelService;
 import com.genersoft.iot.vmp.gb28181.service.IPlatformService;
 import com.genersoft.iot.vmp.utils.DateUtil;
+import com.genersoft.iot.vmp.utils.ListExportWriter;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.genersoft.iot.vmp.vmanager.bean.WVPResult;
 import com.github.pagehelper.PageInfo;
@@ -25,6 +27,10 @@ import org.springframework.util.ObjectUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.async.DeferredResult;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * 级联平台管理
  */
@@ -210,6 +216,58 @@ public class PlatformController {
         return platformChannelService.queryChannelList(page, count, query, channelType,  online, platformId, hasShare);
     }
 
+    @Operation(summary = "游标分页查询级联平台的所有所有通道", description = "按通道ID升序, 不受页码深度影响, 适合数据量较大时连续翻页", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "cursor", description = "上一页返回的游标, 查询第一页时为空")
+    @Parameter(name = "count", description = "每页条数", required = true)
+    @Parameter(name = "platformId", description = "上级平台的数据ID")
+    @Parameter(name = "channelType", description = "通道类型， 0：国标设备，1：推流设备，2：拉流代理")
+    @Parameter(name = "query", description = "查询内容")
+    @Parameter(name = "online", description = "是否在线")
+    @Parameter(name = "hasShare", description = "是否已经共享")
+    @GetMapping("/channel/list/cursor")
+    @ResponseBody
+    public CursorPageInfo<PlatformChannel> queryChannelListByCursor(@RequestParam(required = false) String cursor, int count,
+                                                                    @RequestParam(required = false) Integer platformId,
+                                                                    @RequestParam(required = false) String query,
+                                                                    @RequestParam(required = false) Integer channelType,
+                                                                    @RequestParam(required = false) Boolean online,
+                                                                    @RequestParam(required = false) Boolean hasShare) {
+
+        Assert.notNull(platformId, "上级平台的数据ID不可为NULL");
+        if (ObjectUtils.isEmpty(query)) {
+            query = null;
+        }
+
+        return platformChannelService.queryChannelListByCursor(cursor, count, query, channelType,  online, platformId, hasShare);
+    }
+
+    @Operation(summary = "导出级联平台的通道", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "platformId", description = "上级平台的数据ID", required = true)
+    @Parameter(name = "channelType", description = "通道类型， 0：国标设备，1：推流设备，2：拉流代理")
+    @Parameter(name = "query", description = "查询内容")
+    @Parameter(name = "online", description = "是否在线")
+    @Parameter(name = "hasShare", description = "是否已经共享")
+    @Parameter(name = "format", description = "导出格式, csv或者ndjson, 默认csv")
+    @GetMapping("/channel/export")
+    public void exportChannelList(HttpServletResponse response,
+                                  @RequestParam(required = false) Integer platformId,
+                                  @RequestParam(required = false) String query,
+                                  @RequestParam(required = false) Integer channelType,
+                                  @RequestParam(required = false) Boolean online,
+                                  @RequestParam(required = false) Boolean hasShare,
+                                  @RequestParam(required = false) String format) {
+
+        Assert.notNull(platformId, "上级平台的数据ID不可为NULL");
+        if (ObjectUtils.isEmpty(query)) {
+            query = null;
+        }
+        try (ListExportWriter writer = ListExportWriter.open(response, "platform_channel", format)) {
+            platformChannelService.exportChannelList(query, channelType, online, platformId, hasShare, writer::write);
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("[导出级联平台的通道] 写出失败： {}", e.getMessage());
+        }
+    }
+
     @Operation(summary = "向上级平台添加国标通道", security = @SecurityRequirement(name = JwtUtils.HEADER))
     @PostMapping("/channel/add")
     @ResponseBody
@@ -2,6 +2,7 @@ package com.genersoft.iot.vmp.gb28181.controller;
 
 import com.genersoft.iot.vmp.gb28181.session.SseSessionManager;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.util.ObjectUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -11,6 +12,9 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 
 /**
@@ -32,11 +36,16 @@ public class SseController {
      * SSE 推送.
      *
      * @param browserId 浏览器ID
+     * @param deviceIds 只接收这些设备的报警, 多个以逗号分隔, 为空时接收所有设备的报警
      */
     @GetMapping("/emit")
-    public SseEmitter emit(HttpServletResponse response, @RequestParam String browserId) throws IOException, InterruptedException {
+    public SseEmitter emit(HttpServletResponse response, @RequestParam String browserId, @RequestParam(required = false) String deviceIds) throws IOException, InterruptedException {
 //        response.setContentType("text/event-stream");
 //        response.setCharacterEncoding("utf-8");
-        return sseSessionManager.conect(browserId);
+        Set<String> deviceIdSet = null;
+        if (!ObjectUtils.isEmpty(deviceIds)) {
+            deviceIdSet = new HashSet<>(Arrays.asList(deviceIds.split(",")));
+        }
+        return sseSessionManager.conect(browserId, deviceIdSet);
     }
 }
@@ -0,0 +1,36 @@
+package com.genersoft.iot.vmp.gb28181.controller.bean;
+
+import com.genersoft.iot.vmp.gb28181.bean.DeviceBatchCommandType;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量命令参数
+ */
+@Data
+@Schema(description = "批量命令参数")
+public class DeviceBatchParam {
+
+    @Schema(description = "命令类型")
+    private DeviceBatchCommandType commandType;
+
+    @Schema(description = "设备国标编号， 为空时选择当前节点的所有在线设备")
+    private List<String> deviceIds;
+
+    @Schema(description = "通道国标编号， 仅用于以通道为单位的命令， 为空时选择所选设备下的所有可控通道")
+    private List<String> channelIds;
+
+    @Schema(description = "全局最大并发数， 默认20")
+    private Integer maxConcurrency;
+
+    @Schema(description = "单个设备的最大并发数， 默认1")
+    private Integer perDeviceConcurrency;
+
+    @Schema(description = "每秒最多发送的命令数， 默认10")
+    private Integer rate;
+
+    @Schema(description = "单条命令的超时时间， 秒， 默认按命令类型")
+    private Integer timeout;
+}
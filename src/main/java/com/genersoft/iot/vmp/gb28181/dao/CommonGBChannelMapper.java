@@ -253,13 +253,15 @@ public interface CommonGBChannelMapper {
 
     @SelectProvider(type = ChannelProvider.class, method = "queryListByCivilCode")
     List<CommonGBChannel> queryListByCivilCode(@Param("query") String query, @Param("online") Boolean online,
-                                               @Param("dataType") Integer dataType, @Param("civilCode") String civilCode);
+                                               @Param("dataType") Integer dataType, @Param("civilCode") String civilCode,
+                                               @Param("lastId") Integer lastId);
 
 
 
     @SelectProvider(type = ChannelProvider.class, method = "queryListByParentId")
     List<CommonGBChannel> queryListByParentId(@Param("query") String query, @Param("online") Boolean online,
-                                              @Param("dataType") Integer dataType, @Param("groupDeviceId") String groupDeviceId);
+                                              @Param("dataType") Integer dataType, @Param("groupDeviceId") String groupDeviceId,
+                                              @Param("lastId") Integer lastId);
 
 
 
@@ -378,6 +380,43 @@ public interface CommonGBChannelMapper {
             " </script>")
     List<GroupTree> queryForGroupTreeByParentId(@Param("query") String query, @Param("parent") String parent);
 
+    @Select("<script>" +
+            " select " +
+            "    id," +
+            "    coalesce(gb_device_id, device_id) as device_id," +
+            "    coalesce(gb_name, name) as name, " +
+            "    coalesce(gb_parent_id, parent_id) as parent_device_id, " +
+            "    coalesce(gb_business_group_id, business_group_id) as business_group, " +
+            "    coalesce(gb_civil_code, civil_code) as civil_code, " +
+            "    coalesce(gb_status, status) as status, " +
+            "    channel_type " +
+            " from wvp_device_channel " +
+            " </script>")
+    List<ChannelTreeItem> queryAllForTree();
+
+    @Select("<script>" +
+            " select " +
+            "    id," +
+            "    coalesce(gb_device_id, device_id) as device_id," +
+            "    coalesce(gb_name, name) as name, " +
+            "    coalesce(gb_civil_code, civil_code) as civil_code, " +
+            "    coalesce(gb_parent_id, parent_id) as parent_device_id, " +
+            "    coalesce(gb_status, status) as status, " +
+            "    data_type, " +
+            "    data_device_id, " +
+            "    record_plan_id " +
+            " from wvp_device_channel " +
+            " where channel_type = 0 " +
+            " <if test='dataType != null'> AND data_type = #{dataType} AND data_device_id in " +
+            " <foreach collection='dataDeviceIds'  item='item'  open='(' separator=',' close=')' > #{item}</foreach>" +
+            " </if> " +
+            " order by id " +
+            " </script>")
+    List<ChannelSearchItem> queryForSearch(@Param("dataType") Integer dataType, @Param("dataDeviceIds") Collection<Integer> dataDeviceIds);
+
+    @Select("select gb_device_id from wvp_device_channel where gb_device_id is not null")
+    List<String> queryAllGbDeviceIds();
+
     @Update(value = {" <script>" +
             " UPDATE wvp_device_channel " +
             " SET gb_parent_id = #{parentId}, gb_business_group_id = #{businessGroup}" +
@@ -465,7 +504,8 @@ public interface CommonGBChannelMapper {
 
     @SelectProvider(type = ChannelProvider.class, method = "queryList")
     List<CommonGBChannel> queryList(@Param("query") String query, @Param("online") Boolean online,
-                                    @Param("hasRecordPlan") Boolean hasRecordPlan, @Param("dataType") Integer dataType);
+                                    @Param("hasRecordPlan") Boolean hasRecordPlan, @Param("dataType") Integer dataType,
+                                    @Param("lastId") Integer lastId);
 
     @Update(value = {" <script>" +
             " UPDATE wvp_device_channel " +
@@ -2,6 +2,7 @@ package com.genersoft.iot.vmp.gb28181.dao;
 
 import com.genersoft.iot.vmp.gb28181.bean.Device;
 import com.genersoft.iot.vmp.gb28181.bean.DeviceChannel;
+import com.genersoft.iot.vmp.gb28181.bean.DeviceChannelChange;
 import com.genersoft.iot.vmp.gb28181.controller.bean.ChannelReduce;
 import com.genersoft.iot.vmp.gb28181.dao.provider.DeviceChannelProvider;
 import com.genersoft.iot.vmp.service.bean.GPSMsgInfo;
@@ -81,6 +82,7 @@ public interface DeviceChannelMapper {
             ", gps_time=#{gpsTime}" +
             ", stream_identification=#{streamIdentification}" +
             ", channel_type=#{channelType}" +
+            ", content_hash=null" +
             " WHERE id=#{id}" +
             " </script>"})
     int update(DeviceChannel channel);
@@ -201,14 +203,14 @@ public interface DeviceChannelMapper {
             "address, parental, parent_id, safety_way, register_way, cert_num, certifiable, err_code, end_time, secrecy, " +
             "ip_address, port, password, status, longitude, latitude, ptz_type, position_type, room_type, use_type, " +
             "supply_light_type, direction_type, resolution, business_group_id, download_speed, svc_space_support_mod, " +
-            "svc_time_support_mode, create_time, update_time, sub_count, stream_id, has_audio, gps_time, stream_identification, channel_type) " +
+            "svc_time_support_mode, create_time, update_time, sub_count, stream_id, has_audio, gps_time, stream_identification, channel_type, content_hash) " +
             "values " +
             "<foreach collection='addChannels' index='index' item='item' separator=','> " +
             "(#{item.deviceId}, #{item.dataType}, #{item.dataDeviceId}, #{item.name}, #{item.manufacturer}, #{item.model}, #{item.owner}, #{item.civilCode}, #{item.block}, " +
             "#{item.address}, #{item.parental}, #{item.parentId}, #{item.safetyWay}, #{item.registerWay}, #{item.certNum}, #{item.certifiable}, #{item.errCode}, #{item.endTime}, #{item.secrecy}, " +
             "#{item.ipAddress}, #{item.port}, #{item.password}, #{item.status}, #{item.longitude}, #{item.latitude}, #{item.ptzType}, #{item.positionType}, #{item.roomType}, #{item.useType}, " +
             "#{item.supplyLightType}, #{item.directionType}, #{item.resolution}, #{item.businessGroupId}, #{item.downloadSpeed}, #{item.svcSpaceSupportMod}," +
-            " #{item.svcTimeSupportMode}, #{item.createTime}, #{item.updateTime}, #{item.subCount}, #{item.streamId}, #{item.hasAudio}, #{item.gpsTime}, #{item.streamIdentification}, #{item.channelType}) " +
+            " #{item.svcTimeSupportMode}, #{item.createTime}, #{item.updateTime}, #{item.subCount}, #{item.streamId}, #{item.hasAudio}, #{item.gpsTime}, #{item.streamIdentification}, #{item.channelType}, #{item.contentHash}) " +
             "</foreach> " +
             "</script>")
     int batchAdd(@Param("addChannels") List<DeviceChannel> addChannels);
@@ -264,6 +266,7 @@ public interface DeviceChannelMapper {
             ", gps_time=#{item.gpsTime}" +
             ", stream_identification=#{item.streamIdentification}" +
             ", channel_type=#{item.channelType}" +
+            ", content_hash=#{item.contentHash}" +
             " WHERE id=#{item.id}" +
             "</foreach>" +
             "</script>"})
@@ -317,6 +320,7 @@ public interface DeviceChannelMapper {
             ", gps_time=#{item.gpsTime}" +
             ", stream_identification=#{item.streamIdentification}" +
             ", channel_type=#{item.channelType}" +
+            ", content_hash=#{item.contentHash}" +
             " WHERE data_type = #{item.dataType} and data_device_id = #{item.dataDeviceId} and device_id=#{item.deviceId}" +
             "</foreach>" +
             "</script>"})
@@ -330,12 +334,91 @@ public interface DeviceChannelMapper {
             " where data_type = 1 and data_device_id = #{dataDeviceId} and device_id = #{channelId}")
     int updateChannelSubCount(@Param("dataDeviceId") int dataDeviceId, @Param("channelId") String channelId);
 
+    /**
+     * 一次更新多个通道的子节点数
+     */
+    @Update("<script>" +
+            " update wvp_device_channel" +
+            " set sub_count = (select count(0)" +
+            "             from (select parent_id" +
+            "                   from wvp_device_channel" +
+            "                   where data_type = 1 and data_device_id = #{dataDeviceId} and parent_id is not null) as temp" +
+            "             where temp.parent_id = wvp_device_channel.device_id)" +
+            " where data_type = 1 and data_device_id = #{dataDeviceId} and device_id in" +
+            " <foreach collection='channelIds' item='item' open='(' separator=',' close=')'> #{item} </foreach>" +
+            " </script>")
+    int updateChannelSubCountByIds(@Param("dataDeviceId") int dataDeviceId, @Param("channelIds") List<String> channelIds);
+
+    @Select("select id, device_id, parent_id, status, content_hash from wvp_device_channel where data_type = 1 and data_device_id = #{dataDeviceId}")
+    List<DeviceChannel> queryContentHashByDeviceDbId(@Param("dataDeviceId") int dataDeviceId);
+
+    @Select("<script> " +
+            "select id, device_id from wvp_device_channel where data_type = 1 and data_device_id = #{dataDeviceId} and device_id in" +
+            " <foreach collection='channelIds' item='item' open='(' separator=',' close=')'> #{item} </foreach>" +
+            " </script>")
+    List<DeviceChannel> queryIdsByDeviceIds(@Param("dataDeviceId") int dataDeviceId, @Param("channelIds") List<String> channelIds);
+
+    @Update("<script> " +
+            "UPDATE wvp_device_channel SET status=#{status} WHERE id in" +
+            " <foreach collection='ids' item='item' open='(' separator=',' close=')'> #{item} </foreach>" +
+            " </script>")
+    int batchUpdateStatusByIds(@Param("status") String status, @Param("ids") List<Integer> ids);
+
+    /**
+     * 查询目录内容的原始列, 不使用国标编辑后的值
+     */
+    @Select("<script>select " +
+            " id,\n" +
+            " device_id,\n" +
+            " name,\n" +
+            " manufacturer,\n" +
+            " model,\n" +
+            " owner,\n" +
+            " civil_code,\n" +
+            " block,\n" +
+            " address,\n" +
+            " parental,\n" +
+            " parent_id,\n" +
+            " safety_way,\n" +
+            " register_way,\n" +
+            " cert_num,\n" +
+            " certifiable,\n" +
+            " err_code,\n" +
+            " end_time,\n" +
+            " secrecy,\n" +
+            " ip_address,\n" +
+            " port,\n" +
+            " password,\n" +
+            " status,\n" +
+            " longitude,\n" +
+            " latitude,\n" +
+            " ptz_type,\n" +
+            " position_type,\n" +
+            " room_type,\n" +
+            " use_type,\n" +
+            " supply_light_type,\n" +
+            " direction_type,\n" +
+            " resolution,\n" +
+            " business_group_id,\n" +
+            " download_speed,\n" +
+            " svc_space_support_mod,\n" +
+            " svc_time_support_mode,\n" +
+            " channel_type\n" +
+            " from wvp_device_channel where id in " +
+            " <foreach collection='ids' item='item' open='(' separator=',' close=')'> #{item} </foreach>" +
+            " </script>")
+    List<DeviceChannel> queryContentByIds(@Param("ids") List<Integer> ids);
+
+    @UpdateProvider(type = DeviceChannelProvider.class, method = "batchUpdateContent")
+    int batchUpdateContent(@Param("changes") List<DeviceChannelChange> changes);
+
     @Update(value = {" <script>" +
             " UPDATE wvp_device_channel " +
             " SET " +
             " latitude=#{latitude}, " +
             " longitude=#{longitude}, " +
-            " gps_time=#{gpsTime} " +
+            " gps_time=#{gpsTime}, " +
+            " content_hash=null " +
             " WHERE id=#{id} " +
             " </script>"})
     int updatePosition(DeviceChannel deviceChannel);
@@ -430,6 +513,7 @@ public interface DeviceChannelMapper {
             "<if test='item.longitude != null'>, longitude=#{item.longitude}</if>" +
             "<if test='item.latitude != null'>, latitude=#{item.latitude}</if>" +
             "<if test='item.gpsTime != null'>, gps_time=#{item.gpsTime}</if>" +
+            "<if test='item.longitude != null or item.latitude != null'>, content_hash=null</if>" +
             "<if test='item.id > 0'>WHERE id=#{item.id}</if>" +
             "<if test='item.id == 0'>WHERE data_type = #{item.dataType} and data_device_id=#{item.dataDeviceId} AND device_id=#{item.deviceId}</if>" +
             "</foreach>" +
@@ -612,6 +696,7 @@ public interface DeviceChannelMapper {
             ", gps_time=#{gpsTime}" +
             ", stream_identification=#{streamIdentification}" +
             ", channel_type=#{channelType}" +
+            ", content_hash=null" +
             " WHERE id = #{id}" +
             "</script>"})
     void updateChannelForNotify(DeviceChannel channel);
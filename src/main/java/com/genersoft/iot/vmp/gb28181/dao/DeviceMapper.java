@@ -3,6 +3,7 @@ package com.genersoft.iot.vmp.gb28181.dao;
 import com.genersoft.iot.vmp.gb28181.bean.Device;
 import com.genersoft.iot.vmp.gb28181.bean.DeviceChannel;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -390,9 +391,46 @@ public interface DeviceMapper {
             " OR device_id LIKE concat('%',#{query},'%') escape '/' " +
             " OR ip LIKE concat('%',#{query},'%') escape '/')" +
             "</if> " +
-            " order by create_time desc, device_id " +
+            " <if test='lastId != null'> AND de.id &lt; #{lastId}</if>" +
+            " <if test='limit == null'> order by create_time desc, device_id </if>" +
+            " <if test='limit != null'> order by de.id desc limit #{limit}</if>" +
             " </script>")
-    List<Device> getDeviceList(@Param("dataType") Integer dataType, @Param("query") String query, @Param("status") Boolean status);
+    List<Device> getDeviceList(@Param("dataType") Integer dataType, @Param("query") String query, @Param("status") Boolean status,
+                               @Param("lastId") Integer lastId, @Param("limit") Integer limit);
+
+    @Select(" <script>" +
+            "SELECT " +
+            "id" +
+            ",device_id" +
+            ",coalesce(custom_name, name) as name" +
+            ",manufacturer" +
+            ",model" +
+            ",firmware" +
+            ",transport" +
+            ",stream_mode" +
+            ",on_line" +
+            ",register_time" +
+            ",keepalive_time" +
+            ",ip" +
+            ",port" +
+            ",host_address" +
+            ",charset" +
+            ",media_server_id" +
+            ",server_id" +
+            ",create_time" +
+            ",update_time" +
+            " FROM wvp_device de" +
+            " where 1 = 1 "+
+            " <if test='status != null'> AND de.on_line=${status}</if>"+
+            " <if test='query != null'> AND (" +
+            " coalesce(custom_name, name) LIKE concat('%',#{query},'%') escape '/' " +
+            " OR device_id LIKE concat('%',#{query},'%') escape '/' " +
+            " OR ip LIKE concat('%',#{query},'%') escape '/')" +
+            "</if> " +
+            " order by de.id" +
+            " </script>")
+    @Options(fetchSize = 1000)
+    Cursor<Device> getDeviceListForExport(@Param("query") String query, @Param("status") Boolean status);
 
     @Select("select * from wvp_device_channel where id = #{id}")
     DeviceChannel getRawChannel(@Param("id") int id);
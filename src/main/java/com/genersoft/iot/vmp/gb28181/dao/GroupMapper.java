@@ -5,6 +5,7 @@ import com.genersoft.iot.vmp.gb28181.bean.Group;
 import com.genersoft.iot.vmp.gb28181.bean.GroupTree;
 import com.genersoft.iot.vmp.gb28181.bean.Platform;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.util.List;
 import java.util.Set;
@@ -33,12 +34,28 @@ public interface GroupMapper {
 
     @Select(value = {" <script>" +
             "SELECT * from wvp_common_group WHERE 1=1 " +
-            " <if test='query != null'> AND (device_id LIKE concat('%',#{query},'%') OR name LIKE concat('%',#{query},'%'))</if> " +
+            " <if test='query != null'> AND (device_id LIKE concat('%',#{query},'%') escape '/' OR name LIKE concat('%',#{query},'%') escape '/')</if> " +
             " <if test='parentId != null and businessGroupId != null '> AND parent_device_id = #{parentId} AND business_group=#{businessGroup} </if> " +
             "ORDER BY id " +
             " </script>"})
     List<Group> query(@Param("query") String query, @Param("parentId") String parentId, @Param("businessGroup") String businessGroup);
 
+    @Select(value = {" <script>" +
+            "SELECT * from wvp_common_group WHERE 1=1 " +
+            " <if test='query != null'> AND (device_id LIKE concat('%',#{query},'%') escape '/' OR name LIKE concat('%',#{query},'%') escape '/')</if> " +
+            " <if test='lastId != null'> AND id &gt; #{lastId}</if> " +
+            "ORDER BY id limit #{limit}" +
+            " </script>"})
+    List<Group> queryAfter(@Param("query") String query, @Param("lastId") Integer lastId, @Param("limit") int limit);
+
+    @Select(value = {" <script>" +
+            "SELECT * from wvp_common_group WHERE 1=1 " +
+            " <if test='query != null'> AND (device_id LIKE concat('%',#{query},'%') escape '/' OR name LIKE concat('%',#{query},'%') escape '/')</if> " +
+            "ORDER BY id " +
+            " </script>"})
+    @Options(fetchSize = 1000)
+    Cursor<Group> queryForExport(@Param("query") String query);
+
     @Select("SELECT * from wvp_common_group WHERE parent_id = #{parentId} ")
     List<Group> getChildren(@Param("parentId") int parentId);
 
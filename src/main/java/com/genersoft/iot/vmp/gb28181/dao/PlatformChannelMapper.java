@@ -2,6 +2,7 @@ package com.genersoft.iot.vmp.gb28181.dao;
 
 import com.genersoft.iot.vmp.gb28181.bean.*;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
@@ -152,10 +153,52 @@ public interface PlatformChannelMapper {
             " <if test='hasShare == true'> AND wpgc.platform_id = #{platformId}</if> " +
             " <if test='hasShare == false'> AND wpgc.platform_id is null</if> " +
             " <if test='dataType != null'> AND wdc.data_type = #{dataType}</if> " +
+            " <if test='lastId != null'> AND wdc.id &gt; #{lastId}</if> " +
+            " <if test='limit != null'> order by wdc.id limit #{limit}</if> " +
             "</script>")
     List<PlatformChannel> queryForPlatformForWebList(@Param("platformId") Integer platformId, @Param("query") String query,
                                                      @Param("dataType") Integer dataType, @Param("online") Boolean online,
-                                                     @Param("hasShare") Boolean hasShare);
+                                                     @Param("hasShare") Boolean hasShare, @Param("lastId") Integer lastId,
+                                                     @Param("limit") Integer limit);
+
+    @Select("<script>" +
+            " select " +
+            "    wpgc.id ,\n" +
+            "    wdc.id as gb_id,\n" +
+            "    wdc.data_type ,\n" +
+            "    wdc.data_device_id,\n" +
+            "    wdc.create_time,\n" +
+            "    wdc.update_time,\n" +
+            "    coalesce( wpgc.custom_device_id, wdc.gb_device_id, wdc.device_id) as gb_device_id,\n" +
+            "    coalesce( wpgc.custom_name, wdc.gb_name, wdc.name) as gb_name,\n" +
+            "    coalesce( wpgc.custom_manufacturer, wdc.gb_manufacturer, wdc.manufacturer) as gb_manufacturer,\n" +
+            "    coalesce( wpgc.custom_model, wdc.gb_model, wdc.model) as gb_model,\n" +
+            "    coalesce( wpgc.custom_civil_code, wdc.gb_civil_code, wdc.civil_code) as gb_civil_code,\n" +
+            "    coalesce( wpgc.custom_address, wdc.gb_address, wdc.address) as gb_address,\n" +
+            "    coalesce( wpgc.custom_parent_id, wdc.gb_parent_id, wdc.parent_id) as gb_parent_id,\n" +
+            "    coalesce( wpgc.custom_business_group_id, wdc.gb_business_group_id, wdc.business_group_id) as gb_business_group_id,\n" +
+            "    coalesce( wpgc.custom_status, wdc.gb_status, wdc.status) as gb_status,\n" +
+            "    coalesce( wpgc.custom_longitude, wdc.gb_longitude, wdc.longitude) as gb_longitude,\n" +
+            "    coalesce( wpgc.custom_latitude, wdc.gb_latitude, wdc.latitude) as gb_latitude,\n" +
+            "    coalesce( wpgc.custom_ptz_type, wdc.gb_ptz_type, wdc.ptz_type) as gb_ptz_type,\n" +
+            "    wpgc.platform_id " +
+            " from wvp_device_channel wdc" +
+            " left join wvp_platform_channel wpgc on wdc.id = wpgc.device_channel_id and wpgc.platform_id = #{platformId}" +
+            " where wdc.channel_type = 0 " +
+            " <if test='query != null'> " +
+            " AND (coalesce(wdc.gb_device_id, wdc.device_id) LIKE concat('%',#{query},'%') OR wpgc.custom_device_id LIKE concat('%',#{query},'%') " +
+            "      OR coalesce(wdc.gb_name, wdc.name)  LIKE concat('%',#{query},'%') OR wpgc.custom_name LIKE concat('%',#{query},'%'))</if> " +
+            " <if test='online == true'> AND coalesce(wpgc.custom_status, wdc.gb_status, wdc.status) = 'ON'</if> " +
+            " <if test='online == false'> AND coalesce(wpgc.custom_status, wdc.gb_status, wdc.status) = 'OFF'</if> " +
+            " <if test='hasShare == true'> AND wpgc.platform_id = #{platformId}</if> " +
+            " <if test='hasShare == false'> AND wpgc.platform_id is null</if> " +
+            " <if test='dataType != null'> AND wdc.data_type = #{dataType}</if> " +
+            " order by wdc.id" +
+            "</script>")
+    @Options(fetchSize = 1000)
+    Cursor<PlatformChannel> queryForPlatformForExport(@Param("platformId") Integer platformId, @Param("query") String query,
+                                                      @Param("dataType") Integer dataType, @Param("online") Boolean online,
+                                                      @Param("hasShare") Boolean hasShare);
 
     @Select("select\n" +
             "    wdc.id as gb_id,\n" +
@@ -354,6 +397,34 @@ public interface PlatformChannelMapper {
             "</script>")
     int removePlatformGroup(List<Group> groupList, @Param("platformId") Integer platformId);
 
+    @Delete("<script> "+
+            "DELETE from wvp_platform_region WHERE platform_id=#{platformId} AND region_id in" +
+            "<foreach collection='regionList'  item='item'  open='(' separator=',' close=')' > #{item.id}</foreach>" +
+            "</script>")
+    int removePlatformRegion(List<Region> regionList, @Param("platformId") Integer platformId);
+
+    @Select("SELECT group_id from wvp_platform_group WHERE platform_id = #{platformId}")
+    Set<Integer> queryShareGroupIds(@Param("platformId") Integer platformId);
+
+    @Select("SELECT region_id from wvp_platform_region WHERE platform_id = #{platformId}")
+    Set<Integer> queryShareRegionIds(@Param("platformId") Integer platformId);
+
+    @Select(" <script>" +
+            " SELECT distinct coalesce(wpgc.custom_parent_id, wdc.gb_parent_id, wdc.parent_id) " +
+            " from wvp_platform_channel wpgc" +
+            " left join wvp_device_channel wdc on wdc.id = wpgc.device_channel_id" +
+            " where wpgc.platform_id = #{platformId} and coalesce(wpgc.custom_parent_id, wdc.gb_parent_id, wdc.parent_id) is not null" +
+            " </script>")
+    Set<String> queryShareChannelParentIds(@Param("platformId") Integer platformId);
+
+    @Select(" <script>" +
+            " SELECT distinct coalesce(wpgc.custom_civil_code, wdc.gb_civil_code, wdc.civil_code) " +
+            " from wvp_platform_channel wpgc" +
+            " left join wvp_device_channel wdc on wdc.id = wpgc.device_channel_id" +
+            " where wpgc.platform_id = #{platformId} and coalesce(wpgc.custom_civil_code, wdc.gb_civil_code, wdc.civil_code) is not null" +
+            " </script>")
+    Set<String> queryShareChannelCivilCodes(@Param("platformId") Integer platformId);
+
     @Delete("<script> "+
             "DELETE from wvp_platform_group WHERE platform_id=#{platformId} AND group_id  =#{id}" +
             "</script>")
@@ -403,13 +474,10 @@ public interface PlatformChannelMapper {
             " pp.* " +
             " FROM " +
             " wvp_platform pp " +
-            " left join wvp_platform_channel pgc on " +
-            " pp.id = pgc.platform_id " +
-            " left join wvp_device_channel dc on " +
-            " dc.id = pgc.device_channel_id " +
-            " WHERE " +
-            "  pgc.device_channel_id IN" +
+            " WHERE pp.id in (" +
+            " select pgc.platform_id from wvp_platform_channel pgc where pgc.device_channel_id IN" +
             "<foreach collection='ids' item='item'  open='(' separator=',' close=')' > #{item}</foreach>" +
+            " )" +
             "</script> ")
     List<Platform> queryPlatFormListByChannelList(Collection<Integer> ids);
 
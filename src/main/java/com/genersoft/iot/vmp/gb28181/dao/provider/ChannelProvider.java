@@ -180,6 +180,9 @@ public class ChannelProvider {
         if (params.get("dataType") != null) {
             sqlBuild.append(" AND data_type = #{dataType}");
         }
+        if (params.get("lastId") != null) {
+            sqlBuild.append(" AND id > #{lastId} order by id");
+        }
         return sqlBuild.toString();
     }
 
@@ -206,6 +209,9 @@ public class ChannelProvider {
         if (params.get("dataType") != null) {
             sqlBuild.append(" AND data_type = #{dataType}");
         }
+        if (params.get("lastId") != null) {
+            sqlBuild.append(" AND id > #{lastId} order by id");
+        }
         return sqlBuild.toString();
     }
 
@@ -230,6 +236,9 @@ public class ChannelProvider {
         if (params.get("dataType") != null) {
             sqlBuild.append(" AND data_type = #{dataType}");
         }
+        if (params.get("lastId") != null) {
+            sqlBuild.append(" AND id > #{lastId} order by id");
+        }
         return sqlBuild.toString();
     }
 
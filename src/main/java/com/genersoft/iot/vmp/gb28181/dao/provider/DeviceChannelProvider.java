@@ -1,6 +1,7 @@
 package com.genersoft.iot.vmp.gb28181.dao.provider;
 
 import com.genersoft.iot.vmp.common.enums.ChannelDataType;
+import com.genersoft.iot.vmp.gb28181.bean.DeviceChannelChange;
 import org.springframework.util.ObjectUtils;
 
 import java.util.List;
@@ -187,4 +188,25 @@ public class DeviceChannelProvider {
         }
         return sqlBuild.toString();
     }
+
+    /**
+     * 每个通道一条更新语句, 只包含发生变化的列, 列名来自DeviceChannel中固定的目录列
+     */
+    public String batchUpdateContent(Map<String, Object> params ){
+        List<DeviceChannelChange> changes = (List<DeviceChannelChange>)params.get("changes");
+        StringBuilder sqlBuild = new StringBuilder();
+        for (int i = 0; i < changes.size(); i++) {
+            String item = "changes[" + i + "]";
+            if (i > 0) {
+                sqlBuild.append(";");
+            }
+            sqlBuild.append(" UPDATE wvp_device_channel SET update_time=#{").append(item).append(".updateTime}")
+                    .append(", content_hash=#{").append(item).append(".contentHash}");
+            for (String column : changes.get(i).getColumns().keySet()) {
+                sqlBuild.append(", ").append(column).append("=#{").append(item).append(".columns.").append(column).append("}");
+            }
+            sqlBuild.append(" WHERE id=#{").append(item).append(".id}");
+        }
+        return sqlBuild.toString();
+    }
 }
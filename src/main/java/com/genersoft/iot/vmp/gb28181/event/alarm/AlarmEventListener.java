@@ -27,6 +27,6 @@ public class AlarmEventListener implements ApplicationListener<AlarmEvent> {
         if (log.isDebugEnabled()) {
             log.debug("设备报警事件触发, deviceId: {}, {}", event.getAlarmInfo().getDeviceId(), event.getAlarmInfo().getAlarmDescription());
         }
-        sseSessionManager.sendForAll("message", event.getAlarmInfo());
+        sseSessionManager.sendForAll(SseSessionManager.EVENT_ALARM, event.getAlarmInfo().getDeviceId(), event.getAlarmInfo(), false);
     }
 }
@@ -18,6 +18,7 @@ import javax.sip.SipException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -48,8 +49,9 @@ public class CatalogEventLister implements ApplicationListener<CatalogEvent> {
         SubscribeInfo subscribe = null;
         Platform parentPlatform = null;
         log.info("[Catalog事件: {}]通道数量： {}", event.getType(), event.getChannels().size());
-        Map<String, List<Platform>> platformMap = new HashMap<>();
-        Map<String, CommonGBChannel> channelMap = new HashMap<>();
+        // 按上级平台合并通道, 每个平台只发送一次通知
+        Map<String, Platform> platformMap = new HashMap<>();
+        Map<String, List<CommonGBChannel>> platformChannelMap = new LinkedHashMap<>();
         if (event.getPlatform() != null) {
             parentPlatform = event.getPlatform();
             if (parentPlatform.getServerGBId() == null) {
@@ -71,8 +73,14 @@ public class CatalogEventLister implements ApplicationListener<CatalogEvent> {
                     for (CommonGBChannel deviceChannel : event.getChannels()) {
                         List<Platform> parentPlatformsForGB = platformChannelService.queryPlatFormListByChannelDeviceId(
                                 deviceChannel.getGbId(), platforms);
-                        platformMap.put(deviceChannel.getGbDeviceId(), parentPlatformsForGB);
-                        channelMap.put(deviceChannel.getGbDeviceId(), deviceChannel);
+                        if (parentPlatformsForGB == null || parentPlatformsForGB.isEmpty()) {
+                            log.info("[Catalog事件: {}] 未找到上级平台： {}", event.getType(), deviceChannel.getGbDeviceId());
+                            continue;
+                        }
+                        for (Platform platform : parentPlatformsForGB) {
+                            platformMap.putIfAbsent(platform.getServerGBId(), platform);
+                            platformChannelMap.computeIfAbsent(platform.getServerGBId(), key -> new ArrayList<>()).add(deviceChannel);
+                        }
                     }
                 }else {
                     log.info("[Catalog事件: {}] 未订阅目录事件", event.getType());
@@ -100,29 +108,25 @@ public class CatalogEventLister implements ApplicationListener<CatalogEvent> {
                             log.error("[命令发送失败] 国标级联 Catalog通知: {}", e.getMessage());
                         }
                     }
-                }else if (!platformMap.keySet().isEmpty()) {
-                    for (String serverGbId : platformMap.keySet()) {
-                        List<Platform> platformList = platformMap.get(serverGbId);
-                        if (platformList != null && !platformList.isEmpty()) {
-                            for (Platform platform : platformList) {
-                                SubscribeInfo subscribeInfo = subscribeHolder.getCatalogSubscribe(platform.getServerGBId());
-                                if (subscribeInfo == null) {
-                                    continue;
-                                }
-                                log.info("[Catalog事件: {}]平台：{}，影响通道{}", event.getType(), platform.getServerGBId(), serverGbId);
-                                List<CommonGBChannel> deviceChannelList = new ArrayList<>();
-                                CommonGBChannel deviceChannel = new CommonGBChannel();
-                                deviceChannel.setGbDeviceId(serverGbId);
-                                deviceChannelList.add(deviceChannel);
-                                try {
-                                    sipCommanderFroPlatform.sendNotifyForCatalogOther(event.getType(), platform, deviceChannelList, subscribeInfo, null);
-                                } catch (InvalidArgumentException | ParseException | NoSuchFieldException | SipException |
-                                         IllegalAccessException e) {
-                                    log.error("[命令发送失败] 国标级联 Catalog通知: {}", e.getMessage());
-                                }
-                            }
-                        }else {
-                            log.info("[Catalog事件: {}] 未找到上级平台： {}", event.getType(), serverGbId);
+                }else if (!platformChannelMap.isEmpty()) {
+                    for (Map.Entry<String, List<CommonGBChannel>> entry : platformChannelMap.entrySet()) {
+                        Platform platform = platformMap.get(entry.getKey());
+                        SubscribeInfo subscribeInfo = subscribeHolder.getCatalogSubscribe(platform.getServerGBId());
+                        if (subscribeInfo == null) {
+                            continue;
+                        }
+                        log.info("[Catalog事件: {}]平台：{}，影响通道{}个", event.getType(), platform.getServerGBId(), entry.getValue().size());
+                        List<CommonGBChannel> deviceChannelList = new ArrayList<>();
+                        for (CommonGBChannel channel : entry.getValue()) {
+                            CommonGBChannel deviceChannel = new CommonGBChannel();
+                            deviceChannel.setGbDeviceId(channel.getGbDeviceId());
+                            deviceChannelList.add(deviceChannel);
+                        }
+                        try {
+                            sipCommanderFroPlatform.sendNotifyForCatalogOther(event.getType(), platform, deviceChannelList, subscribeInfo, null);
+                        } catch (InvalidArgumentException | ParseException | NoSuchFieldException | SipException |
+                                 IllegalAccessException e) {
+                            log.error("[命令发送失败] 国标级联 Catalog通知: {}", e.getMessage());
                         }
                     }
                 }
@@ -147,26 +151,19 @@ public class CatalogEventLister implements ApplicationListener<CatalogEvent> {
                             log.error("[命令发送失败] 国标级联 Catalog通知: {}", e.getMessage());
                         }
                     }
-                }else if (!platformMap.keySet().isEmpty()) {
-                    for (String gbId : platformMap.keySet()) {
-                        List<Platform> parentPlatforms = platformMap.get(gbId);
-                        if (parentPlatforms != null && !parentPlatforms.isEmpty()) {
-                            for (Platform platform : parentPlatforms) {
-                                SubscribeInfo subscribeInfo = subscribeHolder.getCatalogSubscribe(platform.getServerGBId());
-                                if (subscribeInfo == null) {
-                                    continue;
-                                }
-                                log.info("[Catalog事件: {}]平台：{}，影响通道{}", event.getType(), platform.getServerGBId(), gbId);
-                                List<CommonGBChannel> channelList = new ArrayList<>();
-                                CommonGBChannel deviceChannel = channelMap.get(gbId);
-                                channelList.add(deviceChannel);
-                                try {
-                                    sipCommanderFroPlatform.sendNotifyForCatalogAddOrUpdate(event.getType(), platform, channelList, subscribeInfo, null);
-                                } catch (InvalidArgumentException | ParseException | NoSuchFieldException |
-                                         SipException | IllegalAccessException e) {
-                                    log.error("[命令发送失败] 国标级联 Catalog通知: {}", e.getMessage());
-                                }
-                            }
+                }else if (!platformChannelMap.isEmpty()) {
+                    for (Map.Entry<String, List<CommonGBChannel>> entry : platformChannelMap.entrySet()) {
+                        Platform platform = platformMap.get(entry.getKey());
+                        SubscribeInfo subscribeInfo = subscribeHolder.getCatalogSubscribe(platform.getServerGBId());
+                        if (subscribeInfo == null) {
+                            continue;
+                        }
+                        log.info("[Catalog事件: {}]平台：{}，影响通道{}个", event.getType(), platform.getServerGBId(), entry.getValue().size());
+                        try {
+                            sipCommanderFroPlatform.sendNotifyForCatalogAddOrUpdate(event.getType(), platform, entry.getValue(), subscribeInfo, null);
+                        } catch (InvalidArgumentException | ParseException | NoSuchFieldException |
+                                 SipException | IllegalAccessException e) {
+                            log.error("[命令发送失败] 国标级联 Catalog通知: {}", e.getMessage());
                         }
                     }
                 }
@@ -0,0 +1,34 @@
+package com.genersoft.iot.vmp.gb28181.service;
+
+import com.genersoft.iot.vmp.gb28181.bean.DeviceBatchResult;
+import com.genersoft.iot.vmp.gb28181.bean.DeviceBatchTask;
+import com.genersoft.iot.vmp.gb28181.controller.bean.DeviceBatchParam;
+import com.github.pagehelper.PageInfo;
+
+import java.util.List;
+
+/**
+ * 批量设备命令
+ */
+public interface IDeviceBatchCommandService {
+
+    /**
+     * 开始批量命令, 设备选择与命令发送在后台执行, 进度通过SSE的deviceBatch事件通知
+     */
+    DeviceBatchTask start(DeviceBatchParam param);
+
+    /**
+     * 取消任务, 未发送的命令不再发送, 已发送的命令继续等待结果
+     */
+    void cancel(String taskId);
+
+    DeviceBatchTask getTask(String taskId);
+
+    List<DeviceBatchTask> getTaskList();
+
+    /**
+     * 分页查询执行结果
+     * @param status 结果状态, 为空时查询全部
+     */
+    PageInfo<DeviceBatchResult> getResults(String taskId, Integer status, int page, int count);
+}
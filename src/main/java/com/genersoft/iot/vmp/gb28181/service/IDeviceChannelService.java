@@ -121,6 +121,13 @@ public interface IDeviceChannelService {
 
     void updateChannelForNotify(DeviceChannel channel);
 
+    /**
+     * 保存一个设备在一个处理周期内合并后的目录订阅通知, 按事件类型批量写入, 并向上级合并转发
+     * @param changes 每个通道只保留最后的状态
+     * @return 写入数据库的通道数
+     */
+    int saveForNotify(Device device, List<NotifyCatalogChannel> changes);
+
     DeviceChannel getOneForSource(int deviceDbId, String channelId);
 
     DeviceChannel getOneBySourceId(int deviceDbId, String channelId);
@@ -3,12 +3,14 @@ package com.genersoft.iot.vmp.gb28181.service;
 import com.genersoft.iot.vmp.common.CommonCallback;
 import com.genersoft.iot.vmp.gb28181.bean.*;
 import com.genersoft.iot.vmp.service.bean.ErrorCallback;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ResourceBaseInfo;
 import com.genersoft.iot.vmp.vmanager.bean.WVPResult;
 import com.github.pagehelper.PageInfo;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 设备相关业务处理
@@ -70,6 +72,11 @@ public interface IDeviceService {
      */
     Boolean isSyncRunning(String deviceId);
 
+    /**
+     * 获取目录订阅通知的入库统计
+     */
+    NotifyCatalogStats getNotifyCatalogStats();
+
     /**
      * 通道同步
      * @param device 设备信息
@@ -160,6 +167,17 @@ public interface IDeviceService {
 
     PageInfo<Device> getAll(int page, int count, String query, Boolean status);
 
+    /**
+     * 游标分页查询设备, 按数据库ID倒序
+     * @param cursor 上一页返回的游标, 第一页为空
+     */
+    CursorPageInfo<Device> getAllByCursor(String cursor, int count, String query, Boolean status);
+
+    /**
+     * 逐条读取设备列表用于导出, 不在内存中保存整个列表
+     */
+    void exportList(String query, Boolean status, Consumer<Device> consumer);
+
     Device getDevice(Integer gbDeviceDbId);
 
     Device getDeviceByChannelId(Integer channelId);
@@ -2,9 +2,11 @@ package com.genersoft.iot.vmp.gb28181.service;
 
 import com.genersoft.iot.vmp.gb28181.bean.Group;
 import com.genersoft.iot.vmp.gb28181.bean.GroupTree;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.github.pagehelper.PageInfo;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 
 public interface IGroupService {
@@ -26,4 +28,15 @@ public interface IGroupService {
     List<Group> getPath(String deviceId, String businessGroup);
 
     PageInfo<Group> queryList(Integer page, Integer count, String query);
+
+    /**
+     * 游标分页查询分组, 按数据库ID升序
+     * @param cursor 上一页返回的游标, 第一页为空
+     */
+    CursorPageInfo<Group> queryListByCursor(String cursor, int count, String query);
+
+    /**
+     * 逐条读取分组列表用于导出, 不在内存中保存整个列表
+     */
+    void exportList(String query, Consumer<Group> consumer);
 }
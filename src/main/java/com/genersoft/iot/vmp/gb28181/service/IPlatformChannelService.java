@@ -1,9 +1,11 @@
 package com.genersoft.iot.vmp.gb28181.service;
 
 import com.genersoft.iot.vmp.gb28181.bean.*;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.github.pagehelper.PageInfo;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 平台关联通道管理
@@ -13,6 +15,17 @@ public interface IPlatformChannelService {
 
     PageInfo<PlatformChannel> queryChannelList(int page, int count, String query, Integer channelType, Boolean online, Integer platformId, Boolean hasShare);
 
+    /**
+     * 游标分页查询上级平台可共享的通道, 按通道数据库ID升序
+     * @param cursor 上一页返回的游标, 第一页为空
+     */
+    CursorPageInfo<PlatformChannel> queryChannelListByCursor(String cursor, int count, String query, Integer channelType, Boolean online, Integer platformId, Boolean hasShare);
+
+    /**
+     * 逐条读取上级平台的通道列表用于导出, 不在内存中保存整个列表
+     */
+    void exportChannelList(String query, Integer channelType, Boolean online, Integer platformId, Boolean hasShare, Consumer<PlatformChannel> consumer);
+
     int addAllChannel(Integer platformId);
 
     int removeAllChannel(Integer platformId);
@@ -27,6 +27,11 @@ public interface IPlayService {
 
     void play(Device device, DeviceChannel channel, ErrorCallback<StreamInfo> callback);
 
+    /**
+     * 预热池预拉流, 与点播相同但不计入通道热度
+     */
+    void prefetch(MediaServer mediaServerItem, Device device, DeviceChannel channel, ErrorCallback<StreamInfo> callback);
+
     StreamInfo onPublishHandlerForPlay(MediaServer mediaServerItem, MediaInfo mediaInfo, Device device, DeviceChannel channel);
 
     MediaServer getNewMediaServerItem(Device device);
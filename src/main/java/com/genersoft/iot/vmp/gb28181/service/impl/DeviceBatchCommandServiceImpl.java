@@ -0,0 +1,565 @@
+package com.genersoft.iot.vmp.gb28181.service.impl;
+
+import com.genersoft.iot.vmp.conf.UserSetting;
+import com.genersoft.iot.vmp.conf.exception.ControllerException;
+import com.genersoft.iot.vmp.gb28181.bean.*;
+import com.genersoft.iot.vmp.gb28181.controller.bean.DeviceBatchParam;
+import com.genersoft.iot.vmp.gb28181.dao.DeviceChannelMapper;
+import com.genersoft.iot.vmp.gb28181.service.IDeviceBatchCommandService;
+import com.genersoft.iot.vmp.gb28181.service.IDeviceService;
+import com.genersoft.iot.vmp.gb28181.session.SseSessionManager;
+import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommander;
+import com.genersoft.iot.vmp.gb28181.transmit.event.request.impl.message.response.cmd.CatalogResponseMessageHandler;
+import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
+import com.github.pagehelper.PageInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ObjectUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 批量设备命令
+ * 按设备分队列, 在设备间轮流发送, 同时受全局并发数, 单个设备并发数与令牌桶限速的限制, 不会一次性压给SIP栈
+ * 命令的结果通过原有命令的回调获取, 目录同步通过同步进度判断结束, 超过超时时间仍未结束的按超时处理
+ */
+@Slf4j
+@Service
+public class DeviceBatchCommandServiceImpl implements IDeviceBatchCommandService {
+
+    /**
+     * 检查超时与进度推送的间隔, 毫秒
+     */
+    private static final long CHECK_INTERVAL = 200;
+
+    private static final long REPORT_INTERVAL = 1000;
+
+    /**
+     * 已结束的任务保留时长
+     */
+    private static final long TASK_KEEP_TIME = 24 * 60 * 60 * 1000L;
+
+    private static final int MAX_CONCURRENCY = 500;
+
+    private static final int MAX_PER_DEVICE_CONCURRENCY = 10;
+
+    private static final int MAX_RATE = 1000;
+
+    @Autowired
+    private IDeviceService deviceService;
+
+    @Autowired
+    private ISIPCommander sipCommander;
+
+    @Autowired
+    private DeviceChannelMapper deviceChannelMapper;
+
+    @Autowired
+    private CatalogResponseMessageHandler catalogResponseMessageHandler;
+
+    @Autowired
+    private SseSessionManager sseSessionManager;
+
+    @Autowired
+    private UserSetting userSetting;
+
+    @Autowired
+    private ThreadPoolTaskExecutor taskExecutor;
+
+    private final Map<String, BatchExecution> executionMap = new ConcurrentHashMap<>();
+
+    @Override
+    public synchronized DeviceBatchTask start(DeviceBatchParam param) {
+        if (param.getCommandType() == null) {
+            throw new ControllerException(ErrorCode.ERROR400.getCode(), "命令类型不能为空");
+        }
+        for (BatchExecution execution : executionMap.values()) {
+            if (execution.task.getStatus() == 0) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "已有批量命令正在执行");
+            }
+        }
+        DeviceBatchTask task = new DeviceBatchTask();
+        task.setTaskId(UUID.randomUUID().toString());
+        task.setCommandType(param.getCommandType());
+        task.setMaxConcurrency(limit(param.getMaxConcurrency(), 20, MAX_CONCURRENCY));
+        task.setPerDeviceConcurrency(limit(param.getPerDeviceConcurrency(), 1, MAX_PER_DEVICE_CONCURRENCY));
+        task.setRate(limit(param.getRate(), 10, MAX_RATE));
+        task.setTimeout(limit(param.getTimeout(), param.getCommandType().getTimeout(), Integer.MAX_VALUE));
+        task.setCreateTime(System.currentTimeMillis());
+        BatchExecution execution = new BatchExecution(task);
+        executionMap.put(task.getTaskId(), execution);
+        taskExecutor.execute(() -> run(execution, param));
+        return task;
+    }
+
+    private static int limit(Integer value, int defaultValue, int max) {
+        if (value == null || value <= 0) {
+            return defaultValue;
+        }
+        return Math.min(value, max);
+    }
+
+    private void run(BatchExecution execution, DeviceBatchParam param) {
+        DeviceBatchTask task = execution.task;
+        log.info("[批量命令] 开始, 任务: {}, 类型: {}, 全局并发: {}, 单设备并发: {}, 速率: {}/s", task.getTaskId(),
+                task.getCommandType().getText(), task.getMaxConcurrency(), task.getPerDeviceConcurrency(), task.getRate());
+        try {
+            execution.init(selectTargets(param));
+            TokenBucket tokenBucket = new TokenBucket(task.getRate());
+            long lastCheckTime = 0;
+            long lastReportTime = 0;
+            while (!execution.cancelled && !execution.isFinished()) {
+                long now = System.currentTimeMillis();
+                if (now - lastCheckTime >= CHECK_INTERVAL) {
+                    lastCheckTime = now;
+                    checkRunning(execution, now);
+                }
+                if (now - lastReportTime >= REPORT_INTERVAL) {
+                    lastReportTime = now;
+                    report(execution, now);
+                }
+                if (!execution.hasNext()) {
+                    execution.await(CHECK_INTERVAL);
+                    continue;
+                }
+                long wait = tokenBucket.reserve();
+                if (wait > 0) {
+                    Thread.sleep(Math.min(wait, CHECK_INTERVAL));
+                    continue;
+                }
+                send(execution, execution.next());
+            }
+            task.setStatus(execution.cancelled ? 2 : 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.setMsg("任务被中断");
+            task.setStatus(3);
+        } catch (Exception e) {
+            log.error("[批量命令] 执行失败: ", e);
+            task.setMsg(e.getMessage());
+            task.setStatus(3);
+        } finally {
+            if (task.getStatus() != 1) {
+                execution.skipWaiting(task.getStatus() == 2 ? "任务已取消" : "任务执行失败");
+            }
+            task.setEndTime(System.currentTimeMillis());
+            updateThroughput(task, task.getEndTime());
+        }
+        log.info("[批量命令] 结束, 任务: {}, 类型: {}, 总数: {}, 成功: {}, 失败: {}, 超时: {}, 跳过: {}, 耗时: {}ms, 吞吐量: {}/s",
+                task.getTaskId(), task.getCommandType().getText(), task.getTotal(), task.getSuccessCount(), task.getFailCount(),
+                task.getTimeoutCount(), task.getSkipCount(), task.getEndTime() - task.getCreateTime(), task.getThroughput());
+        sseSessionManager.sendForAll("deviceBatch", task);
+    }
+
+    /**
+     * 按参数选择命令的目标, 不可执行的目标直接记为跳过
+     */
+    private List<BatchItem> selectTargets(DeviceBatchParam param) {
+        List<BatchItem> items = new ArrayList<>();
+        List<Device> devices = new ArrayList<>();
+        if (ObjectUtils.isEmpty(param.getDeviceIds())) {
+            devices.addAll(deviceService.getAllOnlineDevice(userSetting.getServerId()));
+        } else {
+            for (String deviceId : new LinkedHashSet<>(param.getDeviceIds())) {
+                Device device = deviceService.getDeviceByDeviceId(deviceId);
+                String skipMsg = null;
+                if (device == null) {
+                    skipMsg = "设备不存在";
+                } else if (!device.isOnLine()) {
+                    skipMsg = "设备离线";
+                } else if (!userSetting.getServerId().equals(device.getServerId())) {
+                    skipMsg = "设备不在当前节点";
+                }
+                if (skipMsg != null) {
+                    items.add(BatchItem.skip(deviceId, skipMsg));
+                } else {
+                    devices.add(device);
+                }
+            }
+        }
+        if (param.getCommandType() != DeviceBatchCommandType.PRESET) {
+            for (Device device : devices) {
+                items.add(new BatchItem(device, null));
+            }
+            return items;
+        }
+        Set<String> channelIds = ObjectUtils.isEmpty(param.getChannelIds()) ? null : new HashSet<>(param.getChannelIds());
+        for (Device device : devices) {
+            for (DeviceChannel channel : deviceChannelMapper.queryChannelsByDeviceDbId(device.getId())) {
+                if (channelIds != null ? channelIds.contains(channel.getDeviceId()) : isControllable(channel)) {
+                    items.add(new BatchItem(device, channel.getDeviceId()));
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 未指定通道时只查询可以控制云台的通道: 球机, 遥控枪机, 遥控半球
+     */
+    private static boolean isControllable(DeviceChannel channel) {
+        Integer ptzType = channel.getPtzType();
+        return ptzType != null && (ptzType == 1 || ptzType == 4 || ptzType == 5);
+    }
+
+    private void send(BatchExecution execution, BatchItem item) {
+        DeviceBatchTask task = execution.task;
+        long now = System.currentTimeMillis();
+        item.result.setSendTime(now);
+        item.result.setStatus(DeviceBatchResult.STATUS_RUNNING);
+        item.deadline = now + TimeUnit.SECONDS.toMillis(task.getTimeout());
+        try {
+            switch (task.getCommandType()) {
+                case CATALOG:
+                    // 同步的结果在检查时通过同步进度获取
+                    deviceService.sync(item.device);
+                    break;
+                case DEVICE_INFO:
+                    sipCommander.deviceInfoQuery(item.device, (code, msg, data) -> execution.finishWithCode(item, code, msg, data));
+                    break;
+                case DEVICE_STATUS:
+                    sipCommander.deviceStatusQuery(item.device, (code, msg, data) -> execution.finishWithCode(item, code, msg, data));
+                    break;
+                case PRESET:
+                    sipCommander.presetQuery(item.device, item.result.getChannelId(), (code, msg, data) -> execution.finishWithCode(item, code, msg, data));
+                    break;
+                default:
+                    execution.finish(item, DeviceBatchResult.STATUS_FAIL, "不支持的命令类型", null);
+            }
+        } catch (Exception e) {
+            execution.finish(item, DeviceBatchResult.STATUS_FAIL, "命令发送失败: " + e.getMessage(), null);
+        }
+    }
+
+    /**
+     * 检查执行中的命令, 结束已完成的目录同步与超时的命令
+     */
+    private void checkRunning(BatchExecution execution, long now) {
+        boolean catalog = execution.task.getCommandType() == DeviceBatchCommandType.CATALOG;
+        for (BatchItem item : execution.getRunning()) {
+            String deviceId = item.result.getDeviceId();
+            if (catalog && !catalogResponseMessageHandler.isSyncRunning(deviceId)) {
+                SyncStatus syncStatus = catalogResponseMessageHandler.getChannelSyncProgress(deviceId);
+                if (syncStatus == null) {
+                    execution.finish(item, DeviceBatchResult.STATUS_FAIL, "设备未回复", null);
+                } else if (syncStatus.getErrorMsg() != null) {
+                    execution.finish(item, DeviceBatchResult.STATUS_FAIL, syncStatus.getErrorMsg(), syncStatus);
+                } else {
+                    execution.finish(item, DeviceBatchResult.STATUS_SUCCESS, "同步完成", syncStatus);
+                }
+                continue;
+            }
+            if (item.deadline < now) {
+                execution.finish(item, DeviceBatchResult.STATUS_TIMEOUT, "执行超时", null);
+            }
+        }
+    }
+
+    private void report(BatchExecution execution, long now) {
+        updateThroughput(execution.task, now);
+        sseSessionManager.sendForAll("deviceBatch", execution.task.getTaskId(), execution.task, true);
+    }
+
+    private static void updateThroughput(DeviceBatchTask task, long now) {
+        long costTime = now - task.getCreateTime();
+        int completeCount = task.getSuccessCount() + task.getFailCount() + task.getTimeoutCount();
+        if (costTime > 0) {
+            task.setThroughput(Math.round(completeCount * 100000.0 / costTime) / 100.0);
+        }
+    }
+
+    @Override
+    public void cancel(String taskId) {
+        BatchExecution execution = getExecution(taskId);
+        if (execution.task.getStatus() != 0) {
+            throw new ControllerException(ErrorCode.ERROR100.getCode(), "任务已结束");
+        }
+        execution.cancelled = true;
+        execution.signal();
+    }
+
+    @Override
+    public DeviceBatchTask getTask(String taskId) {
+        return getExecution(taskId).task;
+    }
+
+    @Override
+    public List<DeviceBatchTask> getTaskList() {
+        List<DeviceBatchTask> result = new ArrayList<>(executionMap.size());
+        for (BatchExecution execution : executionMap.values()) {
+            result.add(execution.task);
+        }
+        result.sort(Comparator.comparingLong(DeviceBatchTask::getCreateTime).reversed());
+        return result;
+    }
+
+    @Override
+    public PageInfo<DeviceBatchResult> getResults(String taskId, Integer status, int page, int count) {
+        BatchExecution execution = getExecution(taskId);
+        List<DeviceBatchResult> all = new ArrayList<>();
+        for (BatchItem item : execution.getItems()) {
+            if (status == null || item.result.getStatus() == status) {
+                all.add(item.result);
+            }
+        }
+        if (page <= 0) {
+            page = 1;
+        }
+        if (count <= 0) {
+            count = 10;
+        }
+        int fromIndex = Math.min((page - 1) * count, all.size());
+        int toIndex = Math.min(fromIndex + count, all.size());
+        PageInfo<DeviceBatchResult> pageInfo = new PageInfo<>(new ArrayList<>(all.subList(fromIndex, toIndex)));
+        pageInfo.setTotal(all.size());
+        pageInfo.setPageNum(page);
+        pageInfo.setPageSize(count);
+        pageInfo.setPages((all.size() + count - 1) / count);
+        return pageInfo;
+    }
+
+    private BatchExecution getExecution(String taskId) {
+        BatchExecution execution = taskId == null ? null : executionMap.get(taskId);
+        if (execution == null) {
+            throw new ControllerException(ErrorCode.ERROR404.getCode(), "任务不存在");
+        }
+        return execution;
+    }
+
+    /**
+     * 定时清理已结束的任务
+     */
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void execute() {
+        long now = System.currentTimeMillis();
+        executionMap.values().removeIf(execution -> execution.task.getStatus() != 0
+                && now - execution.task.getEndTime() > TASK_KEEP_TIME);
+    }
+
+    private static class BatchItem {
+        final DeviceBatchResult result;
+        final Device device;
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        volatile long deadline;
+
+        BatchItem(Device device, String channelId) {
+            this.device = device;
+            this.result = DeviceBatchResult.getInstance(device.getDeviceId(), channelId);
+        }
+
+        private BatchItem(String deviceId, String skipMsg) {
+            this.device = null;
+            this.result = DeviceBatchResult.getInstance(deviceId, null);
+            this.result.setStatus(DeviceBatchResult.STATUS_SKIP);
+            this.result.setMsg(skipMsg);
+            this.finished.set(true);
+        }
+
+        static BatchItem skip(String deviceId, String skipMsg) {
+            return new BatchItem(deviceId, skipMsg);
+        }
+    }
+
+    /**
+     * 一个任务的调度状态, 只有调度线程取出命令, 回调线程与检查时结束命令, 状态的修改都在对象锁内完成
+     */
+    private static class BatchExecution {
+
+        final DeviceBatchTask task;
+
+        volatile boolean cancelled;
+
+        private List<BatchItem> items = Collections.emptyList();
+
+        /**
+         * 每个设备等待发送的命令
+         */
+        private final Map<String, ArrayDeque<BatchItem>> deviceQueues = new HashMap<>();
+
+        /**
+         * 有等待发送的命令并且未达到单设备并发数的设备, 按顺序轮流发送
+         */
+        private final ArrayDeque<String> readyDevices = new ArrayDeque<>();
+
+        private final Map<String, Integer> deviceRunning = new HashMap<>();
+
+        private final Set<BatchItem> running = new LinkedHashSet<>();
+
+        private int completeCount;
+
+        BatchExecution(DeviceBatchTask task) {
+            this.task = task;
+        }
+
+        synchronized void init(List<BatchItem> items) {
+            this.items = items;
+            int skipCount = 0;
+            for (BatchItem item : items) {
+                if (item.finished.get()) {
+                    skipCount++;
+                    continue;
+                }
+                String deviceId = item.result.getDeviceId();
+                ArrayDeque<BatchItem> queue = deviceQueues.get(deviceId);
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    deviceQueues.put(deviceId, queue);
+                    readyDevices.addLast(deviceId);
+                }
+                queue.addLast(item);
+            }
+            completeCount = skipCount;
+            task.setSkipCount(skipCount);
+            task.setTotal(items.size());
+        }
+
+        synchronized List<BatchItem> getItems() {
+            return items;
+        }
+
+        synchronized List<BatchItem> getRunning() {
+            return new ArrayList<>(running);
+        }
+
+        synchronized boolean isFinished() {
+            return completeCount >= items.size();
+        }
+
+        synchronized boolean hasNext() {
+            return running.size() < task.getMaxConcurrency() && !readyDevices.isEmpty();
+        }
+
+        synchronized BatchItem next() {
+            String deviceId = readyDevices.pollFirst();
+            ArrayDeque<BatchItem> queue = deviceQueues.get(deviceId);
+            BatchItem item = queue.pollFirst();
+            int count = deviceRunning.merge(deviceId, 1, Integer::sum);
+            if (queue.isEmpty()) {
+                deviceQueues.remove(deviceId);
+            } else if (count < task.getPerDeviceConcurrency()) {
+                readyDevices.addLast(deviceId);
+            }
+            running.add(item);
+            task.setSentCount(task.getSentCount() + 1);
+            task.setRunningCount(running.size());
+            return item;
+        }
+
+        /**
+         * 按命令回调的错误码结束一条命令
+         */
+        void finishWithCode(BatchItem item, int code, String msg, Object data) {
+            int status;
+            if (code == ErrorCode.SUCCESS.getCode()) {
+                status = DeviceBatchResult.STATUS_SUCCESS;
+            } else if (code == ErrorCode.ERROR486.getCode()) {
+                status = DeviceBatchResult.STATUS_TIMEOUT;
+            } else {
+                status = DeviceBatchResult.STATUS_FAIL;
+            }
+            finish(item, status, msg, data);
+        }
+
+        /**
+         * 结束一条命令, 同一条命令只有第一次结束有效
+         */
+        void finish(BatchItem item, int status, String msg, Object data) {
+            if (!item.finished.compareAndSet(false, true)) {
+                return;
+            }
+            DeviceBatchResult result = item.result;
+            result.setMsg(msg);
+            result.setData(data);
+            result.setCostTime(System.currentTimeMillis() - result.getSendTime());
+            result.setStatus(status);
+            synchronized (this) {
+                running.remove(item);
+                String deviceId = result.getDeviceId();
+                int count = deviceRunning.merge(deviceId, -1, Integer::sum);
+                if (count <= 0) {
+                    deviceRunning.remove(deviceId);
+                }
+                // 此设备之前已达到并发上限, 不在轮转中, 重新加入
+                if (deviceQueues.containsKey(deviceId) && count == task.getPerDeviceConcurrency() - 1) {
+                    readyDevices.addLast(deviceId);
+                }
+                switch (status) {
+                    case DeviceBatchResult.STATUS_SUCCESS:
+                        task.setSuccessCount(task.getSuccessCount() + 1);
+                        break;
+                    case DeviceBatchResult.STATUS_TIMEOUT:
+                        task.setTimeoutCount(task.getTimeoutCount() + 1);
+                        break;
+                    default:
+                        task.setFailCount(task.getFailCount() + 1);
+                }
+                task.setRunningCount(running.size());
+                completeCount++;
+                notifyAll();
+            }
+        }
+
+        /**
+         * 任务取消或者异常结束时, 未发送的命令记为跳过
+         */
+        synchronized void skipWaiting(String msg) {
+            for (ArrayDeque<BatchItem> queue : deviceQueues.values()) {
+                for (BatchItem item : queue) {
+                    if (item.finished.compareAndSet(false, true)) {
+                        item.result.setStatus(DeviceBatchResult.STATUS_SKIP);
+                        item.result.setMsg(msg);
+                        task.setSkipCount(task.getSkipCount() + 1);
+                        completeCount++;
+                    }
+                }
+            }
+            deviceQueues.clear();
+            readyDevices.clear();
+        }
+
+        synchronized void await(long timeout) throws InterruptedException {
+            wait(timeout);
+        }
+
+        synchronized void signal() {
+            notifyAll();
+        }
+    }
+
+    /**
+     * 令牌桶, 只在调度线程中使用, 初始只有一个令牌, 避免任务开始时瞬间发出大量命令
+     */
+    private static class TokenBucket {
+
+        private final double rate;
+
+        private double tokens = 1;
+
+        private long lastTime = System.currentTimeMillis();
+
+        TokenBucket(int rate) {
+            this.rate = rate;
+        }
+
+        /**
+         * 取一个令牌
+         * @return 0为已取得, 否则为还需等待的毫秒数
+         */
+        long reserve() {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(Math.max(rate, 1), tokens + (now - lastTime) * rate / 1000);
+            lastTime = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * 1000 / rate);
+        }
+    }
+}
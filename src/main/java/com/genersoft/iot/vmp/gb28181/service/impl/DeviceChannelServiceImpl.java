@@ -9,6 +9,7 @@ import com.genersoft.iot.vmp.conf.UserSetting;
 import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.gb28181.bean.*;
 import com.genersoft.iot.vmp.gb28181.controller.bean.ChannelReduce;
+import com.genersoft.iot.vmp.gb28181.dao.CommonGBChannelMapper;
 import com.genersoft.iot.vmp.gb28181.dao.DeviceChannelMapper;
 import com.genersoft.iot.vmp.gb28181.dao.DeviceMapper;
 import com.genersoft.iot.vmp.gb28181.dao.DeviceMobilePositionMapper;
@@ -19,6 +20,8 @@ import com.genersoft.iot.vmp.gb28181.event.subscribe.catalog.CatalogEvent;
 import com.genersoft.iot.vmp.gb28181.service.IDeviceChannelService;
 import com.genersoft.iot.vmp.gb28181.service.IInviteStreamService;
 import com.genersoft.iot.vmp.gb28181.service.IPlatformChannelService;
+import com.genersoft.iot.vmp.gb28181.session.ChannelSearchIndex;
+import com.genersoft.iot.vmp.gb28181.session.RecordInfoCache;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommander;
 import com.genersoft.iot.vmp.gb28181.utils.SipUtils;
 import com.genersoft.iot.vmp.service.bean.ErrorCallback;
@@ -36,6 +39,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
@@ -46,8 +51,9 @@ import javax.sip.message.Response;
 import javax.validation.constraints.NotNull;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 
 import static com.genersoft.iot.vmp.gb28181.utils.XmlUtil.getText;
@@ -92,8 +98,22 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
     @Autowired
     private ISIPCommander commander;
 
+    @Autowired
+    private ChannelSearchIndex channelSearchIndex;
+
+    @Autowired
+    private CommonGBChannelMapper commonGBChannelMapper;
+
+    @Autowired
+    private RecordInfoCache recordInfoCache;
+
+    /**
+     * 未覆盖的时间段超过此数量时直接查询整个空缺范围, 避免向设备发送过多的查询
+     */
+    private static final int RECORD_QUERY_MAX_GAPS = 3;
+
     // 记录录像查询的结果等待
-    private final Map<String, SynchronousQueue<RecordInfo>> topicSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, BlockingQueue<RecordInfo>> topicSubscribers = new ConcurrentHashMap<>();
 
     /**
      * 监听录像查询结束事件
@@ -101,7 +121,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
     @Async("taskExecutor")
     @org.springframework.context.event.EventListener
     public void onApplicationEvent(RecordInfoEndEvent event) {
-        SynchronousQueue<RecordInfo> queue = topicSubscribers.get("record" + event.getRecordInfo().getSn());
+        BlockingQueue<RecordInfo> queue = topicSubscribers.get("record" + event.getRecordInfo().getSn());
         if (queue != null) {
             queue.offer(event.getRecordInfo());
         }
@@ -116,92 +136,101 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
         if (CollectionUtils.isEmpty(channels)) {
             return 0;
         }
-        List<DeviceChannel> addChannels = new ArrayList<>();
-        List<DeviceChannel> updateChannels = new ArrayList<>();
-        HashMap<String, DeviceChannel> channelsInStore = new HashMap<>();
-        int result = 0;
-        List<DeviceChannel> channelList = channelMapper.queryChannelsByDeviceDbId(device.getId());
-        if (channelList.isEmpty()) {
-            for (DeviceChannel channel : channels) {
-                channel.setDataDeviceId(device.getId());
+        // 滤重
+        Map<String, DeviceChannel> channelMap = new LinkedHashMap<>();
+        for (DeviceChannel channel : channels) {
+            channelMap.putIfAbsent(channel.getDeviceId(), channel);
+        }
+        // 只查询哈希, 内容未变化的通道不再读取与写入
+        Map<String, DeviceChannel> channelsInStore = new HashMap<>();
+        for (DeviceChannel channel : channelMapper.queryContentHashByDeviceDbId(device.getId())) {
+            channelsInStore.put(channel.getDeviceId(), channel);
+        }
+        String now = DateUtil.getNow();
+        List<DeviceChannel> addChannelList = new ArrayList<>();
+        Map<Integer, DeviceChannel> changedChannelMap = new LinkedHashMap<>();
+        // 子节点数可能变化的父节点
+        Set<String> parentIds = new HashSet<>();
+        for (DeviceChannel channel : channelMap.values()) {
+            channel.setDataDeviceId(device.getId());
+            channel.setContentHash(channel.buildContentHash());
+            DeviceChannel channelInDb = channelsInStore.get(channel.getDeviceId());
+            if (channelInDb == null) {
                 InviteInfo inviteInfo = inviteStreamService.getInviteInfoByDeviceAndChannel(InviteSessionType.PLAY, channel.getId());
                 if (inviteInfo != null && inviteInfo.getStreamInfo() != null) {
                     channel.setStreamId(inviteInfo.getStreamInfo().getStream());
                 }
-                String now = DateUtil.getNow();
-                channel.setUpdateTime(now);
                 channel.setCreateTime(now);
-                addChannels.add(channel);
-            }
-        }else {
-            for (DeviceChannel deviceChannel : channelList) {
-                channelsInStore.put(deviceChannel.getDataDeviceId() + deviceChannel.getDeviceId(), deviceChannel);
-            }
-            for (DeviceChannel channel : channels) {
-                InviteInfo inviteInfo = inviteStreamService.getInviteInfoByDeviceAndChannel(InviteSessionType.PLAY, channel.getId());
-                if (inviteInfo != null && inviteInfo.getStreamInfo() != null) {
-                    channel.setStreamId(inviteInfo.getStreamInfo().getStream());
-                }
-                String now = DateUtil.getNow();
                 channel.setUpdateTime(now);
-                DeviceChannel deviceChannelInDb = channelsInStore.get(channel.getDataDeviceId() + channel.getDeviceId());
-                if ( deviceChannelInDb != null) {
-                    channel.setId(deviceChannelInDb.getId());
-                    channel.setUpdateTime(now);
-                    updateChannels.add(channel);
-                }else {
-                    channel.setCreateTime(now);
-                    channel.setUpdateTime(now);
-                    addChannels.add(channel);
+                addChannelList.add(channel);
+                if (channel.getParentId() != null) {
+                    parentIds.add(channel.getParentId());
+                }
+            } else if (!channel.getContentHash().equals(channelInDb.getContentHash())
+                    || !Objects.equals(channel.getStatus(), channelInDb.getStatus())) {
+                channel.setId(channelInDb.getId());
+                changedChannelMap.put(channelInDb.getId(), channel);
+                if (!Objects.equals(channel.getParentId(), channelInDb.getParentId())) {
+                    if (channel.getParentId() != null) {
+                        parentIds.add(channel.getParentId());
+                    }
+                    if (channelInDb.getParentId() != null) {
+                        parentIds.add(channelInDb.getParentId());
+                    }
                 }
             }
         }
-        Set<String> channelSet = new HashSet<>();
-        // 滤重
-        List<DeviceChannel> addChannelList = new ArrayList<>();
-        List<DeviceChannel> updateChannelList = new ArrayList<>();
-        addChannels.forEach(channel -> {
-            if (channelSet.add(channel.getDeviceId())) {
-                addChannelList.add(channel);
-            }
-        });
-        channelSet.clear();
-        updateChannels.forEach(channel -> {
-            if (channelSet.add(channel.getDeviceId())) {
-                updateChannelList.add(channel);
-            }
-        });
+        int result = 0;
+        int limitCount = 500;
+        for (int i = 0; i < addChannelList.size(); i += limitCount) {
+            result += channelMapper.batchAdd(addChannelList.subList(i, Math.min(i + limitCount, addChannelList.size())));
+        }
+        result += updateChangedContent(changedChannelMap, now);
+        updateChannelSubCount(device.getId(), parentIds);
+        if (!addChannelList.isEmpty() || !changedChannelMap.isEmpty()) {
+            channelSearchIndex.invalidateDevice(device.getId());
+        }
+        log.debug("[更新通道] 设备: {}, 收到: {}, 新增: {}, 变化: {}, 未变化: {}", device.getDeviceId(), channelMap.size(),
+                addChannelList.size(), changedChannelMap.size(), channelMap.size() - addChannelList.size() - changedChannelMap.size());
+        return result;
+    }
 
+    /**
+     * 与数据库中的原始列比较, 只写入变化的列
+     * @param changedChannelMap key为通道的数据库ID
+     */
+    private int updateChangedContent(Map<Integer, DeviceChannel> changedChannelMap, String now) {
+        int result = 0;
         int limitCount = 500;
-        if (!addChannelList.isEmpty()) {
-            if (addChannelList.size() > limitCount) {
-                for (int i = 0; i < addChannelList.size(); i += limitCount) {
-                    int toIndex = i + limitCount;
-                    if (i + limitCount > addChannelList.size()) {
-                        toIndex = addChannelList.size();
-                    }
-                    result += channelMapper.batchAdd(addChannelList.subList(i, toIndex));
-                }
-            }else {
-                result += channelMapper.batchAdd(addChannelList);
+        List<Integer> changedIds = new ArrayList<>(changedChannelMap.keySet());
+        for (int i = 0; i < changedIds.size(); i += limitCount) {
+            List<DeviceChannelChange> changes = new ArrayList<>();
+            for (DeviceChannel channelInDb : channelMapper.queryContentByIds(changedIds.subList(i, Math.min(i + limitCount, changedIds.size())))) {
+                DeviceChannel channel = changedChannelMap.get(channelInDb.getId());
+                // 旧数据没有哈希时列可能都没有变化, 此时只写入哈希
+                changes.add(DeviceChannelChange.getInstance(channel.getId(), now, channel.getContentHash(), channel.diffContent(channelInDb)));
             }
-        }
-        if (!updateChannelList.isEmpty()) {
-            if (updateChannelList.size() > limitCount) {
-                for (int i = 0; i < updateChannelList.size(); i += limitCount) {
-                    int toIndex = i + limitCount;
-                    if (i + limitCount > updateChannelList.size()) {
-                        toIndex = updateChannelList.size();
-                    }
-                    result += channelMapper.batchUpdate(updateChannelList.subList(i, toIndex));
-                }
-            }else {
-                result += channelMapper.batchUpdate(updateChannelList);
+            if (!changes.isEmpty()) {
+                result += channelMapper.batchUpdateContent(changes);
             }
         }
         return result;
     }
 
+    /**
+     * 按父节点更新子节点数, 每批一条语句
+     */
+    private void updateChannelSubCount(int dataDeviceId, Collection<String> parentIds) {
+        if (parentIds.isEmpty()) {
+            return;
+        }
+        List<String> parentIdList = new ArrayList<>(parentIds);
+        int limitCount = 1000;
+        for (int i = 0; i < parentIdList.size(); i += limitCount) {
+            channelMapper.updateChannelSubCountByIds(dataDeviceId, parentIdList.subList(i, Math.min(i + limitCount, parentIdList.size())));
+        }
+    }
+
     @Override
     public ResourceBaseInfo getOverview() {
         int online = channelMapper.getOnlineCount();
@@ -244,6 +273,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
             }else {
                 result += channelMapper.batchDel(channels);
             }
+            invalidateSearchIndex(channels);
         }
         return result;
     }
@@ -265,6 +295,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
             }else {
                 result += channelMapper.batchUpdateStatus(channels);
             }
+            invalidateSearchIndex(channels);
         }
         return result;
     }
@@ -272,16 +303,19 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
     @Override
     public void online(DeviceChannel channel) {
         channelMapper.online(channel.getId());
+        channelSearchIndex.invalidateDevice(channel.getDataDeviceId());
     }
 
     @Override
     public void offline(DeviceChannel channel) {
         channelMapper.offline(channel.getId());
+        channelSearchIndex.invalidateDevice(channel.getDataDeviceId());
     }
 
     @Override
     public void delete(DeviceChannel channel) {
         channelMapper.del(channel.getId());
+        channelSearchIndex.invalidateDevice(channel.getDataDeviceId());
     }
 
     @Override
@@ -318,6 +352,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
         String now = DateUtil.getNow();
         for (DeviceChannel channel : channels) {
             channel.setUpdateTime(now);
+            channel.setContentHash(channel.buildContentHash());
         }
         int limitCount = 1000;
         if (!channels.isEmpty()) {
@@ -332,6 +367,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
             }else {
                 channelMapper.batchUpdateForNotify(channels);
             }
+            invalidateSearchIndex(channels);
         }
     }
 
@@ -342,6 +378,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
         for (DeviceChannel channel : channels) {
             channel.setUpdateTime(now);
             channel.setCreateTime(now);
+            channel.setContentHash(channel.buildContentHash());
         }
         int limitCount = 1000;
         if (!channels.isEmpty()) {
@@ -357,11 +394,14 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
                 channelMapper.batchAdd(channels);
             }
         }
+        Map<Integer, Set<String>> parentIdMap = new HashMap<>();
         for (DeviceChannel channel : channels) {
             if (channel.getParentId() != null) {
-                channelMapper.updateChannelSubCount(channel.getDataDeviceId(), channel.getParentId());
+                parentIdMap.computeIfAbsent(channel.getDataDeviceId(), key -> new HashSet<>()).add(channel.getParentId());
             }
         }
+        parentIdMap.forEach(this::updateChannelSubCount);
+        invalidateSearchIndex(channels);
     }
 
     @Override
@@ -543,6 +583,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
     @Override
     public void cleanChannelsForDevice(int deviceId) {
         channelMapper.cleanChannelsByDeviceId(deviceId);
+        channelSearchIndex.invalidateDevice(deviceId);
     }
 
     @Override
@@ -568,6 +609,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
         Map<String, Integer> subContMap = new HashMap<>();
 
         for (DeviceChannel deviceChannel : deviceChannelList) {
+            deviceChannel.setContentHash(deviceChannel.buildContentHash());
             DeviceChannel channelInDb = allChannelMap.get(deviceChannel.getDataDeviceId() + deviceChannel.getDeviceId());
             if (channelInDb != null) {
                 deviceChannel.setStreamId(channelInDb.getStreamId());
@@ -671,6 +713,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
                 channelMapper.batchDel(deleteChannels);
             }
         }
+        channelSearchIndex.invalidateDevice(deviceDbId);
         return true;
 
     }
@@ -776,6 +819,7 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
     @Override
     public void updateChannelStatus(DeviceChannel channel) {
         channelMapper.updateStatus(channel);
+        channelSearchIndex.invalidateDevice(channel.getDataDeviceId());
     }
 
     @Override
@@ -783,11 +827,193 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
         channel.setDataType(ChannelDataType.GB28181);
         channel.setDataDeviceId(channel.getDataDeviceId());
         channelMapper.add(channel);
+        channelSearchIndex.invalidateDevice(channel.getDataDeviceId());
     }
 
     @Override
     public void updateChannelForNotify(DeviceChannel channel) {
         channelMapper.updateChannelForNotify(channel);
+        channelSearchIndex.invalidateDevice(channel.getDataDeviceId());
+    }
+
+    @Override
+    @Transactional
+    public int saveForNotify(Device device, List<NotifyCatalogChannel> changes) {
+        if (CollectionUtils.isEmpty(changes)) {
+            return 0;
+        }
+        // 一次查询得到设备下所有通道的ID、状态与哈希, 不再逐条查询通道是否存在
+        Map<String, DeviceChannel> channelsInStore = new HashMap<>();
+        for (DeviceChannel channel : channelMapper.queryContentHashByDeviceDbId(device.getId())) {
+            channelsInStore.put(channel.getDeviceId(), channel);
+        }
+        String now = DateUtil.getNow();
+        List<DeviceChannel> addChannelList = new ArrayList<>();
+        Map<Integer, DeviceChannel> changedChannelMap = new LinkedHashMap<>();
+        Map<String, List<Integer>> statusMap = new HashMap<>();
+        List<DeviceChannel> deleteChannelList = new ArrayList<>();
+        Set<String> parentIds = new HashSet<>();
+        // 向上级转发的通道, 按事件类型合并; 新增与更新的通道在写入后查询完整信息
+        Map<String, List<CommonGBChannel>> eventChannelMap = new LinkedHashMap<>();
+        Map<String, List<String>> eventChannelIdMap = new LinkedHashMap<>();
+        // redis消息与向上级的转发在事务提交后发送, 避免通知先于数据可见
+        List<Runnable> notifyList = new ArrayList<>();
+        for (NotifyCatalogChannel change : changes) {
+            DeviceChannel channel = change.getChannel();
+            channel.setDataDeviceId(device.getId());
+            DeviceChannel channelInDb = channelsInStore.get(channel.getDeviceId());
+            switch (change.getType()) {
+                case STATUS_CHANGED:
+                    if (channelInDb == null) {
+                        log.info("[目录订阅] 通道不存在，忽略状态变化，设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
+                        continue;
+                    }
+                    channel.setId(channelInDb.getId());
+                    if (!Objects.equals(channel.getStatus(), channelInDb.getStatus())) {
+                        statusMap.computeIfAbsent(channel.getStatus(), key -> new ArrayList<>()).add(channelInDb.getId());
+                    }
+                    eventChannelMap.computeIfAbsent(change.getEvent(), key -> new ArrayList<>()).add(channel.buildCommonGBChannelForStatus());
+                    if (userSetting.getDeviceStatusNotify()) {
+                        // 发送redis消息
+                        notifyList.add(() -> redisCatchStorage.sendDeviceOrChannelStatus(device.getDeviceId(), channel.getDeviceId(), "ON".equals(channel.getStatus())));
+                    }
+                    break;
+                case DELETE:
+                    if (channelInDb == null) {
+                        log.info("[目录订阅] 通道不存在，忽略删除，设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
+                        continue;
+                    }
+                    channel.setId(channelInDb.getId());
+                    deleteChannelList.add(channel);
+                    if (channelInDb.getParentId() != null) {
+                        parentIds.add(channelInDb.getParentId());
+                    }
+                    eventChannelMap.computeIfAbsent(change.getEvent(), key -> new ArrayList<>()).add(channel.buildCommonGBChannelForStatus());
+                    if (userSetting.getDeviceStatusNotify()) {
+                        // 发送redis消息
+                        notifyList.add(() -> redisCatchStorage.sendChannelAddOrDelete(device.getDeviceId(), channel.getDeviceId(), false));
+                    }
+                    break;
+                case ADD:
+                case UPDATE:
+                    channel.setContentHash(channel.buildContentHash());
+                    if (channelInDb == null) {
+                        channel.setCreateTime(now);
+                        channel.setUpdateTime(now);
+                        addChannelList.add(channel);
+                        if (channel.getParentId() != null) {
+                            parentIds.add(channel.getParentId());
+                        }
+                        if (userSetting.getDeviceStatusNotify()) {
+                            // 发送redis消息
+                            notifyList.add(() -> redisCatchStorage.sendChannelAddOrDelete(device.getDeviceId(), channel.getDeviceId(), true));
+                        }
+                    } else if (!channel.getContentHash().equals(channelInDb.getContentHash())
+                            || !Objects.equals(channel.getStatus(), channelInDb.getStatus())) {
+                        channel.setId(channelInDb.getId());
+                        changedChannelMap.put(channelInDb.getId(), channel);
+                        if (!Objects.equals(channel.getParentId(), channelInDb.getParentId())) {
+                            if (channel.getParentId() != null) {
+                                parentIds.add(channel.getParentId());
+                            }
+                            if (channelInDb.getParentId() != null) {
+                                parentIds.add(channelInDb.getParentId());
+                            }
+                        }
+                    } else {
+                        // 内容没有变化, 不写入也不转发
+                        continue;
+                    }
+                    eventChannelIdMap.computeIfAbsent(change.getEvent(), key -> new ArrayList<>()).add(channel.getDeviceId());
+                    break;
+                default:
+                    break;
+            }
+        }
+        int limitCount = 500;
+        for (int i = 0; i < addChannelList.size(); i += limitCount) {
+            channelMapper.batchAdd(addChannelList.subList(i, Math.min(i + limitCount, addChannelList.size())));
+        }
+        updateChangedContent(changedChannelMap, now);
+        int statusCount = 0;
+        for (Map.Entry<String, List<Integer>> entry : statusMap.entrySet()) {
+            List<Integer> ids = entry.getValue();
+            for (int i = 0; i < ids.size(); i += limitCount) {
+                channelMapper.batchUpdateStatusByIds(entry.getKey(), ids.subList(i, Math.min(i + limitCount, ids.size())));
+            }
+            statusCount += ids.size();
+        }
+        for (int i = 0; i < deleteChannelList.size(); i += limitCount) {
+            channelMapper.batchDel(deleteChannelList.subList(i, Math.min(i + limitCount, deleteChannelList.size())));
+        }
+        updateChannelSubCount(device.getId(), parentIds);
+        int written = addChannelList.size() + changedChannelMap.size() + statusCount + deleteChannelList.size();
+        if (written > 0) {
+            channelSearchIndex.invalidateDevice(device.getId());
+        }
+        // 转发变化信息, 每种事件只发布一次
+        for (Map.Entry<String, List<String>> entry : eventChannelIdMap.entrySet()) {
+            List<String> channelIds = entry.getValue();
+            List<CommonGBChannel> channels = new ArrayList<>();
+            for (int i = 0; i < channelIds.size(); i += limitCount) {
+                List<Integer> ids = new ArrayList<>();
+                for (DeviceChannel channel : channelMapper.queryIdsByDeviceIds(device.getId(), channelIds.subList(i, Math.min(i + limitCount, channelIds.size())))) {
+                    ids.add(channel.getId());
+                }
+                if (!ids.isEmpty()) {
+                    channels.addAll(commonGBChannelMapper.queryByIds(ids));
+                }
+            }
+            if (!channels.isEmpty()) {
+                notifyList.add(() -> eventPublisher.catalogEventPublish(null, channels, entry.getKey()));
+            }
+        }
+        for (Map.Entry<String, List<CommonGBChannel>> entry : eventChannelMap.entrySet()) {
+            notifyList.add(() -> eventPublisher.catalogEventPublish(null, entry.getValue(), entry.getKey()));
+        }
+        runAfterCommit(() -> {
+            for (Runnable notify : notifyList) {
+                try {
+                    notify.run();
+                } catch (Exception e) {
+                    log.error("[目录订阅] 发送通道变化通知失败, 设备: {}", device.getDeviceId(), e);
+                }
+            }
+        });
+        log.debug("[目录订阅] 设备: {}, 通道事件: {}, 新增: {}, 更新: {}, 状态变化: {}, 删除: {}", device.getDeviceId(), changes.size(),
+                addChannelList.size(), changedChannelMap.size(), statusCount, deleteChannelList.size());
+        return written;
+    }
+
+    /**
+     * 在当前事务提交后执行, 没有事务时直接执行
+     */
+    private void runAfterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * 通道变化后通知搜索索引重新加载所属设备的通道
+     */
+    private void invalidateSearchIndex(List<DeviceChannel> channels) {
+        Set<Integer> deviceDbIds = new HashSet<>();
+        for (DeviceChannel channel : channels) {
+            if (channel.getDataDeviceId() != null) {
+                deviceDbIds.add(channel.getDataDeviceId());
+            }
+        }
+        for (Integer deviceDbId : deviceDbIds) {
+            channelSearchIndex.invalidateDevice(deviceDbId);
+        }
     }
 
     @Override
@@ -796,13 +1022,99 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
             redisRpcPlayService.queryRecordInfo(device.getServerId(), channel.getId(), startTime, endTime, callback);
             return;
         }
+        if (!recordInfoCache.isEnabled()) {
+            queryRecordInfoFromDevice(device, channel, startTime, endTime, callback);
+            return;
+        }
+        long start;
+        long end;
+        try {
+            start = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestamp(startTime);
+            end = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestamp(endTime);
+        }catch (Exception e) {
+            queryRecordInfoFromDevice(device, channel, startTime, endTime, callback);
+            return;
+        }
+        List<long[]> uncovered = recordInfoCache.getUncovered(device.getDeviceId(), channel.getDeviceId(), start, end);
+        if (uncovered.size() > RECORD_QUERY_MAX_GAPS) {
+            uncovered = Collections.singletonList(new long[]{uncovered.get(0)[0], uncovered.get(uncovered.size() - 1)[1]});
+        }
+        if (!uncovered.isEmpty() && uncovered.get(0)[0] == start && uncovered.get(0)[1] == end) {
+            // 没有可用的缓存, 直接使用设备的查询结果
+            queryRecordInfoFromDevice(device, channel, startTime, endTime, callback);
+            return;
+        }
+        // 已覆盖部分的缓存, 与空缺部分有交集的录像以设备新返回的为准
+        TreeMap<String, RecordItem> recordMap = new TreeMap<>();
+        for (RecordItem recordItem : recordInfoCache.get(device.getDeviceId(), channel.getDeviceId(), start, end)) {
+            if (!overlaps(recordItem, uncovered)) {
+                recordMap.put(recordItem.getStartTime() + recordItem.getEndTime(), recordItem);
+            }
+        }
+        log.info("[录像查询] 使用缓存, 设备: {}, 通道: {}, 缓存录像数: {}, 需要查询的时间段数: {}", device.getDeviceId(),
+                channel.getDeviceId(), recordMap.size(), uncovered.size());
+        queryUncoveredRecordInfo(device, channel, uncovered, 0, recordMap, callback);
+    }
+
+    /**
+     * 依次查询未覆盖的时间段, 全部完成后与缓存的部分合并返回
+     */
+    private void queryUncoveredRecordInfo(Device device, DeviceChannel channel, List<long[]> uncovered, int index,
+                                          TreeMap<String, RecordItem> recordMap, ErrorCallback<RecordInfo> callback) {
+        if (index >= uncovered.size()) {
+            List<RecordItem> recordList = new ArrayList<>(recordMap.values());
+            RecordInfo recordInfo = new RecordInfo();
+            recordInfo.setDeviceId(device.getDeviceId());
+            recordInfo.setChannelId(channel.getDeviceId());
+            recordInfo.setName(channel.getName());
+            recordInfo.setSumNum(recordList.size());
+            recordInfo.setCount(recordList.size());
+            recordInfo.setRecordList(recordList);
+            callback.run(ErrorCode.SUCCESS.getCode(), ErrorCode.SUCCESS.getMsg(), recordInfo);
+            return;
+        }
+        long[] gap = uncovered.get(index);
+        queryRecordInfoFromDevice(device, channel, DateUtil.timestampTo_yyyy_MM_dd_HH_mm_ss(gap[0]),
+                DateUtil.timestampTo_yyyy_MM_dd_HH_mm_ss(gap[1]), (code, msg, data) -> {
+            if (code != ErrorCode.SUCCESS.getCode() || data == null) {
+                callback.run(code, msg, data);
+                return;
+            }
+            if (data.getRecordList() != null) {
+                for (RecordItem recordItem : data.getRecordList()) {
+                    recordMap.put(recordItem.getStartTime() + recordItem.getEndTime(), recordItem);
+                }
+            }
+            queryUncoveredRecordInfo(device, channel, uncovered, index + 1, recordMap, callback);
+        });
+    }
+
+    private boolean overlaps(RecordItem recordItem, List<long[]> ranges) {
+        long recordStart;
+        long recordEnd;
+        try {
+            recordStart = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestamp(recordItem.getStartTime());
+            recordEnd = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestamp(recordItem.getEndTime());
+        }catch (Exception e) {
+            return true;
+        }
+        for (long[] range : ranges) {
+            if (recordStart < range[1] && recordEnd > range[0]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void queryRecordInfoFromDevice(Device device, DeviceChannel channel, String startTime, String endTime, ErrorCallback<RecordInfo> callback) {
+        int sn  =  (int)((Math.random()*9+1)*100000);
+        // 先登记再发送, 结果在本地汇总, 可能早于发送成功的回调到达
+        BlockingQueue<RecordInfo> queue = new ArrayBlockingQueue<>(1);
+        topicSubscribers.put("record" + sn, queue);
         try {
-            int sn  =  (int)((Math.random()*9+1)*100000);
             commander.recordInfoQuery(device, channel.getDeviceId(), startTime, endTime, sn, null, null, eventResult -> {
                 try {
-                    // 消息发送成功, 监听等待数据到来
-                    SynchronousQueue<RecordInfo> queue = new SynchronousQueue<>();
-                    topicSubscribers.put("record" + sn, queue);
+                    // 消息发送成功, 等待数据到来
                     RecordInfo recordInfo = queue.poll(userSetting.getRecordInfoTimeout(), TimeUnit.MILLISECONDS);
                     if (recordInfo != null) {
                         callback.run(ErrorCode.SUCCESS.getCode(), ErrorCode.SUCCESS.getMsg(), recordInfo);
@@ -816,9 +1128,11 @@ public class DeviceChannelServiceImpl implements IDeviceChannelService {
                 }
 
             }, (eventResult -> {
+                this.topicSubscribers.remove("record" + sn);
                 callback.run(ErrorCode.ERROR100.getCode(), "查询录像失败, status: " +  eventResult.statusCode + ", message: " + eventResult.msg, null);
             }));
         } catch (InvalidArgumentException | SipException | ParseException e) {
+            topicSubscribers.remove("record" + sn);
             log.error("[命令发送失败] 查询录像: {}", e.getMessage());
             throw new ControllerException(ErrorCode.ERROR100.getCode(), "命令发送失败: " +  e.getMessage());
         }
@@ -3,6 +3,7 @@ package com.genersoft.iot.vmp.gb28181.service.impl;
 import com.alibaba.fastjson2.JSON;
 import com.genersoft.iot.vmp.common.CommonCallback;
 import com.genersoft.iot.vmp.common.enums.ChannelDataType;
+import com.genersoft.iot.vmp.conf.StartupRecovery;
 import com.genersoft.iot.vmp.conf.UserSetting;
 import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.gb28181.bean.*;
@@ -25,6 +26,7 @@ import com.genersoft.iot.vmp.gb28181.task.deviceSubscribe.SubscribeTaskRunner;
 import com.genersoft.iot.vmp.gb28181.task.deviceSubscribe.impl.SubscribeTaskForCatalog;
 import com.genersoft.iot.vmp.gb28181.task.deviceSubscribe.impl.SubscribeTaskForMobilPosition;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommander;
+import com.genersoft.iot.vmp.gb28181.transmit.event.request.impl.NotifyRequestForCatalogProcessor;
 import com.genersoft.iot.vmp.gb28181.transmit.event.request.impl.message.response.cmd.CatalogResponseMessageHandler;
 import com.genersoft.iot.vmp.media.bean.MediaServer;
 import com.genersoft.iot.vmp.media.service.IMediaServerService;
@@ -33,13 +35,16 @@ import com.genersoft.iot.vmp.service.bean.ErrorCallback;
 import com.genersoft.iot.vmp.service.redisMsg.IRedisRpcService;
 import com.genersoft.iot.vmp.storager.IRedisCatchStorage;
 import com.genersoft.iot.vmp.utils.DateUtil;
+import com.genersoft.iot.vmp.utils.ListCountCache;
+import com.genersoft.iot.vmp.utils.PageCursor;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.genersoft.iot.vmp.vmanager.bean.ResourceBaseInfo;
 import com.genersoft.iot.vmp.vmanager.bean.WVPResult;
-import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import gov.nist.javax.sip.message.SIPResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.annotation.Order;
@@ -52,11 +57,14 @@ import javax.sip.InvalidArgumentException;
 import javax.sip.ResponseEvent;
 import javax.sip.SipException;
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
 import java.text.ParseException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * 设备业务（目录订阅）
@@ -72,6 +80,9 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
     @Autowired
     private CatalogResponseMessageHandler catalogResponseMessageHandler;
 
+    @Autowired
+    private NotifyRequestForCatalogProcessor notifyRequestForCatalogProcessor;
+
     @Autowired
     private IRedisCatchStorage redisCatchStorage;
 
@@ -120,108 +131,126 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
     @Autowired
     private DeviceStatusTaskRunner deviceStatusTaskRunner;
 
+    @Autowired
+    private StartupRecovery startupRecovery;
+
+    /**
+     * 订阅失败后重试的间隔, 单位：毫秒
+     */
+    private static final long SUBSCRIBE_RETRY_DELAY = 30 * 1000L;
+
+    @Autowired
+    private ListCountCache listCountCache;
+
     private Device getDeviceByDeviceIdFromDb(String deviceId) {
         return deviceMapper.getDeviceByDeviceId(deviceId);
     }
 
     @Override
     public void run(String... args) throws Exception {
+        Map<String, Device> deviceMapInDb = startupRecovery.runPhase("加载设备", () -> {
+            Map<String, Device> deviceMap = new HashMap<>();
+            for (Device device : getAll()) {
+                deviceMap.put(device.getDeviceId(), device);
+            }
+            return deviceMap;
+        });
+        // 以下几个阶段互不依赖, 并行执行
+        CompletableFuture<Void> cleanFuture = startupRecovery.runPhaseAsync("清理设备缓存", () -> cleanDeviceCatch(deviceMapInDb));
+        CompletableFuture<List<SubscribeTaskInfo>> subscribeTaskFuture = startupRecovery.runPhaseAsync("读取订阅任务",
+                () -> subscribeTaskRunner.getAllTaskInfo());
+        CompletableFuture<Void> cseqFuture = startupRecovery.runPhaseAsync("重置CSEQ", () -> redisCatchStorage.resetAllCSEQ());
+        Set<String> onlineDeviceIds = startupRecovery.runPhase("恢复设备状态", () -> recoverDeviceStatus(deviceMapInDb));
+        List<SubscribeTaskInfo> subscribeTaskInfoList = subscribeTaskFuture.join();
+        // 恢复订阅会发送SIP请求, 需要在CSEQ重置之后
+        cseqFuture.join();
+        startupRecovery.runPhase("恢复订阅任务", () -> recoverSubscribe(deviceMapInDb, onlineDeviceIds, subscribeTaskInfoList));
+        cleanFuture.join();
+    }
 
-        // 清理数据库不存在但是redis中存在的数据
-        List<Device> devicesInDb = getAll();
-        if (devicesInDb.isEmpty()) {
+    /**
+     * 清理数据库不存在但是redis中存在的数据
+     */
+    private void cleanDeviceCatch(Map<String, Device> deviceMapInDb) {
+        if (deviceMapInDb.isEmpty()) {
             redisCatchStorage.removeAllDevice();
-        }else {
-            List<Device> devicesInRedis = redisCatchStorage.getAllDevices();
-            if (!devicesInRedis.isEmpty()) {
-                Map<String, Device> deviceMapInDb = new HashMap<>();
-                devicesInDb.parallelStream().forEach(device -> {
-                    deviceMapInDb.put(device.getDeviceId(), device);
-                });
-                devicesInRedis.parallelStream().forEach(device -> {
-                    if (deviceMapInDb.get(device.getDeviceId()) == null
-                            && userSetting.getServerId().equals(device.getServerId())) {
-                        redisCatchStorage.removeDevice(device.getDeviceId());
-                    }
-                });
-            }
+            return;
         }
+        List<String> removeDeviceIds = new ArrayList<>();
+        redisCatchStorage.scanDevices(device -> {
+            if (!deviceMapInDb.containsKey(device.getDeviceId())
+                    && userSetting.getServerId().equals(device.getServerId())) {
+                removeDeviceIds.add(device.getDeviceId());
+            }
+        });
+        redisCatchStorage.removeDevices(removeDeviceIds);
+    }
 
-        // 重置cseq计数
-        redisCatchStorage.resetAllCSEQ();
-        // 处理设备状态
+    /**
+     * 恢复设备状态任务, 没有状态任务的设备全部离线
+     * @return 恢复后在线的设备编号
+     */
+    private Set<String> recoverDeviceStatus(Map<String, Device> deviceMapInDb) {
         List<DeviceStatusTaskInfo> allTaskInfo = deviceStatusTaskRunner.getAllTaskInfo();
-        List<String> onlineDeviceIds = new ArrayList<>();
-        if (!allTaskInfo.isEmpty()) {
-            for (DeviceStatusTaskInfo taskInfo : allTaskInfo) {
-                Device device = getDeviceByDeviceId(taskInfo.getDeviceId());
-                if (device == null) {
-                    deviceStatusTaskRunner.removeTask(taskInfo.getDeviceId());
-                    continue;
-                }
-                // 恢复定时任务, TCP因为连接已经断开必须等待设备重新连接
-                DeviceStatusTask deviceStatusTask = DeviceStatusTask.getInstance(taskInfo.getDeviceId(),
-                        taskInfo.getTransactionInfo(), taskInfo.getExpireTime() + 1000 + System.currentTimeMillis(), this::deviceStatusExpire);
-                deviceStatusTaskRunner.addTask(deviceStatusTask);
-                onlineDeviceIds.add(taskInfo.getDeviceId());
-            }
-            // 除了记录的设备以外， 其他设备全部离线
-            List<Device> onlineDevice = getAllOnlineDevice(userSetting.getServerId());
-            if (!onlineDevice.isEmpty()) {
-                List<Device> offlineDevices = new ArrayList<>();
-                for (Device device : onlineDevice) {
-                    if (!onlineDeviceIds.contains(device.getDeviceId())) {
-                        // 此设备需要离线
-                        device.setOnLine(false);
-                        // 清理离线设备的相关缓存
-                        cleanOfflineDevice(device);
-                        // 更新数据库
-                        offlineDevices.add(device);
-                    }
-                }
-                if (!offlineDevices.isEmpty()) {
-                    offlineByIds(offlineDevices);
-                }
+        Set<String> onlineDeviceIds = new HashSet<>();
+        List<DeviceStatusTask> deviceStatusTaskList = new ArrayList<>();
+        for (DeviceStatusTaskInfo taskInfo : allTaskInfo) {
+            if (deviceMapInDb.get(taskInfo.getDeviceId()) == null) {
+                deviceStatusTaskRunner.removeTask(taskInfo.getDeviceId());
+                continue;
             }
-        }else {
-            // 所有设备全部离线
-            List<Device> onlineDevice = getAllOnlineDevice(userSetting.getServerId());
-            for (Device device : onlineDevice) {
+            // 恢复定时任务, TCP因为连接已经断开必须等待设备重新连接
+            DeviceStatusTask deviceStatusTask = DeviceStatusTask.getInstance(taskInfo.getDeviceId(),
+                    taskInfo.getTransactionInfo(), taskInfo.getExpireTime() + 1000 + System.currentTimeMillis(), this::deviceStatusExpire);
+            deviceStatusTaskList.add(deviceStatusTask);
+            onlineDeviceIds.add(taskInfo.getDeviceId());
+        }
+        deviceStatusTaskRunner.addTasks(deviceStatusTaskList);
+
+        // 除了记录的设备以外， 其他设备全部离线
+        List<Device> onlineDevice = getAllOnlineDevice(userSetting.getServerId());
+        List<Device> offlineDevices = new ArrayList<>();
+        for (Device device : onlineDevice) {
+            if (!onlineDeviceIds.contains(device.getDeviceId())) {
                 // 此设备需要离线
                 device.setOnLine(false);
                 // 清理离线设备的相关缓存
                 cleanOfflineDevice(device);
+                // 更新数据库
+                offlineDevices.add(device);
             }
-            offlineByIds(onlineDevice);
         }
+        if (!offlineDevices.isEmpty()) {
+            log.info("[启动恢复] 恢复在线设备{}个, 离线设备{}个", onlineDeviceIds.size(), offlineDevices.size());
+            offlineByIds(offlineDevices);
+        }
+        return onlineDeviceIds;
+    }
 
-        // 处理订阅任务
-        List<SubscribeTaskInfo> taskInfoList = subscribeTaskRunner.getAllTaskInfo();
-        if (!taskInfoList.isEmpty()) {
-            for (SubscribeTaskInfo taskInfo : taskInfoList) {
-                if (taskInfo == null) {
-                    continue;
-                }
-                Device device = getDeviceByDeviceId(taskInfo.getDeviceId());
-                if (device == null || !device.isOnLine() || !onlineDeviceIds.contains(taskInfo.getDeviceId())) {
-                    subscribeTaskRunner.removeSubscribe(taskInfo.getKey());
-                    continue;
-                }
-                if (SubscribeTaskForCatalog.name.equals(taskInfo.getName())) {
-                    device.setSubscribeCycleForCatalog((int)taskInfo.getExpireTime());
-                    SubscribeTask subscribeTask = SubscribeTaskForCatalog.getInstance(device, this::catalogSubscribeExpire, taskInfo.getTransactionInfo());
-                    if (subscribeTask != null) {
-                        subscribeTaskRunner.addSubscribe(subscribeTask);
-                    }
-                }else if (SubscribeTaskForMobilPosition.name.equals(taskInfo.getName())) {
-                    device.setSubscribeCycleForMobilePosition((int)taskInfo.getExpireTime());
-                    SubscribeTask subscribeTask = SubscribeTaskForMobilPosition.getInstance(device, this::mobilPositionSubscribeExpire, taskInfo.getTransactionInfo());
-                    if (subscribeTask != null) {
-                        subscribeTaskRunner.addSubscribe(subscribeTask);
-                    }
-                }
+    private void recoverSubscribe(Map<String, Device> deviceMapInDb, Set<String> onlineDeviceIds, List<SubscribeTaskInfo> taskInfoList) {
+        List<SubscribeTask> subscribeTaskList = new ArrayList<>();
+        for (SubscribeTaskInfo taskInfo : taskInfoList) {
+            if (taskInfo == null) {
+                continue;
+            }
+            Device device = deviceMapInDb.get(taskInfo.getDeviceId());
+            if (device == null || !device.isOnLine() || !onlineDeviceIds.contains(taskInfo.getDeviceId())) {
+                subscribeTaskRunner.removeSubscribe(taskInfo.getKey());
+                continue;
+            }
+            SubscribeTask subscribeTask = null;
+            if (SubscribeTaskForCatalog.name.equals(taskInfo.getName())) {
+                device.setSubscribeCycleForCatalog((int)taskInfo.getExpireTime());
+                subscribeTask = SubscribeTaskForCatalog.getInstance(device, this::catalogSubscribeExpire, taskInfo.getTransactionInfo());
+            }else if (SubscribeTaskForMobilPosition.name.equals(taskInfo.getName())) {
+                device.setSubscribeCycleForMobilePosition((int)taskInfo.getExpireTime());
+                subscribeTask = SubscribeTaskForMobilPosition.getInstance(device, this::mobilPositionSubscribeExpire, taskInfo.getTransactionInfo());
+            }
+            if (subscribeTask != null) {
+                subscribeTaskList.add(subscribeTask);
             }
         }
+        subscribeTaskRunner.addSubscribes(subscribeTaskList);
     }
 
     private void offlineByIds(List<Device> offlineDevices) {
@@ -232,8 +261,8 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
         deviceMapper.offlineByList(offlineDevices);
         for (Device device : offlineDevices) {
             device.setOnLine(false);
-            redisCatchStorage.updateDevice(device);
         }
+        redisCatchStorage.updateDevices(offlineDevices);
     }
 
     private void cleanOfflineDevice(Device device) {
@@ -435,46 +464,53 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
         return code <= 199;
     }
 
-    // 订阅丢失检查
-    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.SECONDS)
-    public void lostCheckForSubscribe(){
-        // 获取所有设备
-        List<Device> deviceList = redisCatchStorage.getAllDevices();
-        if (deviceList.isEmpty()) {
-            return;
-        }
-        for (Device device : deviceList) {
-            if (device == null || !device.isOnLine() || !userSetting.getServerId().equals(device.getServerId())) {
-                continue;
+    /**
+     * 设备离线由设备状态任务到期驱动, 订阅续期与失败重试由订阅任务到期驱动,
+     * 这里只做低频的兜底核对, 使用HSCAN分批遍历设备缓存
+     */
+    @Scheduled(fixedDelay = 5, timeUnit = TimeUnit.MINUTES)
+    public void reconcile(){
+        List<Device> lostStatusList = new ArrayList<>();
+        List<Device> lostSubscribeList = new ArrayList<>();
+        redisCatchStorage.scanDevices(device -> {
+            if (!device.isOnLine() || !userSetting.getServerId().equals(device.getServerId())) {
+                return;
+            }
+            if (!deviceStatusTaskRunner.containsKey(device.getDeviceId())) {
+                lostStatusList.add(device);
+                return;
             }
+            if ((device.getSubscribeCycleForCatalog() > 0 && !subscribeTaskRunner.containsKey(SubscribeTaskForCatalog.getKey(device)))
+                    || (device.getSubscribeCycleForMobilePosition() > 0 && !subscribeTaskRunner.containsKey(SubscribeTaskForMobilPosition.getKey(device)))) {
+                lostSubscribeList.add(device);
+            }
+        });
+        for (Device device : lostStatusList) {
+            log.info("[状态丢失] 执行设备离线， 编号： {}", device.getDeviceId());
+            offline(device.getDeviceId(), "");
+        }
+        for (Device device : lostSubscribeList) {
             if (device.getSubscribeCycleForCatalog() > 0 && !subscribeTaskRunner.containsKey(SubscribeTaskForCatalog.getKey(device))) {
-                log.debug("[订阅丢失] 目录订阅， 编号： {}, 重新发起订阅", device.getDeviceId());
+                log.info("[订阅丢失] 目录订阅， 编号： {}, 重新发起订阅", device.getDeviceId());
                 addCatalogSubscribe(device, null);
             }
             if (device.getSubscribeCycleForMobilePosition() > 0 && !subscribeTaskRunner.containsKey(SubscribeTaskForMobilPosition.getKey(device))) {
-                log.debug("[订阅丢失] 移动位置订阅， 编号： {}, 重新发起订阅", device.getDeviceId());
+                log.info("[订阅丢失] 移动位置订阅， 编号： {}, 重新发起订阅", device.getDeviceId());
                 addMobilePositionSubscribe(device, null);
             }
         }
     }
 
-    // 设备状态丢失检查
-    @Scheduled(fixedDelay = 30, timeUnit = TimeUnit.SECONDS)
-    public void lostCheckForStatus(){
-        // 获取所有设备
-        List<Device> deviceList = redisCatchStorage.getAllDevices();
-        if (deviceList.isEmpty()) {
+    /**
+     * 订阅失败后添加一个短延时的订阅任务, 到期时重新发起订阅
+     */
+    private void retrySubscribe(SubscribeTask subscribeTask) {
+        if (subscribeTask == null) {
             return;
         }
-        for (Device device : deviceList) {
-            if (device == null || !device.isOnLine() || !userSetting.getServerId().equals(device.getServerId())) {
-                continue;
-            }
-            if (!deviceStatusTaskRunner.containsKey(device.getDeviceId())) {
-                log.debug("[状态丢失] 执行设备离线， 编号： {},", device.getDeviceId());
-                offline(device.getDeviceId(), "");
-            }
-        }
+        subscribeTask.setDelayTime(SUBSCRIBE_RETRY_DELAY + System.currentTimeMillis());
+        subscribeTaskRunner.removeSubscribe(subscribeTask.getKey());
+        subscribeTaskRunner.addSubscribe(subscribeTask);
     }
 
     private void catalogSubscribeExpire(String deviceId, SipTransactionInfo transactionInfo) {
@@ -516,7 +552,10 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
                 ResponseEvent event = (ResponseEvent) eventResult.event;
                 // 成功
                 log.info("[目录订阅]成功： {}", device.getDeviceId());
-                if (!subscribeTaskRunner.containsKey(SubscribeTaskForCatalog.getKey(device))) {
+                String key = SubscribeTaskForCatalog.getKey(device);
+                if (!subscribeTaskRunner.containsKey(key) || subscribeTaskRunner.getTransactionInfo(key) == null) {
+                    // 不存在或者只是失败重试的任务, 使用本次的事务信息重新添加
+                    subscribeTaskRunner.removeSubscribe(key);
                     SIPResponse response = (SIPResponse) event.getResponse();
                     SipTransactionInfo transactionInfoForResponse = new SipTransactionInfo(response);
                     SubscribeTask subscribeTask = SubscribeTaskForCatalog.getInstance(device, this::catalogSubscribeExpire, transactionInfoForResponse);
@@ -530,9 +569,11 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
             },eventResult -> {
                 // 失败
                 log.warn("[目录订阅]失败，信令发送失败： {}-{} ", device.getDeviceId(), eventResult.msg);
+                retrySubscribe(SubscribeTaskForCatalog.getInstance(device, this::catalogSubscribeExpire, null));
             });
         } catch (InvalidArgumentException | SipException | ParseException e) {
             log.error("[命令发送失败] 目录订阅: {}", e.getMessage());
+            retrySubscribe(SubscribeTaskForCatalog.getInstance(device, this::catalogSubscribeExpire, null));
             return false;
         }
         return true;
@@ -580,7 +621,10 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
                 ResponseEvent event = (ResponseEvent) eventResult.event;
                 // 成功
                 log.info("[移动位置订阅]成功： {}", device.getDeviceId());
-                if (!subscribeTaskRunner.containsKey(SubscribeTaskForMobilPosition.getKey(device))) {
+                String key = SubscribeTaskForMobilPosition.getKey(device);
+                if (!subscribeTaskRunner.containsKey(key) || subscribeTaskRunner.getTransactionInfo(key) == null) {
+                    // 不存在或者只是失败重试的任务, 使用本次的事务信息重新添加
+                    subscribeTaskRunner.removeSubscribe(key);
                     SIPResponse response = (SIPResponse) event.getResponse();
                     SipTransactionInfo transactionInfoForResponse = new SipTransactionInfo(response);
                     SubscribeTask subscribeTask = SubscribeTaskForMobilPosition.getInstance(device, this::mobilPositionSubscribeExpire, transactionInfoForResponse);
@@ -594,9 +638,11 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
             },eventResult -> {
                 // 失败
                 log.warn("[移动位置订阅]失败，信令发送失败： {}-{} ", device.getDeviceId(), eventResult.msg);
+                retrySubscribe(SubscribeTaskForMobilPosition.getInstance(device, this::mobilPositionSubscribeExpire, null));
             });
         } catch (InvalidArgumentException | SipException | ParseException e) {
             log.error("[命令发送失败] 移动位置订阅: {}", e.getMessage());
+            retrySubscribe(SubscribeTaskForMobilPosition.getInstance(device, this::mobilPositionSubscribeExpire, null));
             return false;
         }
         return true;
@@ -650,6 +696,11 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
         return catalogResponseMessageHandler.isSyncRunning(deviceId);
     }
 
+    @Override
+    public NotifyCatalogStats getNotifyCatalogStats() {
+        return notifyRequestForCatalogProcessor.getStats();
+    }
+
     @Override
     public void sync(Device device) {
         if (catalogResponseMessageHandler.isSyncRunning(device.getDeviceId())) {
@@ -846,14 +897,45 @@ public class DeviceServiceImpl implements IDeviceService, CommandLineRunner {
 
     @Override
     public PageInfo<Device> getAll(int page, int count, String query, Boolean status) {
-        PageHelper.startPage(page, count);
         if (query != null) {
             query = query.replaceAll("/", "//")
                     .replaceAll("%", "/%")
                     .replaceAll("_", "/_");
         }
-        List<Device> all = deviceMapper.getDeviceList(ChannelDataType.GB28181, query, status);
-        return new PageInfo<>(all);
+        String finalQuery = query;
+        return listCountCache.page("device:" + query + ":" + status, page, count,
+                () -> deviceMapper.getDeviceList(ChannelDataType.GB28181, finalQuery, status, null, null));
+    }
+
+    @Override
+    public CursorPageInfo<Device> getAllByCursor(String cursor, int count, String query, Boolean status) {
+        count = CursorPageInfo.limitCount(count);
+        Integer lastId = PageCursor.decodeId(cursor);
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        String finalQuery = query;
+        long total = listCountCache.count("device:" + query + ":" + status,
+                () -> deviceMapper.getDeviceList(ChannelDataType.GB28181, finalQuery, status, null, null));
+        List<Device> rows = deviceMapper.getDeviceList(ChannelDataType.GB28181, query, status, lastId, count + 1);
+        return CursorPageInfo.of(rows, count, total, device -> PageCursor.encode(device.getId()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportList(String query, Boolean status, Consumer<Device> consumer) {
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        try (Cursor<Device> cursor = deviceMapper.getDeviceListForExport(query, status)) {
+            cursor.forEach(consumer);
+        } catch (IOException e) {
+            log.error("[导出设备列表] 关闭游标失败", e);
+        }
     }
 
     @Override
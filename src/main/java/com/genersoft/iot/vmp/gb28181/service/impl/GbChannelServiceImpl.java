@@ -12,6 +12,7 @@ import com.genersoft.iot.vmp.gb28181.event.subscribe.catalog.CatalogEvent;
 import com.genersoft.iot.vmp.gb28181.service.IDeviceChannelService;
 import com.genersoft.iot.vmp.gb28181.service.IGbChannelService;
 import com.genersoft.iot.vmp.gb28181.service.IPlatformChannelService;
+import com.genersoft.iot.vmp.gb28181.session.ChannelSearchIndex;
 import com.genersoft.iot.vmp.service.bean.ErrorCallback;
 import com.genersoft.iot.vmp.service.bean.GPSMsgInfo;
 import com.genersoft.iot.vmp.streamPush.bean.StreamPush;
@@ -27,10 +28,7 @@ import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 
 import javax.sip.message.Response;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 @Slf4j
 @Service
@@ -57,6 +55,9 @@ public class GbChannelServiceImpl implements IGbChannelService {
     @Autowired
     private IDeviceChannelService deviceChannelService;
 
+    @Autowired
+    private ChannelSearchIndex channelSearchIndex;
+
     @Override
     public CommonGBChannel queryByDeviceId(String gbDeviceId) {
         return commonGBChannelMapper.queryByDeviceId(gbDeviceId);
@@ -383,29 +384,77 @@ public class GbChannelServiceImpl implements IGbChannelService {
     }
 
     @Override
-    public PageInfo<CommonGBChannel> queryListByCivilCode(int page, int count, String query, Boolean online, Integer channelType, String civilCode) {
-        PageHelper.startPage(page, count);
+    public PageInfo<CommonGBChannel> queryListByCivilCode(int page, int count, String query, Boolean online, Integer channelType, String civilCode, Integer lastId) {
+        ChannelSearchResult searchResult = channelSearchIndex.search(query, item -> matchSearchFilter(item, online, null, channelType)
+                && Objects.equals(civilCode, item.getCivilCode()), lastId, page, count);
+        if (searchResult != null) {
+            return buildSearchPage(searchResult, page, count);
+        }
+        PageHelper.startPage(lastId == null ? page : 1, count);
         if (query != null) {
             query = query.replaceAll("/", "//")
                     .replaceAll("%", "/%")
                     .replaceAll("_", "/_");
         }
-        List<CommonGBChannel> all = commonGBChannelMapper.queryListByCivilCode(query, online, channelType, civilCode);
+        List<CommonGBChannel> all = commonGBChannelMapper.queryListByCivilCode(query, online, channelType, civilCode, lastId);
         return new PageInfo<>(all);
     }
 
     @Override
-    public PageInfo<CommonGBChannel> queryListByParentId(int page, int count, String query, Boolean online, Integer channelType, String groupDeviceId) {
-        PageHelper.startPage(page, count);
+    public PageInfo<CommonGBChannel> queryListByParentId(int page, int count, String query, Boolean online, Integer channelType, String groupDeviceId, Integer lastId) {
+        ChannelSearchResult searchResult = channelSearchIndex.search(query, item -> matchSearchFilter(item, online, null, channelType)
+                && Objects.equals(groupDeviceId, item.getParentDeviceId()), lastId, page, count);
+        if (searchResult != null) {
+            return buildSearchPage(searchResult, page, count);
+        }
+        PageHelper.startPage(lastId == null ? page : 1, count);
         if (query != null) {
             query = query.replaceAll("/", "//")
                     .replaceAll("%", "/%")
                     .replaceAll("_", "/_");
         }
-        List<CommonGBChannel> all = commonGBChannelMapper.queryListByParentId(query, online, channelType, groupDeviceId);
+        List<CommonGBChannel> all = commonGBChannelMapper.queryListByParentId(query, online, channelType, groupDeviceId, lastId);
         return new PageInfo<>(all);
     }
 
+    /**
+     * 搜索索引中关键字以外的查询条件, 与数据库查询的条件保持一致
+     */
+    private boolean matchSearchFilter(ChannelSearchItem item, Boolean online, Boolean hasRecordPlan, Integer channelType) {
+        if (online != null && (online ? !item.isOnline() : !"OFF".equalsIgnoreCase(item.getStatus()))) {
+            return false;
+        }
+        if (hasRecordPlan != null && hasRecordPlan && !item.hasRecordPlan()) {
+            return false;
+        }
+        return channelType == null || channelType.equals(item.getDataType());
+    }
+
+    /**
+     * 按搜索索引返回的ID查询通道, 保持索引中的顺序
+     */
+    private PageInfo<CommonGBChannel> buildSearchPage(ChannelSearchResult searchResult, int page, int count) {
+        List<CommonGBChannel> channelList = new ArrayList<>();
+        if (!searchResult.getIds().isEmpty()) {
+            Map<Integer, CommonGBChannel> channelMap = new HashMap<>();
+            for (CommonGBChannel channel : commonGBChannelMapper.queryByIds(searchResult.getIds())) {
+                channelMap.put(channel.getGbId(), channel);
+            }
+            for (Integer id : searchResult.getIds()) {
+                CommonGBChannel channel = channelMap.get(id);
+                if (channel != null) {
+                    channelList.add(channel);
+                }
+            }
+        }
+        PageInfo<CommonGBChannel> pageInfo = new PageInfo<>(channelList);
+        pageInfo.setTotal(searchResult.getTotal());
+        pageInfo.setPageNum(page);
+        pageInfo.setPageSize(count);
+        pageInfo.setPages(count > 0 ? (searchResult.getTotal() + count - 1) / count : 0);
+        return pageInfo;
+    }
+
     @Override
     public void removeCivilCode(List<Region> allChildren) {
         commonGBChannelMapper.removeCivilCode(allChildren);
@@ -706,14 +755,19 @@ public class GbChannelServiceImpl implements IGbChannelService {
     }
 
     @Override
-    public PageInfo<CommonGBChannel> queryList(int page, int count, String query, Boolean online, Boolean hasRecordPlan, Integer channelType) {
-        PageHelper.startPage(page, count);
+    public PageInfo<CommonGBChannel> queryList(int page, int count, String query, Boolean online, Boolean hasRecordPlan, Integer channelType, Integer lastId) {
+        ChannelSearchResult searchResult = channelSearchIndex.search(query,
+                item -> matchSearchFilter(item, online, hasRecordPlan, channelType), lastId, page, count);
+        if (searchResult != null) {
+            return buildSearchPage(searchResult, page, count);
+        }
+        PageHelper.startPage(lastId == null ? page : 1, count);
         if (query != null) {
             query = query.replaceAll("/", "//")
                     .replaceAll("%", "/%")
                     .replaceAll("_", "/_");
         }
-        List<CommonGBChannel> all = commonGBChannelMapper.queryList(query, online,  hasRecordPlan, channelType);
+        List<CommonGBChannel> all = commonGBChannelMapper.queryList(query, online,  hasRecordPlan, channelType, lastId);
         return new PageInfo<>(all);
     }
 
@@ -2,25 +2,30 @@ package com.genersoft.iot.vmp.gb28181.service.impl;
 
 import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.gb28181.bean.*;
-import com.genersoft.iot.vmp.gb28181.dao.CommonGBChannelMapper;
 import com.genersoft.iot.vmp.gb28181.dao.GroupMapper;
 import com.genersoft.iot.vmp.gb28181.event.EventPublisher;
 import com.genersoft.iot.vmp.gb28181.event.subscribe.catalog.CatalogEvent;
 import com.genersoft.iot.vmp.gb28181.service.IGbChannelService;
 import com.genersoft.iot.vmp.gb28181.service.IGroupService;
+import com.genersoft.iot.vmp.gb28181.session.ChannelTreeIndex;
 import com.genersoft.iot.vmp.utils.DateUtil;
+import com.genersoft.iot.vmp.utils.ListCountCache;
+import com.genersoft.iot.vmp.utils.PageCursor;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
-import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * 区域管理类
@@ -32,15 +37,18 @@ public class GroupServiceImpl implements IGroupService {
     @Autowired
     private GroupMapper groupManager;
 
-    @Autowired
-    private CommonGBChannelMapper commonGBChannelMapper;
-
     @Autowired
     private IGbChannelService gbChannelService;
 
     @Autowired
     private EventPublisher eventPublisher;
 
+    @Autowired
+    private ChannelTreeIndex channelTreeIndex;
+
+    @Autowired
+    private ListCountCache listCountCache;
+
     @Override
     public void add(Group group) {
         Assert.notNull(group, "参数不可为NULL");
@@ -81,6 +89,7 @@ public class GroupServiceImpl implements IGroupService {
         group.setCreateTime(DateUtil.getNow());
         group.setUpdateTime(DateUtil.getNow());
         groupManager.add(group);
+        channelTreeIndex.invalidateStructure();
     }
 
     private void addBusinessGroup(Group group) {
@@ -88,6 +97,7 @@ public class GroupServiceImpl implements IGroupService {
         group.setCreateTime(DateUtil.getNow());
         group.setUpdateTime(DateUtil.getNow());
         groupManager.addBusinessGroup(group);
+        channelTreeIndex.invalidateStructure();
     }
 
     private List<Group> queryAllChildren(Integer id) {
@@ -119,6 +129,7 @@ public class GroupServiceImpl implements IGroupService {
         group.setName(group.getName());
         group.setUpdateTime(DateUtil.getNow());
         groupManager.update(group);
+        channelTreeIndex.invalidateStructure();
         // 修改他的子节点
         if (!group.getDeviceId().equals(groupInDb.getDeviceId())
                 || !group.getBusinessGroup().equals(groupInDb.getBusinessGroup())) {
@@ -170,20 +181,7 @@ public class GroupServiceImpl implements IGroupService {
 
     @Override
     public List<GroupTree> queryForTree(String query, Integer parentId, Boolean hasChannel) {
-
-        List<GroupTree> groupTrees = groupManager.queryForTree(query, parentId);
-        if (parentId == null) {
-            return groupTrees;
-        }
-        // 查询含有的通道
-        Group parentGroup = groupManager.queryOne(parentId);
-        if (parentGroup != null && hasChannel != null && hasChannel) {
-            List<GroupTree> groupTreesForChannel = commonGBChannelMapper.queryForGroupTreeByParentId(query, parentGroup.getDeviceId());
-            if (!ObjectUtils.isEmpty(groupTreesForChannel)) {
-                groupTrees.addAll(groupTreesForChannel);
-            }
-        }
-        return groupTrees;
+        return channelTreeIndex.queryGroupTree(query, parentId, hasChannel);
     }
 
     @Override
@@ -214,6 +212,7 @@ public class GroupServiceImpl implements IGroupService {
             gbChannelService.removeParentIdByGroupList(groupListForDelete);
         }
         groupManager.batchDelete(groupListForDelete);
+        channelTreeIndex.invalidateStructure();
 
         for (Group groupForDelete : groupListForDelete) {
             // 删除平台关联的分组信息。同时发送通知
@@ -258,6 +257,7 @@ public class GroupServiceImpl implements IGroupService {
             // 更新分组关系
             groupManager.updateParentId(groupListForAdd);
             groupManager.updateParentIdWithBusinessGroup(groupListForAdd);
+            channelTreeIndex.invalidateStructure();
         }
 
         return true;
@@ -265,46 +265,47 @@ public class GroupServiceImpl implements IGroupService {
 
     @Override
     public List<Group> getPath(String deviceId, String businessGroup) {
-        Group businessGroupInDb = groupManager.queryBusinessGroup(businessGroup);
-        if (businessGroupInDb == null) {
-            throw new ControllerException(ErrorCode.ERROR100.getCode(), "业务分组不存在");
-        }
-        List<Group> groupList = new LinkedList<>();
-        groupList.add(businessGroupInDb);
-        Group group = groupManager.queryOneByDeviceId(deviceId, businessGroup);
-        if (group == null) {
-            throw new ControllerException(ErrorCode.ERROR100.getCode(), "虚拟组织不存在");
-        }
-        groupList.add(group);
-        List<Group> allParent = getAllParent(group);
-        groupList.addAll(allParent);
-        return groupList;
+        return channelTreeIndex.getGroupPath(deviceId, businessGroup);
     }
 
-    private List<Group> getAllParent(Group group) {
-        if (group.getParentId() == null || group.getBusinessGroup() == null) {
-            return new ArrayList<>();
+    @Override
+    public PageInfo<Group> queryList(Integer page, Integer count, String query) {
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
         }
+        String finalQuery = query;
+        return listCountCache.page("group:" + query, page, count, () -> groupManager.query(finalQuery, null, null));
+    }
 
-        List<Group> groupList = new ArrayList<>();
-        Group parent = groupManager.queryOneByDeviceId(group.getParentDeviceId(), group.getBusinessGroup());
-        if (parent == null) {
-            return groupList;
+    @Override
+    public CursorPageInfo<Group> queryListByCursor(String cursor, int count, String query) {
+        count = CursorPageInfo.limitCount(count);
+        Integer lastId = PageCursor.decodeId(cursor);
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
         }
-        List<Group> allParent = getAllParent(parent);
-        allParent.add(parent);
-        return allParent;
+        String finalQuery = query;
+        long total = listCountCache.count("group:" + query, () -> groupManager.query(finalQuery, null, null));
+        List<Group> rows = groupManager.queryAfter(query, lastId, count + 1);
+        return CursorPageInfo.of(rows, count, total, group -> PageCursor.encode(group.getId()));
     }
 
     @Override
-    public PageInfo<Group> queryList(Integer page, Integer count, String query) {
-        PageHelper.startPage(page, count);
+    @Transactional(readOnly = true)
+    public void exportList(String query, Consumer<Group> consumer) {
         if (query != null) {
             query = query.replaceAll("/", "//")
                     .replaceAll("%", "/%")
                     .replaceAll("_", "/_");
         }
-        List<Group> all = groupManager.query(query, null, null);
-        return new PageInfo<>(all);
+        try (Cursor<Group> cursor = groupManager.queryForExport(query)) {
+            cursor.forEach(consumer);
+        } catch (IOException e) {
+            log.error("[导出分组列表] 关闭游标失败", e);
+        }
     }
 }
@@ -9,25 +9,30 @@ import com.genersoft.iot.vmp.gb28181.dao.DeviceMapper;
 import com.genersoft.iot.vmp.gb28181.service.IInviteStreamService;
 import com.genersoft.iot.vmp.media.event.media.MediaDepartureEvent;
 import com.genersoft.iot.vmp.service.bean.ErrorCallback;
+import com.genersoft.iot.vmp.utils.redis.RedisUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.event.EventListener;
-import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * 点播信息存储于 INVITE_PREFIX 的hash中, field为 type:channelId:stream,
+ * 写入时同步维护按通道, 按流, 按ssrc, 按设备, 按流媒体节点的二级索引, 查询时直接按索引读取, 不再遍历整个hash
+ */
 @Slf4j
 @Service
-public class InviteStreamServiceImpl implements IInviteStreamService {
+public class InviteStreamServiceImpl implements IInviteStreamService, CommandLineRunner {
 
     private final Map<String, List<ErrorCallback<StreamInfo>>> inviteErrorCallbackMap = new ConcurrentHashMap<>();
 
@@ -117,14 +122,10 @@ public class InviteStreamServiceImpl implements IInviteStreamService {
         if (inviteInfoForUpdate.getCreateTime() == null) {
             inviteInfoForUpdate.setCreateTime(System.currentTimeMillis());
         }
-        String key = VideoManagerConstants.INVITE_PREFIX;
-        String objectKey = inviteInfoForUpdate.getType() +
-                ":" + inviteInfoForUpdate.getChannelId() +
-                ":" + inviteInfoForUpdate.getStream();
         if (time != null && time > 0) {
             inviteInfoForUpdate.setExpirationTime(time);
         }
-        redisTemplate.opsForHash().put(key, objectKey, inviteInfoForUpdate);
+        save(inviteInfoForUpdate);
     }
 
     @Override
@@ -135,10 +136,6 @@ public class InviteStreamServiceImpl implements IInviteStreamService {
             return null;
         }
         removeInviteInfo(inviteInfoInDb);
-        String key = VideoManagerConstants.INVITE_PREFIX;
-        String objectKey = inviteInfo.getType() +
-                ":" + inviteInfo.getChannelId() +
-                ":" + stream;
         inviteInfoInDb.setStream(stream);
         if (inviteInfoInDb.getSsrcInfo() != null) {
             inviteInfoInDb.getSsrcInfo().setStream(stream);
@@ -149,26 +146,90 @@ public class InviteStreamServiceImpl implements IInviteStreamService {
         if (inviteInfoInDb.getCreateTime() == null) {
             inviteInfoInDb.setCreateTime(System.currentTimeMillis());
         }
-        redisTemplate.opsForHash().put(key, objectKey, inviteInfoInDb);
+        save(inviteInfoInDb);
         return inviteInfoInDb;
     }
 
     @Override
     public InviteInfo getInviteInfo(InviteSessionType type, Integer channelId, String stream) {
-        String key = VideoManagerConstants.INVITE_PREFIX;
-        String keyPattern = (type != null ? type : "*") +
-                ":" + (channelId != null ? channelId : "*") +
-                ":" + (stream != null ? stream : "*");
-        ScanOptions options = ScanOptions.scanOptions().match(keyPattern).count(20).build();
-        try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(key, options)) {
-            if (cursor.hasNext()) {
-                InviteInfo inviteInfo = (InviteInfo) cursor.next().getValue();
-                cursor.close();
-                return inviteInfo;
-
+        try {
+            if (type != null && channelId != null && stream != null) {
+                return (InviteInfo) redisTemplate.opsForHash().get(VideoManagerConstants.INVITE_PREFIX, buildObjectKey(type, channelId, stream));
+            }
+            if (stream != null) {
+                return getByIndex(VideoManagerConstants.INVITE_INDEX_STREAM, type, stream, channelId);
+            }
+            if (channelId != null) {
+                return getByChannel(type, channelId);
             }
         } catch (Exception e) {
             log.error("[Redis-InviteInfo] 查询异常: ", e);
+            return null;
+        }
+        for (InviteInfo inviteInfo : getAllInviteInfo()) {
+            if (type == null || type == inviteInfo.getType()) {
+                return inviteInfo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 通过二级索引查询, 索引field为 type:value, 未指定类型时一次读取所有类型的索引
+     */
+    private InviteInfo getByIndex(String indexKey, InviteSessionType type, String value, Integer channelId) {
+        List<Object> fields = new ArrayList<>();
+        if (type != null) {
+            fields.add(type + ":" + value);
+        } else {
+            for (InviteSessionType sessionType : InviteSessionType.values()) {
+                fields.add(sessionType + ":" + value);
+            }
+        }
+        List<Object> objectKeys = redisTemplate.opsForHash().multiGet(indexKey, fields);
+        for (Object objectKey : objectKeys) {
+            if (objectKey == null) {
+                continue;
+            }
+            InviteInfo inviteInfo = (InviteInfo) redisTemplate.opsForHash().get(VideoManagerConstants.INVITE_PREFIX, objectKey);
+            // 索引可能滞后于数据, 需要校验
+            if (inviteInfo != null && (channelId == null || channelId.equals(inviteInfo.getChannelId()))) {
+                return inviteInfo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 通过通道索引查询, 同一通道可能同时存在多个会话(如多路回放), 返回其中任意一个有效的,
+     * 顺便清理已经失效的索引
+     */
+    private InviteInfo getByChannel(InviteSessionType type, Integer channelId) {
+        List<InviteSessionType> types = type != null ? Collections.singletonList(type) : Arrays.asList(InviteSessionType.values());
+        for (InviteSessionType sessionType : types) {
+            String indexKey = buildChannelIndexKey(sessionType, channelId);
+            Set<Object> objectKeys = redisTemplate.opsForSet().members(indexKey);
+            if (objectKeys == null || objectKeys.isEmpty()) {
+                continue;
+            }
+            List<Object> objectKeyList = new ArrayList<>(objectKeys);
+            List<Object> values = redisTemplate.opsForHash().multiGet(VideoManagerConstants.INVITE_PREFIX, objectKeyList);
+            InviteInfo result = null;
+            List<Object> staleKeys = new ArrayList<>();
+            for (int i = 0; i < objectKeyList.size(); i++) {
+                InviteInfo inviteInfo = (InviteInfo) values.get(i);
+                if (inviteInfo == null) {
+                    staleKeys.add(objectKeyList.get(i));
+                } else if (result == null) {
+                    result = inviteInfo;
+                }
+            }
+            if (!staleKeys.isEmpty()) {
+                redisTemplate.opsForSet().remove(indexKey, staleKeys.toArray());
+            }
+            if (result != null) {
+                return result;
+            }
         }
         return null;
     }
@@ -199,17 +260,15 @@ public class InviteStreamServiceImpl implements IInviteStreamService {
 
     @Override
     public void removeInviteInfo(InviteSessionType type, Integer channelId, String stream) {
-        String key = VideoManagerConstants.INVITE_PREFIX;
         if (type == null && channelId == null && stream == null) {
-            redisTemplate.opsForHash().delete(key);
+            for (InviteInfo inviteInfo : getAllInviteInfo()) {
+                delete(inviteInfo);
+            }
             return;
         }
         InviteInfo inviteInfo = getInviteInfo(type, channelId, stream);
         if (inviteInfo != null) {
-            String objectKey = inviteInfo.getType() +
-                    ":" + inviteInfo.getChannelId() +
-                    ":" + inviteInfo.getStream();
-            redisTemplate.opsForHash().delete(key, objectKey);
+            delete(inviteInfo);
         }
     }
 
@@ -243,35 +302,24 @@ public class InviteStreamServiceImpl implements IInviteStreamService {
 
     @Override
     public void clearInviteInfo(String deviceId) {
-        List<InviteInfo> inviteInfoList = getAllInviteInfo();
-        for (InviteInfo inviteInfo : inviteInfoList) {
-            if (inviteInfo.getDeviceId().equals(deviceId)) {
-                removeInviteInfo(inviteInfo);
+        Set<Object> objectKeys = redisTemplate.opsForSet().members(VideoManagerConstants.INVITE_INDEX_DEVICE + deviceId);
+        if (objectKeys == null || objectKeys.isEmpty()) {
+            return;
+        }
+        List<Object> values = redisTemplate.opsForHash().multiGet(VideoManagerConstants.INVITE_PREFIX, objectKeys);
+        for (Object value : values) {
+            InviteInfo inviteInfo = (InviteInfo) value;
+            if (inviteInfo != null && deviceId.equals(inviteInfo.getDeviceId())) {
+                delete(inviteInfo);
             }
         }
+        redisTemplate.delete(VideoManagerConstants.INVITE_INDEX_DEVICE + deviceId);
     }
 
     @Override
     public int getStreamInfoCount(String mediaServerId) {
-        int count = 0;
-        String key = VideoManagerConstants.INVITE_PREFIX;
-        List<Object> values = redisTemplate.opsForHash().values(key);
-        if (values.isEmpty()) {
-            return count;
-        }
-        for (Object value : values) {
-            InviteInfo inviteInfo = (InviteInfo)value;
-            if (inviteInfo != null
-                    && inviteInfo.getStreamInfo() != null
-                    && inviteInfo.getStreamInfo().getMediaServer() != null
-                    && inviteInfo.getStreamInfo().getMediaServer().getId().equals(mediaServerId)) {
-                if (inviteInfo.getType().equals(InviteSessionType.DOWNLOAD) && inviteInfo.getStreamInfo().getProgress() == 1) {
-                    continue;
-                }
-                count++;
-            }
-        }
-        return count;
+        Long count = redisTemplate.opsForSet().size(VideoManagerConstants.INVITE_INDEX_MEDIA_SERVER + mediaServerId);
+        return count == null ? 0 : count.intValue();
     }
 
     @Override
@@ -300,14 +348,13 @@ public class InviteStreamServiceImpl implements IInviteStreamService {
 
     @Override
     public InviteInfo getInviteInfoBySSRC(String ssrc) {
-        List<InviteInfo> inviteInfoList = getAllInviteInfo();
-        if (inviteInfoList.isEmpty()) {
+        Object objectKey = redisTemplate.opsForHash().get(VideoManagerConstants.INVITE_INDEX_SSRC, ssrc);
+        if (objectKey == null) {
             return null;
         }
-        for (InviteInfo inviteInfo : inviteInfoList) {
-            if (inviteInfo.getSsrcInfo() != null && ssrc.equals(inviteInfo.getSsrcInfo().getSsrc())) {
-                return inviteInfo;
-            }
+        InviteInfo inviteInfo = (InviteInfo) redisTemplate.opsForHash().get(VideoManagerConstants.INVITE_PREFIX, objectKey);
+        if (inviteInfo != null && inviteInfo.getSsrcInfo() != null && ssrc.equals(inviteInfo.getSsrcInfo().getSsrc())) {
+            return inviteInfo;
         }
         return null;
     }
@@ -319,36 +366,181 @@ public class InviteStreamServiceImpl implements IInviteStreamService {
             return null;
         }
         removeInviteInfo(inviteInfoInDb);
-        String key = VideoManagerConstants.INVITE_PREFIX;
-        String objectKey = inviteInfo.getType() +
-                ":" + inviteInfo.getChannelId() +
-                ":" + inviteInfo.getStream();
         if (inviteInfoInDb.getSsrcInfo() != null) {
             inviteInfoInDb.getSsrcInfo().setSsrc(ssrc);
         }
-        redisTemplate.opsForHash().put(key, objectKey, inviteInfoInDb);
+        save(inviteInfoInDb);
         return inviteInfoInDb;
     }
 
     @Scheduled(fixedRate = 10000)   //定时检测,清理错误的redis数据,防止因为错误数据导致的点播不可用
     public void execute(){
-        String key = VideoManagerConstants.INVITE_PREFIX;
-        if(redisTemplate.opsForHash().size(key) == 0) {
+        // 只有尚未收到流的点播信息会进入待检查集合, 分数为过期时间
+        long now = System.currentTimeMillis();
+        Set<Object> objectKeys = redisTemplate.opsForZSet().rangeByScore(VideoManagerConstants.INVITE_INDEX_PENDING, 0, now);
+        if (objectKeys == null || objectKeys.isEmpty()) {
             return;
         }
-        List<Object> values = redisTemplate.opsForHash().values(key);
+        List<Object> values = redisTemplate.opsForHash().multiGet(VideoManagerConstants.INVITE_PREFIX, objectKeys);
         for (Object value : values) {
             InviteInfo inviteInfo = (InviteInfo)value;
-            if (inviteInfo.getStreamInfo() != null) {
+            if (inviteInfo == null || inviteInfo.getStreamInfo() != null) {
                 continue;
             }
-            if (inviteInfo.getCreateTime() == null || inviteInfo.getExpirationTime() == 0) {
-                removeInviteInfo(inviteInfo);
+            delete(inviteInfo);
+        }
+        // 按相同的分数上限移除, 检查期间重新保存并更新了过期时间的点播信息不会被移出待检查集合
+        redisTemplate.opsForZSet().removeRangeByScore(VideoManagerConstants.INVITE_INDEX_PENDING, 0, now);
+    }
+
+    /**
+     * 启动时清理指向已不存在数据的索引, 并根据已有的点播信息重建索引
+     */
+    @Override
+    public void run(String... args) {
+        Set<Object> objectKeys = redisTemplate.opsForHash().keys(VideoManagerConstants.INVITE_PREFIX);
+        int staleCount = 0;
+        List<Object> indexKeys = RedisUtil.scan(redisTemplate, VideoManagerConstants.INVITE_INDEX_PREFIX);
+        for (Object indexKey : indexKeys) {
+            DataType dataType = redisTemplate.type(indexKey);
+            if (dataType == DataType.SET) {
+                Set<Object> members = redisTemplate.opsForSet().members(indexKey);
+                List<Object> staleKeys = getStaleKeys(members, objectKeys);
+                if (!staleKeys.isEmpty()) {
+                    redisTemplate.opsForSet().remove(indexKey, staleKeys.toArray());
+                    staleCount += staleKeys.size();
+                }
+            } else if (dataType == DataType.ZSET) {
+                Set<Object> members = redisTemplate.opsForZSet().range(indexKey, 0, -1);
+                List<Object> staleKeys = getStaleKeys(members, objectKeys);
+                if (!staleKeys.isEmpty()) {
+                    redisTemplate.opsForZSet().remove(indexKey, staleKeys.toArray());
+                    staleCount += staleKeys.size();
+                }
+            } else if (dataType == DataType.HASH) {
+                Map<Object, Object> entries = redisTemplate.opsForHash().entries(indexKey);
+                List<Object> staleFields = new ArrayList<>();
+                for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                    if (!objectKeys.contains(entry.getValue())) {
+                        staleFields.add(entry.getKey());
+                    }
+                }
+                if (!staleFields.isEmpty()) {
+                    redisTemplate.opsForHash().delete(indexKey, staleFields.toArray());
+                    staleCount += staleFields.size();
+                }
             }
-            long time = inviteInfo.getCreateTime() + inviteInfo.getExpirationTime();
-            if (System.currentTimeMillis() > time) {
-                removeInviteInfo(inviteInfo);
+        }
+        List<InviteInfo> inviteInfoList = getAllInviteInfo();
+        for (InviteInfo inviteInfo : inviteInfoList) {
+            save(inviteInfo);
+        }
+        log.info("[点播信息] 重建索引完成, 数量: {}, 清理失效索引: {}", inviteInfoList.size(), staleCount);
+    }
+
+    /**
+     * 找出索引中数据已不存在的key, 其他节点可能在此期间写入, 删除前再次确认
+     */
+    private List<Object> getStaleKeys(Set<Object> members, Set<Object> objectKeys) {
+        List<Object> staleKeys = new ArrayList<>();
+        if (members == null || members.isEmpty()) {
+            return staleKeys;
+        }
+        for (Object member : members) {
+            if (!objectKeys.contains(member)) {
+                staleKeys.add(member);
             }
         }
+        if (staleKeys.isEmpty()) {
+            return staleKeys;
+        }
+        List<Object> values = redisTemplate.opsForHash().multiGet(VideoManagerConstants.INVITE_PREFIX, staleKeys);
+        List<Object> result = new ArrayList<>();
+        for (int i = 0; i < staleKeys.size(); i++) {
+            if (values.get(i) == null) {
+                result.add(staleKeys.get(i));
+            }
+        }
+        return result;
+    }
+
+    private String buildObjectKey(InviteSessionType type, Integer channelId, String stream) {
+        return type + ":" + channelId + ":" + stream;
+    }
+
+    private String buildChannelIndexKey(InviteSessionType type, Integer channelId) {
+        return VideoManagerConstants.INVITE_INDEX_CHANNEL + type + ":" + channelId;
+    }
+
+    /**
+     * 写入点播信息并更新索引, 在一个事务中提交
+     */
+    private void save(InviteInfo inviteInfo) {
+        String objectKey = buildObjectKey(inviteInfo.getType(), inviteInfo.getChannelId(), inviteInfo.getStream());
+        StreamInfo streamInfo = inviteInfo.getStreamInfo();
+        redisTemplate.execute(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                operations.multi();
+                operations.opsForHash().put(VideoManagerConstants.INVITE_PREFIX, objectKey, inviteInfo);
+                operations.opsForSet().add(buildChannelIndexKey(inviteInfo.getType(), inviteInfo.getChannelId()), objectKey);
+                operations.opsForHash().put(VideoManagerConstants.INVITE_INDEX_STREAM, inviteInfo.getType() + ":" + inviteInfo.getStream(), objectKey);
+                if (inviteInfo.getSsrcInfo() != null && inviteInfo.getSsrcInfo().getSsrc() != null) {
+                    operations.opsForHash().put(VideoManagerConstants.INVITE_INDEX_SSRC, inviteInfo.getSsrcInfo().getSsrc(), objectKey);
+                }
+                if (inviteInfo.getDeviceId() != null) {
+                    operations.opsForSet().add(VideoManagerConstants.INVITE_INDEX_DEVICE + inviteInfo.getDeviceId(), objectKey);
+                }
+                if (streamInfo != null && streamInfo.getMediaServer() != null) {
+                    String mediaServerKey = VideoManagerConstants.INVITE_INDEX_MEDIA_SERVER + streamInfo.getMediaServer().getId();
+                    // 已经下载完成的流不计入收流数量
+                    if (inviteInfo.getType() == InviteSessionType.DOWNLOAD && streamInfo.getProgress() == 1) {
+                        operations.opsForSet().remove(mediaServerKey, objectKey);
+                    } else {
+                        operations.opsForSet().add(mediaServerKey, objectKey);
+                    }
+                }
+                if (streamInfo == null && inviteInfo.getExpirationTime() != null) {
+                    long createTime = inviteInfo.getCreateTime() == null ? 0 : inviteInfo.getCreateTime();
+                    operations.opsForZSet().add(VideoManagerConstants.INVITE_INDEX_PENDING, objectKey, createTime + inviteInfo.getExpirationTime());
+                } else {
+                    operations.opsForZSet().remove(VideoManagerConstants.INVITE_INDEX_PENDING, objectKey);
+                }
+                return operations.exec();
+            }
+        });
+    }
+
+    /**
+     * 删除点播信息及其索引, 流与SSRC的索引只在仍指向本条数据时删除
+     */
+    private void delete(InviteInfo inviteInfo) {
+        String objectKey = buildObjectKey(inviteInfo.getType(), inviteInfo.getChannelId(), inviteInfo.getStream());
+        String streamField = inviteInfo.getType() + ":" + inviteInfo.getStream();
+        String ssrc = inviteInfo.getSsrcInfo() == null ? null : inviteInfo.getSsrcInfo().getSsrc();
+        boolean deleteStreamIndex = objectKey.equals(redisTemplate.opsForHash().get(VideoManagerConstants.INVITE_INDEX_STREAM, streamField));
+        boolean deleteSsrcIndex = ssrc != null && objectKey.equals(redisTemplate.opsForHash().get(VideoManagerConstants.INVITE_INDEX_SSRC, ssrc));
+        redisTemplate.execute(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                operations.multi();
+                operations.opsForHash().delete(VideoManagerConstants.INVITE_PREFIX, objectKey);
+                operations.opsForSet().remove(buildChannelIndexKey(inviteInfo.getType(), inviteInfo.getChannelId()), objectKey);
+                if (deleteStreamIndex) {
+                    operations.opsForHash().delete(VideoManagerConstants.INVITE_INDEX_STREAM, streamField);
+                }
+                if (deleteSsrcIndex) {
+                    operations.opsForHash().delete(VideoManagerConstants.INVITE_INDEX_SSRC, ssrc);
+                }
+                if (inviteInfo.getDeviceId() != null) {
+                    operations.opsForSet().remove(VideoManagerConstants.INVITE_INDEX_DEVICE + inviteInfo.getDeviceId(), objectKey);
+                }
+                if (inviteInfo.getStreamInfo() != null && inviteInfo.getStreamInfo().getMediaServer() != null) {
+                    operations.opsForSet().remove(VideoManagerConstants.INVITE_INDEX_MEDIA_SERVER + inviteInfo.getStreamInfo().getMediaServer().getId(), objectKey);
+                }
+                operations.opsForZSet().remove(VideoManagerConstants.INVITE_INDEX_PENDING, objectKey);
+                return operations.exec();
+            }
+        });
     }
 }
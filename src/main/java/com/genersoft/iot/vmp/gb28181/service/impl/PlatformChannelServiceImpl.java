@@ -7,9 +7,12 @@ import com.genersoft.iot.vmp.gb28181.event.EventPublisher;
 import com.genersoft.iot.vmp.gb28181.event.subscribe.catalog.CatalogEvent;
 import com.genersoft.iot.vmp.gb28181.service.IPlatformChannelService;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommanderForPlatform;
-import com.github.pagehelper.PageHelper;
+import com.genersoft.iot.vmp.utils.ListCountCache;
+import com.genersoft.iot.vmp.utils.PageCursor;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.github.pagehelper.PageInfo;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,8 +20,11 @@ import org.springframework.util.Assert;
 
 import javax.sip.InvalidArgumentException;
 import javax.sip.SipException;
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author lin
@@ -49,150 +55,299 @@ public class PlatformChannelServiceImpl implements IPlatformChannelService {
     @Autowired
     private ISIPCommanderForPlatform sipCommanderFroPlatform;
 
+    @Autowired
+    private ListCountCache listCountCache;
+
 
     @Override
     public PageInfo<PlatformChannel> queryChannelList(int page, int count, String query, Integer channelType, Boolean online, Integer platformId, Boolean hasShare) {
-        PageHelper.startPage(page, count);
         if (query != null) {
             query = query.replaceAll("/", "//")
                     .replaceAll("%", "/%")
                     .replaceAll("_", "/_");
         }
-        List<PlatformChannel> all = platformChannelMapper.queryForPlatformForWebList(platformId, query, channelType, online, hasShare);
-        return new PageInfo<>(all);
+        String finalQuery = query;
+        return listCountCache.page("platformChannel:" + platformId + ":" + query + ":" + channelType + ":" + online + ":" + hasShare, page, count,
+                () -> platformChannelMapper.queryForPlatformForWebList(platformId, finalQuery, channelType, online, hasShare, null, null));
+    }
+
+    @Override
+    public CursorPageInfo<PlatformChannel> queryChannelListByCursor(String cursor, int count, String query, Integer channelType, Boolean online, Integer platformId, Boolean hasShare) {
+        count = CursorPageInfo.limitCount(count);
+        Integer lastId = PageCursor.decodeId(cursor);
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        String finalQuery = query;
+        long total = listCountCache.count("platformChannel:" + platformId + ":" + query + ":" + channelType + ":" + online + ":" + hasShare,
+                () -> platformChannelMapper.queryForPlatformForWebList(platformId, finalQuery, channelType, online, hasShare, null, null));
+        List<PlatformChannel> rows = platformChannelMapper.queryForPlatformForWebList(platformId, query, channelType, online, hasShare, lastId, count + 1);
+        return CursorPageInfo.of(rows, count, total, channel -> PageCursor.encode(channel.getGbId()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportChannelList(String query, Integer channelType, Boolean online, Integer platformId, Boolean hasShare, Consumer<PlatformChannel> consumer) {
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        try (Cursor<PlatformChannel> cursor = platformChannelMapper.queryForPlatformForExport(platformId, query, channelType, online, hasShare)) {
+            cursor.forEach(consumer);
+        } catch (IOException e) {
+            log.error("[导出上级平台通道列表] 关闭游标失败", e);
+        }
     }
 
     /**
-     * 获取通道使用的分组中未分享的
+     * 单条语句处理的最大数据量
      */
-    @Transactional
-    public Set<Group> getGroupNotShareByChannelList(List<CommonGBChannel> channelList, Integer platformId) {
-        // 获取分组中未分享的节点
-        Set<Group> groupList = groupMapper.queryNotShareGroupForPlatformByChannelList(channelList, platformId);
-        // 获取这些节点的所有父节点
-        if (groupList.isEmpty()) {
-            return new HashSet<>();
+    private static final int BATCH_LIMIT = 1000;
+
+    private Map<Integer, Group> getGroupMap() {
+        Map<Integer, Group> groupMap = new HashMap<>();
+        for (Group group : groupMapper.query(null, null, null)) {
+            groupMap.put(group.getId(), group);
+        }
+        return groupMap;
+    }
+
+    private Map<Integer, Region> getRegionMap() {
+        Map<Integer, Region> regionMap = new HashMap<>();
+        for (Region region : regionMapper.query(null, null)) {
+            regionMap.put(region.getId(), region);
         }
-        Set<Group> allGroup = getAllGroup(groupList);
-        allGroup.addAll(groupList);
-        // 获取全部节点中未分享的
-        return groupMapper.queryNotShareGroupForPlatformByGroupList(allGroup, platformId);
+        return regionMap;
     }
 
     /**
-     * 获取通道使用的分组中未分享的
+     * 获取节点以及其所有父节点的id, 在内存中完成, 与树的深度无关
      */
-    private Set<Region> getRegionNotShareByChannelList(List<CommonGBChannel> channelList, Integer platformId) {
-        // 获取分组中未分享的节点
-        Set<Region> regionSet = regionMapper.queryNotShareRegionForPlatformByChannelList(channelList, platformId);
-        // 获取这些节点的所有父节点
-        if (regionSet.isEmpty()) {
-            return new HashSet<>();
+    private static <T> Set<Integer> withParents(Collection<Integer> ids, Map<Integer, T> nodeMap, Function<T, Integer> parentGetter) {
+        Set<Integer> result = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>(ids);
+        while (!stack.isEmpty()) {
+            Integer id = stack.pop();
+            // 已经处理过的节点不再向上查找, 同时避免错误数据形成环时死循环
+            if (id == null || !result.add(id)) {
+                continue;
+            }
+            T node = nodeMap.get(id);
+            if (node != null && parentGetter.apply(node) != null) {
+                stack.push(parentGetter.apply(node));
+            }
         }
-        Set<Region> allRegion = getAllRegion(regionSet);
-        allRegion.addAll(regionSet);
-        // 获取全部节点中未分享的
-        return regionMapper.queryNotShareRegionForPlatformByRegionList(allRegion, platformId);
+        return result;
     }
 
     /**
-     * 移除空的共享，并返回移除的分组
+     * 共享通道使用的分组以及其所有的父节点, 返回新共享的分组
      */
-    @Transactional
-    public Set<Group> deleteEmptyGroup(Set<Group> groupSet, Integer platformId) {
-        Iterator<Group> iterator = groupSet.iterator();
-        while (iterator.hasNext()) {
-            Group group = iterator.next();
-            // groupSet 为当前通道直接使用的分组，如果已经没有子分组与其他的通道，则可以移除
-            // 获取分组子节点
-            Set<Group> children = platformChannelMapper.queryShareChildrenGroup(group.getId(), platformId);
-            if (!children.isEmpty()) {
-                iterator.remove();
-                continue;
+    private List<Group> shareGroupByChannelList(List<CommonGBChannel> channelList, Map<Integer, Group> groupMap, Integer platformId) {
+        Set<String> parentIds = new HashSet<>();
+        for (CommonGBChannel channel : channelList) {
+            if (channel.getGbParentId() != null) {
+                parentIds.add(channel.getGbParentId());
             }
-            // 获取分组关联的通道
-            List<CommonGBChannel> channelList = commonGBChannelMapper.queryShareChannelByParentId(group.getDeviceId(), platformId);
-            if (!channelList.isEmpty()) {
-                iterator.remove();
-                continue;
+        }
+        if (parentIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Integer> useIds = new HashSet<>();
+        for (Group group : groupMap.values()) {
+            if (parentIds.contains(group.getDeviceId())) {
+                useIds.add(group.getId());
             }
-            platformChannelMapper.removePlatformGroupById(group.getId(), platformId);
         }
-        // 如果空了，说明没有通道需要处理了
-        if (groupSet.isEmpty()) {
-            return new HashSet<>();
+        Set<Integer> allIds = withParents(useIds, groupMap, Group::getParentId);
+        allIds.removeAll(platformChannelMapper.queryShareGroupIds(platformId));
+        List<Group> addList = new ArrayList<>();
+        for (Integer id : allIds) {
+            Group group = groupMap.get(id);
+            if (group != null) {
+                addList.add(group);
+            }
         }
-        Set<Group> parent =  platformChannelMapper.queryShareParentGroupByGroupSet(groupSet, platformId);
-        if (parent.isEmpty()) {
-            return groupSet;
-        }else {
-            Set<Group> parentGroupSet = deleteEmptyGroup(parent, platformId);
-            groupSet.addAll(parentGroupSet);
-            return groupSet;
+        for (int i = 0; i < addList.size(); i += BATCH_LIMIT) {
+            platformChannelMapper.addPlatformGroup(addList.subList(i, Math.min(i + BATCH_LIMIT, addList.size())), platformId);
         }
+        return addList;
     }
 
     /**
-     * 移除空的共享，并返回移除的行政区划
+     * 共享通道使用的行政区划以及其所有的父节点, 返回新共享的行政区划
      */
-    private Set<Region> deleteEmptyRegion(Set<Region> regionSet, Integer platformId) {
-        Iterator<Region> iterator = regionSet.iterator();
-        while (iterator.hasNext()) {
-            Region region = iterator.next();
-            // groupSet 为当前通道直接使用的分组，如果已经没有子分组与其他的通道，则可以移除
-            // 获取分组子节点
-            Set<Region> children = platformChannelMapper.queryShareChildrenRegion(region.getDeviceId(), platformId);
-            if (!children.isEmpty()) {
-                iterator.remove();
-                continue;
+    private List<Region> shareRegionByChannelList(List<CommonGBChannel> channelList, Map<Integer, Region> regionMap, Integer platformId) {
+        Set<String> civilCodes = new HashSet<>();
+        for (CommonGBChannel channel : channelList) {
+            if (channel.getGbCivilCode() != null) {
+                civilCodes.add(channel.getGbCivilCode());
             }
-            // 获取分组关联的通道
-            List<CommonGBChannel> channelList = commonGBChannelMapper.queryShareChannelByCivilCode(region.getDeviceId(), platformId);
-            if (!channelList.isEmpty()) {
-                iterator.remove();
-                continue;
+        }
+        if (civilCodes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Integer> useIds = new HashSet<>();
+        for (Region region : regionMap.values()) {
+            if (civilCodes.contains(region.getDeviceId())) {
+                useIds.add(region.getId());
             }
-            platformChannelMapper.removePlatformRegionById(region.getId(), platformId);
         }
-        // 如果空了，说明没有通道需要处理了
-        if (regionSet.isEmpty()) {
-            return new HashSet<>();
+        Set<Integer> allIds = withParents(useIds, regionMap, Region::getParentId);
+        allIds.removeAll(platformChannelMapper.queryShareRegionIds(platformId));
+        List<Region> addList = new ArrayList<>();
+        for (Integer id : allIds) {
+            Region region = regionMap.get(id);
+            if (region != null) {
+                addList.add(region);
+            }
         }
-        Set<Region> parent =  platformChannelMapper.queryShareParentRegionByRegionSet(regionSet, platformId);
-        if (parent.isEmpty()) {
-            return regionSet;
-        }else {
-            Set<Region> parentGroupSet = deleteEmptyRegion(parent, platformId);
-            regionSet.addAll(parentGroupSet);
-            return regionSet;
+        for (int i = 0; i < addList.size(); i += BATCH_LIMIT) {
+            platformChannelMapper.addPlatformRegion(addList.subList(i, Math.min(i + BATCH_LIMIT, addList.size())), platformId);
         }
+        return addList;
     }
 
-    private Set<Group> getAllGroup(Set<Group> groupList ) {
+    /**
+     * 获取通道直接使用的分组
+     */
+    private List<Group> getGroupByChannelList(List<CommonGBChannel> channelList, Map<Integer, Group> groupMap) {
+        Set<String> parentIds = new HashSet<>();
+        for (CommonGBChannel channel : channelList) {
+            if (channel.getGbParentId() != null) {
+                parentIds.add(channel.getGbParentId());
+            }
+        }
+        List<Group> groupList = new ArrayList<>();
+        for (Group group : groupMap.values()) {
+            if (parentIds.contains(group.getDeviceId())) {
+                groupList.add(group);
+            }
+        }
+        return groupList;
+    }
+
+    /**
+     * 获取通道直接使用的行政区划
+     */
+    private List<Region> getRegionByChannelList(List<CommonGBChannel> channelList, Map<Integer, Region> regionMap) {
+        Set<String> civilCodes = new HashSet<>();
+        for (CommonGBChannel channel : channelList) {
+            if (channel.getGbCivilCode() != null) {
+                civilCodes.add(channel.getGbCivilCode());
+            }
+        }
+        List<Region> regionList = new ArrayList<>();
+        for (Region region : regionMap.values()) {
+            if (civilCodes.contains(region.getDeviceId())) {
+                regionList.add(region);
+            }
+        }
+        return regionList;
+    }
+
+    /**
+     * 移除空的共享，并返回移除的分组
+     * groupList 中的分组以及其已共享的父节点为待检查的节点, 仍被共享通道使用的分组、未参与检查的共享分组以及它们的所有父节点需要保留,
+     * 其余的待检查节点一次性移除
+     */
+    private List<Group> deleteEmptyGroup(Collection<Group> groupList, Map<Integer, Group> groupMap, Integer platformId) {
         if (groupList.isEmpty()) {
-            return new HashSet<>();
+            return new ArrayList<>();
         }
-        Set<Group> channelList = groupMapper.queryParentInChannelList(groupList);
-        if (channelList.isEmpty()) {
-            return channelList;
+        Set<Integer> shareIds = platformChannelMapper.queryShareGroupIds(platformId);
+        Map<Integer, Group> checkMap = new HashMap<>();
+        Set<Integer> parentIds = new HashSet<>();
+        for (Group group : groupList) {
+            checkMap.put(group.getId(), group);
+            if (group.getParentId() != null) {
+                parentIds.add(group.getParentId());
+            }
         }
-        Set<Group> allParentRegion = getAllGroup(channelList);
-        channelList.addAll(allParentRegion);
-        return channelList;
+        for (Integer id : withParents(parentIds, groupMap, Group::getParentId)) {
+            if (shareIds.contains(id) && groupMap.containsKey(id) && !checkMap.containsKey(id)) {
+                checkMap.put(id, groupMap.get(id));
+            }
+        }
+        Set<String> useDeviceIds = platformChannelMapper.queryShareChannelParentIds(platformId);
+        Set<Integer> keepIds = new HashSet<>();
+        for (Group group : groupMap.values()) {
+            if (useDeviceIds.contains(group.getDeviceId())
+                    || (shareIds.contains(group.getId()) && !checkMap.containsKey(group.getId()))) {
+                keepIds.add(group.getId());
+            }
+        }
+        keepIds = withParents(keepIds, groupMap, Group::getParentId);
+        List<Group> deleteList = new ArrayList<>();
+        for (Group group : checkMap.values()) {
+            if (!keepIds.contains(group.getId())) {
+                deleteList.add(group);
+            }
+        }
+        for (int i = 0; i < deleteList.size(); i += BATCH_LIMIT) {
+            platformChannelMapper.removePlatformGroup(deleteList.subList(i, Math.min(i + BATCH_LIMIT, deleteList.size())), platformId);
+        }
+        return deleteList;
     }
 
-    private Set<Region> getAllRegion(Set<Region> regionSet ) {
-        if (regionSet.isEmpty()) {
-            return new HashSet<>();
+    /**
+     * 移除空的共享，并返回移除的行政区划, 处理方式与分组相同
+     */
+    private List<Region> deleteEmptyRegion(Collection<Region> regionList, Map<Integer, Region> regionMap, Integer platformId) {
+        if (regionList.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Set<Integer> shareIds = platformChannelMapper.queryShareRegionIds(platformId);
+        Map<Integer, Region> checkMap = new HashMap<>();
+        Set<Integer> parentIds = new HashSet<>();
+        for (Region region : regionList) {
+            checkMap.put(region.getId(), region);
+            if (region.getParentId() != null) {
+                parentIds.add(region.getParentId());
+            }
+        }
+        for (Integer id : withParents(parentIds, regionMap, Region::getParentId)) {
+            if (shareIds.contains(id) && regionMap.containsKey(id) && !checkMap.containsKey(id)) {
+                checkMap.put(id, regionMap.get(id));
+            }
+        }
+        Set<String> useCivilCodes = platformChannelMapper.queryShareChannelCivilCodes(platformId);
+        Set<Integer> keepIds = new HashSet<>();
+        for (Region region : regionMap.values()) {
+            if (useCivilCodes.contains(region.getDeviceId())
+                    || (shareIds.contains(region.getId()) && !checkMap.containsKey(region.getId()))) {
+                keepIds.add(region.getId());
+            }
+        }
+        keepIds = withParents(keepIds, regionMap, Region::getParentId);
+        List<Region> deleteList = new ArrayList<>();
+        for (Region region : checkMap.values()) {
+            if (!keepIds.contains(region.getId())) {
+                deleteList.add(region);
+            }
+        }
+        for (int i = 0; i < deleteList.size(); i += BATCH_LIMIT) {
+            platformChannelMapper.removePlatformRegion(deleteList.subList(i, Math.min(i + BATCH_LIMIT, deleteList.size())), platformId);
         }
+        return deleteList;
+    }
 
-        Set<Region> channelList = regionMapper.queryParentInChannelList(regionSet);
-        if (channelList.isEmpty()) {
-            return channelList;
+    /**
+     * 构建目录通知的通道列表, 分组与行政区划节点在前, 通道在后
+     */
+    private List<CommonGBChannel> buildCatalogList(List<Region> regionList, List<Group> groupList, List<CommonGBChannel> channelList) {
+        List<CommonGBChannel> result = new ArrayList<>(regionList.size() + groupList.size() + channelList.size());
+        for (Region region : regionList) {
+            result.add(CommonGBChannel.build(region));
         }
-        Set<Region> allParentRegion = getAllRegion(channelList);
-        channelList.addAll(allParentRegion);
-        return channelList;
+        for (Group group : groupList) {
+            result.add(CommonGBChannel.build(group));
+        }
+        result.addAll(channelList);
+        return result;
     }
 
     @Override
@@ -217,44 +372,28 @@ public class PlatformChannelServiceImpl implements IPlatformChannelService {
         if (platform == null) {
             return 0;
         }
-        int result = platformChannelMapper.addChannels(platformId, channelList);
+        int result = 0;
+        for (int i = 0; i < channelList.size(); i += BATCH_LIMIT) {
+            result += platformChannelMapper.addChannels(platformId, channelList.subList(i, Math.min(i + BATCH_LIMIT, channelList.size())));
+        }
         if (result > 0) {
-            // 查询通道相关的行政区划信息是否共享，如果没共享就添加
-            Set<Region> regionListNotShare =  getRegionNotShareByChannelList(channelList, platformId);
-            if (!regionListNotShare.isEmpty()) {
-                int addGroupResult = platformChannelMapper.addPlatformRegion(new ArrayList<>(regionListNotShare), platformId);
-                if (addGroupResult > 0) {
-                    for (Region region : regionListNotShare) {
-                        // 分组信息排序时需要将顶层排在最后
-                        channelList.add(0, CommonGBChannel.build(region));
-                    }
-                }
-            }
-
-            // 查询通道相关的分组信息是否共享，如果没共享就添加
-            Set<Group> groupListNotShare =  getGroupNotShareByChannelList(channelList, platformId);
-            if (!groupListNotShare.isEmpty()) {
-                int addGroupResult = platformChannelMapper.addPlatformGroup(new ArrayList<>(groupListNotShare), platformId);
-                if (addGroupResult > 0) {
-                    for (Group group : groupListNotShare) {
-                        // 分组信息排序时需要将顶层排在最后
-                        channelList.add(0, CommonGBChannel.build(group));
-                    }
-                }
-            }
-
+            // 通道相关的行政区划与分组以及它们的父节点如果没共享就添加
+            List<Region> regionListForAdd = shareRegionByChannelList(channelList, getRegionMap(), platformId);
+            List<Group> groupListForAdd = shareGroupByChannelList(channelList, getGroupMap(), platformId);
+            List<CommonGBChannel> channelListForEvent = buildCatalogList(regionListForAdd, groupListForAdd, channelList);
             // 发送消息
             try {
                 // 发送catalog
-                eventPublisher.catalogEventPublish(platform, channelList, CatalogEvent.ADD);
+                eventPublisher.catalogEventPublish(platform, channelListForEvent, CatalogEvent.ADD);
             } catch (Exception e) {
-                log.warn("[关联通道] 发送失败，数量：{}", channelList.size(), e);
+                log.warn("[关联通道] 发送失败，数量：{}", channelListForEvent.size(), e);
             }
         }
         return result;
     }
 
     @Override
+    @Transactional
     public int removeAllChannel(Integer platformId) {
         Platform platform = platformMapper.query(platformId);
         if (platform == null) {
@@ -263,36 +402,31 @@ public class PlatformChannelServiceImpl implements IPlatformChannelService {
 
         List<CommonGBChannel> channelListShare = platformChannelMapper.queryShare(platformId,  null);
         Assert.notEmpty(channelListShare, "未共享任何通道");
-        int result = platformChannelMapper.removeChannelsWithPlatform(platformId, channelListShare);
+        int result = platformChannelMapper.removeChannelsWithPlatform(platformId, null);
         if (result > 0) {
-            // 查询通道相关的分组信息
-            Set<Region> regionSet = regionMapper.queryByChannelList(channelListShare);
-            Set<Region> deleteRegion = deleteEmptyRegion(regionSet, platformId);
-            if (!deleteRegion.isEmpty()) {
-                for (Region region : deleteRegion) {
-                    channelListShare.add(0, CommonGBChannel.build(region));
-                }
-            }
-
-            // 查询通道相关的分组信息
-            Set<Group> groupSet = groupMapper.queryByChannelList(channelListShare);
-            Set<Group> deleteGroup = deleteEmptyGroup(groupSet, platformId);
-            if (!deleteGroup.isEmpty()) {
-                for (Group group : deleteGroup) {
-                    channelListShare.add(0, CommonGBChannel.build(group));
-                }
-            }
+            List<CommonGBChannel> channelListForEvent = deleteEmptyByChannelList(platformId, channelListShare);
             // 发送消息
             try {
                 // 发送catalog
-                eventPublisher.catalogEventPublish(platform, channelListShare, CatalogEvent.DEL);
+                eventPublisher.catalogEventPublish(platform, channelListForEvent, CatalogEvent.DEL);
             } catch (Exception e) {
-                log.warn("[移除全部关联通道] 发送失败，数量：{}", channelListShare.size(), e);
+                log.warn("[移除全部关联通道] 发送失败，数量：{}", channelListForEvent.size(), e);
             }
         }
         return result;
     }
 
+    /**
+     * 通道移除后清理不再使用的行政区划与分组, 返回用于目录通知的通道列表
+     */
+    private List<CommonGBChannel> deleteEmptyByChannelList(Integer platformId, List<CommonGBChannel> channelList) {
+        Map<Integer, Region> regionMap = getRegionMap();
+        List<Region> deleteRegion = deleteEmptyRegion(getRegionByChannelList(channelList, regionMap), regionMap, platformId);
+        Map<Integer, Group> groupMap = getGroupMap();
+        List<Group> deleteGroup = deleteEmptyGroup(getGroupByChannelList(channelList, groupMap), groupMap, platformId);
+        return buildCatalogList(deleteRegion, deleteGroup, channelList);
+    }
+
     @Override
     @Transactional
     public void addChannelByDevice(Integer platformId, List<Integer> deviceIds) {
@@ -313,31 +447,18 @@ public class PlatformChannelServiceImpl implements IPlatformChannelService {
         if (platform == null) {
             return 0;
         }
-        int result = platformChannelMapper.removeChannelsWithPlatform(platformId, channelList);
+        int result = 0;
+        for (int i = 0; i < channelList.size(); i += BATCH_LIMIT) {
+            result += platformChannelMapper.removeChannelsWithPlatform(platformId, channelList.subList(i, Math.min(i + BATCH_LIMIT, channelList.size())));
+        }
         if (result > 0) {
-            // 查询通道相关的分组信息
-            Set<Region> regionSet = regionMapper.queryByChannelList(channelList);
-            Set<Region> deleteRegion = deleteEmptyRegion(regionSet, platformId);
-            if (!deleteRegion.isEmpty()) {
-                for (Region region : deleteRegion) {
-                    channelList.add(0, CommonGBChannel.build(region));
-                }
-            }
-
-            // 查询通道相关的分组信息
-            Set<Group> groupSet = groupMapper.queryByChannelList(channelList);
-            Set<Group> deleteGroup = deleteEmptyGroup(groupSet, platformId);
-            if (!deleteGroup.isEmpty()) {
-                for (Group group : deleteGroup) {
-                    channelList.add(0, CommonGBChannel.build(group));
-                }
-            }
+            List<CommonGBChannel> channelListForEvent = deleteEmptyByChannelList(platformId, channelList);
             // 发送消息
             try {
                 // 发送catalog
-                eventPublisher.catalogEventPublish(platform, channelList, CatalogEvent.DEL);
+                eventPublisher.catalogEventPublish(platform, channelListForEvent, CatalogEvent.DEL);
             } catch (Exception e) {
-                log.warn("[移除关联通道] 发送失败，数量：{}", channelList.size(), e);
+                log.warn("[移除关联通道] 发送失败，数量：{}", channelListForEvent.size(), e);
             }
         }
         return result;
@@ -461,28 +582,31 @@ public class PlatformChannelServiceImpl implements IPlatformChannelService {
         if (platformList.isEmpty()) {
             return;
         }
+        Map<Integer, Group> groupMap = getGroupMap();
         for (Platform platform : platformList) {
-            Set<Group> groupSet;
+            Collection<Group> groupSet;
             if (groupList == null || groupList.isEmpty()) {
-                groupSet = platformChannelMapper.queryShareGroup(platform.getId());
+                groupSet = new ArrayList<>();
+                for (Integer id : platformChannelMapper.queryShareGroupIds(platform.getId())) {
+                    if (groupMap.containsKey(id)) {
+                        groupSet.add(groupMap.get(id));
+                    }
+                }
             }else {
-                groupSet = new HashSet<>(groupList);
+                groupSet = groupList;
             }
             // 清理空的分组并发送消息
-            Set<Group> deleteGroup = deleteEmptyGroup(groupSet, platform.getId());
-
-            List<CommonGBChannel> channelListForEvent = new ArrayList<>();
-            if (!deleteGroup.isEmpty()) {
-                for (Group group : deleteGroup) {
-                    channelListForEvent.add(0, CommonGBChannel.build(group));
-                }
+            List<Group> deleteGroup = deleteEmptyGroup(groupSet, groupMap, platform.getId());
+            if (deleteGroup.isEmpty()) {
+                continue;
             }
+            List<CommonGBChannel> channelListForEvent = buildCatalogList(new ArrayList<>(), deleteGroup, new ArrayList<>());
             // 发送消息
             try {
                 // 发送catalog
                 eventPublisher.catalogEventPublish(platform, channelListForEvent, CatalogEvent.DEL);
             } catch (Exception e) {
-                log.warn("[移除关联通道] 发送失败，数量：{}", channelList.size(), e);
+                log.warn("[移除关联通道] 发送失败，数量：{}", channelListForEvent.size(), e);
             }
         }
     }
@@ -499,28 +623,31 @@ public class PlatformChannelServiceImpl implements IPlatformChannelService {
         if (platformList.isEmpty()) {
             return;
         }
+        Map<Integer, Region> regionMap = getRegionMap();
         for (Platform platform : platformList) {
-            Set<Region> regionSet;
+            Collection<Region> regionSet;
             if (regionList == null || regionList.isEmpty()) {
-                regionSet = platformChannelMapper.queryShareRegion(platform.getId());
+                regionSet = new ArrayList<>();
+                for (Integer id : platformChannelMapper.queryShareRegionIds(platform.getId())) {
+                    if (regionMap.containsKey(id)) {
+                        regionSet.add(regionMap.get(id));
+                    }
+                }
             }else {
-                regionSet = new HashSet<>(regionList);
+                regionSet = regionList;
             }
-            // 清理空的分组并发送消息
-            Set<Region> deleteRegion = deleteEmptyRegion(regionSet, platform.getId());
-
-            List<CommonGBChannel> channelListForEvent = new ArrayList<>();
-            if (!deleteRegion.isEmpty()) {
-                for (Region region : deleteRegion) {
-                    channelListForEvent.add(0, CommonGBChannel.build(region));
-                }
+            // 清理空的行政区划并发送消息
+            List<Region> deleteRegion = deleteEmptyRegion(regionSet, regionMap, platform.getId());
+            if (deleteRegion.isEmpty()) {
+                continue;
             }
+            List<CommonGBChannel> channelListForEvent = buildCatalogList(deleteRegion, new ArrayList<>(), new ArrayList<>());
             // 发送消息
             try {
                 // 发送catalog
                 eventPublisher.catalogEventPublish(platform, channelListForEvent, CatalogEvent.DEL);
             } catch (Exception e) {
-                log.warn("[移除关联通道] 发送失败，数量：{}", channelList.size(), e);
+                log.warn("[移除关联通道] 发送失败，数量：{}", channelListForEvent.size(), e);
             }
         }
     }
@@ -536,23 +663,19 @@ public class PlatformChannelServiceImpl implements IPlatformChannelService {
         if (platformList.isEmpty()) {
             return;
         }
+        Map<Integer, Group> groupMap = getGroupMap();
         for (Platform platform : platformList) {
-
-            Set<Group> addGroup =  getGroupNotShareByChannelList(channelList, platform.getId());
-
-            List<CommonGBChannel> channelListForEvent = new ArrayList<>();
-            if (!addGroup.isEmpty()) {
-                for (Group group : addGroup) {
-                    channelListForEvent.add(0, CommonGBChannel.build(group));
-                }
-                platformChannelMapper.addPlatformGroup(addGroup, platform.getId());
-                // 发送消息
-                try {
-                    // 发送catalog
-                    eventPublisher.catalogEventPublish(platform, channelListForEvent, CatalogEvent.ADD);
-                } catch (Exception e) {
-                    log.warn("[移除关联通道] 发送失败，数量：{}", channelList.size(), e);
-                }
+            List<Group> addGroup = shareGroupByChannelList(channelList, groupMap, platform.getId());
+            if (addGroup.isEmpty()) {
+                continue;
+            }
+            List<CommonGBChannel> channelListForEvent = buildCatalogList(new ArrayList<>(), addGroup, new ArrayList<>());
+            // 发送消息
+            try {
+                // 发送catalog
+                eventPublisher.catalogEventPublish(platform, channelListForEvent, CatalogEvent.ADD);
+            } catch (Exception e) {
+                log.warn("[关联通道] 发送失败，数量：{}", channelListForEvent.size(), e);
             }
         }
     }
@@ -567,22 +690,19 @@ public class PlatformChannelServiceImpl implements IPlatformChannelService {
         if (platformList.isEmpty()) {
             return;
         }
+        Map<Integer, Region> regionMap = getRegionMap();
         for (Platform platform : platformList) {
-
-            Set<Region> addRegion =  getRegionNotShareByChannelList(channelList, platform.getId());
-            List<CommonGBChannel> channelListForEvent = new ArrayList<>();
-            if (!addRegion.isEmpty()) {
-                for (Region region : addRegion) {
-                    channelListForEvent.add(0, CommonGBChannel.build(region));
-                }
-                platformChannelMapper.addPlatformRegion(new ArrayList<>(addRegion), platform.getId());
-                // 发送消息
-                try {
-                    // 发送catalog
-                    eventPublisher.catalogEventPublish(platform, channelListForEvent, CatalogEvent.ADD);
-                } catch (Exception e) {
-                    log.warn("[移除关联通道] 发送失败，数量：{}", channelList.size(), e);
-                }
+            List<Region> addRegion = shareRegionByChannelList(channelList, regionMap, platform.getId());
+            if (addRegion.isEmpty()) {
+                continue;
+            }
+            List<CommonGBChannel> channelListForEvent = buildCatalogList(addRegion, new ArrayList<>(), new ArrayList<>());
+            // 发送消息
+            try {
+                // 发送catalog
+                eventPublisher.catalogEventPublish(platform, channelListForEvent, CatalogEvent.ADD);
+            } catch (Exception e) {
+                log.warn("[关联通道] 发送失败，数量：{}", channelListForEvent.size(), e);
             }
         }
     }
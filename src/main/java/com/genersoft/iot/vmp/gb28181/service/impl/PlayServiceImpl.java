@@ -14,6 +14,7 @@ import com.genersoft.iot.vmp.gb28181.service.*;
 import com.genersoft.iot.vmp.gb28181.session.AudioBroadcastManager;
 import com.genersoft.iot.vmp.gb28181.session.SSRCFactory;
 import com.genersoft.iot.vmp.gb28181.session.SipInviteSessionManager;
+import com.genersoft.iot.vmp.gb28181.session.WarmStreamPool;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommander;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommanderForPlatform;
 import com.genersoft.iot.vmp.gb28181.utils.SipUtils;
@@ -128,6 +129,9 @@ public class PlayServiceImpl implements IPlayService {
     @Autowired
     private IRedisRpcPlayService redisRpcPlayService;
 
+    @Autowired
+    private WarmStreamPool warmStreamPool;
+
     /**
      * 流到来的处理
      */
@@ -303,7 +307,12 @@ public class PlayServiceImpl implements IPlayService {
             log.warn("[点播] 未找到可用的zlm deviceId: {},channelId:{}", device.getDeviceId(), channel.getDeviceId());
             throw new ControllerException(ErrorCode.ERROR100.getCode(), "未找到可用的zlm");
         }
-        play(mediaServerItem, device, channel, null, userSetting.getRecordSip(), callback);
+        play(mediaServerItem, device, channel, null, userSetting.getRecordSip(), true, callback);
+    }
+
+    @Override
+    public void prefetch(MediaServer mediaServerItem, Device device, DeviceChannel channel, ErrorCallback<StreamInfo> callback) {
+        play(mediaServerItem, device, channel, null, userSetting.getRecordSip(), false, callback);
     }
 
     @Override
@@ -323,11 +332,14 @@ public class PlayServiceImpl implements IPlayService {
             throw new ControllerException(ErrorCode.ERROR100.getCode(), "未找到通道");
         }
 
-        return play(mediaServerItem, device, channel, ssrc, userSetting.getRecordSip(), callback);
+        return play(mediaServerItem, device, channel, ssrc, userSetting.getRecordSip(), true, callback);
     }
 
+    /**
+     * @param recordView 是否计入通道热度, 预热池发起的预拉流不计入
+     */
     private SSRCInfo play(MediaServer mediaServerItem, Device device, DeviceChannel channel, String ssrc, Boolean record,
-                          ErrorCallback<StreamInfo> callback) {
+                          boolean recordView, ErrorCallback<StreamInfo> callback) {
         if (mediaServerItem == null ) {
             if (callback != null) {
                 callback.run(InviteErrorCode.ERROR_FOR_PARAMETER_ERROR.getCode(),
@@ -336,6 +348,9 @@ public class PlayServiceImpl implements IPlayService {
             }
             return null;
         }
+        if (recordView) {
+            warmStreamPool.recordView(channel.getId());
+        }
 
         InviteInfo inviteInfoInCatch = inviteStreamService.getInviteInfoByDeviceAndChannel(InviteSessionType.PLAY, channel.getId());
         if (inviteInfoInCatch != null ) {
@@ -379,6 +394,10 @@ public class PlayServiceImpl implements IPlayService {
             }
         }
 
+        // 预热池已占满该节点的带宽预算时, 为新的点播让出资源
+        if (warmStreamPool.isFull(mediaServerItem.getId())) {
+            warmStreamPool.reclaim(mediaServerItem.getId());
+        }
         String streamId = String.format("%s_%s", device.getDeviceId(), channel.getDeviceId());
         int tcpMode = device.getStreamMode().equals("TCP-ACTIVE")? 2: (device.getStreamMode().equals("TCP-PASSIVE")? 1:0);
         RTPServerParam rtpServerParam = new RTPServerParam();
@@ -1744,7 +1763,7 @@ public class PlayServiceImpl implements IPlayService {
             log.warn("[点播] 未找到可用的zlm deviceId: {},channelId:{}", device.getDeviceId(), deviceChannel.getDeviceId());
             throw new ControllerException(ErrorCode.ERROR100.getCode(), "未找到可用的zlm");
         }
-        play(mediaServerItem, device, deviceChannel, null, record, callback);
+        play(mediaServerItem, device, deviceChannel, null, record, true, callback);
 
     }
 
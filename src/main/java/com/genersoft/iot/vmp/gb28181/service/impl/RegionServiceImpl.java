@@ -5,12 +5,12 @@ import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.gb28181.bean.CommonGBChannel;
 import com.genersoft.iot.vmp.gb28181.bean.Region;
 import com.genersoft.iot.vmp.gb28181.bean.RegionTree;
-import com.genersoft.iot.vmp.gb28181.dao.CommonGBChannelMapper;
 import com.genersoft.iot.vmp.gb28181.dao.RegionMapper;
 import com.genersoft.iot.vmp.gb28181.event.EventPublisher;
 import com.genersoft.iot.vmp.gb28181.event.subscribe.catalog.CatalogEvent;
 import com.genersoft.iot.vmp.gb28181.service.IGbChannelService;
 import com.genersoft.iot.vmp.gb28181.service.IRegionService;
+import com.genersoft.iot.vmp.gb28181.session.ChannelTreeIndex;
 import com.genersoft.iot.vmp.utils.CivilCodeUtil;
 import com.genersoft.iot.vmp.utils.DateUtil;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
@@ -38,15 +38,15 @@ public class RegionServiceImpl implements IRegionService {
     @Autowired
     private RegionMapper regionMapper;
 
-    @Autowired
-    private CommonGBChannelMapper commonGBChannelMapper;
-
     @Autowired
     private IGbChannelService gbChannelService;
 
     @Autowired
     private EventPublisher eventPublisher;
 
+    @Autowired
+    private ChannelTreeIndex channelTreeIndex;
+
     @Override
     public void add(Region region) {
         Assert.hasLength(region.getName(), "名称必须存在");
@@ -58,6 +58,7 @@ public class RegionServiceImpl implements IRegionService {
         region.setUpdateTime(DateUtil.getNow());
         try {
             regionMapper.add(region);
+            channelTreeIndex.invalidateStructure();
         }catch (DuplicateKeyException e){
             throw new ControllerException(ErrorCode.ERROR100.getCode(), "此行政区划已存在");
         }
@@ -74,6 +75,7 @@ public class RegionServiceImpl implements IRegionService {
         // 设置使用这些节点的通道的civilCode为null,
         gbChannelService.removeCivilCode(allChildren);
         regionMapper.batchDelete(allChildren);
+        channelTreeIndex.invalidateStructure();
         return true;
     }
 
@@ -122,6 +124,7 @@ public class RegionServiceImpl implements IRegionService {
             regionMapper.updateChild(region.getId(), region.getDeviceId());
         }
         regionMapper.update(region);
+        channelTreeIndex.invalidateStructure();
         // 发送变化通知
         try {
             // 发送catalog
@@ -145,15 +148,7 @@ public class RegionServiceImpl implements IRegionService {
 
     @Override
     public List<RegionTree> queryForTree(Integer parent, Boolean hasChannel) {
-        List<RegionTree> regionList = regionMapper.queryForTree(parent);
-        if (parent != null && hasChannel != null && hasChannel) {
-            Region parentRegion = regionMapper.queryOne(parent);
-            if (parentRegion != null) {
-                List<RegionTree> channelList = commonGBChannelMapper.queryForRegionTreeByCivilCode(parentRegion.getDeviceId());
-                regionList.addAll(channelList);
-            }
-        }
-        return regionList;
+        return channelTreeIndex.queryRegionTree(parent, hasChannel);
     }
 
     @Override
@@ -197,10 +192,12 @@ public class RegionServiceImpl implements IRegionService {
         }
 
         regionMapper.batchAdd(new ArrayList<>(regionMapForVerification.values()));
+        channelTreeIndex.invalidateStructure();
     }
 
     @Override
     public boolean delete(int id) {
+        channelTreeIndex.invalidateStructure();
         return regionMapper.delete(id) > 0;
     }
 
@@ -225,6 +222,7 @@ public class RegionServiceImpl implements IRegionService {
             List<Region> regions = new ArrayList<>(regionMapForVerification.values());
             regionMapper.batchAdd(regions);
             regionMapper.updateParentId(regions);
+            channelTreeIndex.invalidateStructure();
         }
 
         return true;
@@ -232,30 +230,7 @@ public class RegionServiceImpl implements IRegionService {
 
     @Override
     public List<Region> getPath(String deviceId) {
-        Region region = regionMapper.queryByDeviceId(deviceId);
-        if (region == null) {
-            throw new ControllerException(ErrorCode.ERROR100.getCode(), "行政区划不存在");
-        }
-        List<Region> allParent = getAllParent(region);
-        allParent.add(region);
-        return allParent;
-    }
-
-
-    private List<Region> getAllParent(Region region) {
-        if (region.getParentId() == null) {
-            return new ArrayList<>();
-        }
-
-        List<Region> regionList = new LinkedList<>();
-        Region parent = regionMapper.queryByDeviceId(region.getParentDeviceId());
-        if (parent == null) {
-            return regionList;
-        }
-        regionList.add(parent);
-        List<Region> allParent = getAllParent(parent);
-        regionList.addAll(allParent);
-        return regionList;
+        return channelTreeIndex.getRegionPath(deviceId);
     }
 
     @Override
@@ -318,6 +293,7 @@ public class RegionServiceImpl implements IRegionService {
             regionMapper.add(region);
             parentId = region.getId();
         }
+        channelTreeIndex.invalidateStructure();
     }
 
     @Override
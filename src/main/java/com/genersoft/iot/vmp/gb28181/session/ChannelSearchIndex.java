@@ -0,0 +1,529 @@
+package com.genersoft.iot.vmp.gb28181.session;
+
+import com.genersoft.iot.vmp.common.enums.ChannelDataType;
+import com.genersoft.iot.vmp.conf.UserSetting;
+import com.genersoft.iot.vmp.gb28181.bean.ChannelSearchItem;
+import com.genersoft.iot.vmp.gb28181.bean.ChannelSearchResult;
+import com.genersoft.iot.vmp.gb28181.bean.CommonGBChannel;
+import com.genersoft.iot.vmp.gb28181.dao.CommonGBChannelMapper;
+import com.genersoft.iot.vmp.gb28181.event.subscribe.catalog.CatalogEvent;
+import com.genersoft.iot.vmp.utils.PinyinUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 通道搜索的内存索引
+ * 通道编号、名称、名称拼音首字母以及行政区划编号按三字组与二字组建立倒排索引, 倒排列表按ID升序且不重复,
+ * 关键字查询时从最短的倒排列表开始与其他列表求交集, 再逐个校验候选通道, 不再对通道表做 LIKE '%q%' 扫描, 单个字符的关键字直接按ID顺序扫描内存中的通道.
+ * 通用通道的变化通过catalog事件增量维护, 录制计划的关联由录制计划服务直接通知, 国标设备通道的变化按设备标记后由定时任务重新加载该设备的通道,
+ * 另外定时全量重建, 用于修正遗漏的变化并清理倒排列表中失效的数据.
+ * 长时间没有查询时释放索引, 索引未就绪时查询返回null, 由调用方直接查询数据库
+ */
+@Slf4j
+@Component
+public class ChannelSearchIndex {
+
+    /**
+     * 超过此时长没有查询则释放索引, 单位：毫秒
+     */
+    private static final long IDLE_TIMEOUT = 30 * 60 * 1000L;
+
+    /**
+     * 倒排索引的分词长度
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * 短关键字使用的分词长度, 与三字组存放在同一个索引中, 以最高位区分
+     */
+    private static final int BIGRAM_LENGTH = 2;
+
+    private static final long BIGRAM_FLAG = 1L << 48;
+
+    /**
+     * 每次重新加载的设备数量
+     */
+    private static final int DEVICE_BATCH = 500;
+
+    @Autowired
+    private CommonGBChannelMapper commonGBChannelMapper;
+
+    @Autowired
+    private UserSetting userSetting;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 全量加载期间收到的变化, 加载完成后在新的索引上重放
+     */
+    private List<Consumer<Snapshot>> pendingChanges;
+
+    /**
+     * 通道发生变化的国标设备, 值为设备数据库ID
+     */
+    private final Set<Integer> dirtyDevices = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean loadRequested;
+
+    private volatile long lastAccessTime;
+
+    private volatile long lastLoadTime;
+
+    /**
+     * 倒排列表, 按ID升序且不重复, 通道更新时只增加, 失效的数据在查询时校验排除, 全量重建时清理
+     */
+    private static class IntList {
+        private int[] data = new int[4];
+        private int size;
+
+        /**
+         * 加载时按ID顺序读取, 通常直接追加到末尾, 已存在时忽略
+         */
+        private void add(int value) {
+            int index = size;
+            if (size > 0 && data[size - 1] >= value) {
+                index = Arrays.binarySearch(data, 0, size, value);
+                if (index >= 0) {
+                    return;
+                }
+                index = -index - 1;
+            }
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            System.arraycopy(data, index, data, index + 1, size - index);
+            data[index] = value;
+            size++;
+        }
+
+        private boolean contains(int value) {
+            return Arrays.binarySearch(data, 0, size, value) >= 0;
+        }
+    }
+
+    private static class Snapshot {
+        private final TreeMap<Integer, ChannelSearchItem> itemMap = new TreeMap<>();
+        private final Map<Long, IntList> gramMap = new HashMap<>();
+        /**
+         * 国标设备下的通道, key为设备数据库ID
+         */
+        private final Map<Integer, Set<Integer>> deviceItemMap = new HashMap<>();
+        /**
+         * 倒排列表中失效的数据量
+         */
+        private long staleCount;
+    }
+
+    /**
+     * 按关键字查询通道, 结果按ID升序
+     * @param filter 关键字以外的查询条件
+     * @param lastId 上一页最后一条的ID, 不为空时按游标分页, 忽略page
+     * @return 索引未就绪时返回null
+     */
+    public ChannelSearchResult search(String query, Predicate<ChannelSearchItem> filter, Integer lastId, int page, int count) {
+        if (!userSetting.getChannelSearchIndex() || query == null) {
+            return null;
+        }
+        lastAccessTime = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            Snapshot current = snapshot;
+            if (current == null) {
+                loadRequested = true;
+                return null;
+            }
+            String keyword = query.toLowerCase();
+            List<Integer> matched = new ArrayList<>();
+            if (keyword.length() < BIGRAM_LENGTH) {
+                for (ChannelSearchItem item : current.itemMap.values()) {
+                    if (match(item, keyword, filter)) {
+                        matched.add(item.getId());
+                    }
+                }
+            }else {
+                List<IntList> lists = new ArrayList<>();
+                for (long gram : getGrams(keyword, Math.min(keyword.length(), GRAM_LENGTH))) {
+                    IntList list = current.gramMap.get(gram);
+                    if (list == null) {
+                        lists.clear();
+                        break;
+                    }
+                    lists.add(list);
+                }
+                if (!lists.isEmpty()) {
+                    // 从最短的列表开始, 在其他列表中二分查找求交集
+                    lists.sort(Comparator.comparingInt(list -> list.size));
+                    IntList candidates = lists.get(0);
+                    for (int i = 0; i < candidates.size; i++) {
+                        int id = candidates.data[i];
+                        if (!containsAll(lists, id)) {
+                            continue;
+                        }
+                        ChannelSearchItem item = current.itemMap.get(id);
+                        if (item != null && match(item, keyword, filter)) {
+                            matched.add(id);
+                        }
+                    }
+                }
+            }
+            int from;
+            if (lastId != null) {
+                int index = Collections.binarySearch(matched, lastId);
+                from = index >= 0 ? index + 1 : -index - 1;
+            }else {
+                from = Math.max(0, (page - 1) * count);
+            }
+            from = Math.min(from, matched.size());
+            ChannelSearchResult result = new ChannelSearchResult();
+            result.setTotal(matched.size());
+            result.setIds(new ArrayList<>(matched.subList(from, Math.min(from + count, matched.size()))));
+            return result;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 国标设备的通道发生变化, 由定时任务重新加载该设备的通道
+     */
+    public void invalidateDevice(Integer deviceDbId) {
+        if (deviceDbId != null && snapshot != null) {
+            dirtyDevices.add(deviceDbId);
+        }
+    }
+
+    /**
+     * 通道关联或者取消关联录制计划, 录制计划的变化没有catalog事件, 由录制计划服务调用
+     * @param planId 为空时取消关联
+     */
+    public void updateRecordPlan(Collection<Integer> channelIds, Integer planId) {
+        if (channelIds == null || channelIds.isEmpty()) {
+            return;
+        }
+        change(target -> {
+            for (Integer channelId : channelIds) {
+                ChannelSearchItem item = channelId != null ? target.itemMap.get(channelId) : null;
+                if (item != null) {
+                    item.setRecordPlanId(planId);
+                }
+            }
+        });
+    }
+
+    /**
+     * 批量修改录制计划的关联
+     * @param oldPlanId 为空时修改所有通道, 否则只修改关联了此录制计划的通道
+     * @param planId 为空时取消关联
+     */
+    public void replaceRecordPlan(Integer oldPlanId, Integer planId) {
+        change(target -> {
+            for (ChannelSearchItem item : target.itemMap.values()) {
+                if (oldPlanId == null || oldPlanId.equals(item.getRecordPlanId())) {
+                    item.setRecordPlanId(planId);
+                }
+            }
+        });
+    }
+
+    /**
+     * 通用通道变化时增量更新
+     */
+    @EventListener
+    public void onApplicationEvent(CatalogEvent event) {
+        if (event.getPlatform() != null || event.getChannels() == null || event.getChannels().isEmpty()) {
+            return;
+        }
+        change(target -> apply(target, event));
+    }
+
+    private void change(Consumer<Snapshot> change) {
+        lock.writeLock().lock();
+        try {
+            if (snapshot == null) {
+                return;
+            }
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+            change.accept(snapshot);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Async("taskExecutor")
+    @Scheduled(fixedDelay = 2000)
+    public void execute() {
+        if (!userSetting.getChannelSearchIndex() || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (snapshot == null) {
+                if (loadRequested) {
+                    loadRequested = false;
+                    load();
+                }
+                return;
+            }
+            if (now - lastAccessTime > IDLE_TIMEOUT) {
+                lock.writeLock().lock();
+                try {
+                    snapshot = null;
+                }finally {
+                    lock.writeLock().unlock();
+                }
+                dirtyDevices.clear();
+                log.info("[通道搜索索引] 长时间未使用, 释放索引");
+                return;
+            }
+            Snapshot current = snapshot;
+            if (now - lastLoadTime > userSetting.getChannelSearchRefreshInterval() * 1000L
+                    || current.staleCount > current.itemMap.size() * 2L + 100000) {
+                load();
+                return;
+            }
+            if (!dirtyDevices.isEmpty()) {
+                reloadDevices();
+            }
+        }catch (Exception e) {
+            log.error("[通道搜索索引] 更新失败", e);
+        }finally {
+            running.set(false);
+        }
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+        }finally {
+            lock.writeLock().unlock();
+        }
+        // 在加载之前清除, 加载期间再次标记的设备在下次执行时处理
+        dirtyDevices.clear();
+        Snapshot newSnapshot = new Snapshot();
+        try {
+            for (ChannelSearchItem item : commonGBChannelMapper.queryForSearch(null, null)) {
+                putItem(newSnapshot, item);
+            }
+        }catch (Exception e) {
+            lock.writeLock().lock();
+            try {
+                pendingChanges = null;
+            }finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Consumer<Snapshot> change : pendingChanges) {
+                change.accept(newSnapshot);
+            }
+            snapshot = newSnapshot;
+        }finally {
+            pendingChanges = null;
+            lock.writeLock().unlock();
+        }
+        lastLoadTime = System.currentTimeMillis();
+        if (lastAccessTime == 0) {
+            lastAccessTime = lastLoadTime;
+        }
+        log.info("[通道搜索索引] 加载完成, 通道： {}, 分词： {}, 耗时： {}ms", newSnapshot.itemMap.size(),
+                newSnapshot.gramMap.size(), lastLoadTime - start);
+    }
+
+    private void reloadDevices() {
+        List<Integer> deviceIds = new ArrayList<>(dirtyDevices);
+        dirtyDevices.removeAll(deviceIds);
+        for (int i = 0; i < deviceIds.size(); i += DEVICE_BATCH) {
+            List<Integer> subList = deviceIds.subList(i, Math.min(i + DEVICE_BATCH, deviceIds.size()));
+            List<ChannelSearchItem> itemList = commonGBChannelMapper.queryForSearch(ChannelDataType.GB28181, subList);
+            lock.writeLock().lock();
+            try {
+                Snapshot current = snapshot;
+                if (current == null) {
+                    return;
+                }
+                Set<Integer> currentIds = new HashSet<>();
+                for (ChannelSearchItem item : itemList) {
+                    currentIds.add(item.getId());
+                    putItem(current, item);
+                }
+                for (Integer deviceId : subList) {
+                    Set<Integer> ids = current.deviceItemMap.get(deviceId);
+                    if (ids == null) {
+                        continue;
+                    }
+                    for (Integer id : new ArrayList<>(ids)) {
+                        if (!currentIds.contains(id)) {
+                            removeItem(current, id);
+                        }
+                    }
+                }
+            }finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void apply(Snapshot target, CatalogEvent event) {
+        for (CommonGBChannel channel : event.getChannels()) {
+            if (channel == null || channel.getGbId() <= 0) {
+                continue;
+            }
+            ChannelSearchItem old = target.itemMap.get(channel.getGbId());
+            switch (event.getType()) {
+                case CatalogEvent.DEL:
+                    removeItem(target, channel.getGbId());
+                    break;
+                case CatalogEvent.ADD:
+                case CatalogEvent.UPDATE:
+                    if (channel.getGbDeviceId() == null) {
+                        break;
+                    }
+                    ChannelSearchItem item = new ChannelSearchItem();
+                    item.setId(channel.getGbId());
+                    item.setDeviceId(channel.getGbDeviceId());
+                    item.setName(channel.getGbName());
+                    item.setCivilCode(channel.getGbCivilCode());
+                    item.setParentDeviceId(channel.getGbParentId());
+                    item.setStatus(channel.getGbStatus() != null ? channel.getGbStatus() : (old != null ? old.getStatus() : null));
+                    item.setDataType(channel.getDataType() != null ? channel.getDataType() : (old != null ? old.getDataType() : null));
+                    item.setDataDeviceId(channel.getDataDeviceId() != null ? channel.getDataDeviceId() : (old != null ? old.getDataDeviceId() : null));
+                    item.setRecordPlanId(old != null ? old.getRecordPlanId() : null);
+                    putItem(target, item);
+                    break;
+                case CatalogEvent.ON:
+                case CatalogEvent.OFF:
+                    if (old != null) {
+                        old.setStatus(CatalogEvent.ON.equals(event.getType()) ? "ON" : "OFF");
+                    }
+                    break;
+                default:
+            }
+        }
+    }
+
+    private void putItem(Snapshot target, ChannelSearchItem item) {
+        item.setText(buildText(item));
+        ChannelSearchItem old = target.itemMap.put(item.getId(), item);
+        if (old != null) {
+            removeFromDevice(target, old);
+        }
+        if (item.getDataType() != null && item.getDataType() == ChannelDataType.GB28181 && item.getDataDeviceId() != null) {
+            target.deviceItemMap.computeIfAbsent(item.getDataDeviceId(), key -> new HashSet<>()).add(item.getId());
+        }
+        if (old != null && old.getText().equals(item.getText())) {
+            return;
+        }
+        Set<Long> grams = getAllGrams(item.getText());
+        if (old != null) {
+            for (long gram : getAllGrams(old.getText())) {
+                if (!grams.contains(gram)) {
+                    target.staleCount++;
+                }
+            }
+        }
+        for (long gram : grams) {
+            target.gramMap.computeIfAbsent(gram, key -> new IntList()).add(item.getId());
+        }
+    }
+
+    private void removeItem(Snapshot target, int id) {
+        ChannelSearchItem old = target.itemMap.remove(id);
+        if (old == null) {
+            return;
+        }
+        removeFromDevice(target, old);
+        target.staleCount += getAllGrams(old.getText()).size();
+    }
+
+    private void removeFromDevice(Snapshot target, ChannelSearchItem item) {
+        if (item.getDataDeviceId() == null) {
+            return;
+        }
+        Set<Integer> ids = target.deviceItemMap.get(item.getDataDeviceId());
+        if (ids != null) {
+            ids.remove(item.getId());
+            if (ids.isEmpty()) {
+                target.deviceItemMap.remove(item.getDataDeviceId());
+            }
+        }
+    }
+
+    private boolean containsAll(List<IntList> lists, int id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean match(ChannelSearchItem item, String keyword, Predicate<ChannelSearchItem> filter) {
+        return item.getText().contains(keyword) && (filter == null || filter.test(item));
+    }
+
+    /**
+     * 各字段之间使用换行分隔, 分词不会跨越字段
+     */
+    private String buildText(ChannelSearchItem item) {
+        StringBuilder text = new StringBuilder();
+        if (item.getDeviceId() != null) {
+            text.append(item.getDeviceId().toLowerCase());
+        }
+        text.append('\n');
+        if (item.getName() != null) {
+            text.append(item.getName().toLowerCase()).append('\n').append(PinyinUtil.getInitials(item.getName()));
+        }
+        text.append('\n');
+        if (item.getCivilCode() != null) {
+            text.append(item.getCivilCode().toLowerCase());
+        }
+        return text.toString();
+    }
+
+    private Set<Long> getAllGrams(String text) {
+        Set<Long> grams = getGrams(text, GRAM_LENGTH);
+        grams.addAll(getGrams(text, BIGRAM_LENGTH));
+        return grams;
+    }
+
+    private Set<Long> getGrams(String text, int length) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + length <= text.length(); i++) {
+            char c0 = text.charAt(i);
+            char c1 = text.charAt(i + 1);
+            if (length == BIGRAM_LENGTH) {
+                if (c0 != '\n' && c1 != '\n') {
+                    grams.add(BIGRAM_FLAG | ((long) c0 << 16) | c1);
+                }
+                continue;
+            }
+            char c2 = text.charAt(i + 2);
+            if (c0 == '\n' || c1 == '\n' || c2 == '\n') {
+                continue;
+            }
+            grams.add(((long) c0 << 32) | ((long) c1 << 16) | c2);
+        }
+        return grams;
+    }
+}
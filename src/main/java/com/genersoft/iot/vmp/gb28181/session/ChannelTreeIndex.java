@@ -0,0 +1,618 @@
+package com.genersoft.iot.vmp.gb28181.session;
+
+import com.genersoft.iot.vmp.conf.UserSetting;
+import com.genersoft.iot.vmp.conf.exception.ControllerException;
+import com.genersoft.iot.vmp.gb28181.bean.*;
+import com.genersoft.iot.vmp.gb28181.dao.CommonGBChannelMapper;
+import com.genersoft.iot.vmp.gb28181.dao.GroupMapper;
+import com.genersoft.iot.vmp.gb28181.dao.RegionMapper;
+import com.genersoft.iot.vmp.gb28181.event.subscribe.catalog.CatalogEvent;
+import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 分组树与行政区划树的内存索引
+ * 分组、行政区划以及通道的归属关系全部缓存在内存中, 每个节点维护包含子节点在内的通道总数与在线数, 树的展开与路径查询不再访问数据库.
+ * 通道变化通过catalog事件增量维护, 分组与行政区划变化后在下次查询时重建节点关系, 另外定时全量刷新, 用于修正没有发送事件的通道变化.
+ * 长时间没有查询时释放索引
+ */
+@Slf4j
+@Component
+public class ChannelTreeIndex {
+
+    /**
+     * 超过此时长没有查询则释放索引, 单位：毫秒
+     */
+    private static final long IDLE_TIMEOUT = 10 * 60 * 1000L;
+
+    @Autowired
+    private GroupMapper groupMapper;
+
+    @Autowired
+    private RegionMapper regionMapper;
+
+    @Autowired
+    private CommonGBChannelMapper commonGBChannelMapper;
+
+    @Autowired
+    private UserSetting userSetting;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 全量刷新期间收到的事件, 刷新完成后在新的索引上重放
+     */
+    private List<CatalogEvent> pendingEvents;
+
+    private volatile boolean structureDirty;
+
+    /**
+     * 分组与行政区划的变更次数, 全量刷新完成时据此判断加载期间是否有结构变化
+     */
+    private final AtomicLong structureVersion = new AtomicLong();
+
+    private volatile long lastAccessTime;
+
+    private volatile long lastRefreshTime;
+
+    private static class Node {
+        private Group group;
+        private Region region;
+        private Node parent;
+        private final List<Node> children = new ArrayList<>();
+        private int total;
+        private int online;
+
+        private int getId() {
+            return group != null ? group.getId() : region.getId();
+        }
+
+        private Integer getParentId() {
+            return group != null ? group.getParentId() : region.getParentId();
+        }
+
+        private String getDeviceId() {
+            return group != null ? group.getDeviceId() : region.getDeviceId();
+        }
+    }
+
+    private static class Snapshot {
+        private final Map<Integer, Node> groupMap = new HashMap<>();
+        private final Map<String, List<Node>> groupDeviceIdMap = new HashMap<>();
+        private final List<Node> groupRoots = new ArrayList<>();
+        private final Map<Integer, Node> regionMap = new HashMap<>();
+        private final Map<String, Node> regionDeviceIdMap = new HashMap<>();
+        private final List<Node> regionRoots = new ArrayList<>();
+        private final Map<Integer, ChannelTreeItem> channelMap = new HashMap<>();
+        /**
+         * 按所属分组编号索引的通道, 只包含channel_type为0的通道
+         */
+        private final Map<String, Map<Integer, ChannelTreeItem>> groupChannelMap = new HashMap<>();
+        /**
+         * 按行政区划编号索引的通道
+         */
+        private final Map<String, Map<Integer, ChannelTreeItem>> regionChannelMap = new HashMap<>();
+    }
+
+    public List<GroupTree> queryGroupTree(String query, Integer parentId, Boolean hasChannel) {
+        lock.readLock().lock();
+        try {
+            Snapshot current = getSnapshot();
+            List<GroupTree> result = new ArrayList<>();
+            List<Node> nodeList;
+            Node parent = null;
+            if (parentId == null) {
+                nodeList = current.groupRoots;
+            }else {
+                parent = current.groupMap.get(parentId);
+                nodeList = parent == null ? Collections.emptyList() : parent.children;
+            }
+            for (Node node : nodeList) {
+                if (matches(query, node.group.getDeviceId(), node.group.getName())) {
+                    result.add(buildGroupTree(node));
+                }
+            }
+            if (parent != null && hasChannel != null && hasChannel) {
+                for (ChannelTreeItem item : getSortedChannels(current.groupChannelMap.get(parent.getDeviceId()))) {
+                    if (matches(query, item.getDeviceId(), item.getName())) {
+                        result.add(buildGroupTree(item));
+                    }
+                }
+            }
+            return result;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<RegionTree> queryRegionTree(Integer parentId, Boolean hasChannel) {
+        lock.readLock().lock();
+        try {
+            Snapshot current = getSnapshot();
+            List<RegionTree> result = new ArrayList<>();
+            List<Node> nodeList;
+            Node parent = null;
+            if (parentId == null) {
+                nodeList = current.regionRoots;
+            }else {
+                parent = current.regionMap.get(parentId);
+                nodeList = parent == null ? Collections.emptyList() : parent.children;
+            }
+            for (Node node : nodeList) {
+                result.add(buildRegionTree(node));
+            }
+            if (parent != null && hasChannel != null && hasChannel) {
+                for (ChannelTreeItem item : getSortedChannels(current.regionChannelMap.get(parent.getDeviceId()))) {
+                    result.add(buildRegionTree(item));
+                }
+            }
+            return result;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取分组的路径, 顺序为业务分组、分组本身、从顶级到直接上级的分组, 与原有接口保持一致
+     */
+    public List<Group> getGroupPath(String deviceId, String businessGroup) {
+        lock.readLock().lock();
+        try {
+            Snapshot current = getSnapshot();
+            Node businessGroupNode = findGroup(current, businessGroup, businessGroup);
+            if (businessGroupNode == null) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "业务分组不存在");
+            }
+            Node node = findGroup(current, deviceId, businessGroup);
+            if (node == null) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "虚拟组织不存在");
+            }
+            List<Group> groupList = new ArrayList<>();
+            groupList.add(businessGroupNode.group);
+            groupList.add(node.group);
+            List<Group> parentList = new ArrayList<>();
+            Set<Integer> visited = new HashSet<>();
+            for (Node parent = node.parent; parent != null && visited.add(parent.getId()); parent = parent.parent) {
+                parentList.add(0, parent.group);
+            }
+            groupList.addAll(parentList);
+            return groupList;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取行政区划的路径, 顺序为从直接上级到顶级、最后是节点本身, 与原有接口保持一致
+     */
+    public List<Region> getRegionPath(String deviceId) {
+        lock.readLock().lock();
+        try {
+            Node node = getSnapshot().regionDeviceIdMap.get(deviceId);
+            if (node == null) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "行政区划不存在");
+            }
+            List<Region> regionList = new ArrayList<>();
+            Set<Integer> visited = new HashSet<>();
+            for (Node parent = node.parent; parent != null && visited.add(parent.getId()); parent = parent.parent) {
+                regionList.add(parent.region);
+            }
+            regionList.add(node.region);
+            return regionList;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 分组或者行政区划发生变化, 下次查询时重建节点关系
+     */
+    public void invalidateStructure() {
+        structureVersion.incrementAndGet();
+        structureDirty = true;
+    }
+
+    /**
+     * 通道变化时增量更新
+     */
+    @EventListener
+    public void onApplicationEvent(CatalogEvent event) {
+        if (event.getPlatform() != null || event.getChannels() == null || event.getChannels().isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (snapshot == null) {
+                return;
+            }
+            if (pendingEvents != null) {
+                pendingEvents.add(event);
+            }
+            apply(snapshot, event);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Async("taskExecutor")
+    @Scheduled(fixedDelay = 5000)
+    public void execute() {
+        if (snapshot == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastAccessTime > IDLE_TIMEOUT) {
+            lock.writeLock().lock();
+            try {
+                snapshot = null;
+            }finally {
+                lock.writeLock().unlock();
+            }
+            log.info("[目录树索引] 长时间未使用, 释放索引");
+            return;
+        }
+        if (now - lastRefreshTime < userSetting.getChannelTreeRefreshInterval() * 1000L) {
+            return;
+        }
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lock.writeLock().lock();
+            try {
+                pendingEvents = new ArrayList<>();
+            }finally {
+                lock.writeLock().unlock();
+            }
+            long version = structureVersion.get();
+            Snapshot newSnapshot = load();
+            lock.writeLock().lock();
+            try {
+                for (CatalogEvent event : pendingEvents) {
+                    apply(newSnapshot, event);
+                }
+                snapshot = newSnapshot;
+                if (structureVersion.get() != version) {
+                    // 加载期间分组或行政区划发生变化, 新索引中的结构可能是旧的, 下次查询时重建
+                    structureDirty = true;
+                }
+            }finally {
+                pendingEvents = null;
+                lock.writeLock().unlock();
+            }
+        }catch (Exception e) {
+            log.error("[目录树索引] 刷新失败", e);
+        }finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * 调用时必须持有读锁, 首次查询时在写锁下加载
+     */
+    private Snapshot getSnapshot() {
+        lastAccessTime = System.currentTimeMillis();
+        if (snapshot != null && !structureDirty) {
+            return snapshot;
+        }
+        // 读锁无法升级为写锁, 先释放再获取
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            if (snapshot == null) {
+                structureDirty = false;
+                snapshot = load();
+            }else if (structureDirty) {
+                structureDirty = false;
+                loadStructure(snapshot);
+            }
+        }finally {
+            // 降级为读锁
+            lock.readLock().lock();
+            lock.writeLock().unlock();
+        }
+        return snapshot;
+    }
+
+    private Snapshot load() {
+        long start = System.currentTimeMillis();
+        Snapshot newSnapshot = new Snapshot();
+        for (ChannelTreeItem item : commonGBChannelMapper.queryAllForTree()) {
+            addChannel(newSnapshot, item);
+        }
+        loadStructure(newSnapshot);
+        lastRefreshTime = System.currentTimeMillis();
+        log.info("[目录树索引] 加载完成, 分组： {}, 行政区划： {}, 通道： {}, 耗时： {}ms", newSnapshot.groupMap.size(),
+                newSnapshot.regionMap.size(), newSnapshot.channelMap.size(), lastRefreshTime - start);
+        return newSnapshot;
+    }
+
+    /**
+     * 重建分组与行政区划的节点关系, 并重新计算节点的通道数量
+     */
+    private void loadStructure(Snapshot target) {
+        target.groupMap.clear();
+        target.groupDeviceIdMap.clear();
+        target.groupRoots.clear();
+        target.regionMap.clear();
+        target.regionDeviceIdMap.clear();
+        target.regionRoots.clear();
+        for (Group group : groupMapper.query(null, null, null)) {
+            Node node = new Node();
+            node.group = group;
+            target.groupMap.put(group.getId(), node);
+            target.groupDeviceIdMap.computeIfAbsent(group.getDeviceId(), key -> new ArrayList<>()).add(node);
+        }
+        link(target.groupMap, target.groupRoots);
+        for (Region region : regionMapper.query(null, null)) {
+            Node node = new Node();
+            node.region = region;
+            target.regionMap.put(region.getId(), node);
+            target.regionDeviceIdMap.put(region.getDeviceId(), node);
+        }
+        link(target.regionMap, target.regionRoots);
+
+        for (Node root : target.groupRoots) {
+            count(root, target.groupChannelMap, new HashSet<>());
+        }
+        for (Node root : target.regionRoots) {
+            count(root, target.regionChannelMap, new HashSet<>());
+        }
+    }
+
+    /**
+     * 与原有查询保持一致, 只有parentId为空的节点是根节点, 上级不存在的节点不显示
+     */
+    private void link(Map<Integer, Node> nodeMap, List<Node> roots) {
+        for (Node node : nodeMap.values()) {
+            if (node.getParentId() == null) {
+                roots.add(node);
+                continue;
+            }
+            Node parent = nodeMap.get(node.getParentId());
+            if (parent != null && parent != node) {
+                node.parent = parent;
+                parent.children.add(node);
+            }
+        }
+        Comparator<Node> comparator = Comparator.comparingInt(Node::getId);
+        roots.sort(comparator);
+        for (Node node : nodeMap.values()) {
+            node.children.sort(comparator);
+        }
+    }
+
+    private void count(Node node, Map<String, Map<Integer, ChannelTreeItem>> channelIndex, Set<Integer> visited) {
+        if (!visited.add(node.getId())) {
+            return;
+        }
+        node.total = 0;
+        node.online = 0;
+        Map<Integer, ChannelTreeItem> channels = channelIndex.get(node.getDeviceId());
+        if (channels != null) {
+            for (ChannelTreeItem item : channels.values()) {
+                node.total++;
+                if (item.isOnline()) {
+                    node.online++;
+                }
+            }
+        }
+        for (Node child : node.children) {
+            count(child, channelIndex, visited);
+            node.total += child.total;
+            node.online += child.online;
+        }
+    }
+
+    private void apply(Snapshot target, CatalogEvent event) {
+        for (CommonGBChannel channel : event.getChannels()) {
+            if (channel == null || channel.getGbId() <= 0) {
+                continue;
+            }
+            ChannelTreeItem old = target.channelMap.get(channel.getGbId());
+            switch (event.getType()) {
+                case CatalogEvent.DEL:
+                    if (old != null) {
+                        removeChannel(target, old);
+                    }
+                    break;
+                case CatalogEvent.ADD:
+                case CatalogEvent.UPDATE:
+                    if (channel.getGbDeviceId() == null) {
+                        break;
+                    }
+                    ChannelTreeItem item = new ChannelTreeItem();
+                    item.setId(channel.getGbId());
+                    item.setDeviceId(channel.getGbDeviceId());
+                    item.setName(channel.getGbName());
+                    item.setParentDeviceId(channel.getGbParentId());
+                    item.setBusinessGroup(channel.getGbBusinessGroupId());
+                    item.setCivilCode(channel.getGbCivilCode());
+                    item.setStatus(channel.getGbStatus() != null ? channel.getGbStatus() : (old != null ? old.getStatus() : null));
+                    item.setChannelType(old != null ? old.getChannelType() : 0);
+                    if (old != null) {
+                        removeChannel(target, old);
+                    }
+                    addChannel(target, item);
+                    break;
+                default:
+                    // 状态变化
+                    if (old == null) {
+                        break;
+                    }
+                    String status = CatalogEvent.ON.equals(event.getType()) ? "ON" : "OFF";
+                    if (status.equalsIgnoreCase(old.getStatus())) {
+                        break;
+                    }
+                    removeChannel(target, old);
+                    old.setStatus(status);
+                    addChannel(target, old);
+            }
+        }
+    }
+
+    private void addChannel(Snapshot target, ChannelTreeItem item) {
+        target.channelMap.put(item.getId(), item);
+        if (item.getChannelType() == 0 && item.getParentDeviceId() != null) {
+            target.groupChannelMap.computeIfAbsent(item.getParentDeviceId(), key -> new HashMap<>()).put(item.getId(), item);
+            List<Node> nodeList = target.groupDeviceIdMap.get(item.getParentDeviceId());
+            if (nodeList != null) {
+                for (Node node : nodeList) {
+                    updateCount(node, 1, item.isOnline() ? 1 : 0);
+                }
+            }
+        }
+        if (item.getCivilCode() != null) {
+            target.regionChannelMap.computeIfAbsent(item.getCivilCode(), key -> new HashMap<>()).put(item.getId(), item);
+            Node node = target.regionDeviceIdMap.get(item.getCivilCode());
+            if (node != null) {
+                updateCount(node, 1, item.isOnline() ? 1 : 0);
+            }
+        }
+    }
+
+    private void removeChannel(Snapshot target, ChannelTreeItem item) {
+        target.channelMap.remove(item.getId());
+        if (item.getChannelType() == 0 && item.getParentDeviceId() != null) {
+            Map<Integer, ChannelTreeItem> channels = target.groupChannelMap.get(item.getParentDeviceId());
+            if (channels != null && channels.remove(item.getId()) != null) {
+                if (channels.isEmpty()) {
+                    target.groupChannelMap.remove(item.getParentDeviceId());
+                }
+                List<Node> nodeList = target.groupDeviceIdMap.get(item.getParentDeviceId());
+                if (nodeList != null) {
+                    for (Node node : nodeList) {
+                        updateCount(node, -1, item.isOnline() ? -1 : 0);
+                    }
+                }
+            }
+        }
+        if (item.getCivilCode() != null) {
+            Map<Integer, ChannelTreeItem> channels = target.regionChannelMap.get(item.getCivilCode());
+            if (channels != null && channels.remove(item.getId()) != null) {
+                if (channels.isEmpty()) {
+                    target.regionChannelMap.remove(item.getCivilCode());
+                }
+                Node node = target.regionDeviceIdMap.get(item.getCivilCode());
+                if (node != null) {
+                    updateCount(node, -1, item.isOnline() ? -1 : 0);
+                }
+            }
+        }
+    }
+
+    private void updateCount(Node node, int total, int online) {
+        Set<Integer> visited = new HashSet<>();
+        for (Node current = node; current != null && visited.add(current.getId()); current = current.parent) {
+            current.total += total;
+            current.online += online;
+        }
+    }
+
+    private Node findGroup(Snapshot current, String deviceId, String businessGroup) {
+        List<Node> nodeList = current.groupDeviceIdMap.get(deviceId);
+        if (nodeList == null) {
+            return null;
+        }
+        for (Node node : nodeList) {
+            if (Objects.equals(node.group.getBusinessGroup(), businessGroup)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private List<ChannelTreeItem> getSortedChannels(Map<Integer, ChannelTreeItem> channels) {
+        if (channels == null) {
+            return Collections.emptyList();
+        }
+        List<ChannelTreeItem> result = new ArrayList<>(channels.values());
+        result.sort(Comparator.comparingInt(ChannelTreeItem::getId));
+        return result;
+    }
+
+    private boolean matches(String query, String deviceId, String name) {
+        return query == null || (deviceId != null && deviceId.contains(query)) || (name != null && name.contains(query));
+    }
+
+    private GroupTree buildGroupTree(Node node) {
+        Group group = node.group;
+        GroupTree groupTree = new GroupTree();
+        groupTree.setId(group.getId());
+        groupTree.setDeviceId(group.getDeviceId());
+        groupTree.setName(group.getName());
+        groupTree.setParentId(group.getParentId());
+        groupTree.setParentDeviceId(group.getParentDeviceId());
+        groupTree.setBusinessGroup(group.getBusinessGroup());
+        groupTree.setCivilCode(group.getCivilCode());
+        groupTree.setCreateTime(group.getCreateTime());
+        groupTree.setUpdateTime(group.getUpdateTime());
+        groupTree.setTreeId("group" + group.getId());
+        groupTree.setType(0);
+        groupTree.setLeaf(false);
+        groupTree.setStatus("ON");
+        groupTree.setChannelCount(node.total);
+        groupTree.setOnlineChannelCount(node.online);
+        return groupTree;
+    }
+
+    private GroupTree buildGroupTree(ChannelTreeItem item) {
+        GroupTree groupTree = new GroupTree();
+        groupTree.setId(item.getId());
+        groupTree.setDeviceId(item.getDeviceId());
+        groupTree.setName(item.getName());
+        groupTree.setParentDeviceId(item.getParentDeviceId());
+        groupTree.setBusinessGroup(item.getBusinessGroup());
+        groupTree.setTreeId("channel" + item.getId());
+        groupTree.setType(1);
+        groupTree.setLeaf(true);
+        groupTree.setStatus(item.getStatus());
+        return groupTree;
+    }
+
+    private RegionTree buildRegionTree(Node node) {
+        Region region = node.region;
+        RegionTree regionTree = new RegionTree();
+        regionTree.setId(region.getId());
+        regionTree.setDeviceId(region.getDeviceId());
+        regionTree.setName(region.getName());
+        regionTree.setParentId(region.getParentId());
+        regionTree.setParentDeviceId(region.getParentDeviceId());
+        regionTree.setCreateTime(region.getCreateTime());
+        regionTree.setUpdateTime(region.getUpdateTime());
+        regionTree.setTreeId("region" + region.getId());
+        regionTree.setType(0);
+        regionTree.setLeaf(false);
+        regionTree.setStatus("ON");
+        regionTree.setChannelCount(node.total);
+        regionTree.setOnlineChannelCount(node.online);
+        return regionTree;
+    }
+
+    private RegionTree buildRegionTree(ChannelTreeItem item) {
+        RegionTree regionTree = new RegionTree();
+        regionTree.setId(item.getId());
+        regionTree.setDeviceId(item.getDeviceId());
+        regionTree.setName(item.getName());
+        regionTree.setParentDeviceId(item.getParentDeviceId());
+        regionTree.setTreeId("channel" + item.getId());
+        regionTree.setType(1);
+        regionTree.setLeaf(true);
+        regionTree.setStatus(item.getStatus());
+        return regionTree;
+    }
+}
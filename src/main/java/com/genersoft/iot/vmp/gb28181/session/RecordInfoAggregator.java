@@ -0,0 +1,172 @@
+package com.genersoft.iot.vmp.gb28181.session;
+
+import com.genersoft.iot.vmp.gb28181.bean.RecordItem;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 录像查询结果的本地汇总, 以通道编号与SN为key
+ * 本节点发出的查询在内存中合并分页结果, 只有收到其他节点发出的查询的回复时才使用redis汇总
+ */
+@Slf4j
+@Component
+public class RecordInfoAggregator {
+
+    /**
+     * 没有收齐的查询在此时间后清理, 单位：毫秒
+     */
+    private static final long EXPIRE_TIME = 30 * 60 * 1000L;
+
+    private final Map<String, Aggregation> aggregationMap = new ConcurrentHashMap<>();
+
+    private static class Aggregation {
+        private final String deviceId;
+        private final String startTime;
+        private final String endTime;
+        /**
+         * 查询所有类型且不限保密属性时结果才是完整的, 才能用于缓存
+         */
+        private final boolean cacheable;
+        private final long createTime = System.currentTimeMillis();
+        private volatile long lastTime = createTime;
+        /**
+         * 按开始时间与结束时间排序, 相同时间段的记录只保留一条
+         */
+        private final TreeMap<String, RecordItem> recordMap = new TreeMap<>();
+        private int count;
+        private boolean finished;
+
+        Aggregation(String deviceId, String startTime, String endTime, boolean cacheable) {
+            this.deviceId = deviceId;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.cacheable = cacheable;
+        }
+    }
+
+    /**
+     * 合并后的进度
+     */
+    public static class Progress {
+        /**
+         * 已收到的记录数
+         */
+        private final int count;
+        /**
+         * 已收齐时为按时间排序的完整结果, 否则为null
+         */
+        private final List<RecordItem> recordList;
+        /**
+         * 查询的时间范围与发出查询的时间, 用于缓存结果
+         */
+        private final String startTime;
+        private final String endTime;
+        private final long queryTime;
+        private final boolean cacheable;
+
+        Progress(int count, List<RecordItem> recordList, Aggregation aggregation) {
+            this.count = count;
+            this.recordList = recordList;
+            this.startTime = aggregation.startTime;
+            this.endTime = aggregation.endTime;
+            this.queryTime = aggregation.createTime;
+            this.cacheable = aggregation.cacheable;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public List<RecordItem> getRecordList() {
+            return recordList;
+        }
+
+        public boolean isFinished() {
+            return recordList != null;
+        }
+
+        public String getStartTime() {
+            return startTime;
+        }
+
+        public String getEndTime() {
+            return endTime;
+        }
+
+        public long getQueryTime() {
+            return queryTime;
+        }
+
+        /**
+         * 按类型或者保密属性过滤的查询(例如上级级联的报警录像查询)结果不完整, 不能写入缓存
+         */
+        public boolean isCacheable() {
+            return cacheable;
+        }
+    }
+
+    /**
+     * 发出录像查询时登记, 之后收到的回复在本地汇总
+     * @param type 录像类型, 为空或者all时查询所有类型
+     * @param secrecy 保密属性, 为空或者0时不限制
+     */
+    public void register(String deviceId, String channelId, int sn, String startTime, String endTime, String type, Integer secrecy) {
+        boolean cacheable = (type == null || "all".equalsIgnoreCase(type)) && (secrecy == null || secrecy == 0);
+        aggregationMap.put(getKey(channelId, String.valueOf(sn)), new Aggregation(deviceId, startTime, endTime, cacheable));
+    }
+
+    /**
+     * 合并一页结果
+     * @param sumNum 设备回复的总数
+     * @return 合并后的进度, 查询不是本节点发出的时返回null
+     */
+    public Progress merge(String channelId, String sn, int sumNum, List<RecordItem> recordList) {
+        String key = getKey(channelId, sn);
+        Aggregation aggregation = aggregationMap.get(key);
+        if (aggregation == null) {
+            return null;
+        }
+        synchronized (aggregation) {
+            if (aggregation.finished) {
+                // 已收齐后设备重复回复的分页, 不再重复通知
+                return new Progress(aggregation.count, null, aggregation);
+            }
+            aggregation.lastTime = System.currentTimeMillis();
+            for (RecordItem recordItem : recordList) {
+                aggregation.recordMap.put(recordItem.getStartTime() + recordItem.getEndTime(), recordItem);
+            }
+            aggregation.count += recordList.size();
+            if (aggregation.count < sumNum) {
+                return new Progress(aggregation.count, null, aggregation);
+            }
+            aggregation.finished = true;
+            aggregationMap.remove(key);
+            return new Progress(aggregation.count, new ArrayList<>(aggregation.recordMap.values()), aggregation);
+        }
+    }
+
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public void expire() {
+        long expireTime = System.currentTimeMillis() - EXPIRE_TIME;
+        aggregationMap.entrySet().removeIf(entry -> {
+            if (entry.getValue().lastTime < expireTime) {
+                log.info("[录像查询] 结果未收齐, 清理, 设备: {}, 通道与SN: {}, 已收到: {}", entry.getValue().deviceId,
+                        entry.getKey(), entry.getValue().count);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private String getKey(String channelId, String sn) {
+        return channelId + sn;
+    }
+}
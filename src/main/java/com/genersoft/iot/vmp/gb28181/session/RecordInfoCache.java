@@ -0,0 +1,260 @@
+package com.genersoft.iot.vmp.gb28181.session;
+
+import com.genersoft.iot.vmp.conf.UserSetting;
+import com.genersoft.iot.vmp.gb28181.bean.RecordItem;
+import com.genersoft.iot.vmp.utils.DateUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备端录像的时间段缓存, 每个通道记录已经向设备查询过的时间范围与其中的录像
+ * 查询时只向设备查询没有覆盖的时间范围, 已覆盖的范围直接从缓存返回
+ */
+@Slf4j
+@Component
+public class RecordInfoCache {
+
+    @Autowired
+    private UserSetting userSetting;
+
+    /**
+     * 按访问顺序排列, 超出条数上限时淘汰最久未访问的通道
+     */
+    private final LinkedHashMap<String, ChannelCache> channelMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int itemCount;
+
+    /**
+     * 已查询过的时间范围, 单位：秒
+     */
+    private static class Span {
+        private final long start;
+        private final long end;
+        /**
+         * 向设备查询的时间, 单位：毫秒
+         */
+        private final long fetchTime;
+
+        Span(long start, long end, long fetchTime) {
+            this.start = start;
+            this.end = end;
+            this.fetchTime = fetchTime;
+        }
+    }
+
+    private static class Record {
+        private final long start;
+        private final long end;
+        private final RecordItem item;
+
+        Record(long start, long end, RecordItem item) {
+            this.start = start;
+            this.end = end;
+            this.item = item;
+        }
+    }
+
+    private static class ChannelCache {
+        /**
+         * 按开始时间排序, 互不重叠
+         */
+        private final TreeMap<Long, Span> spanMap = new TreeMap<>();
+        /**
+         * key为开始时间与结束时间, 时间格式固定, 按key排序即为按时间排序
+         */
+        private final TreeMap<String, Record> recordMap = new TreeMap<>();
+    }
+
+    public boolean isEnabled() {
+        return userSetting.getRecordInfoCacheTtl() > 0;
+    }
+
+    /**
+     * 获取没有被缓存覆盖的时间范围
+     * @return 按时间排序, 每项为开始与结束时间, 单位：秒
+     */
+    public synchronized List<long[]> getUncovered(String deviceId, String channelId, long start, long end) {
+        List<long[]> result = new ArrayList<>();
+        ChannelCache channelCache = channelMap.get(getKey(deviceId, channelId));
+        long expireTime = System.currentTimeMillis() - userSetting.getRecordInfoCacheTtl() * 1000L;
+        long position = start;
+        if (channelCache != null) {
+            Long floorKey = channelCache.spanMap.floorKey(start);
+            SortedMap<Long, Span> spans = channelCache.spanMap.tailMap(floorKey == null ? start : floorKey);
+            for (Span span : spans.values()) {
+                if (span.start >= end) {
+                    break;
+                }
+                if (span.end <= position || span.fetchTime < expireTime) {
+                    continue;
+                }
+                if (span.start > position) {
+                    result.add(new long[]{position, span.start});
+                }
+                position = Math.max(position, span.end);
+                if (position >= end) {
+                    break;
+                }
+            }
+        }
+        if (position < end) {
+            result.add(new long[]{position, end});
+        }
+        return result;
+    }
+
+    /**
+     * 获取缓存中与时间范围有交集的录像, 按时间排序
+     */
+    public synchronized List<RecordItem> get(String deviceId, String channelId, long start, long end) {
+        List<RecordItem> result = new ArrayList<>();
+        ChannelCache channelCache = channelMap.get(getKey(deviceId, channelId));
+        if (channelCache == null) {
+            return result;
+        }
+        for (Record record : channelCache.recordMap.values()) {
+            if (record.start >= end) {
+                break;
+            }
+            if (record.end > start) {
+                result.add(record.item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 合并一次设备查询的完整结果
+     * 设备返回的是与查询范围有交集的全部录像, 所以缓存中与范围有交集的旧录像全部替换;
+     * 查询时刻之后的部分可能还在录制, 不计入覆盖范围, 下次查询时增量获取
+     * @param startTime 查询的开始时间
+     * @param endTime 查询的结束时间
+     * @param fetchTime 查询的时间, 单位：毫秒
+     */
+    public synchronized void merge(String deviceId, String channelId, String startTime, String endTime,
+                                   List<RecordItem> recordList, long fetchTime) {
+        if (!isEnabled() || startTime == null || endTime == null) {
+            return;
+        }
+        long start;
+        long end;
+        try {
+            start = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestamp(startTime);
+            end = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestamp(endTime);
+        }catch (Exception e) {
+            return;
+        }
+        String key = getKey(deviceId, channelId);
+        ChannelCache channelCache = channelMap.computeIfAbsent(key, k -> new ChannelCache());
+
+        Iterator<Record> iterator = channelCache.recordMap.values().iterator();
+        while (iterator.hasNext()) {
+            Record record = iterator.next();
+            if (record.start >= end) {
+                break;
+            }
+            if (record.end > start) {
+                iterator.remove();
+                itemCount--;
+            }
+        }
+        if (recordList != null) {
+            for (RecordItem recordItem : recordList) {
+                if (recordItem.getStartTime() == null || recordItem.getEndTime() == null) {
+                    continue;
+                }
+                Record record;
+                try {
+                    record = new Record(DateUtil.yyyy_MM_dd_HH_mm_ssToTimestamp(recordItem.getStartTime()),
+                            DateUtil.yyyy_MM_dd_HH_mm_ssToTimestamp(recordItem.getEndTime()), recordItem);
+                }catch (Exception e) {
+                    continue;
+                }
+                if (channelCache.recordMap.put(recordItem.getStartTime() + recordItem.getEndTime(), record) == null) {
+                    itemCount++;
+                }
+            }
+        }
+
+        long coveredEnd = Math.min(end, fetchTime / 1000);
+        if (coveredEnd > start) {
+            cutSpans(channelCache, start, coveredEnd);
+            channelCache.spanMap.put(start, new Span(start, coveredEnd, fetchTime));
+        }
+        evict(key);
+    }
+
+    @Scheduled(fixedDelay = 1, timeUnit = TimeUnit.MINUTES)
+    public synchronized void expire() {
+        if (channelMap.isEmpty()) {
+            return;
+        }
+        long expireTime = System.currentTimeMillis() - userSetting.getRecordInfoCacheTtl() * 1000L;
+        Iterator<ChannelCache> iterator = channelMap.values().iterator();
+        while (iterator.hasNext()) {
+            ChannelCache channelCache = iterator.next();
+            channelCache.spanMap.values().removeIf(span -> span.fetchTime < expireTime);
+            if (channelCache.spanMap.isEmpty()) {
+                itemCount -= channelCache.recordMap.size();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 从已有的覆盖范围中去掉新查询的部分
+     */
+    private void cutSpans(ChannelCache channelCache, long start, long end) {
+        Long floorKey = channelCache.spanMap.floorKey(start);
+        SortedMap<Long, Span> spans = channelCache.spanMap.subMap(floorKey == null ? start : floorKey, end);
+        List<Span> overlapped = new ArrayList<>(spans.values());
+        for (Span span : overlapped) {
+            if (span.end <= start) {
+                continue;
+            }
+            channelCache.spanMap.remove(span.start);
+            if (span.start < start) {
+                channelCache.spanMap.put(span.start, new Span(span.start, start, span.fetchTime));
+            }
+            if (span.end > end) {
+                channelCache.spanMap.put(end, new Span(end, span.end, span.fetchTime));
+            }
+        }
+    }
+
+    private void evict(String currentKey) {
+        int maxItems = userSetting.getRecordInfoCacheMaxItems();
+        if (itemCount <= maxItems) {
+            return;
+        }
+        Iterator<Map.Entry<String, ChannelCache>> iterator = channelMap.entrySet().iterator();
+        while (itemCount > maxItems && iterator.hasNext()) {
+            Map.Entry<String, ChannelCache> entry = iterator.next();
+            if (entry.getKey().equals(currentKey)) {
+                continue;
+            }
+            itemCount -= entry.getValue().recordMap.size();
+            iterator.remove();
+        }
+        if (itemCount > maxItems) {
+            log.info("[录像查询缓存] 单个通道的录像数超出缓存上限, 不再缓存, 通道: {}, 录像数: {}", currentKey, itemCount);
+            removeChannel(currentKey);
+        }
+    }
+
+    private void removeChannel(String key) {
+        ChannelCache channelCache = channelMap.remove(key);
+        if (channelCache != null) {
+            itemCount -= channelCache.recordMap.size();
+        }
+    }
+
+    private String getKey(String deviceId, String channelId) {
+        return deviceId + "_" + channelId;
+    }
+}
@@ -3,16 +3,23 @@ package com.genersoft.iot.vmp.gb28181.session;
 import com.genersoft.iot.vmp.common.VideoManagerConstants;
 import com.genersoft.iot.vmp.conf.UserSetting;
 import com.genersoft.iot.vmp.gb28181.bean.SsrcTransaction;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.List;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * 视频流session管理器，管理视频预览、预览回放的通信句柄
+ * 以本地内存中的会话表为准, 信令处理中的查询不再访问redis, redis中的数据异步写入, 仅用于重启后恢复
  */
+@Slf4j
 @Component
 public class SipInviteSessionManager {
 
@@ -22,49 +29,88 @@ public class SipInviteSessionManager {
 	@Autowired
 	private RedisTemplate<Object, Object> redisTemplate;
 
+	private final Map<String, SsrcTransaction> callIdMap = new ConcurrentHashMap<>();
+
+	private final Map<String, SsrcTransaction> streamMap = new ConcurrentHashMap<>();
+
+	private final Map<String, Set<String>> deviceIdMap = new ConcurrentHashMap<>();
+
+	/**
+	 * 等待写入redis的操作, 按顺序执行
+	 */
+	private final ConcurrentLinkedQueue<Runnable> replicateQueue = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * 启动时从redis恢复会话
+	 */
+	@PostConstruct
+	public void load() {
+		String key = VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId();
+		List<Object> values = redisTemplate.opsForHash().values(key);
+		for (Object value : values) {
+			SsrcTransaction ssrcTransaction = (SsrcTransaction) value;
+			if (ssrcTransaction != null && ssrcTransaction.getCallId() != null) {
+				putLocal(ssrcTransaction);
+			}
+		}
+		if (!callIdMap.isEmpty()) {
+			log.info("[点播会话] 从redis恢复会话: {}", callIdMap.size());
+		}
+	}
+
 	/**
 	 * 添加一个点播/回放的事务信息
 	 */
 	public void put(SsrcTransaction ssrcTransaction){
-		redisTemplate.opsForHash().put(VideoManagerConstants.SIP_INVITE_SESSION_STREAM + userSetting.getServerId()
-				, ssrcTransaction.getApp() + ssrcTransaction.getStream(), ssrcTransaction);
+		putLocal(ssrcTransaction);
+		replicateQueue.offer(() -> {
+			redisTemplate.opsForHash().put(VideoManagerConstants.SIP_INVITE_SESSION_STREAM + userSetting.getServerId()
+					, ssrcTransaction.getApp() + ssrcTransaction.getStream(), ssrcTransaction);
 
-		redisTemplate.opsForHash().put(VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId()
-				, ssrcTransaction.getCallId(), ssrcTransaction);
+			redisTemplate.opsForHash().put(VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId()
+					, ssrcTransaction.getCallId(), ssrcTransaction);
+		});
 	}
 
 	public SsrcTransaction getSsrcTransactionByStream(String app, String stream){
-		String key = VideoManagerConstants.SIP_INVITE_SESSION_STREAM + userSetting.getServerId();
-		return (SsrcTransaction)redisTemplate.opsForHash().get(key, app + stream);
+		return streamMap.get(app + stream);
 	}
 
 	public SsrcTransaction getSsrcTransactionByCallId(String callId){
-		String key = VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId();
-		return (SsrcTransaction)redisTemplate.opsForHash().get(key, callId);
+		if (callId == null) {
+			return null;
+		}
+		return callIdMap.get(callId);
 	}
 
 	public List<SsrcTransaction> getSsrcTransactionByDeviceId(String deviceId){
-		String key = VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId();
-		List<Object> values = redisTemplate.opsForHash().values(key);
 		List<SsrcTransaction> result = new ArrayList<>();
-		for (Object value : values) {
-			SsrcTransaction ssrcTransaction = (SsrcTransaction) value;
-			if (ssrcTransaction != null && deviceId.equals(ssrcTransaction.getDeviceId())) {
+		Set<String> callIds = deviceIdMap.get(deviceId);
+		if (callIds == null) {
+			return result;
+		}
+		for (String callId : callIds) {
+			SsrcTransaction ssrcTransaction = callIdMap.get(callId);
+			if (ssrcTransaction != null) {
 				result.add(ssrcTransaction);
 			}
 		}
 		return result;
 	}
-	
+
 	public void removeByStream(String app, String stream) {
 		SsrcTransaction ssrcTransaction = getSsrcTransactionByStream(app, stream);
 		if (ssrcTransaction == null ) {
 			return;
 		}
-		redisTemplate.opsForHash().delete(VideoManagerConstants.SIP_INVITE_SESSION_STREAM + userSetting.getServerId(), app + stream);
-		if (ssrcTransaction.getCallId() != null) {
-			redisTemplate.opsForHash().delete(VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId(), ssrcTransaction.getCallId());
-		}
+		removeLocal(ssrcTransaction);
+		String callId = ssrcTransaction.getCallId();
+		replicateQueue.offer(() -> {
+			redisTemplate.opsForHash().delete(VideoManagerConstants.SIP_INVITE_SESSION_STREAM + userSetting.getServerId(), app + stream);
+			if (callId != null) {
+				redisTemplate.opsForHash().delete(VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId(), callId);
+			}
+		});
 	}
 
 	public void removeByCallId(String callId) {
@@ -72,19 +118,74 @@ public class SipInviteSessionManager {
 		if (ssrcTransaction == null ) {
 			return;
 		}
-		redisTemplate.opsForHash().delete(VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId(), callId);
-		if (ssrcTransaction.getStream() != null) {
-			redisTemplate.opsForHash().delete(VideoManagerConstants.SIP_INVITE_SESSION_STREAM + userSetting.getServerId(), ssrcTransaction.getApp() + ssrcTransaction.getStream());
-		}
+		removeLocal(ssrcTransaction);
+		String stream = ssrcTransaction.getStream();
+		String streamKey = ssrcTransaction.getApp() + stream;
+		replicateQueue.offer(() -> {
+			redisTemplate.opsForHash().delete(VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId(), callId);
+			if (stream != null) {
+				redisTemplate.opsForHash().delete(VideoManagerConstants.SIP_INVITE_SESSION_STREAM + userSetting.getServerId(), streamKey);
+			}
+		});
 	}
 
 	public List<SsrcTransaction> getAll() {
-		String key = VideoManagerConstants.SIP_INVITE_SESSION_CALL_ID + userSetting.getServerId();
-		List<Object> values = redisTemplate.opsForHash().values(key);
-		List<SsrcTransaction> result = new ArrayList<>();
-		for (Object value : values) {
-			result.add((SsrcTransaction) value);
+		return new ArrayList<>(callIdMap.values());
+	}
+
+	/**
+	 * 将会话变化同步到redis
+	 */
+	@Scheduled(fixedDelay = 200)   //每200毫秒执行
+	@PreDestroy
+	public void replicate() {
+		Runnable task;
+		while ((task = replicateQueue.poll()) != null) {
+			try {
+				task.run();
+			} catch (Exception e) {
+				log.error("[点播会话] 同步redis失败: ", e);
+			}
 		}
-		return result;
+	}
+
+	private void putLocal(SsrcTransaction ssrcTransaction) {
+		SsrcTransaction old = callIdMap.put(ssrcTransaction.getCallId(), ssrcTransaction);
+		if (old != null && old != ssrcTransaction) {
+			removeIndex(old);
+		}
+		SsrcTransaction oldForStream = streamMap.put(ssrcTransaction.getApp() + ssrcTransaction.getStream(), ssrcTransaction);
+		if (oldForStream != null && !Objects.equals(oldForStream.getCallId(), ssrcTransaction.getCallId())) {
+			callIdMap.remove(oldForStream.getCallId(), oldForStream);
+			removeDeviceIndex(oldForStream);
+		}
+		if (ssrcTransaction.getDeviceId() != null) {
+			deviceIdMap.computeIfAbsent(ssrcTransaction.getDeviceId(), k -> ConcurrentHashMap.newKeySet())
+					.add(ssrcTransaction.getCallId());
+		}
+	}
+
+	private void removeLocal(SsrcTransaction ssrcTransaction) {
+		if (ssrcTransaction.getCallId() != null) {
+			callIdMap.remove(ssrcTransaction.getCallId(), ssrcTransaction);
+		}
+		removeIndex(ssrcTransaction);
+	}
+
+	private void removeIndex(SsrcTransaction ssrcTransaction) {
+		streamMap.remove(ssrcTransaction.getApp() + ssrcTransaction.getStream(), ssrcTransaction);
+		removeDeviceIndex(ssrcTransaction);
+	}
+
+	private void removeDeviceIndex(SsrcTransaction ssrcTransaction) {
+		if (ssrcTransaction.getDeviceId() == null || ssrcTransaction.getCallId() == null) {
+			return;
+		}
+		deviceIdMap.computeIfPresent(ssrcTransaction.getDeviceId(), (key, callIds) -> {
+			if (!callIdMap.containsKey(ssrcTransaction.getCallId())) {
+				callIds.remove(ssrcTransaction.getCallId());
+			}
+			return callIds.isEmpty() ? null : callIds;
+		});
 	}
 }
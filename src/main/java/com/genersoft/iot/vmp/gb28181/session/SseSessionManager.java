@@ -1,72 +1,105 @@
 package com.genersoft.iot.vmp.gb28181.session;
 
-import com.genersoft.iot.vmp.conf.DynamicTask;
+import com.genersoft.iot.vmp.conf.broadcast.BroadcastClient;
+import com.genersoft.iot.vmp.conf.broadcast.BroadcastClientInfo;
+import com.genersoft.iot.vmp.conf.broadcast.BroadcastHub;
+import com.genersoft.iot.vmp.conf.broadcast.BroadcastMessage;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
 
+/**
+ * SSE推送, 消息经广播放入每个浏览器自己的队列, 由独立线程发送, 慢的浏览器不会阻塞报警等业务处理
+ */
 @Component
 @Slf4j
 public class SseSessionManager {
 
-    private static final Map<String, SseEmitter> sseSessionMap = new ConcurrentHashMap<>();
+    /**
+     * 报警消息的事件名
+     */
+    public static final String EVENT_ALARM = "message";
 
-    @Autowired
-    private DynamicTask dynamicTask;
+    /**
+     * 每个浏览器最多缓存的消息数
+     */
+    private static final int QUEUE_CAPACITY = 256;
 
-    public SseEmitter conect(String browserId){
+    /**
+     * 最大延迟, 超出后断开连接, 由浏览器重新连接
+     */
+    private static final long MAX_LAG = 30 * 1000L;
+
+    private final BroadcastHub broadcastHub = new BroadcastHub("sse", QUEUE_CAPACITY, MAX_LAG);
+
+    /**
+     * @param deviceIds 只接收这些设备的报警, 为空时接收所有设备的报警
+     */
+    public SseEmitter conect(String browserId, Set<String> deviceIds){
         SseEmitter sseEmitter = new SseEmitter(0L);
+        BroadcastClient client = new BroadcastClient(browserId, getFilter(deviceIds)) {
+            @Override
+            protected void send(BroadcastMessage message) throws Exception {
+                sseEmitter.send(SseEmitter.event().name(message.getEvent()).data(message.getData()));
+            }
+
+            @Override
+            protected void close(String reason) {
+                log.warn("[SSE推送] 断开连接, 浏览器 ID: {}, {}", browserId, reason);
+                sseEmitter.complete();
+            }
+        };
         sseEmitter.onError((err)-> {
             log.error("[SSE推送] 连接错误, 浏览器 ID: {}, {}", browserId, err.getMessage());
-            sseSessionMap.remove(browserId);
+            broadcastHub.removeClient(client);
             sseEmitter.completeWithError(err);
         });
 
-//        sseEmitter.onTimeout(() -> {
-//            log.info("[SSE推送] 连接超时, 浏览器 ID: {}", browserId);
-//            sseSessionMap.remove(browserId);
-//            sseEmitter.complete();
-//            dynamicTask.stop(key);
-//        });
-
         sseEmitter.onCompletion(() -> {
             log.info("[SSE推送] 连接结束, 浏览器 ID: {}", browserId);
-            sseSessionMap.remove(browserId);
+            broadcastHub.removeClient(client);
         });
 
-        sseSessionMap.put(browserId, sseEmitter);
+        broadcastHub.addClient(client);
 
-        log.info("[SSE推送] 连接已建立, 浏览器 ID: {}, 当前在线数: {}", browserId, sseSessionMap.size());
+        log.info("[SSE推送] 连接已建立, 浏览器 ID: {}, 当前在线数: {}", browserId, broadcastHub.size());
         return sseEmitter;
     }
 
+    private Predicate<BroadcastMessage> getFilter(Set<String> deviceIds) {
+        if (deviceIds == null || deviceIds.isEmpty()) {
+            return null;
+        }
+        return message -> !EVENT_ALARM.equals(message.getEvent()) || deviceIds.contains(message.getKey());
+    }
+
     @Scheduled(fixedRate = 1000)   //每1秒执行一次
     public void execute(){
-        if (sseSessionMap.isEmpty()){
+        if (broadcastHub.isEmpty()){
             return;
         }
-        sendForAll("keepalive", "alive");
+        // 心跳只保留最新的一条, 积压时不会占满队列
+        broadcastHub.publish(BroadcastMessage.getInstance("keepalive", null, "alive", true));
     }
 
-
     public void sendForAll(String event, Object data) {
-        for (String browserId : sseSessionMap.keySet()) {
-            SseEmitter sseEmitter = sseSessionMap.get(browserId);
-            if (sseEmitter == null) {
-                continue;
-            };
-            try {
-                sseEmitter.send(SseEmitter.event().name(event).data(data));
-            } catch (Exception e) {
-                log.error("[SSE推送] 发送失败: {}", e.getMessage());
-                sseSessionMap.remove(browserId);
-                sseEmitter.completeWithError(e);
-            }
-        }
+        broadcastHub.publish(event, data);
+    }
+
+    /**
+     * @param key 用于过滤的标识, 报警消息为设备ID
+     * @param coalesce 是否只保留最新的一条, 适用于进度这类消息
+     */
+    public void sendForAll(String event, String key, Object data, boolean coalesce) {
+        broadcastHub.publish(BroadcastMessage.getInstance(event, key, data, coalesce));
+    }
+
+    public List<BroadcastClientInfo> getClientInfoList() {
+        return broadcastHub.getClientInfoList();
     }
 }
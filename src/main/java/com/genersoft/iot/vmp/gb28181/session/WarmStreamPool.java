@@ -0,0 +1,371 @@
+package com.genersoft.iot.vmp.gb28181.session;
+
+import com.genersoft.iot.vmp.common.InviteInfo;
+import com.genersoft.iot.vmp.common.InviteSessionStatus;
+import com.genersoft.iot.vmp.common.InviteSessionType;
+import com.genersoft.iot.vmp.conf.UserSetting;
+import com.genersoft.iot.vmp.gb28181.bean.Device;
+import com.genersoft.iot.vmp.gb28181.bean.DeviceChannel;
+import com.genersoft.iot.vmp.gb28181.service.IDeviceChannelService;
+import com.genersoft.iot.vmp.gb28181.service.IDeviceService;
+import com.genersoft.iot.vmp.gb28181.service.IInviteStreamService;
+import com.genersoft.iot.vmp.gb28181.service.IPlayService;
+import com.genersoft.iot.vmp.media.bean.MediaInfo;
+import com.genersoft.iot.vmp.media.bean.MediaServer;
+import com.genersoft.iot.vmp.media.event.media.MediaDepartureEvent;
+import com.genersoft.iot.vmp.media.service.IMediaServerService;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 热点通道预热池
+ * 统计通道的点播频率, 对热点通道在无人观看时延迟释放, 再次点播时直接复用已有的流, 免去INVITE与等待流到来的耗时,
+ * 无人观看超过保留时长或者超出流媒体节点的带宽预算时释放
+ */
+@Slf4j
+@Component
+public class WarmStreamPool {
+
+    /**
+     * 热度半衰期, 单位：毫秒
+     */
+    private static final long HEAT_HALF_LIFE = 10 * 60 * 1000L;
+
+    /**
+     * 热度低于此值时不再记录
+     */
+    private static final double HEAT_MIN = 0.05;
+
+    /**
+     * 每次检查最多主动预拉的通道数
+     */
+    private static final int PREFETCH_PER_ROUND = 5;
+
+    @Autowired
+    private UserSetting userSetting;
+
+    @Autowired
+    private IInviteStreamService inviteStreamService;
+
+    @Lazy
+    @Autowired
+    private IPlayService playService;
+
+    @Lazy
+    @Autowired
+    private IMediaServerService mediaServerService;
+
+    @Lazy
+    @Autowired
+    private IDeviceChannelService deviceChannelService;
+
+    @Lazy
+    @Autowired
+    private IDeviceService deviceService;
+
+    /**
+     * 通道热度, key为通道ID
+     */
+    private final Map<Integer, Heat> heatMap = new ConcurrentHashMap<>();
+
+    /**
+     * 无人观看但被保留的流, key为流ID, 按进入空闲的时间排序, 最早空闲的在最前
+     */
+    private final LinkedHashMap<String, WarmStream> idleStreams = new LinkedHashMap<>();
+
+    @Data
+    private static class Heat {
+        private double score;
+        private long updateTime;
+
+        double current(long now) {
+            return score * Math.pow(0.5, (double) (now - updateTime) / HEAT_HALF_LIFE);
+        }
+    }
+
+    @Data
+    public static class WarmStream {
+        private Integer channelId;
+        private String stream;
+        private String mediaServerId;
+        /**
+         * 流的码率, 单位byte/s
+         */
+        private long bytesSpeed;
+        private long idleTime;
+    }
+
+    public boolean isEnable() {
+        return userSetting.isWarmPoolEnable();
+    }
+
+    /**
+     * 记录一次点播
+     */
+    public void recordView(Integer channelId) {
+        if (!isEnable() || channelId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        heatMap.compute(channelId, (key, heat) -> {
+            if (heat == null) {
+                heat = new Heat();
+                heat.setScore(1);
+            } else {
+                heat.setScore(heat.current(now) + 1);
+            }
+            heat.setUpdateTime(now);
+            return heat;
+        });
+        synchronized (idleStreams) {
+            idleStreams.values().removeIf(warmStream -> warmStream.getChannelId().equals(channelId));
+        }
+    }
+
+    /**
+     * 流无人观看时调用, 返回true表示流已进入预热池, 不需要关闭
+     */
+    public boolean keepOnNoneReader(String mediaServerId, InviteInfo inviteInfo) {
+        if (!isEnable() || inviteInfo == null || inviteInfo.getType() != InviteSessionType.PLAY
+                || inviteInfo.getStatus() != InviteSessionStatus.ok) {
+            return false;
+        }
+        if (!getHotChannels().contains(inviteInfo.getChannelId())) {
+            return false;
+        }
+        long bytesSpeed = 0;
+        MediaServer mediaServer = mediaServerService.getOne(mediaServerId);
+        if (mediaServer != null) {
+            MediaInfo mediaInfo = mediaServerService.getMediaInfo(mediaServer, "rtp", inviteInfo.getStream());
+            if (mediaInfo != null && mediaInfo.getBytesSpeed() != null) {
+                bytesSpeed = mediaInfo.getBytesSpeed();
+            }
+        }
+        synchronized (idleStreams) {
+            long budget = getBudget();
+            // 流媒体节点会对空闲的流重复发送无人观看的通知, 已保留的流沿用最初的空闲时间与位置, 只更新码率
+            WarmStream warmStream = idleStreams.get(inviteInfo.getStream());
+            if (warmStream != null) {
+                if (budget > 0 && getUsedBytesSpeed(mediaServerId) - warmStream.getBytesSpeed() + bytesSpeed > budget) {
+                    idleStreams.remove(warmStream.getStream());
+                    log.info("[预热池] 超出流媒体节点带宽预算, 不保留, 流媒体节点：{}, 流：{}", mediaServerId, warmStream.getStream());
+                    return false;
+                }
+                warmStream.setBytesSpeed(bytesSpeed);
+                return true;
+            }
+            if (budget > 0 && getUsedBytesSpeed(mediaServerId) + bytesSpeed > budget) {
+                log.info("[预热池] 超出流媒体节点带宽预算, 不保留, 流媒体节点：{}, 流：{}", mediaServerId, inviteInfo.getStream());
+                return false;
+            }
+            warmStream = new WarmStream();
+            warmStream.setChannelId(inviteInfo.getChannelId());
+            warmStream.setStream(inviteInfo.getStream());
+            warmStream.setMediaServerId(mediaServerId);
+            warmStream.setIdleTime(System.currentTimeMillis());
+            warmStream.setBytesSpeed(bytesSpeed);
+            idleStreams.put(warmStream.getStream(), warmStream);
+        }
+        log.info("[预热池] 热点通道无人观看, 保留流, 通道：{}, 流：{}", inviteInfo.getChannelId(), inviteInfo.getStream());
+        return true;
+    }
+
+    /**
+     * 流媒体节点资源紧张时释放最早空闲的一路保留流, 返回是否有流被释放
+     */
+    public boolean reclaim(String mediaServerId) {
+        WarmStream target = null;
+        synchronized (idleStreams) {
+            for (WarmStream warmStream : idleStreams.values()) {
+                if (warmStream.getMediaServerId().equals(mediaServerId)) {
+                    target = warmStream;
+                    break;
+                }
+            }
+            if (target != null) {
+                idleStreams.remove(target.getStream());
+            }
+        }
+        if (target == null) {
+            return false;
+        }
+        log.info("[预热池] 流媒体节点资源紧张, 释放保留流, 流媒体节点：{}, 流：{}", mediaServerId, target.getStream());
+        release(target);
+        return true;
+    }
+
+    /**
+     * 流媒体节点的保留流是否已经用满带宽预算
+     */
+    public boolean isFull(String mediaServerId) {
+        long budget = getBudget();
+        if (!isEnable() || budget <= 0) {
+            return false;
+        }
+        synchronized (idleStreams) {
+            return getUsedBytesSpeed(mediaServerId) >= budget;
+        }
+    }
+
+    public List<WarmStream> getIdleStreams() {
+        synchronized (idleStreams) {
+            return new ArrayList<>(idleStreams.values());
+        }
+    }
+
+    /**
+     * 流离开时移除
+     */
+    @EventListener
+    public void onApplicationEvent(MediaDepartureEvent event) {
+        if (!"rtp".equals(event.getApp())) {
+            return;
+        }
+        synchronized (idleStreams) {
+            idleStreams.remove(event.getStream());
+        }
+    }
+
+    @Scheduled(fixedDelay = 10 * 1000)
+    public void execute() {
+        if (!isEnable()) {
+            if (!heatMap.isEmpty() || !idleStreams.isEmpty()) {
+                heatMap.clear();
+                for (WarmStream warmStream : getIdleStreams()) {
+                    release(warmStream);
+                }
+                synchronized (idleStreams) {
+                    idleStreams.clear();
+                }
+            }
+            return;
+        }
+        long now = System.currentTimeMillis();
+        heatMap.entrySet().removeIf(entry -> entry.getValue().current(now) < HEAT_MIN);
+
+        Set<Integer> hotChannels = getHotChannels();
+        long ttl = userSetting.getWarmPoolIdleTtl() * 1000L;
+        long budget = getBudget();
+        List<WarmStream> expiredList = new ArrayList<>();
+        synchronized (idleStreams) {
+            Iterator<WarmStream> iterator = idleStreams.values().iterator();
+            while (iterator.hasNext()) {
+                WarmStream warmStream = iterator.next();
+                if (now - warmStream.getIdleTime() > ttl || !hotChannels.contains(warmStream.getChannelId())) {
+                    iterator.remove();
+                    expiredList.add(warmStream);
+                }
+            }
+            if (budget > 0) {
+                Map<String, Long> usedMap = new HashMap<>();
+                for (WarmStream warmStream : idleStreams.values()) {
+                    usedMap.merge(warmStream.getMediaServerId(), warmStream.getBytesSpeed(), Long::sum);
+                }
+                iterator = idleStreams.values().iterator();
+                while (iterator.hasNext()) {
+                    WarmStream warmStream = iterator.next();
+                    Long used = usedMap.get(warmStream.getMediaServerId());
+                    if (used != null && used > budget) {
+                        usedMap.put(warmStream.getMediaServerId(), used - warmStream.getBytesSpeed());
+                        iterator.remove();
+                        expiredList.add(warmStream);
+                    }
+                }
+            }
+        }
+        for (WarmStream warmStream : expiredList) {
+            log.info("[预热池] 释放保留流, 通道：{}, 流：{}", warmStream.getChannelId(), warmStream.getStream());
+            release(warmStream);
+        }
+        if (userSetting.isWarmPoolPrefetch()) {
+            prefetch(hotChannels);
+        }
+    }
+
+    /**
+     * 主动拉起尚未点播的热点通道
+     */
+    private void prefetch(Set<Integer> hotChannels) {
+        int count = 0;
+        for (Integer channelId : hotChannels) {
+            if (count >= PREFETCH_PER_ROUND) {
+                return;
+            }
+            if (inviteStreamService.getInviteInfoByDeviceAndChannel(InviteSessionType.PLAY, channelId) != null) {
+                continue;
+            }
+            DeviceChannel channel = deviceChannelService.getOneForSourceById(channelId);
+            if (channel == null) {
+                continue;
+            }
+            Device device = deviceService.getDevice(channel.getDataDeviceId());
+            if (device == null || !device.isOnLine() || !userSetting.getServerId().equals(device.getServerId())) {
+                continue;
+            }
+            MediaServer mediaServer = playService.getNewMediaServerItem(device);
+            if (mediaServer == null || isFull(mediaServer.getId())) {
+                continue;
+            }
+            count++;
+            log.info("[预热池] 预拉热点通道, 设备：{}, 通道：{}", device.getDeviceId(), channel.getDeviceId());
+            try {
+                playService.prefetch(mediaServer, device, channel, (code, msg, data) -> {});
+            } catch (Exception e) {
+                log.warn("[预热池] 预拉热点通道失败, 设备：{}, 通道：{}, {}", device.getDeviceId(), channel.getDeviceId(), e.getMessage());
+            }
+        }
+    }
+
+    private void release(WarmStream warmStream) {
+        InviteInfo inviteInfo = inviteStreamService.getInviteInfoByStream(InviteSessionType.PLAY, warmStream.getStream());
+        if (inviteInfo == null) {
+            return;
+        }
+        try {
+            playService.stop(inviteInfo);
+        } catch (Exception e) {
+            log.warn("[预热池] 释放保留流失败, 流：{}, {}", warmStream.getStream(), e.getMessage());
+        }
+    }
+
+    /**
+     * 当前热度最高的N个通道
+     */
+    private Set<Integer> getHotChannels() {
+        long now = System.currentTimeMillis();
+        return heatMap.entrySet().stream()
+                .sorted((o1, o2) -> Double.compare(o2.getValue().current(now), o1.getValue().current(now)))
+                .limit(userSetting.getWarmPoolSize())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * 调用者需持有idleStreams的锁
+     */
+    private long getUsedBytesSpeed(String mediaServerId) {
+        long used = 0;
+        for (WarmStream warmStream : idleStreams.values()) {
+            if (warmStream.getMediaServerId().equals(mediaServerId)) {
+                used += warmStream.getBytesSpeed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * 每个流媒体节点的带宽预算, 单位byte/s, 0为不限制
+     */
+    private long getBudget() {
+        return userSetting.getWarmPoolBandwidthPerMediaServer() * 1000 / 8;
+    }
+}
@@ -5,7 +5,9 @@ import com.genersoft.iot.vmp.gb28181.bean.SipTransactionInfo;
 import com.genersoft.iot.vmp.utils.redis.RedisUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -63,6 +65,36 @@ public class SubscribeTaskRunner{
         delayQueue.offer(task);
     }
 
+    /**
+     * 批量添加, 使用管道写入redis, 用于启动时恢复任务
+     */
+    public void addSubscribes(List<SubscribeTask> tasks) {
+        List<SubscribeTask> taskList = new ArrayList<>();
+        for (SubscribeTask task : tasks) {
+            if (task.getDelayTime() - System.currentTimeMillis() >= 1000) {
+                taskList.add(task);
+            }
+        }
+        if (taskList.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (SubscribeTask task : taskList) {
+                    Duration duration = Duration.ofSeconds((task.getDelayTime() - System.currentTimeMillis())/1000);
+                    String key = String.format("%s_%s_%s", prefix, userSetting.getServerId(), task.getKey());
+                    operations.opsForValue().set(key, task.getInfo(), duration);
+                }
+                return null;
+            }
+        });
+        for (SubscribeTask task : taskList) {
+            subscribes.put(task.getKey(), task);
+            delayQueue.offer(task);
+        }
+    }
+
     public boolean removeSubscribe(String key) {
         SubscribeTask task = subscribes.get(key);
         if (task == null) {
@@ -107,18 +139,28 @@ public class SubscribeTaskRunner{
 
     public List<SubscribeTaskInfo> getAllTaskInfo(){
         String scanKey = String.format("%s_%s_*", prefix, userSetting.getServerId());
-        List<Object> values = RedisUtil.scan(redisTemplate, scanKey);
-        if (values.isEmpty()) {
+        List<Object> keys = RedisUtil.scan(redisTemplate, scanKey);
+        if (keys.isEmpty()) {
             return new ArrayList<>();
         }
+        // 使用MGET与管道批量读取, 避免每个任务两次往返
+        List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+        List<Object> expires = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (Object key : keys) {
+                    operations.getExpire(key, TimeUnit.SECONDS);
+                }
+                return null;
+            }
+        });
         List<SubscribeTaskInfo> result = new ArrayList<>();
-        for (Object value : values) {
-            String redisKey = (String)value;
-            SubscribeTaskInfo taskInfo = (SubscribeTaskInfo)redisTemplate.opsForValue().get(redisKey);
+        for (int i = 0; i < keys.size(); i++) {
+            SubscribeTaskInfo taskInfo = values == null ? null : (SubscribeTaskInfo)values.get(i);
             if (taskInfo == null) {
                 continue;
             }
-            Long expire = redisTemplate.getExpire(redisKey, TimeUnit.SECONDS);
+            Long expire = (Long)expires.get(i);
             taskInfo.setExpireTime(expire);
             result.add(taskInfo);
         }
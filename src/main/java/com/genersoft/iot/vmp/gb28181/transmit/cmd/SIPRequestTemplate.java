@@ -0,0 +1,157 @@
+package com.genersoft.iot.vmp.gb28181.transmit.cmd;
+
+import com.genersoft.iot.vmp.conf.SipConfig;
+import com.genersoft.iot.vmp.gb28181.utils.SipUtils;
+import com.genersoft.iot.vmp.utils.GitUtil;
+import com.genersoft.iot.vmp.utils.IpPortUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sip.InvalidArgumentException;
+import javax.sip.PeerUnavailableException;
+import javax.sip.SipFactory;
+import javax.sip.address.AddressFactory;
+import javax.sip.address.SipURI;
+import javax.sip.header.*;
+import javax.sip.message.MessageFactory;
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 构建SIP请求用到的工厂与头域模板
+ * 工厂只获取一次, 内容固定的头域与解析过的URI缓存为模板, 每次使用时复制一份再修改tag/branch等字段, 不再每个请求都重新解析
+ * URI与Via的缓存以设备地址, 本地IP与传输协议为key, 设备地址或者传输协议变化后自然不再命中, 旧的模板按最近最少使用淘汰
+ */
+@Component
+public class SIPRequestTemplate {
+
+    /**
+     * 缓存的URI的最大数量
+     */
+    private static final int MAX_URI_SIZE = 20000;
+
+    @Autowired
+    private SipConfig sipConfig;
+
+    @Autowired
+    private GitUtil gitUtil;
+
+    private AddressFactory addressFactory;
+
+    private HeaderFactory headerFactory;
+
+    private MessageFactory messageFactory;
+
+    private FromHeader fromHeader;
+
+    private MaxForwardsHeader maxForwardsHeader;
+
+    private UserAgentHeader userAgentHeader;
+
+    private final Map<String, SipURI> uriMap = new LinkedHashMap<String, SipURI>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SipURI> eldest) {
+            return size() > MAX_URI_SIZE;
+        }
+    };
+
+    private final Map<String, ViaHeader> viaMap = new ConcurrentHashMap<>();
+
+    private final Map<String, ContentTypeHeader> contentTypeMap = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws PeerUnavailableException, ParseException, InvalidArgumentException {
+        addressFactory = SipFactory.getInstance().createAddressFactory();
+        headerFactory = SipFactory.getInstance().createHeaderFactory();
+        messageFactory = SipFactory.getInstance().createMessageFactory();
+        SipURI fromSipURI = addressFactory.createSipURI(sipConfig.getId(), sipConfig.getDomain());
+        fromHeader = headerFactory.createFromHeader(addressFactory.createAddress(fromSipURI), null);
+        maxForwardsHeader = headerFactory.createMaxForwardsHeader(70);
+        userAgentHeader = SipUtils.createUserAgentHeader(gitUtil);
+    }
+
+    public AddressFactory getAddressFactory() {
+        return addressFactory;
+    }
+
+    public HeaderFactory getHeaderFactory() {
+        return headerFactory;
+    }
+
+    public MessageFactory getMessageFactory() {
+        return messageFactory;
+    }
+
+    public SipURI createSipURI(String user, String host) throws ParseException {
+        String key = user + "@" + host;
+        SipURI sipURI;
+        synchronized (uriMap) {
+            sipURI = uriMap.get(key);
+        }
+        if (sipURI == null) {
+            sipURI = addressFactory.createSipURI(user, host);
+            synchronized (uriMap) {
+                uriMap.put(key, sipURI);
+            }
+        }
+        return (SipURI) sipURI.clone();
+    }
+
+    /**
+     * 本平台的From, 地址为国标编号与域
+     */
+    public FromHeader createFromHeader(String tag) throws ParseException {
+        FromHeader header = (FromHeader) fromHeader.clone();
+        if (tag != null) {
+            header.setTag(tag);
+        }
+        return header;
+    }
+
+    public ToHeader createToHeader(String user, String host, String tag) throws ParseException {
+        return headerFactory.createToHeader(addressFactory.createAddress(createSipURI(user, host)), tag);
+    }
+
+    public ViaHeader createViaHeader(String localIp, String transport, String branch) throws ParseException, InvalidArgumentException {
+        String key = localIp + "/" + transport;
+        ViaHeader prototype = viaMap.get(key);
+        if (prototype == null) {
+            prototype = headerFactory.createViaHeader(localIp, sipConfig.getPort(), transport, null);
+            viaMap.put(key, prototype);
+        }
+        ViaHeader header = (ViaHeader) prototype.clone();
+        if (branch != null) {
+            header.setBranch(branch);
+        }
+        return header;
+    }
+
+    public MaxForwardsHeader createMaxForwardsHeader() {
+        return (MaxForwardsHeader) maxForwardsHeader.clone();
+    }
+
+    public UserAgentHeader createUserAgentHeader() {
+        return (UserAgentHeader) userAgentHeader.clone();
+    }
+
+    /**
+     * 本平台的Contact, 地址为国标编号与本地IP端口
+     */
+    public ContactHeader createContactHeader(String localIp) throws ParseException {
+        SipURI sipURI = createSipURI(sipConfig.getId(), IpPortUtil.concatenateIpAndPort(localIp, String.valueOf(sipConfig.getPort())));
+        return headerFactory.createContactHeader(addressFactory.createAddress(sipURI));
+    }
+
+    public ContentTypeHeader createContentTypeHeader(String contentType, String contentSubType) throws ParseException {
+        String key = contentType + "/" + contentSubType;
+        ContentTypeHeader prototype = contentTypeMap.get(key);
+        if (prototype == null) {
+            prototype = headerFactory.createContentTypeHeader(contentType, contentSubType);
+            contentTypeMap.put(key, prototype);
+        }
+        return (ContentTypeHeader) prototype.clone();
+    }
+}
@@ -10,6 +10,7 @@ import com.genersoft.iot.vmp.gb28181.bean.*;
 import com.genersoft.iot.vmp.gb28181.event.MessageSubscribe;
 import com.genersoft.iot.vmp.gb28181.event.SipSubscribe;
 import com.genersoft.iot.vmp.gb28181.event.sip.MessageEvent;
+import com.genersoft.iot.vmp.gb28181.session.RecordInfoAggregator;
 import com.genersoft.iot.vmp.gb28181.session.SipInviteSessionManager;
 import com.genersoft.iot.vmp.gb28181.transmit.SIPSender;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommander;
@@ -79,6 +80,9 @@ public class SIPCommander implements ISIPCommander {
     @Autowired
     private MessageSubscribe messageSubscribe;
 
+    @Autowired
+    private RecordInfoAggregator recordInfoAggregator;
+
     /**
      * 云台指令码计算
      *
@@ -1016,6 +1020,8 @@ public class SIPCommander implements ISIPCommander {
         Request request = headerProvider.createMessageRequest(device, recordInfoXml.toString(),
                 SipUtils.getNewViaTag(), SipUtils.getNewFromTag(), null,sipSender.getNewCallIdHeader(sipLayer.getLocalIp(device.getLocalIp()),device.getTransport()));
 
+        // 回复在本节点汇总
+        recordInfoAggregator.register(device.getDeviceId(), channelId, sn, startTime, endTime, type, secrecy);
         sipSender.transmitRequest(sipLayer.getLocalIp(device.getLocalIp()), request, errorEvent, okEvent);
     }
 
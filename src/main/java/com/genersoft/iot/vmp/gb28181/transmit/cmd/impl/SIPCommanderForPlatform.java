@@ -12,6 +12,7 @@ import com.genersoft.iot.vmp.gb28181.session.SipInviteSessionManager;
 import com.genersoft.iot.vmp.gb28181.transmit.SIPSender;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommanderForPlatform;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.SIPRequestHeaderPlarformProvider;
+import com.genersoft.iot.vmp.gb28181.transmit.cmd.SIPRequestTemplate;
 import com.genersoft.iot.vmp.gb28181.utils.SipUtils;
 import com.genersoft.iot.vmp.media.bean.MediaServer;
 import com.genersoft.iot.vmp.media.event.hook.Hook;
@@ -36,7 +37,6 @@ import org.springframework.util.ObjectUtils;
 import javax.sip.InvalidArgumentException;
 import javax.sip.ResponseEvent;
 import javax.sip.SipException;
-import javax.sip.SipFactory;
 import javax.sip.header.CallIdHeader;
 import javax.sip.header.WWWAuthenticateHeader;
 import javax.sip.message.Request;
@@ -80,6 +80,9 @@ public class SIPCommanderForPlatform implements ISIPCommanderForPlatform {
     @Autowired
     private GitUtil gitUtil;
 
+    @Autowired
+    private SIPRequestTemplate requestTemplate;
+
     @Override
     public void register(Platform parentPlatform, SipSubscribe.Event errorEvent , SipSubscribe.Event okEvent) throws InvalidArgumentException, ParseException, SipException {
         register(parentPlatform, null, null, errorEvent, okEvent, true);
@@ -448,7 +451,7 @@ public class SIPCommanderForPlatform implements ISIPCommanderForPlatform {
     private void sendNotify(Platform parentPlatform, String catalogXmlContent,
                             SubscribeInfo subscribeInfo, SipSubscribe.Event errorEvent, SipSubscribe.Event okEvent )
             throws SipException, ParseException, InvalidArgumentException {
-        MessageFactoryImpl messageFactory = (MessageFactoryImpl) SipFactory.getInstance().createMessageFactory();
+        MessageFactoryImpl messageFactory = (MessageFactoryImpl) requestTemplate.getMessageFactory();
         String characterSet = parentPlatform.getCharacterSet();
         // 设置编码， 防止中文乱码
         messageFactory.setDefaultContentEncodingCharset(characterSet);
@@ -2,29 +2,25 @@ package com.genersoft.iot.vmp.gb28181.transmit.event.request.impl;
 
 import com.genersoft.iot.vmp.conf.UserSetting;
 import com.genersoft.iot.vmp.gb28181.bean.*;
-import com.genersoft.iot.vmp.gb28181.event.EventPublisher;
 import com.genersoft.iot.vmp.gb28181.event.subscribe.catalog.CatalogEvent;
 import com.genersoft.iot.vmp.gb28181.service.IDeviceChannelService;
 import com.genersoft.iot.vmp.gb28181.transmit.event.request.SIPRequestProcessorParent;
 import com.genersoft.iot.vmp.gb28181.utils.SipUtils;
 import com.genersoft.iot.vmp.storager.IRedisCatchStorage;
-import com.genersoft.iot.vmp.utils.DateUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import javax.sip.RequestEvent;
 import javax.sip.header.FromHeader;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SIP命令类型： NOTIFY请求中的目录请求处理
@@ -33,22 +29,29 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 @Component
 public class NotifyRequestForCatalogProcessor extends SIPRequestProcessorParent {
 
-    private final ConcurrentLinkedQueue<NotifyCatalogChannel> channelList = new ConcurrentLinkedQueue<>();
-
 	private final ConcurrentLinkedQueue<HandlerCatchData> taskQueue = new ConcurrentLinkedQueue<>();
 
 	@Autowired
 	private UserSetting userSetting;
 
-	@Autowired
-	private EventPublisher eventPublisher;
-
 	@Autowired
 	private IRedisCatchStorage redisCatchStorage;
 
 	@Autowired
 	private IDeviceChannelService deviceChannelService;
 
+	private final AtomicLong received = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private final AtomicLong written = new AtomicLong();
+
+	private volatile int lastDeviceCount;
+
+	private volatile int lastBatchSize;
+
+	private volatile long lastFlushCost;
+
 //	@Scheduled(fixedRate = 2000)   //每400毫秒执行一次
 //	public void showSize(){
 //		log.warn("[notify-目录订阅] 待处理消息数量： {}", taskQueue.size() );
@@ -62,6 +65,18 @@ public class NotifyRequestForCatalogProcessor extends SIPRequestProcessorParent
 		taskQueue.offer(new HandlerCatchData(evt, null, null));
 	}
 
+	public NotifyCatalogStats getStats() {
+		NotifyCatalogStats stats = new NotifyCatalogStats();
+		stats.setReceived(received.get());
+		stats.setCoalesced(coalesced.get());
+		stats.setWritten(written.get());
+		stats.setPending(taskQueue.size());
+		stats.setLastDeviceCount(lastDeviceCount);
+		stats.setLastBatchSize(lastBatchSize);
+		stats.setLastFlushCost(lastFlushCost);
+		return stats;
+	}
+
 	@Scheduled(fixedDelay = 400)   //每400毫秒执行一次
 	public void executeTaskQueue(){
 		if (taskQueue.isEmpty()) {
@@ -78,6 +93,10 @@ public class NotifyRequestForCatalogProcessor extends SIPRequestProcessorParent
 		if (handlerCatchDataList.isEmpty()) {
 			return;
 		}
+		long startTime = System.currentTimeMillis();
+		// 本周期内每个设备的通道变化, 同一通道只保留最后的状态
+		Map<Integer, Device> deviceMap = new HashMap<>();
+		Map<Integer, Map<String, NotifyCatalogChannel>> changeMap = new LinkedHashMap<>();
 		for (HandlerCatchData take : handlerCatchDataList) {
 			if (take == null) {
 				continue;
@@ -102,6 +121,8 @@ public class NotifyRequestForCatalogProcessor extends SIPRequestProcessorParent
 					log.warn("[ 收到目录订阅 ] content cannot be null, {}", evt.getRequest());
 					continue;
 				}
+				deviceMap.put(device.getId(), device);
+				Map<String, NotifyCatalogChannel> deviceChanges = changeMap.computeIfAbsent(device.getId(), key -> new LinkedHashMap<>());
 				Iterator<Element> deviceListIterator = deviceListElement.elementIterator();
 				if (deviceListIterator != null) {
 
@@ -126,118 +147,65 @@ public class NotifyRequestForCatalogProcessor extends SIPRequestProcessorParent
 							log.debug("[收到目录订阅]：{}/{}-{}", device.getDeviceId(),
 									catalogChannelEvent.getChannel().getDeviceId(), catalogChannelEvent.getEvent());
 						}
+						received.incrementAndGet();
 						DeviceChannel channel = catalogChannelEvent.getChannel();
-						switch (catalogChannelEvent.getEvent()) {
+						String event = catalogChannelEvent.getEvent();
+						switch (event) {
 							case CatalogEvent.ON:
 								// 上线
-								log.info("[收到通道上线通知] 来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
+								log.info("[收到通道上线通知] 来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
 								channel.setStatus("ON");
-								channelList.add(NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.STATUS_CHANGED, channel));
-								if (userSetting.getDeviceStatusNotify()) {
-									// 发送redis消息
-									redisCatchStorage.sendDeviceOrChannelStatus(device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId(), true);
-								}
+								coalesce(deviceChanges, NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.STATUS_CHANGED, channel, event));
 								break;
 							case CatalogEvent.OFF:
 								// 离线
-								log.info("[收到通道离线通知] 来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
+								log.info("[收到通道离线通知] 来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
 								if (userSetting.getRefuseChannelStatusChannelFormNotify()) {
-									log.info("[收到通道离线通知] 但是平台已配置拒绝此消息，来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
+									log.info("[收到通道离线通知] 但是平台已配置拒绝此消息，来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
 								} else {
 									channel.setStatus("OFF");
-									channelList.add(NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.STATUS_CHANGED, channel));
-									if (userSetting.getDeviceStatusNotify()) {
-										// 发送redis消息
-										redisCatchStorage.sendDeviceOrChannelStatus(device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId(), false);
-									}
+									coalesce(deviceChanges, NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.STATUS_CHANGED, channel, event));
 								}
 								break;
 							case CatalogEvent.VLOST:
 								// 视频丢失
-								log.info("[收到通道视频丢失通知] 来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
+								log.info("[收到通道视频丢失通知] 来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
 								if (userSetting.getRefuseChannelStatusChannelFormNotify()) {
-									log.info("[收到通道视频丢失通知] 但是平台已配置拒绝此消息，来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
+									log.info("[收到通道视频丢失通知] 但是平台已配置拒绝此消息，来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
 								} else {
 									channel.setStatus("OFF");
-									channelList.add(NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.STATUS_CHANGED, channel));
-									if (userSetting.getDeviceStatusNotify()) {
-										// 发送redis消息
-										redisCatchStorage.sendDeviceOrChannelStatus(device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId(), false);
-									}
+									coalesce(deviceChanges, NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.STATUS_CHANGED, channel, event));
 								}
 								break;
 							case CatalogEvent.DEFECT:
 								// 故障
-								log.info("[收到通道视频故障通知] 来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
+								log.info("[收到通道视频故障通知] 来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
 								if (userSetting.getRefuseChannelStatusChannelFormNotify()) {
-									log.info("[收到通道视频故障通知] 但是平台已配置拒绝此消息，来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
+									log.info("[收到通道视频故障通知] 但是平台已配置拒绝此消息，来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
 								} else {
 									channel.setStatus("OFF");
-									channelList.add(NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.STATUS_CHANGED, channel));
-									if (userSetting.getDeviceStatusNotify()) {
-										// 发送redis消息
-										redisCatchStorage.sendDeviceOrChannelStatus(device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId(), false);
-									}
+									coalesce(deviceChanges, NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.STATUS_CHANGED, channel, event));
 								}
 								break;
 							case CatalogEvent.ADD:
-								// 增加
-								log.info("[收到增加通道通知] 来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
-								// 判断此通道是否存在
-								DeviceChannel deviceChannel = deviceChannelService.getOneForSource(device.getId(), catalogChannelEvent.getChannel().getDeviceId());
-								if (deviceChannel != null) {
-									log.info("[增加通道] 已存在，不发送通知只更新，设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
-									channel.setId(deviceChannel.getId());
-									channel.setHasAudio(deviceChannel.isHasAudio());
-									channel.setUpdateTime(DateUtil.getNow());
-									channelList.add(NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.UPDATE, channel));
-								} else {
-									catalogChannelEvent.getChannel().setUpdateTime(DateUtil.getNow());
-									catalogChannelEvent.getChannel().setCreateTime(DateUtil.getNow());
-									channelList.add(NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.ADD, channel));
-									if (userSetting.getDeviceStatusNotify()) {
-										// 发送redis消息
-										redisCatchStorage.sendChannelAddOrDelete(device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId(), true);
-									}
-								}
-
+								// 增加, 通道是否已存在在入库时统一判断
+								log.info("[收到增加通道通知] 来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
+								coalesce(deviceChanges, NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.ADD, channel, event));
 								break;
 							case CatalogEvent.DEL:
 								// 删除
-								log.info("[收到删除通道通知] 来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
-								channelList.add(NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.DELETE, channel));
-								if (userSetting.getDeviceStatusNotify()) {
-									// 发送redis消息
-									redisCatchStorage.sendChannelAddOrDelete(device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId(), false);
-								}
+								log.info("[收到删除通道通知] 来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
+								coalesce(deviceChanges, NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.DELETE, channel, event));
 								break;
 							case CatalogEvent.UPDATE:
-								// 更新
-								log.info("[收到更新通道通知] 来自设备: {}, 通道 {}", device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId());
-								// 判断此通道是否存在
-								DeviceChannel deviceChannelForUpdate = deviceChannelService.getOneForSource(device.getId(), catalogChannelEvent.getChannel().getDeviceId());
-								if (deviceChannelForUpdate != null) {
-									channel.setId(deviceChannelForUpdate.getId());
-									channel.setHasAudio(deviceChannelForUpdate.isHasAudio());
-									channel.setUpdateTime(DateUtil.getNow());
-									channel.setUpdateTime(DateUtil.getNow());
-									channelList.add(NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.UPDATE, channel));
-								} else {
-									catalogChannelEvent.getChannel().setCreateTime(DateUtil.getNow());
-									catalogChannelEvent.getChannel().setUpdateTime(DateUtil.getNow());
-									channelList.add(NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.ADD, channel));
-									if (userSetting.getDeviceStatusNotify()) {
-										// 发送redis消息
-										redisCatchStorage.sendChannelAddOrDelete(device.getDeviceId(), catalogChannelEvent.getChannel().getDeviceId(), true);
-									}
-								}
+								// 更新, 通道是否已存在在入库时统一判断
+								log.info("[收到更新通道通知] 来自设备: {}, 通道 {}", device.getDeviceId(), channel.getDeviceId());
+								coalesce(deviceChanges, NotifyCatalogChannel.getInstance(NotifyCatalogChannel.Type.UPDATE, channel, event));
 								break;
 							default:
-								log.warn("[ NotifyCatalog ] event not found ： {}", catalogChannelEvent.getEvent());
+								log.warn("[ NotifyCatalog ] event not found ： {}", event);
 
 						}
-						// 转发变化信息
-						eventPublisher.catalogEventPublish(null, catalogChannelEvent.getChannel(), catalogChannelEvent.getEvent());
 					}
 				}
 
@@ -245,39 +213,51 @@ public class NotifyRequestForCatalogProcessor extends SIPRequestProcessorParent
 				log.error("未处理的异常 ", e);
 			}
 		}
-		if (!channelList.isEmpty()) {
-			executeSave();
+		int batchSize = 0;
+		int deviceCount = 0;
+		for (Map.Entry<Integer, Map<String, NotifyCatalogChannel>> entry : changeMap.entrySet()) {
+			if (entry.getValue().isEmpty()) {
+				continue;
+			}
+			Device device = deviceMap.get(entry.getKey());
+			deviceCount++;
+			batchSize += entry.getValue().size();
+			try {
+				written.addAndGet(deviceChannelService.saveForNotify(device, new ArrayList<>(entry.getValue().values())));
+			}catch (Exception e) {
+				log.error("[存储收到的通道] 设备：{}，通道数：{}", device.getDeviceId(), entry.getValue().size(), e);
+			}
 		}
-	}
-
-	@Transactional
-	public void executeSave() {
-		int size = channelList.size();
-		List<NotifyCatalogChannel> channelListForSave = new ArrayList<>();
-		for (int i = 0; i < size; i++) {
-			channelListForSave.add(channelList.poll());
+		if (deviceCount > 0) {
+			lastDeviceCount = deviceCount;
+			lastBatchSize = batchSize;
+			lastFlushCost = System.currentTimeMillis() - startTime;
 		}
+	}
 
-		for (NotifyCatalogChannel notifyCatalogChannel : channelListForSave) {
-			try {
-				switch (notifyCatalogChannel.getType()) {
-					case STATUS_CHANGED:
-						deviceChannelService.updateChannelStatus(notifyCatalogChannel.getChannel());
-						break;
+	/**
+	 * 合并同一周期内同一通道的变化, 只保留最后的状态
+	 */
+	private void coalesce(Map<String, NotifyCatalogChannel> deviceChanges, NotifyCatalogChannel change) {
+		String channelId = change.getChannel().getDeviceId();
+		NotifyCatalogChannel last = deviceChanges.get(channelId);
+		if (last != null) {
+			coalesced.incrementAndGet();
+			if (change.getType() == NotifyCatalogChannel.Type.STATUS_CHANGED) {
+				switch (last.getType()) {
 					case ADD:
-						deviceChannelService.addChannel(notifyCatalogChannel.getChannel());
-						break;
 					case UPDATE:
-						deviceChannelService.updateChannelForNotify(notifyCatalogChannel.getChannel());
-						break;
+						// 新增或者更新还未入库, 状态合并到其中
+						last.getChannel().setStatus(change.getChannel().getStatus());
+						return;
 					case DELETE:
-						deviceChannelService.delete(notifyCatalogChannel.getChannel());
+						// 删除之后的状态变化不再处理
+						return;
+					default:
 						break;
 				}
-			}catch (Exception e) {
-				log.error("[存储收到的通道]类型：{}，编号：{}", notifyCatalogChannel.getType(),
-						notifyCatalogChannel.getChannel().getDeviceId(), e);
 			}
 		}
+		deviceChanges.put(channelId, change);
 	}
 }
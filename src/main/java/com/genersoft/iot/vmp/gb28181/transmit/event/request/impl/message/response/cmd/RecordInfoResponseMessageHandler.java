@@ -8,6 +8,9 @@ import com.genersoft.iot.vmp.gb28181.bean.RecordItem;
 import com.genersoft.iot.vmp.gb28181.event.EventPublisher;
 import com.genersoft.iot.vmp.gb28181.event.record.RecordInfoEndEvent;
 import com.genersoft.iot.vmp.gb28181.event.record.RecordInfoEvent;
+import com.genersoft.iot.vmp.gb28181.session.RecordInfoAggregator;
+import com.genersoft.iot.vmp.gb28181.session.RecordInfoCache;
+import com.genersoft.iot.vmp.gb28181.session.SseSessionManager;
 import com.genersoft.iot.vmp.gb28181.transmit.callback.DeferredResultHolder;
 import com.genersoft.iot.vmp.gb28181.transmit.callback.RequestMessage;
 import com.genersoft.iot.vmp.gb28181.transmit.event.request.SIPRequestProcessorParent;
@@ -56,8 +59,28 @@ public class RecordInfoResponseMessageHandler extends SIPRequestProcessorParent
     @Autowired
     private RedisTemplate<Object, Object> redisTemplate;
 
+    @Autowired
+    private RecordInfoAggregator recordInfoAggregator;
+
+    @Autowired
+    private SseSessionManager sseSessionManager;
+
+    @Autowired
+    private RecordInfoCache recordInfoCache;
+
     private Long recordInfoTtl = 1800L;
 
+    /**
+     * 分页结果推送到页面的事件名
+     */
+    private static final String EVENT_RECORD_INFO = "recordInfo";
+
+    /**
+     * 时间格式固定, 按字符串比较开始时间即可, 不需要逐次解析
+     */
+    private static final Comparator<RecordItem> START_TIME_COMPARATOR = Comparator.comparing(RecordItem::getStartTime,
+            Comparator.nullsLast(Comparator.naturalOrder()));
+
     @Override
     public void afterPropertiesSet() throws Exception {
         responseMessageHandler.addHandler(cmdType, this);
@@ -88,9 +111,14 @@ public class RecordInfoResponseMessageHandler extends SIPRequestProcessorParent
             Element recordListElement = rootElement.element("RecordList");
             if (recordListElement == null || sumNum == 0) {
                 log.info("无录像数据");
+                RecordInfoAggregator.Progress progress = recordInfoAggregator.merge(channelId, sn, sumNum, Collections.emptyList());
+                if (progress != null && progress.isFinished() && progress.isCacheable()) {
+                    recordInfoCache.merge(device.getDeviceId(), channelId, progress.getStartTime(), progress.getEndTime(),
+                            progress.getRecordList(), progress.getQueryTime());
+                }
                 recordInfo.setCount(sumNum);
                 recordInfoEventPush(recordInfo);
-                recordInfoEndEventPush(recordInfo);
+                recordInfoEndEventPush(recordInfo, false);
             } else {
                 Iterator<Element> recordListIterator = recordListElement.elementIterator();
                 if (recordListIterator != null) {
@@ -120,11 +148,33 @@ public class RecordInfoResponseMessageHandler extends SIPRequestProcessorParent
                                 : Integer.parseInt(getText(itemRecord, "Secrecy")));
                         record.setType(getText(itemRecord, "Type"));
                         record.setRecorderId(getText(itemRecord, "RecorderID"));
+                        if (record.getDeviceId() == null) {
+                            continue;
+                        }
                         recordList.add(record);
                     }
+                    RecordInfoAggregator.Progress progress = recordInfoAggregator.merge(channelId, sn, sumNum, recordList);
+                    if (progress != null) {
+                        // 本节点发出的查询, 在内存中汇总
+                        recordInfo.setRecordList(recordList);
+                        recordInfo.setCount(progress.getCount());
+                        recordInfoEventPush(recordInfo);
+                        // 分页结果实时推送到页面
+                        sseSessionManager.sendForAll(EVENT_RECORD_INFO, device.getDeviceId(), recordInfo, false);
+                        if (progress.isFinished()) {
+                            if (progress.isCacheable()) {
+                                recordInfoCache.merge(device.getDeviceId(), channelId, progress.getStartTime(), progress.getEndTime(),
+                                        progress.getRecordList(), progress.getQueryTime());
+                            }
+                            RecordInfo recordInfoForEnd = copyRecordInfo(recordInfo);
+                            recordInfoForEnd.setRecordList(progress.getRecordList());
+                            recordInfoEndEventPush(recordInfoForEnd, true);
+                        }
+                        return;
+                    }
+                    // 其他节点发出的查询, 分页可能分散在多个节点, 使用redis汇总
                     Map<String, String> map = recordList.stream()
-                            .filter(record -> record.getDeviceId() != null)
-                            .collect(Collectors.toMap(record -> record.getStartTime()+ record.getEndTime(), UJson::writeJson));
+                            .collect(Collectors.toMap(record -> record.getStartTime()+ record.getEndTime(), UJson::writeJson, (a, b) -> b));
                     // 获取任务结果数据
                     String resKey = VideoManagerConstants.REDIS_RECORD_INFO_RES_PRE + channelId + sn;
                     redisTemplate.opsForHash().putAll(resKey, map);
@@ -147,7 +197,7 @@ public class RecordInfoResponseMessageHandler extends SIPRequestProcessorParent
                         return;
                     }
                     recordInfo.setRecordList(resList);
-                    recordInfoEndEventPush(recordInfo);
+                    recordInfoEndEventPush(recordInfo, false);
                 }
             }
         } catch (Exception e) {
@@ -166,7 +216,7 @@ public class RecordInfoResponseMessageHandler extends SIPRequestProcessorParent
             return;
         }
         if(recordInfo.getRecordList() != null) {
-            Collections.sort(recordInfo.getRecordList());
+            recordInfo.getRecordList().sort(START_TIME_COMPARATOR);
         }else{
             recordInfo.setRecordList(new ArrayList<>());
         }
@@ -175,12 +225,17 @@ public class RecordInfoResponseMessageHandler extends SIPRequestProcessorParent
         applicationEventPublisher.publishEvent(outEvent);
     }
 
-    private void recordInfoEndEventPush(RecordInfo recordInfo) {
+    /**
+     * @param sorted 结果是否已经按时间排序
+     */
+    private void recordInfoEndEventPush(RecordInfo recordInfo, boolean sorted) {
         if (recordInfo == null) {
             return;
         }
         if(recordInfo.getRecordList() != null) {
-            Collections.sort(recordInfo.getRecordList());
+            if (!sorted) {
+                recordInfo.getRecordList().sort(START_TIME_COMPARATOR);
+            }
         }else{
             recordInfo.setRecordList(new ArrayList<>());
         }
@@ -188,4 +243,15 @@ public class RecordInfoResponseMessageHandler extends SIPRequestProcessorParent
         outEvent.setRecordInfo(recordInfo);
         applicationEventPublisher.publishEvent(outEvent);
     }
+
+    private RecordInfo copyRecordInfo(RecordInfo recordInfo) {
+        RecordInfo copy = new RecordInfo();
+        copy.setDeviceId(recordInfo.getDeviceId());
+        copy.setChannelId(recordInfo.getChannelId());
+        copy.setSn(recordInfo.getSn());
+        copy.setName(recordInfo.getName());
+        copy.setSumNum(recordInfo.getSumNum());
+        copy.setCount(recordInfo.getCount());
+        return copy;
+    }
 }
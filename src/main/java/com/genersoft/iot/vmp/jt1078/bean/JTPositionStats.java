@@ -0,0 +1,36 @@
+package com.genersoft.iot.vmp.jt1078.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 位置汇报入库统计
+ */
+@Data
+@Schema(description = "位置汇报入库统计")
+public class JTPositionStats {
+
+    @Schema(description = "累计收到的位置汇报数")
+    private long received;
+
+    @Schema(description = "累计因合并而丢弃的位置汇报数")
+    private long coalesced;
+
+    @Schema(description = "累计写入数据库的位置数")
+    private long written;
+
+    @Schema(description = "等待写入的终端数")
+    private int pending;
+
+    @Schema(description = "缓存的终端信息数")
+    private int cachedTerminals;
+
+    @Schema(description = "最近一次写入的位置数")
+    private int lastBatchSize;
+
+    @Schema(description = "最近一次写入耗时, 单位：毫秒")
+    private long lastFlushCost;
+
+    @Schema(description = "最近一次写入时最早的位置等待时长, 单位：毫秒")
+    private long lastLag;
+}
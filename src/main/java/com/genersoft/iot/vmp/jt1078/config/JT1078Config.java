@@ -15,4 +15,9 @@ public class JT1078Config {
     private Integer port;
 
     private String password;
+
+    /**
+     * 位置汇报的合并窗口, 窗口内同一终端只保留最新的位置, 单位：毫秒
+     */
+    private int positionWindow = 1000;
 }
@@ -70,6 +70,12 @@ public class JT1078TerminalController {
     }
 
 
+    @Operation(summary = "JT-位置汇报入库统计", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @GetMapping("/position/stats")
+    public JTPositionStats getPositionStats() {
+        return service.getPositionStats();
+    }
+
     @Operation(summary = "JT-查询部标通道", security = @SecurityRequirement(name = JwtUtils.HEADER))
     @Parameter(name = "page", description = "当前页", required = true)
     @Parameter(name = "count", description = "每页查询数量", required = true)
@@ -4,6 +4,7 @@ import com.genersoft.iot.vmp.jt1078.bean.JTChannel;
 import com.genersoft.iot.vmp.jt1078.dao.provider.JTChannelProvider;
 import org.apache.ibatis.annotations.*;
 
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -39,6 +40,14 @@ public interface JTChannelMapper {
     @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id")
     void add(JTChannel channel);
 
+    @Select({"<script>" +
+            "SELECT jc.terminal_db_id, wdc.id as gb_id FROM wvp_jt_channel jc " +
+            " INNER JOIN wvp_device_channel wdc on jc.id = wdc.data_device_id and wdc.data_type = 200 " +
+            " WHERE jc.terminal_db_id in " +
+            "<foreach collection='terminalDbIds' item='item' open='(' separator=',' close=')'>#{item}</foreach>" +
+            "</script>"})
+    List<JTChannel> selectGbChannelByTerminalDbIds(@Param("terminalDbIds") Collection<Integer> terminalDbIds);
+
     @Delete("delete from wvp_jt_channel where id = #{id}")
     void delete(@Param("id") int id);
 
@@ -3,6 +3,7 @@ package com.genersoft.iot.vmp.jt1078.dao;
 import com.genersoft.iot.vmp.jt1078.bean.JTDevice;
 import org.apache.ibatis.annotations.*;
 
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -112,4 +113,10 @@ public interface JTTerminalMapper {
             "</foreach>" +
             "</script>"})
     void batchUpdateDevicePosition(List<JTDevice> devices);
+
+    @Select({"<script>" +
+            "SELECT * FROM wvp_jt_terminal WHERE phone_number in " +
+            "<foreach collection='phoneNumbers' item='item' open='(' separator=',' close=')'>#{item}</foreach>" +
+            "</script>"})
+    List<JTDevice> getDeviceListByPhoneNumbers(@Param("phoneNumbers") Collection<String> phoneNumbers);
 }
@@ -94,7 +94,7 @@ public class J0200 extends Re {
         j8001.setRespNo(header.getSn());
         j8001.setRespId(header.getMsgId());
         j8001.setResult(J8001.SUCCESS);
-        service.updateDevicePosition(header.getPhoneNumber(), positionInfo.getLongitude(), positionInfo.getLatitude());
+        service.updateDevicePosition(header.getPhoneNumber(), positionInfo);
         return j8001;
     }
 
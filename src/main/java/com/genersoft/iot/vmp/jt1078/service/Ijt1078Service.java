@@ -114,7 +114,9 @@ public interface Ijt1078Service {
 
     JTDevice getDeviceById(Integer deviceId);
 
-    void updateDevicePosition(String phoneNumber, Double longitude, Double latitude);
+    void updateDevicePosition(String phoneNumber, JTPositionBaseInfo positionInfo);
+
+    JTPositionStats getPositionStats();
 
     JTChannel getChannelByDbId(Integer id);
 
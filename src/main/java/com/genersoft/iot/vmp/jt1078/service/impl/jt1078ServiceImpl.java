@@ -21,6 +21,7 @@ import com.genersoft.iot.vmp.jt1078.event.JTPositionEvent;
 import com.genersoft.iot.vmp.jt1078.proc.response.*;
 import com.genersoft.iot.vmp.jt1078.service.Ijt1078Service;
 import com.genersoft.iot.vmp.jt1078.session.FtpDownloadManager;
+import com.genersoft.iot.vmp.jt1078.session.JTPositionManager;
 import com.genersoft.iot.vmp.jt1078.session.Session;
 import com.genersoft.iot.vmp.jt1078.session.SessionManager;
 import com.genersoft.iot.vmp.media.event.media.MediaArrivalEvent;
@@ -37,7 +38,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
@@ -87,6 +87,9 @@ public class jt1078ServiceImpl implements Ijt1078Service {
     @Autowired
     private FtpDownloadManager downloadManager;
 
+    @Autowired
+    private JTPositionManager positionManager;
+
     // 服务启动后五分钟内没有尽量连接的设备设置为离线
     @PostConstruct
     public void init(){
@@ -161,47 +164,9 @@ public class jt1078ServiceImpl implements Ijt1078Service {
     /**
      * 位置更新的通知
      */
-    @Async("taskExecutor")
     @EventListener
     public void onApplicationEvent(JTPositionEvent event) {
-        if (event.getPhoneNumber() == null || event.getPositionInfo() == null
-                || event.getPositionInfo().getLongitude() == null || event.getPositionInfo().getLatitude() == null) {
-            return;
-        }
-        JTDevice device = getDevice(event.getPhoneNumber());
-        if (device == null) {
-            return;
-        }
-        device.setLongitude(event.getPositionInfo().getLongitude());
-        device.setLatitude(event.getPositionInfo().getLatitude());
-        updateDevice(device);
-
-        // 通道发送状态变化通知
-        List<JTChannel> jtChannels = jtChannelMapper.selectAll(device.getId(), null);
-        List<CommonGBChannel> channelList = new ArrayList<>();
-        for (JTChannel jtChannel : jtChannels) {
-            if (jtChannel.getGbId() > 0) {
-                jtChannel.setGbLongitude(event.getPositionInfo().getLongitude());
-                jtChannel.setGbLatitude(event.getPositionInfo().getLatitude());
-                if (event.getPositionInfo().getAltitude() != null) {
-                    jtChannel.setGpsAltitude((double) event.getPositionInfo().getAltitude());
-                }else {
-                    jtChannel.setGpsAltitude(0d);
-                }
-                if (event.getPositionInfo().getDirection() != null) {
-                    jtChannel.setGpsDirection((double) event.getPositionInfo().getDirection());
-                }else {
-                    jtChannel.setGpsDirection(0d);
-                }
-                if (event.getPositionInfo().getTime() != null) {
-                    jtChannel.setGpsTime(event.getPositionInfo().getTime());
-                }else {
-                    jtChannel.setGpsTime(DateUtil.getNow());
-                }
-                channelList.add(jtChannel);
-            }
-        }
-        channelService.updateGPS(channelList);
+        positionManager.offer(event.getPhoneNumber(), event.getPositionInfo());
     }
 
 
@@ -236,6 +201,7 @@ public class jt1078ServiceImpl implements Ijt1078Service {
     public void updateDevice(JTDevice device) {
         device.setUpdateTime(DateUtil.getNow());
         jtDeviceMapper.updateDevice(device);
+        positionManager.invalidate(device.getPhoneNumber());
     }
 
     @Override
@@ -259,11 +225,13 @@ public class jt1078ServiceImpl implements Ijt1078Service {
         device.setCreateTime(DateUtil.getNow());
         device.setUpdateTime(DateUtil.getNow());
         jtDeviceMapper.addDevice(device);
+        positionManager.invalidate(device.getPhoneNumber());
     }
 
     @Override
     public void deleteDeviceByPhoneNumber(String phoneNumber) {
         jtDeviceMapper.deleteDeviceByPhoneNumber(phoneNumber);
+        positionManager.invalidate(phoneNumber);
     }
 
     @Override
@@ -737,6 +705,7 @@ public class jt1078ServiceImpl implements Ijt1078Service {
                 channelService.add(channel.buildCommonGBChannel());
             }
         }
+        positionManager.invalidate(channel.getTerminalDbId());
     }
 
     @Override
@@ -752,6 +721,7 @@ public class jt1078ServiceImpl implements Ijt1078Service {
         if (!ObjectUtils.isEmpty(channel.getGbDeviceId())) {
             channelService.add(channel.buildCommonGBChannel());
         }
+        positionManager.invalidate(channel.getTerminalDbId());
     }
 
     @Override
@@ -765,6 +735,7 @@ public class jt1078ServiceImpl implements Ijt1078Service {
             channelService.delete(jtChannel.getGbId());
         }
         jtChannelMapper.delete(id);
+        positionManager.invalidate(jtChannel.getTerminalDbId());
     }
 
     @Override
@@ -773,30 +744,13 @@ public class jt1078ServiceImpl implements Ijt1078Service {
     }
 
     @Override
-    public void updateDevicePosition(String phoneNumber, Double longitude, Double latitude) {
-        JTDevice device = new JTDevice();
-        device.setPhoneNumber(phoneNumber);
-        device.setLongitude(longitude);
-        device.setLatitude(latitude);
-        device.setUpdateTime(DateUtil.getNow());
-        String key = VideoManagerConstants.INVITE_INFO_1078_POSITION + userSetting.getServerId();
-        redisTemplate.opsForList().leftPush(key, device);
+    public void updateDevicePosition(String phoneNumber, JTPositionBaseInfo positionInfo) {
+        positionManager.offer(phoneNumber, positionInfo);
     }
 
-    @Scheduled(fixedDelay = 1000)
-    public void positionTask(){
-        String key = VideoManagerConstants.INVITE_INFO_1078_POSITION + userSetting.getServerId();
-        int count = 1000;
-        List<JTDevice> devices = new ArrayList<>(count);
-        Long size = redisTemplate.opsForList().size(key);
-        if (size == null || size == 0) {
-            return;
-        }
-        long readCount = Math.min(count, size);
-        for (long i = 0L; i < readCount; i++) {
-            devices.add((JTDevice)redisTemplate.opsForList().rightPop(key));
-        }
-        jtDeviceMapper.batchUpdateDevicePosition(devices);
+    @Override
+    public JTPositionStats getPositionStats() {
+        return positionManager.getStats();
     }
 
     @Override
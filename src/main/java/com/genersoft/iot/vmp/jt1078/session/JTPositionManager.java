@@ -0,0 +1,356 @@
+package com.genersoft.iot.vmp.jt1078.session;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.genersoft.iot.vmp.common.VideoManagerConstants;
+import com.genersoft.iot.vmp.gb28181.bean.CommonGBChannel;
+import com.genersoft.iot.vmp.gb28181.bean.MobilePosition;
+import com.genersoft.iot.vmp.gb28181.service.IGbChannelService;
+import com.genersoft.iot.vmp.jt1078.bean.JTChannel;
+import com.genersoft.iot.vmp.jt1078.bean.JTDevice;
+import com.genersoft.iot.vmp.jt1078.bean.JTPositionBaseInfo;
+import com.genersoft.iot.vmp.jt1078.bean.JTPositionStats;
+import com.genersoft.iot.vmp.jt1078.config.JT1078Config;
+import com.genersoft.iot.vmp.jt1078.dao.JTChannelMapper;
+import com.genersoft.iot.vmp.jt1078.dao.JTTerminalMapper;
+import com.genersoft.iot.vmp.service.IMobilePositionService;
+import com.genersoft.iot.vmp.utils.DateUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 部标终端位置汇报的合并入库
+ * 窗口内同一终端只保留最新的位置, 终端与通道信息缓存在内存中, 到期后批量写入终端位置、通道位置以及位置历史
+ * 终端或者通道变化时通过redis通知所有节点清除缓存
+ */
+@Slf4j
+@Component
+public class JTPositionManager implements MessageListener {
+
+    /**
+     * 每次批量写入的最大条数
+     */
+    private static final int BATCH_LIMIT = 1000;
+
+    /**
+     * 终端信息的缓存时长, 正常情况下变化时会通过redis通知清除, 这里只作为兜底
+     */
+    private static final long TERMINAL_CACHE_TIME = 10 * 60 * 1000L;
+
+    /**
+     * 不存在的终端的缓存时长, 终端添加后最迟在这个时间之后开始入库
+     */
+    private static final long MISSING_TERMINAL_CACHE_TIME = 60 * 1000L;
+
+    private static final String TYPE_PHONE_NUMBER = "phoneNumber";
+
+    private static final String TYPE_TERMINAL_ID = "terminalId";
+
+    @Autowired
+    private JT1078Config jt1078Config;
+
+    @Autowired
+    private JTTerminalMapper jtDeviceMapper;
+
+    @Autowired
+    private JTChannelMapper jtChannelMapper;
+
+    @Autowired
+    private IGbChannelService channelService;
+
+    @Autowired
+    private IMobilePositionService mobilePositionService;
+
+    @Autowired
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    /**
+     * 等待写入的位置, key为终端手机号
+     */
+    private final Map<String, Fix> pendingMap = new ConcurrentHashMap<>();
+
+    /**
+     * 终端信息缓存, key为终端手机号
+     */
+    private final Map<String, Terminal> terminalMap = new ConcurrentHashMap<>();
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private volatile long lastFlushTime = System.currentTimeMillis();
+
+    private volatile int lastBatchSize;
+
+    private volatile long lastFlushCost;
+
+    private volatile long lastLag;
+
+    private static class Fix {
+        private final JTPositionBaseInfo positionInfo;
+        /**
+         * 窗口内第一次收到该终端位置的时间, 用于计算延迟
+         */
+        private final long firstReceiveTime;
+
+        Fix(JTPositionBaseInfo positionInfo, long firstReceiveTime) {
+            this.positionInfo = positionInfo;
+            this.firstReceiveTime = firstReceiveTime;
+        }
+    }
+
+    private static class Terminal {
+        private int id;
+        private String name;
+        private List<Integer> gbIds = new ArrayList<>();
+        private long expireTime;
+    }
+
+    /**
+     * 收到位置汇报
+     */
+    public void offer(String phoneNumber, JTPositionBaseInfo positionInfo) {
+        if (phoneNumber == null || positionInfo == null
+                || positionInfo.getLongitude() == null || positionInfo.getLatitude() == null) {
+            return;
+        }
+        received.incrementAndGet();
+        pendingMap.compute(phoneNumber, (key, fix) -> {
+            if (fix == null) {
+                return new Fix(positionInfo, System.currentTimeMillis());
+            }
+            coalesced.incrementAndGet();
+            return new Fix(positionInfo, fix.firstReceiveTime);
+        });
+    }
+
+    /**
+     * 终端或者通道信息变化时调用, 清除所有节点的缓存
+     */
+    public void invalidate(String phoneNumber) {
+        if (phoneNumber != null) {
+            terminalMap.remove(phoneNumber);
+            publish(TYPE_PHONE_NUMBER, phoneNumber);
+        }
+    }
+
+    public void invalidate(int terminalDbId) {
+        removeTerminal(terminalDbId);
+        publish(TYPE_TERMINAL_ID, terminalDbId);
+    }
+
+    private void removeTerminal(int terminalDbId) {
+        terminalMap.values().removeIf(terminal -> terminal.id == terminalDbId);
+    }
+
+    private void publish(String type, Object value) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("type", type);
+        jsonObject.put("value", value);
+        try {
+            redisTemplate.convertAndSend(VideoManagerConstants.VM_MSG_JT_TERMINAL_INVALIDATE, jsonObject);
+        } catch (Exception e) {
+            log.warn("[JT-位置汇报] 发送终端缓存清除通知失败, 其他节点的缓存将在{}秒后过期: {}", TERMINAL_CACHE_TIME / 1000, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(@NotNull Message message, byte[] bytes) {
+        try {
+            JSONObject jsonObject = JSON.parseObject(message.getBody());
+            String type = jsonObject.getString("type");
+            if (TYPE_PHONE_NUMBER.equals(type)) {
+                String phoneNumber = jsonObject.getString("value");
+                if (phoneNumber != null) {
+                    terminalMap.remove(phoneNumber);
+                }
+            } else if (TYPE_TERMINAL_ID.equals(type)) {
+                removeTerminal(jsonObject.getIntValue("value"));
+            }
+        } catch (Exception e) {
+            log.warn("[JT-位置汇报] 终端缓存清除通知解析失败: {}", new String(message.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 定时清理过期的终端缓存
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void clearExpired() {
+        long now = System.currentTimeMillis();
+        terminalMap.values().removeIf(terminal -> terminal.expireTime <= now);
+    }
+
+    public JTPositionStats getStats() {
+        JTPositionStats stats = new JTPositionStats();
+        stats.setReceived(received.get());
+        stats.setCoalesced(coalesced.get());
+        stats.setWritten(written.get());
+        stats.setPending(pendingMap.size());
+        stats.setCachedTerminals(terminalMap.size());
+        stats.setLastBatchSize(lastBatchSize);
+        stats.setLastFlushCost(lastFlushCost);
+        stats.setLastLag(lastLag);
+        return stats;
+    }
+
+    @Scheduled(fixedDelay = 100)
+    public void execute() {
+        long now = System.currentTimeMillis();
+        if (now - lastFlushTime < jt1078Config.getPositionWindow() || pendingMap.isEmpty()) {
+            return;
+        }
+        lastFlushTime = now;
+        Map<String, Fix> batch = new HashMap<>();
+        for (String phoneNumber : pendingMap.keySet()) {
+            Fix fix = pendingMap.remove(phoneNumber);
+            if (fix != null) {
+                batch.put(phoneNumber, fix);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            flush(batch, now);
+        } catch (Exception e) {
+            log.error("[JT-位置汇报] 批量写入失败, 共{}条", batch.size(), e);
+        }
+        lastBatchSize = batch.size();
+        lastFlushCost = System.currentTimeMillis() - now;
+    }
+
+    private void flush(Map<String, Fix> batch, long now) {
+        loadTerminals(batch.keySet());
+
+        String updateTime = DateUtil.getNow();
+        List<JTDevice> deviceList = new ArrayList<>();
+        List<CommonGBChannel> channelList = new ArrayList<>();
+        List<MobilePosition> mobilePositionList = new ArrayList<>();
+        long oldest = now;
+        for (Map.Entry<String, Fix> entry : batch.entrySet()) {
+            Terminal terminal = terminalMap.get(entry.getKey());
+            if (terminal == null || terminal.id <= 0) {
+                continue;
+            }
+            Fix fix = entry.getValue();
+            oldest = Math.min(oldest, fix.firstReceiveTime);
+            JTPositionBaseInfo positionInfo = fix.positionInfo;
+
+            JTDevice device = new JTDevice();
+            device.setId(terminal.id);
+            device.setPhoneNumber(entry.getKey());
+            device.setLongitude(positionInfo.getLongitude());
+            device.setLatitude(positionInfo.getLatitude());
+            device.setUpdateTime(updateTime);
+            deviceList.add(device);
+
+            String gpsTime = getGpsTime(positionInfo);
+            for (Integer gbId : terminal.gbIds) {
+                CommonGBChannel channel = new CommonGBChannel();
+                channel.setGbId(gbId);
+                channel.setGbLongitude(positionInfo.getLongitude());
+                channel.setGbLatitude(positionInfo.getLatitude());
+                channel.setGpsAltitude(positionInfo.getAltitude() != null ? (double) positionInfo.getAltitude() : 0d);
+                channel.setGpsDirection(positionInfo.getDirection() != null ? (double) positionInfo.getDirection() : 0d);
+                // 部标的速度单位为 1/10km/h
+                channel.setGpsSpeed(positionInfo.getSpeed() != null ? positionInfo.getSpeed() / 10d : 0d);
+                channel.setGpsTime(gpsTime);
+                channelList.add(channel);
+
+                MobilePosition mobilePosition = new MobilePosition();
+                mobilePosition.setDeviceId(entry.getKey());
+                mobilePosition.setChannelId(gbId);
+                mobilePosition.setDeviceName(terminal.name);
+                mobilePosition.setTime(gpsTime);
+                mobilePosition.setLongitude(positionInfo.getLongitude());
+                mobilePosition.setLatitude(positionInfo.getLatitude());
+                mobilePosition.setAltitude(channel.getGpsAltitude());
+                mobilePosition.setSpeed(channel.getGpsSpeed());
+                mobilePosition.setDirection(channel.getGpsDirection());
+                mobilePosition.setReportSource("JT Position");
+                mobilePosition.setCreateTime(updateTime);
+                mobilePositionList.add(mobilePosition);
+            }
+        }
+        for (int i = 0; i < deviceList.size(); i += BATCH_LIMIT) {
+            jtDeviceMapper.batchUpdateDevicePosition(deviceList.subList(i, Math.min(i + BATCH_LIMIT, deviceList.size())));
+        }
+        if (!channelList.isEmpty()) {
+            channelService.updateGPS(channelList);
+        }
+        if (!mobilePositionList.isEmpty()) {
+            mobilePositionService.addHistory(mobilePositionList);
+        }
+        written.addAndGet(deviceList.size());
+        lastLag = now - oldest;
+        log.debug("[JT-位置汇报] 批量写入终端位置： {}, 通道位置： {}", deviceList.size(), channelList.size());
+    }
+
+    /**
+     * 批量加载未缓存或者缓存已过期的终端以及其关联的国标通道, 不存在的终端也会缓存一小段时间, 避免重复查询
+     */
+    private void loadTerminals(Collection<String> phoneNumbers) {
+        long now = System.currentTimeMillis();
+        List<String> unknownList = new ArrayList<>();
+        for (String phoneNumber : phoneNumbers) {
+            Terminal terminal = terminalMap.get(phoneNumber);
+            if (terminal == null || terminal.expireTime <= now) {
+                unknownList.add(phoneNumber);
+            }
+        }
+        for (int i = 0; i < unknownList.size(); i += BATCH_LIMIT) {
+            List<String> subList = unknownList.subList(i, Math.min(i + BATCH_LIMIT, unknownList.size()));
+            Map<Integer, Terminal> terminalById = new HashMap<>();
+            Map<String, Terminal> loadedMap = new HashMap<>();
+            for (JTDevice device : jtDeviceMapper.getDeviceListByPhoneNumbers(subList)) {
+                Terminal terminal = new Terminal();
+                terminal.id = device.getId();
+                terminal.name = device.getPlateNo() != null ? device.getPlateNo() : device.getPhoneNumber();
+                terminal.expireTime = now + TERMINAL_CACHE_TIME;
+                terminalById.put(terminal.id, terminal);
+                loadedMap.put(device.getPhoneNumber(), terminal);
+            }
+            if (!terminalById.isEmpty()) {
+                for (JTChannel channel : jtChannelMapper.selectGbChannelByTerminalDbIds(terminalById.keySet())) {
+                    Terminal terminal = terminalById.get(channel.getTerminalDbId());
+                    if (terminal != null && channel.getGbId() > 0) {
+                        terminal.gbIds.add(channel.getGbId());
+                    }
+                }
+            }
+            for (String phoneNumber : subList) {
+                Terminal terminal = loadedMap.get(phoneNumber);
+                if (terminal == null) {
+                    terminal = new Terminal();
+                    terminal.expireTime = now + MISSING_TERMINAL_CACHE_TIME;
+                }
+                terminalMap.put(phoneNumber, terminal);
+            }
+        }
+    }
+
+    private String getGpsTime(JTPositionBaseInfo positionInfo) {
+        if (positionInfo.getTime() == null) {
+            return DateUtil.getNow();
+        }
+        try {
+            return DateUtil.jt1078Toyyyy_MM_dd_HH_mm_ss(positionInfo.getTime());
+        } catch (Exception e) {
+            return DateUtil.getNow();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.genersoft.iot.vmp.media;
 
 import com.genersoft.iot.vmp.conf.MediaConfig;
+import com.genersoft.iot.vmp.conf.StartupRecovery;
 import com.genersoft.iot.vmp.conf.UserSetting;
 import com.genersoft.iot.vmp.media.bean.MediaServer;
 import com.genersoft.iot.vmp.media.event.mediaServer.MediaServerChangeEvent;
@@ -35,8 +36,15 @@ public class MediaServerConfig implements CommandLineRunner {
     private UserSetting userSetting;
 
 
+    @Autowired
+    private StartupRecovery startupRecovery;
+
     @Override
     public void run(String... strings) throws Exception {
+        startupRecovery.runPhase("加载媒体节点", this::loadMediaServer);
+    }
+
+    private void loadMediaServer() {
         // 清理所有在线节点的缓存信息
         mediaServerService.clearMediaServerForOnline();
         MediaServer defaultMediaServer = mediaServerService.getDefaultMediaServer();
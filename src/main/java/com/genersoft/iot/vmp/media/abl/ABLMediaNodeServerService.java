@@ -20,6 +20,7 @@ import com.genersoft.iot.vmp.media.event.media.MediaRecordProcessEvent;
 import com.genersoft.iot.vmp.media.service.IMediaNodeServerService;
 import com.genersoft.iot.vmp.service.bean.CloudRecordItem;
 import com.genersoft.iot.vmp.service.bean.DownloadFileInfo;
+import com.genersoft.iot.vmp.storager.CloudRecordCatalog;
 import com.genersoft.iot.vmp.storager.dao.CloudRecordServiceMapper;
 import com.genersoft.iot.vmp.streamProxy.bean.StreamProxy;
 import com.genersoft.iot.vmp.utils.DateUtil;
@@ -50,6 +51,9 @@ public class ABLMediaNodeServerService implements IMediaNodeServerService {
     @Autowired
     private CloudRecordServiceMapper cloudRecordServiceMapper;
 
+    @Autowired
+    private CloudRecordCatalog cloudRecordCatalog;
+
     @Autowired
     private IInviteStreamService inviteStreamService;
 
@@ -302,8 +306,10 @@ public class ABLMediaNodeServerService implements IMediaNodeServerService {
             cloudRecordItem.setEndTime(event.getEndTime());
             cloudRecordServiceMapper.add(cloudRecordItem);
         }else {
-            cloudRecordServiceMapper.updateTimeLen(cloudRecordItem.getId(), (long)event.getCurrentFileDuration() * 1000, System.currentTimeMillis());
+            cloudRecordItem.setEndTime(System.currentTimeMillis());
+            cloudRecordServiceMapper.updateTimeLen(cloudRecordItem.getId(), (long)event.getCurrentFileDuration() * 1000, cloudRecordItem.getEndTime());
         }
+        cloudRecordCatalog.add(cloudRecordItem);
     }
     @EventListener
     public void onApplicationEvent(MediaRecordMp4Event event) {
@@ -0,0 +1,46 @@
+package com.genersoft.iot.vmp.media.event.mediaServer;
+
+import com.genersoft.iot.vmp.conf.UserSetting;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 流媒体节点上线对账的并发控制
+ * 不同节点的对账并行执行, 同时执行的数量受限, 避免大量节点同时上线时占满数据库连接与redis
+ */
+@Slf4j
+@Component
+public class MediaServerReconcileLimiter {
+
+    @Autowired
+    private UserSetting userSetting;
+
+    private Semaphore semaphore;
+
+    @PostConstruct
+    public void init() {
+        semaphore = new Semaphore(Math.max(1, userSetting.getMediaServerReconcileConcurrency()));
+    }
+
+    public void run(String name, String mediaServerId, Runnable task) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("[{}] 流媒体节点上线对账失败： {}", name, mediaServerId, e);
+        } finally {
+            semaphore.release();
+            log.info("[{}] 流媒体节点上线对账完成： {}, 耗时： {}ms", name, mediaServerId, System.currentTimeMillis() - start);
+        }
+    }
+}
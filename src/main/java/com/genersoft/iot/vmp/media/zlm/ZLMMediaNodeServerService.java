@@ -189,7 +189,7 @@ public class ZLMMediaNodeServerService implements IMediaNodeServerService {
                     return streamInfoList;
                 }
                 for (int i = 0; i < dataArray.size(); i++) {
-                    JSONObject mediaJSON = dataArray.getJSONObject(0);
+                    JSONObject mediaJSON = dataArray.getJSONObject(i);
                     MediaInfo mediaInfo = MediaInfo.getInstance(mediaJSON, mediaServer, userSetting.getServerId());
                     StreamInfo streamInfo = getStreamInfoByAppAndStream(mediaServer, mediaInfo.getApp(), mediaInfo.getStream(), mediaInfo, callId, true);
                     if (streamInfo != null) {
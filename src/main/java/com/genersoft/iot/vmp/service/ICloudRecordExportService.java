@@ -0,0 +1,42 @@
+package com.genersoft.iot.vmp.service;
+
+import com.genersoft.iot.vmp.service.bean.CloudRecordExportTask;
+import com.genersoft.iot.vmp.service.bean.CloudRecordItem;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 云端录像打包导出
+ */
+public interface ICloudRecordExportService {
+
+    /**
+     * 直接将录像文件打包写入响应
+     */
+    void writeZip(List<CloudRecordItem> cloudRecordItemList, String fileName, HttpServletResponse response) throws IOException;
+
+    /**
+     * 添加异步打包任务, 返回任务ID
+     */
+    String addTask(List<CloudRecordItem> cloudRecordItemList, String fileName);
+
+    /**
+     * 查询当前用户的打包任务
+     */
+    List<CloudRecordExportTask> getTaskList();
+
+    CloudRecordExportTask getTask(String taskId);
+
+    /**
+     * 下载已完成的压缩包, 支持Range断点续传
+     */
+    void download(String taskId, HttpServletRequest request, HttpServletResponse response) throws IOException;
+
+    /**
+     * 删除打包任务及生成的文件
+     */
+    void removeTask(String taskId);
+}
@@ -0,0 +1,16 @@
+package com.genersoft.iot.vmp.service;
+
+import com.genersoft.iot.vmp.service.bean.CloudRecordRetentionStatus;
+
+import java.util.List;
+
+/**
+ * 云端录像清理
+ */
+public interface ICloudRecordRetentionService {
+
+    /**
+     * 查询各流媒体节点的清理进度
+     */
+    List<CloudRecordRetentionStatus> getStatusList();
+}
@@ -4,12 +4,15 @@ import com.alibaba.fastjson2.JSONArray;
 import com.genersoft.iot.vmp.common.StreamInfo;
 import com.genersoft.iot.vmp.media.bean.MediaServer;
 import com.genersoft.iot.vmp.service.bean.CloudRecordItem;
+import com.genersoft.iot.vmp.service.bean.CloudRecordSpan;
 import com.genersoft.iot.vmp.service.bean.DownloadFileInfo;
 import com.genersoft.iot.vmp.service.bean.ErrorCallback;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.github.pagehelper.PageInfo;
 
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * 云端录像管理
@@ -22,11 +25,35 @@ public interface ICloudRecordService {
      */
     PageInfo<CloudRecordItem> getList(int page, int count, String query,  String app, String stream, String startTime, String endTime, List<MediaServer> mediaServerItems, String callId, Boolean ascOrder);
 
+    /**
+     * 按游标分页获取云端录像列表, 游标为上一页最后一条录像的开始时间和ID, 首页时置空
+     */
+    List<CloudRecordItem> getListAfter(int count, String query, String app, String stream, String startTime, String endTime,
+                                       List<MediaServer> mediaServerItems, String callId, Boolean ascOrder,
+                                       Long lastStartTime, Integer lastId);
+
+    /**
+     * 按游标分页获取云端录像列表, 游标由上一页返回, 首页时置空
+     */
+    CursorPageInfo<CloudRecordItem> getListByCursor(String cursor, int count, String query, String app, String stream, String startTime,
+                                                    String endTime, List<MediaServer> mediaServerItems, String callId, Boolean ascOrder);
+
+    /**
+     * 逐条读取云端录像列表用于导出, 不在内存中保存整个列表
+     */
+    void exportList(String query, String app, String stream, String startTime, String endTime, List<MediaServer> mediaServerItems,
+                    String callId, Boolean ascOrder, Consumer<CloudRecordItem> consumer);
+
     /**
      * 获取所有的日期
      */
     List<String> getDateList(String app, String stream, int year, int month, List<MediaServer> mediaServerItems);
 
+    /**
+     * 获取某天合并后的连续录像时间段
+     */
+    List<CloudRecordSpan> getTimeline(String app, String stream, String date, List<MediaServer> mediaServerItems);
+
     /**
      * 添加合并任务
      */
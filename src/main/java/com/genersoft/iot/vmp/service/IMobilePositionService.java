@@ -13,6 +13,11 @@ public interface IMobilePositionService {
 
     void add(MobilePosition mobilePosition);
 
+    /**
+     * 只写入位置历史, 调用方已自行更新通道位置
+     */
+    void addHistory(List<MobilePosition> mobilePositionList);
+
     List<MobilePosition> queryMobilePositions(String deviceId, String channelId, String startTime, String endTime);
 
     List<Platform> queryEnablePlatformListWithAsMessageChannel();
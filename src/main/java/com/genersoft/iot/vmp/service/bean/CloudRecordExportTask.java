@@ -0,0 +1,50 @@
+package com.genersoft.iot.vmp.service.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 云端录像打包导出任务
+ */
+@Data
+@Schema(description = "云端录像打包导出任务")
+public class CloudRecordExportTask {
+
+    @Schema(description = "任务ID")
+    private String taskId;
+
+    @Schema(description = "创建任务的用户ID")
+    private int userId;
+
+    @Schema(description = "压缩包文件名")
+    private String fileName;
+
+    @Schema(description = "状态， 0：进行中， 1：已完成， 2：失败")
+    private int status;
+
+    @Schema(description = "录像文件个数")
+    private int fileCount;
+
+    @Schema(description = "压缩包总大小，单位byte")
+    private long totalSize;
+
+    @Schema(description = "已写入大小，单位byte")
+    private long currentSize;
+
+    @Schema(description = "创建时间")
+    private long createTime;
+
+    @Schema(description = "结束时间")
+    private long endTime;
+
+    @Schema(description = "失败原因")
+    private String msg;
+
+    @Schema(description = "进度，0-1")
+    public double getProgress() {
+        if (totalSize == 0) {
+            return status == 1 ? 1 : 0;
+        }
+        return (double) currentSize / totalSize;
+    }
+}
@@ -0,0 +1,45 @@
+package com.genersoft.iot.vmp.service.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 云端录像清理进度
+ */
+@Data
+@Schema(description = "云端录像清理进度")
+public class CloudRecordRetentionStatus {
+
+    @Schema(description = "流媒体ID")
+    private String mediaServerId;
+
+    @Schema(description = "阶段， 0：空闲， 1：清理过期录像， 2：清理超出配额的录像")
+    private int phase;
+
+    @Schema(description = "本轮开始时间")
+    private long passStartTime;
+
+    @Schema(description = "上一轮结束时间")
+    private long lastPassEndTime;
+
+    @Schema(description = "当前进度， 已检查到的录像开始时间")
+    private long cursorTime;
+
+    @Schema(description = "本轮已检查的录像数")
+    private long scanned;
+
+    @Schema(description = "累计删除的录像文件数")
+    private long deletedFiles;
+
+    @Schema(description = "累计整体删除的日期目录数")
+    private long deletedDirectories;
+
+    @Schema(description = "累计删除的数据量，单位byte")
+    private long deletedBytes;
+
+    @Schema(description = "录像占用的空间，单位byte")
+    private long usedBytes;
+
+    @Schema(description = "录像存储配额，单位byte， 0为不限制")
+    private long quotaBytes;
+}
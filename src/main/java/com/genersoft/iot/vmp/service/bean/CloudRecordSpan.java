@@ -0,0 +1,27 @@
+package com.genersoft.iot.vmp.service.bean;
+
+import lombok.Data;
+
+/**
+ * 云端录像的一段连续时间
+ */
+@Data
+public class CloudRecordSpan {
+
+    /**
+     * 开始时间, 单位：毫秒
+     */
+    private long startTime;
+
+    /**
+     * 结束时间, 单位：毫秒
+     */
+    private long endTime;
+
+    public static CloudRecordSpan getInstance(long startTime, long endTime) {
+        CloudRecordSpan cloudRecordSpan = new CloudRecordSpan();
+        cloudRecordSpan.setStartTime(startTime);
+        cloudRecordSpan.setEndTime(endTime);
+        return cloudRecordSpan;
+    }
+}
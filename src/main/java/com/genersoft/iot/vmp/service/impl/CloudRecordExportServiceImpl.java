@@ -0,0 +1,415 @@
+package com.genersoft.iot.vmp.service.impl;
+
+import com.genersoft.iot.vmp.conf.UserSetting;
+import com.genersoft.iot.vmp.conf.exception.ControllerException;
+import com.genersoft.iot.vmp.conf.security.SecurityUtils;
+import com.genersoft.iot.vmp.conf.security.dto.LoginUser;
+import com.genersoft.iot.vmp.service.ICloudRecordExportService;
+import com.genersoft.iot.vmp.service.bean.CloudRecordExportTask;
+import com.genersoft.iot.vmp.service.bean.CloudRecordItem;
+import com.genersoft.iot.vmp.utils.DateUtil;
+import com.genersoft.iot.vmp.utils.ZipStoreWriter;
+import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 云端录像打包导出
+ * mp4本身已经是压缩格式, 打包时使用STORED方式, 不再压缩, 文件内容通过 FileChannel.transferTo 写出
+ */
+@Slf4j
+@Service
+public class CloudRecordExportServiceImpl implements ICloudRecordExportService {
+
+    private static final String FILE_SUFFIX = ".export.zip";
+
+    /**
+     * CRC缓存的最大条数
+     */
+    private static final int CRC_CACHE_SIZE = 100000;
+
+    /**
+     * 已结束的任务保留时长
+     */
+    private static final long TASK_KEEP_TIME = 24 * 60 * 60 * 1000L;
+
+    @Autowired
+    private UserSetting userSetting;
+
+    private final Map<String, CloudRecordExportTask> taskMap = new ConcurrentHashMap<>();
+
+    /**
+     * 文件CRC缓存, key为文件路径, value为 [文件大小, 修改时间, crc]
+     */
+    private final Map<String, long[]> crcCache = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > CRC_CACHE_SIZE;
+        }
+    };
+
+    private ThreadPoolTaskExecutor exportExecutor;
+
+    private ThreadPoolTaskExecutor crcExecutor;
+
+    private static class ExportFile {
+        String name;
+        File file;
+        long size;
+        long lastModified;
+        Future<Long> crc;
+    }
+
+    @PostConstruct
+    public void init() {
+        int cpuNum = Runtime.getRuntime().availableProcessors();
+        exportExecutor = new ThreadPoolTaskExecutor();
+        exportExecutor.setCorePoolSize(Math.max(cpuNum / 2, 2));
+        exportExecutor.setMaxPoolSize(Math.max(cpuNum / 2, 2));
+        exportExecutor.setQueueCapacity(1000);
+        exportExecutor.setThreadNamePrefix("record-export-");
+        exportExecutor.initialize();
+
+        crcExecutor = new ThreadPoolTaskExecutor();
+        crcExecutor.setCorePoolSize(Math.min(cpuNum, 4));
+        crcExecutor.setMaxPoolSize(Math.min(cpuNum, 4));
+        crcExecutor.setQueueCapacity(100000);
+        crcExecutor.setThreadNamePrefix("record-crc-");
+        // 计算CRC的任务只来自导出, 队列满时由导出线程自己计算
+        crcExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        crcExecutor.initialize();
+
+        // 清理上次运行遗留的压缩包
+        File[] files = getExportDir().listFiles((dir, name) -> name.endsWith(FILE_SUFFIX) || name.endsWith(FILE_SUFFIX + ".tmp"));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    log.warn("[录像打包] 清理遗留文件失败: {}", file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        exportExecutor.shutdown();
+        crcExecutor.shutdown();
+    }
+
+    @Override
+    public void writeZip(List<CloudRecordItem> cloudRecordItemList, String fileName, HttpServletResponse response) throws IOException {
+        List<ExportFile> exportFiles = prepare(cloudRecordItemList);
+        response.setContentType("application/zip");
+        response.setHeader("Content-Disposition", "attachment;filename=" + URLEncoder.encode(fileName, "UTF-8"));
+        response.setHeader("Content-Length", String.valueOf(computeSize(exportFiles)));
+        try {
+            WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+            ZipStoreWriter writer = new ZipStoreWriter(channel);
+            for (ExportFile exportFile : exportFiles) {
+                writer.putFile(exportFile.name, exportFile.file, getCrc(exportFile), exportFile.lastModified);
+            }
+            writer.finish();
+            response.flushBuffer();
+        } finally {
+            cancelCrc(exportFiles);
+        }
+    }
+
+    @Override
+    public String addTask(List<CloudRecordItem> cloudRecordItemList, String fileName) {
+        int userId = getCurrentUserId();
+        CloudRecordExportTask task = new CloudRecordExportTask();
+        task.setTaskId(UUID.randomUUID().toString().replace("-", ""));
+        task.setUserId(userId);
+        task.setFileName(fileName);
+        task.setFileCount(cloudRecordItemList.size());
+        task.setCreateTime(System.currentTimeMillis());
+        // 统计与加入需要是原子的, 否则并发提交时会超出单用户任务上限
+        synchronized (taskMap) {
+            long running = taskMap.values().stream()
+                    .filter(item -> item.getUserId() == userId && item.getStatus() == 0)
+                    .count();
+            if (running >= userSetting.getCloudRecordExportMaxTaskPerUser()) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "打包任务数量已达上限，请等待已有任务完成");
+            }
+            taskMap.put(task.getTaskId(), task);
+        }
+        exportExecutor.execute(() -> runTask(task, cloudRecordItemList));
+        log.info("[录像打包] 添加任务: {}, 文件数量: {}", task.getTaskId(), cloudRecordItemList.size());
+        return task.getTaskId();
+    }
+
+    private void runTask(CloudRecordExportTask task, List<CloudRecordItem> cloudRecordItemList) {
+        File file = getTaskFile(task.getTaskId());
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        List<ExportFile> exportFiles = Collections.emptyList();
+        try {
+            exportFiles = prepare(cloudRecordItemList);
+            task.setFileCount(exportFiles.size());
+            task.setTotalSize(computeSize(exportFiles));
+            try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ZipStoreWriter writer = new ZipStoreWriter(channel);
+                for (ExportFile exportFile : exportFiles) {
+                    if (!taskMap.containsKey(task.getTaskId())) {
+                        throw new IOException("任务已取消");
+                    }
+                    writer.putFile(exportFile.name, exportFile.file, getCrc(exportFile), exportFile.lastModified);
+                    task.setCurrentSize(writer.getOffset());
+                }
+                writer.finish();
+                task.setCurrentSize(writer.getOffset());
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            task.setStatus(1);
+            log.info("[录像打包] 任务完成: {}, 大小: {}", task.getTaskId(), task.getTotalSize());
+        } catch (Exception e) {
+            log.error("[录像打包] 任务失败: {}", task.getTaskId(), e);
+            task.setStatus(2);
+            task.setMsg(e.getMessage());
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                log.warn("[录像打包] 删除临时文件失败: {}", tmpFile.getAbsolutePath());
+            }
+        } finally {
+            cancelCrc(exportFiles);
+            task.setEndTime(System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public List<CloudRecordExportTask> getTaskList() {
+        int userId = getCurrentUserId();
+        List<CloudRecordExportTask> result = new ArrayList<>();
+        for (CloudRecordExportTask task : taskMap.values()) {
+            if (task.getUserId() == userId) {
+                result.add(task);
+            }
+        }
+        result.sort(Comparator.comparingLong(CloudRecordExportTask::getCreateTime));
+        return result;
+    }
+
+    @Override
+    public CloudRecordExportTask getTask(String taskId) {
+        CloudRecordExportTask task = taskMap.get(taskId);
+        if (task == null || task.getUserId() != getCurrentUserId()) {
+            throw new ControllerException(ErrorCode.ERROR404.getCode(), "任务不存在");
+        }
+        return task;
+    }
+
+    @Override
+    public void download(String taskId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        CloudRecordExportTask task = getTask(taskId);
+        if (task.getStatus() != 1) {
+            throw new ControllerException(ErrorCode.ERROR100.getCode(), "任务尚未完成");
+        }
+        File file = getTaskFile(taskId);
+        if (!file.isFile()) {
+            throw new ControllerException(ErrorCode.ERROR404.getCode(), "文件不存在");
+        }
+        long length = file.length();
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        response.setHeader("Accept-Ranges", "bytes");
+        if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+            String[] rangeArray = range.substring("bytes=".length()).trim().split("-", 2);
+            try {
+                if (rangeArray[0].isEmpty()) {
+                    // bytes=-N 表示最后N个字节
+                    start = Math.max(length - Long.parseLong(rangeArray[1].trim()), 0);
+                } else {
+                    start = Long.parseLong(rangeArray[0].trim());
+                    if (rangeArray.length > 1 && !rangeArray[1].trim().isEmpty()) {
+                        end = Math.min(Long.parseLong(rangeArray[1].trim()), length - 1);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                start = -1;
+            }
+            if (start < 0 || start > end) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader("Content-Range", "bytes */" + length);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+        response.setContentType("application/zip");
+        response.setHeader("Content-Disposition", "attachment;filename=" + URLEncoder.encode(task.getFileName(), "UTF-8"));
+        response.setHeader("Content-Length", String.valueOf(end - start + 1));
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long count = fileChannel.transferTo(position, end - position + 1, channel);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+            }
+        }
+        response.flushBuffer();
+    }
+
+    @Override
+    public void removeTask(String taskId) {
+        getTask(taskId);
+        removeTaskAndFile(taskId);
+    }
+
+    /**
+     * 定时清理已结束的任务
+     */
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void execute() {
+        long now = System.currentTimeMillis();
+        for (CloudRecordExportTask task : taskMap.values()) {
+            if (task.getStatus() != 0 && now - task.getEndTime() > TASK_KEEP_TIME) {
+                removeTaskAndFile(task.getTaskId());
+            }
+        }
+    }
+
+    private void removeTaskAndFile(String taskId) {
+        taskMap.remove(taskId);
+        File file = getTaskFile(taskId);
+        if (file.exists() && !file.delete()) {
+            log.warn("[录像打包] 删除文件失败: {}", file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 过滤不存在的文件, 生成压缩包内的文件名, 并提交CRC计算任务
+     * 不在这里等待CRC, 写出时按顺序等待各自文件的CRC, 首个文件就绪即可开始输出, 后续文件的计算与写出重叠进行
+     */
+    private List<ExportFile> prepare(List<CloudRecordItem> cloudRecordItemList) {
+        List<ExportFile> exportFiles = new ArrayList<>(cloudRecordItemList.size());
+        Set<String> names = new HashSet<>();
+        for (CloudRecordItem cloudRecordItem : cloudRecordItemList) {
+            if (cloudRecordItem.getFilePath() == null) {
+                continue;
+            }
+            File file = new File(cloudRecordItem.getFilePath());
+            if (!file.isFile()) {
+                continue;
+            }
+            String baseName = DateUtil.timestampMsToUrlToyyyy_MM_dd_HH_mm_ss(cloudRecordItem.getStartTime());
+            String name = baseName + ".mp4";
+            for (int i = 1; !names.add(name); i++) {
+                name = baseName + "_" + i + ".mp4";
+            }
+            ExportFile exportFile = new ExportFile();
+            exportFile.name = name;
+            exportFile.file = file;
+            exportFile.size = file.length();
+            exportFile.lastModified = file.lastModified();
+            exportFiles.add(exportFile);
+        }
+        for (ExportFile exportFile : exportFiles) {
+            exportFile.crc = crcExecutor.submit(() -> getCrc(exportFile.file));
+        }
+        return exportFiles;
+    }
+
+    private long getCrc(ExportFile exportFile) throws IOException {
+        try {
+            return exportFile.crc.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("计算CRC被中断");
+        } catch (Exception e) {
+            throw new IOException("计算CRC失败: " + exportFile.file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 写出失败或者任务取消时, 取消尚未执行的CRC计算
+     */
+    private void cancelCrc(List<ExportFile> exportFiles) {
+        for (ExportFile exportFile : exportFiles) {
+            if (exportFile.crc != null) {
+                exportFile.crc.cancel(false);
+            }
+        }
+    }
+
+    private long computeSize(List<ExportFile> exportFiles) {
+        List<String> names = new ArrayList<>(exportFiles.size());
+        List<Long> sizes = new ArrayList<>(exportFiles.size());
+        for (ExportFile exportFile : exportFiles) {
+            names.add(exportFile.name);
+            sizes.add(exportFile.size);
+        }
+        return ZipStoreWriter.computeSize(names, sizes);
+    }
+
+    private long getCrc(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        synchronized (crcCache) {
+            long[] cache = crcCache.get(path);
+            if (cache != null && cache[0] == size && cache[1] == lastModified) {
+                return cache[2];
+            }
+        }
+        CRC32 crc32 = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc32.update(buffer);
+                buffer.clear();
+            }
+        }
+        long crc = crc32.getValue();
+        synchronized (crcCache) {
+            crcCache.put(path, new long[]{size, lastModified, crc});
+        }
+        return crc;
+    }
+
+    private File getTaskFile(String taskId) {
+        return new File(getExportDir(), taskId + FILE_SUFFIX);
+    }
+
+    private File getExportDir() {
+        File dir = new File(userSetting.getCloudRecordExportPath());
+        if (!dir.exists() && !dir.mkdirs()) {
+            log.warn("[录像打包] 创建目录失败: {}", dir.getAbsolutePath());
+        }
+        return dir;
+    }
+
+    private int getCurrentUserId() {
+        LoginUser loginUser = SecurityUtils.getUserInfo();
+        return loginUser == null ? 0 : loginUser.getId();
+    }
+}
@@ -0,0 +1,321 @@
+package com.genersoft.iot.vmp.service.impl;
+
+import com.genersoft.iot.vmp.conf.UserSetting;
+import com.genersoft.iot.vmp.conf.exception.ControllerException;
+import com.genersoft.iot.vmp.media.bean.MediaServer;
+import com.genersoft.iot.vmp.media.service.IMediaServerService;
+import com.genersoft.iot.vmp.service.ICloudRecordRetentionService;
+import com.genersoft.iot.vmp.service.bean.CloudRecordItem;
+import com.genersoft.iot.vmp.service.bean.CloudRecordRetentionStatus;
+import com.genersoft.iot.vmp.storager.CloudRecordCatalog;
+import com.genersoft.iot.vmp.storager.dao.CloudRecordServiceMapper;
+import com.genersoft.iot.vmp.utils.DateUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 云端录像清理
+ * 持续按游标小批量检查过期录像, 整个日期目录都已过期时一次删除整个目录, 并按每秒操作数与数据量限速;
+ * 过期录像清理完成后, 若录像占用超过配额则从最早的录像开始删除, 直到低于配额的下限
+ */
+@Slf4j
+@Service
+public class CloudRecordRetentionServiceImpl implements ICloudRecordRetentionService {
+
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * 每轮清理完成后到下一轮开始的间隔, 单位：毫秒
+     */
+    private static final long PASS_INTERVAL = 10 * 60 * 1000L;
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private static final int PHASE_IDLE = 0;
+
+    private static final int PHASE_RETENTION = 1;
+
+    private static final int PHASE_QUOTA = 2;
+
+    @Autowired
+    private IMediaServerService mediaServerService;
+
+    @Autowired
+    private CloudRecordServiceMapper cloudRecordServiceMapper;
+
+    @Autowired
+    private CloudRecordCatalog cloudRecordCatalog;
+
+    @Autowired
+    private UserSetting userSetting;
+
+    private final Map<String, Progress> progressMap = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * 本秒剩余可执行的删除操作数
+     */
+    private long opsToken;
+
+    /**
+     * 剩余可删除的数据量, 大目录删除后可以为负, 之后的时间用于偿还
+     */
+    private long bytesToken;
+
+    private int round;
+
+    private static class Progress {
+        private final CloudRecordRetentionStatus status = new CloudRecordRetentionStatus();
+        private Long lastStartTime;
+        private Integer lastId;
+        private long nextPassTime;
+        /**
+         * 本阶段已检查过的目录, 不需要重复检查
+         */
+        private final Set<String> checkedFolders = new HashSet<>();
+    }
+
+    @Override
+    public List<CloudRecordRetentionStatus> getStatusList() {
+        List<CloudRecordRetentionStatus> result = new ArrayList<>();
+        for (Progress progress : progressMap.values()) {
+            result.add(progress.status);
+        }
+        return result;
+    }
+
+    @Async("taskExecutor")
+    @Scheduled(fixedDelay = 1000)
+    public void execute() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refill();
+            List<MediaServer> mediaServerList = mediaServerService.getAllOnline();
+            if (mediaServerList.isEmpty()) {
+                return;
+            }
+            // 轮流从不同的节点开始, 避免限速时后面的节点一直得不到处理
+            int start = round++ % mediaServerList.size();
+            for (int i = 0; i < mediaServerList.size() && hasToken(); i++) {
+                MediaServer mediaServer = mediaServerList.get((start + i) % mediaServerList.size());
+                Progress progress = progressMap.computeIfAbsent(mediaServer.getId(), key -> {
+                    Progress newProgress = new Progress();
+                    newProgress.status.setMediaServerId(key);
+                    return newProgress;
+                });
+                process(mediaServer, progress);
+            }
+        } catch (Exception e) {
+            log.error("[录像文件清理] 执行失败", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void process(MediaServer mediaServer, Progress progress) {
+        long now = System.currentTimeMillis();
+        CloudRecordRetentionStatus status = progress.status;
+        if (status.getPhase() == PHASE_IDLE) {
+            if (now < progress.nextPassTime) {
+                return;
+            }
+            status.setPhase(PHASE_RETENTION);
+            status.setPassStartTime(now);
+            status.setScanned(0);
+            status.setQuotaBytes(userSetting.getCloudRecordStorageQuota() * 1024 * 1024 * 1024);
+            status.setUsedBytes(cloudRecordServiceMapper.sumFileSize(mediaServer.getId()));
+            resetCursor(progress);
+        }
+        while (hasToken() && status.getPhase() != PHASE_IDLE) {
+            Long endTimeStamp = null;
+            if (status.getPhase() == PHASE_RETENTION) {
+                Integer minDays = getMinRetentionDays(mediaServer);
+                if (minDays == null) {
+                    nextPhase(progress, now);
+                    continue;
+                }
+                endTimeStamp = now - minDays * DAY;
+            } else if (status.getUsedBytes() <= status.getQuotaBytes() * userSetting.getCloudRecordStorageLowWatermark() / 100) {
+                nextPhase(progress, now);
+                continue;
+            }
+            List<CloudRecordItem> cloudRecordItemList = cloudRecordServiceMapper.queryRecordListForDelete(mediaServer.getId(),
+                    endTimeStamp, progress.lastStartTime, progress.lastId, PAGE_SIZE);
+            if (cloudRecordItemList.isEmpty()) {
+                nextPhase(progress, now);
+                continue;
+            }
+            deletePage(mediaServer, progress, cloudRecordItemList, now);
+        }
+    }
+
+    private void deletePage(MediaServer mediaServer, Progress progress, List<CloudRecordItem> cloudRecordItemList, long now) {
+        CloudRecordRetentionStatus status = progress.status;
+        List<CloudRecordItem> deleteList = new ArrayList<>();
+        Set<Integer> deletedIds = new HashSet<>();
+        long todayStart = LocalDate.now(ZoneId.of(DateUtil.zoneStr)).atStartOfDay(ZoneId.of(DateUtil.zoneStr)).toInstant().toEpochMilli();
+        for (CloudRecordItem cloudRecordItem : cloudRecordItemList) {
+            if (!hasToken()) {
+                break;
+            }
+            progress.lastStartTime = cloudRecordItem.getStartTime();
+            progress.lastId = cloudRecordItem.getId();
+            status.setCursorTime(cloudRecordItem.getStartTime());
+            status.setScanned(status.getScanned() + 1);
+            if (deletedIds.contains(cloudRecordItem.getId())) {
+                continue;
+            }
+            Long folderEndTimeStamp;
+            if (status.getPhase() == PHASE_RETENTION) {
+                Integer days = getRetentionDays(mediaServer, cloudRecordItem.getApp(), cloudRecordItem.getStream());
+                if (days == null || cloudRecordItem.getEndTime() > now - days * DAY) {
+                    continue;
+                }
+                folderEndTimeStamp = now - days * DAY;
+            } else {
+                // 按配额清理时不整体删除当天正在写入的目录
+                folderEndTimeStamp = todayStart;
+            }
+            String date = new File(cloudRecordItem.getFilePath()).getParentFile().getName();
+            // folder是流的目录, 其下按日期分目录, 整体删除时只处理当前录像所在的日期目录
+            String folder = cloudRecordItem.getFolder();
+            String dateFolder = getDateFolder(cloudRecordItem.getFilePath());
+            if (folder != null && dateFolder != null && progress.checkedFolders.add(dateFolder)
+                    && cloudRecordServiceMapper.countRecordForKeep(mediaServer.getId(), folder, dateFolder, folderEndTimeStamp) == 0) {
+                List<CloudRecordItem> folderItemList = cloudRecordServiceMapper.queryRecordListByDateFolder(mediaServer.getId(), folder, dateFolder);
+                long size = 0;
+                for (CloudRecordItem folderItem : folderItemList) {
+                    size += folderItem.getFileSize();
+                }
+                if (deleteRecord(mediaServer, cloudRecordItem, date, null, size)) {
+                    log.info("[录像文件清理] 删除日期目录： {}, 文件数： {}", dateFolder, folderItemList.size());
+                    cloudRecordServiceMapper.deleteList(folderItemList);
+                    cloudRecordCatalog.remove(folderItemList);
+                    for (CloudRecordItem folderItem : folderItemList) {
+                        deletedIds.add(folderItem.getId());
+                    }
+                    status.setDeletedDirectories(status.getDeletedDirectories() + 1);
+                    status.setDeletedFiles(status.getDeletedFiles() + folderItemList.size());
+                    status.setDeletedBytes(status.getDeletedBytes() + size);
+                    status.setUsedBytes(status.getUsedBytes() - size);
+                    continue;
+                }
+            }
+            deleteRecord(mediaServer, cloudRecordItem, date, cloudRecordItem.getFileName(), cloudRecordItem.getFileSize());
+            deleteList.add(cloudRecordItem);
+            status.setDeletedFiles(status.getDeletedFiles() + 1);
+            status.setDeletedBytes(status.getDeletedBytes() + cloudRecordItem.getFileSize());
+            status.setUsedBytes(status.getUsedBytes() - cloudRecordItem.getFileSize());
+        }
+        if (!deleteList.isEmpty()) {
+            cloudRecordServiceMapper.deleteList(deleteList);
+            cloudRecordCatalog.remove(deleteList);
+        }
+    }
+
+    /**
+     * 获取录像文件所在的日期目录, 包含结尾的分隔符
+     */
+    private String getDateFolder(String filePath) {
+        if (filePath == null) {
+            return null;
+        }
+        int index = Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\'));
+        if (index <= 0) {
+            return null;
+        }
+        return filePath.substring(0, index + 1);
+    }
+
+    /**
+     * 删除磁盘文件, fileName为空时删除整个日期目录
+     */
+    private boolean deleteRecord(MediaServer mediaServer, CloudRecordItem cloudRecordItem, String date, String fileName, long size) {
+        opsToken--;
+        bytesToken -= size;
+        try {
+            return mediaServerService.deleteRecordDirectory(mediaServer, cloudRecordItem.getApp(),
+                    cloudRecordItem.getStream(), date, fileName);
+        } catch (ControllerException e) {
+            return false;
+        }
+    }
+
+    private void nextPhase(Progress progress, long now) {
+        CloudRecordRetentionStatus status = progress.status;
+        resetCursor(progress);
+        if (status.getPhase() == PHASE_RETENTION && status.getQuotaBytes() > 0
+                && status.getUsedBytes() > status.getQuotaBytes() * userSetting.getCloudRecordStorageHighWatermark() / 100) {
+            log.info("[录像文件清理] 录像占用超过配额, 开始删除最早的录像, 流媒体： {}, 占用： {}, 配额： {}",
+                    status.getMediaServerId(), status.getUsedBytes(), status.getQuotaBytes());
+            status.setPhase(PHASE_QUOTA);
+            return;
+        }
+        status.setPhase(PHASE_IDLE);
+        status.setLastPassEndTime(now);
+        progress.nextPassTime = now + PASS_INTERVAL;
+        log.debug("[录像文件清理] 本轮结束, 流媒体： {}, 检查： {}, 累计删除： {}", status.getMediaServerId(),
+                status.getScanned(), status.getDeletedFiles());
+    }
+
+    private void resetCursor(Progress progress) {
+        progress.lastStartTime = null;
+        progress.lastId = null;
+        progress.checkedFolders.clear();
+    }
+
+    private void refill() {
+        opsToken = Math.max(1, userSetting.getCloudRecordDeleteIops());
+        long speed = userSetting.getCloudRecordDeleteSpeed() * 1024L * 1024L;
+        if (speed > 0) {
+            bytesToken = Math.min(bytesToken + speed, speed);
+        }
+    }
+
+    private boolean hasToken() {
+        return opsToken > 0 && (userSetting.getCloudRecordDeleteSpeed() <= 0 || bytesToken > 0);
+    }
+
+    /**
+     * 获取录像的保存天数, 优先使用流的配置, 其次是应用的配置, 最后是流媒体节点的配置, 返回null表示不清理
+     */
+    private Integer getRetentionDays(MediaServer mediaServer, String app, String stream) {
+        Map<String, Integer> retentionMap = userSetting.getCloudRecordRetention();
+        if (retentionMap != null) {
+            Integer days = retentionMap.get(app + "/" + stream);
+            if (days == null) {
+                days = retentionMap.get(app);
+            }
+            if (days != null) {
+                return days > 0 ? days : null;
+            }
+        }
+        return mediaServer.getRecordDay() > 0 ? mediaServer.getRecordDay() : null;
+    }
+
+    private Integer getMinRetentionDays(MediaServer mediaServer) {
+        Integer minDays = mediaServer.getRecordDay() > 0 ? mediaServer.getRecordDay() : null;
+        Map<String, Integer> retentionMap = userSetting.getCloudRecordRetention();
+        if (retentionMap != null) {
+            for (Integer days : retentionMap.values()) {
+                if (days != null && days > 0 && (minDays == null || days < minDays)) {
+                    minDays = days;
+                }
+            }
+        }
+        return minDays;
+    }
+}
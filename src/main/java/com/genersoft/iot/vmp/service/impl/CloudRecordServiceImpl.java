@@ -16,28 +16,36 @@ import com.genersoft.iot.vmp.media.zlm.AssistRESTfulUtils;
 import com.genersoft.iot.vmp.media.zlm.dto.StreamAuthorityInfo;
 import com.genersoft.iot.vmp.service.ICloudRecordService;
 import com.genersoft.iot.vmp.service.bean.CloudRecordItem;
+import com.genersoft.iot.vmp.service.bean.CloudRecordSpan;
 import com.genersoft.iot.vmp.service.bean.DownloadFileInfo;
 import com.genersoft.iot.vmp.service.bean.ErrorCallback;
 import com.genersoft.iot.vmp.service.redisMsg.IRedisRpcPlayService;
+import com.genersoft.iot.vmp.storager.CloudRecordCatalog;
 import com.genersoft.iot.vmp.storager.IRedisCatchStorage;
 import com.genersoft.iot.vmp.storager.dao.CloudRecordServiceMapper;
 import com.genersoft.iot.vmp.utils.CloudRecordUtils;
 import com.genersoft.iot.vmp.utils.DateUtil;
+import com.genersoft.iot.vmp.utils.ListCountCache;
+import com.genersoft.iot.vmp.utils.PageCursor;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
-import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
 import java.io.File;
+import java.io.IOException;
 import java.time.LocalDate;
-import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -61,9 +69,15 @@ public class CloudRecordServiceImpl implements ICloudRecordService {
     @Autowired
     private IRedisRpcPlayService redisRpcPlayService;
 
+    @Autowired
+    private ListCountCache listCountCache;
+
     @Autowired
     private HookSubscribe subscribe;
 
+    @Autowired
+    private CloudRecordCatalog cloudRecordCatalog;
+
     @Override
     public PageInfo<CloudRecordItem> getList(int page, int count, String query, String app, String stream, String startTime,
                                              String endTime, List<MediaServer> mediaServerItems, String callId, Boolean ascOrder) {
@@ -84,39 +98,160 @@ public class CloudRecordServiceImpl implements ICloudRecordService {
             endTimeStamp = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestampMs(endTime);
 
         }
-        PageHelper.startPage(page, count);
         if (query != null) {
             query = query.replaceAll("/", "//")
                     .replaceAll("%", "/%")
                     .replaceAll("_", "/_");
         }
-        List<CloudRecordItem> all = cloudRecordServiceMapper.getList(query, app, stream, startTimeStamp, endTimeStamp,
-                callId, mediaServerItems, null, ascOrder);
-        return new PageInfo<>(all);
+        String finalQuery = query;
+        Long finalStartTimeStamp = startTimeStamp;
+        Long finalEndTimeStamp = endTimeStamp;
+        return listCountCache.page(getCountKey(query, app, stream, startTimeStamp, endTimeStamp, mediaServerItems, callId), page, count,
+                () -> cloudRecordServiceMapper.getList(finalQuery, app, stream, finalStartTimeStamp, finalEndTimeStamp,
+                        callId, mediaServerItems, null, ascOrder));
+    }
+
+    private String getCountKey(String query, String app, String stream, Long startTimeStamp, Long endTimeStamp,
+                               List<MediaServer> mediaServerItems, String callId) {
+        StringBuilder key = new StringBuilder("cloudRecord:");
+        key.append(query).append(":").append(app).append(":").append(stream).append(":").append(startTimeStamp)
+                .append(":").append(endTimeStamp).append(":").append(callId).append(":");
+        if (mediaServerItems != null) {
+            for (MediaServer mediaServer : mediaServerItems) {
+                key.append(mediaServer.getId()).append(",");
+            }
+        }
+        return key.toString();
+    }
+
+    private Long parseTime(String time, String name) {
+        if (time == null) {
+            return null;
+        }
+        if (!DateUtil.verification(time, DateUtil.formatter)) {
+            throw new ControllerException(ErrorCode.ERROR100.getCode(), name + "格式错误，正确格式为： " + DateUtil.formatter);
+        }
+        return DateUtil.yyyy_MM_dd_HH_mm_ssToTimestampMs(time);
+    }
+
+    @Override
+    public CursorPageInfo<CloudRecordItem> getListByCursor(String cursor, int count, String query, String app, String stream,
+                                                           String startTime, String endTime, List<MediaServer> mediaServerItems,
+                                                           String callId, Boolean ascOrder) {
+        count = CursorPageInfo.limitCount(count);
+        Long lastStartTime = null;
+        Integer lastId = null;
+        String[] keys = PageCursor.decode(cursor, 2);
+        if (keys != null) {
+            lastStartTime = PageCursor.parseLong(keys[0]);
+            lastId = PageCursor.parseInt(keys[1]);
+        }
+        Long startTimeStamp = parseTime(startTime, "开始时间");
+        Long endTimeStamp = parseTime(endTime, "结束时间");
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        String finalQuery = query;
+        long total = listCountCache.count(getCountKey(query, app, stream, startTimeStamp, endTimeStamp, mediaServerItems, callId),
+                () -> cloudRecordServiceMapper.getList(finalQuery, app, stream, startTimeStamp, endTimeStamp,
+                        callId, mediaServerItems, null, ascOrder));
+        List<CloudRecordItem> rows = cloudRecordServiceMapper.getListAfter(query, app, stream, startTimeStamp, endTimeStamp,
+                callId, mediaServerItems, lastStartTime, lastId, ascOrder, count + 1);
+        return CursorPageInfo.of(rows, count, total, item -> PageCursor.encode(item.getStartTime(), item.getId()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportList(String query, String app, String stream, String startTime, String endTime, List<MediaServer> mediaServerItems,
+                           String callId, Boolean ascOrder, Consumer<CloudRecordItem> consumer) {
+        Long startTimeStamp = parseTime(startTime, "开始时间");
+        Long endTimeStamp = parseTime(endTime, "结束时间");
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        try (Cursor<CloudRecordItem> cursor = cloudRecordServiceMapper.getListForExport(query, app, stream, startTimeStamp,
+                endTimeStamp, callId, mediaServerItems, ascOrder)) {
+            cursor.forEach(consumer);
+        } catch (IOException e) {
+            log.error("[导出云端录像列表] 关闭游标失败", e);
+        }
+    }
+
+    @Override
+    public List<CloudRecordItem> getListAfter(int count, String query, String app, String stream, String startTime,
+                                              String endTime, List<MediaServer> mediaServerItems, String callId,
+                                              Boolean ascOrder, Long lastStartTime, Integer lastId) {
+        Long startTimeStamp = null;
+        Long endTimeStamp = null;
+        if (startTime != null ) {
+            if (!DateUtil.verification(startTime, DateUtil.formatter)) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "开始时间格式错误，正确格式为： " + DateUtil.formatter);
+            }
+            startTimeStamp = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestampMs(startTime);
+
+        }
+        if (endTime != null ) {
+            if (!DateUtil.verification(endTime, DateUtil.formatter)) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "结束时间格式错误，正确格式为： " + DateUtil.formatter);
+            }
+            endTimeStamp = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestampMs(endTime);
+
+        }
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        return cloudRecordServiceMapper.getListAfter(query, app, stream, startTimeStamp, endTimeStamp,
+                callId, mediaServerItems, lastStartTime, lastId, ascOrder, count);
     }
 
     @Override
     public List<String> getDateList(String app, String stream, int year, int month, List<MediaServer> mediaServerItems) {
+        int days = 0;
+        for (MediaServer mediaServer : mediaServerItems) {
+            days |= cloudRecordCatalog.getMonthDays(mediaServer.getId(), app, stream, year, month);
+        }
+        List<String> result = new ArrayList<>();
         LocalDate startDate = LocalDate.of(year, month, 1);
-        LocalDate endDate;
-        if (month == 12) {
-            endDate = LocalDate.of(year + 1, 1, 1);
-        }else {
-            endDate = LocalDate.of(year, month + 1, 1);
+        for (int i = 0; i < startDate.lengthOfMonth(); i++) {
+            if ((days >> i & 1) == 1) {
+                result.add(startDate.plusDays(i).format(DateTimeFormatter.ISO_LOCAL_DATE));
+            }
         }
-        long startTimeStamp = startDate.atStartOfDay().toInstant(ZoneOffset.ofHours(8)).toEpochMilli();
-        long endTimeStamp = endDate.atStartOfDay().toInstant(ZoneOffset.ofHours(8)).toEpochMilli();
-        List<CloudRecordItem> cloudRecordItemList = cloudRecordServiceMapper.getList(null, app, stream, startTimeStamp,
-                endTimeStamp, null, mediaServerItems, null, null);
-        if (cloudRecordItemList.isEmpty()) {
-            return new ArrayList<>();
+        return result;
+    }
+
+    @Override
+    public List<CloudRecordSpan> getTimeline(String app, String stream, String date, List<MediaServer> mediaServerItems) {
+        if (!DateUtil.verification(date, DateUtil.DateFormatter)) {
+            throw new ControllerException(ErrorCode.ERROR100.getCode(), "日期格式错误，正确格式为： " + DateUtil.DateFormatter);
         }
-        Set<String> resultSet = new HashSet<>();
-        cloudRecordItemList.stream().forEach(cloudRecordItem -> {
-            String date = DateUtil.timestampTo_yyyy_MM_dd(cloudRecordItem.getStartTime());
-            resultSet.add(date);
-        });
-        return new ArrayList<>(resultSet);
+        LocalDate localDate = LocalDate.parse(date, DateTimeFormatter.ISO_LOCAL_DATE);
+        List<CloudRecordSpan> spanList = new ArrayList<>();
+        for (MediaServer mediaServer : mediaServerItems) {
+            spanList.addAll(cloudRecordCatalog.getTimeline(mediaServer.getId(), app, stream, localDate));
+        }
+        if (mediaServerItems.size() <= 1) {
+            return spanList;
+        }
+        // 多个流媒体节点的时间段需要再次合并
+        spanList.sort(Comparator.comparingLong(CloudRecordSpan::getStartTime));
+        List<CloudRecordSpan> result = new ArrayList<>();
+        CloudRecordSpan current = null;
+        for (CloudRecordSpan span : spanList) {
+            if (current != null && span.getStartTime() <= current.getEndTime()) {
+                current.setEndTime(Math.max(current.getEndTime(), span.getEndTime()));
+            } else {
+                current = CloudRecordSpan.getInstance(span.getStartTime(), span.getEndTime());
+                result.add(current);
+            }
+        }
+        return result;
     }
 
     @Async("taskExecutor")
@@ -132,6 +267,7 @@ public class CloudRecordServiceImpl implements ICloudRecordService {
         }
         log.info("[添加录像记录] {}/{}, callId: {}, 内容：{}", event.getApp(), event.getStream(), cloudRecordItem.getCallId(), event.getRecordInfo());
         cloudRecordServiceMapper.add(cloudRecordItem);
+        cloudRecordCatalog.add(cloudRecordItem);
     }
 
     @Override
@@ -288,7 +424,9 @@ public class CloudRecordServiceImpl implements ICloudRecordService {
         long startTimestamp = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestampMs(date + " 00:00:00");
         long endTimestamp = startTimestamp + 24 * 60 * 60 * 1000;
 
-        List<CloudRecordItem> recordItemList = cloudRecordServiceMapper.getList(null, app, stream, startTimestamp, endTimestamp, null, null, null, false);
+        // 只需要当天最早的一条录像用于确定流媒体节点和目录
+        List<CloudRecordItem> recordItemList = cloudRecordServiceMapper.getListAfter(null, app, stream, startTimestamp, endTimestamp,
+                null, null, null, null, true, 1);
         if (recordItemList.isEmpty()) {
             throw new ControllerException(ErrorCode.ERROR100.getCode(), "此时间无录像");
         }
@@ -366,6 +504,7 @@ public class CloudRecordServiceImpl implements ICloudRecordService {
         }
         if (!cloudRecordItemIdListForDelete.isEmpty()) {
             cloudRecordServiceMapper.deleteList(cloudRecordItemIdListForDelete);
+            cloudRecordCatalog.remove(cloudRecordItemIdListForDelete);
         }
         if (stringBuilder.length() > 0) {
             stringBuilder.append(" 删除失败");
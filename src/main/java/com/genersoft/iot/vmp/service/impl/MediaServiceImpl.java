@@ -12,6 +12,7 @@ import com.genersoft.iot.vmp.gb28181.bean.SsrcTransaction;
 import com.genersoft.iot.vmp.gb28181.service.IDeviceChannelService;
 import com.genersoft.iot.vmp.gb28181.service.IInviteStreamService;
 import com.genersoft.iot.vmp.gb28181.session.SipInviteSessionManager;
+import com.genersoft.iot.vmp.gb28181.session.WarmStreamPool;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommander;
 import com.genersoft.iot.vmp.gb28181.transmit.cmd.ISIPCommanderForPlatform;
 import com.genersoft.iot.vmp.jt1078.bean.JTMediaStreamType;
@@ -81,6 +82,9 @@ public class MediaServiceImpl implements IMediaService {
     @Autowired
     private IRecordPlanService recordPlanService;
 
+    @Autowired
+    private WarmStreamPool warmStreamPool;
+
     @Override
     public boolean authenticatePlay(String app, String stream, String callId) {
         if (app == null || stream == null) {
@@ -255,6 +259,10 @@ public class MediaServiceImpl implements IMediaService {
                     if (deviceChannel == null) {
                         return false;
                     }
+                    // 热点通道进入预热池, 暂不关闭
+                    if (result && warmStreamPool.keepOnNoneReader(mediaServerId, inviteInfo)) {
+                        return false;
+                    }
                 }
                 return result;
             }
@@ -56,6 +56,17 @@ public class MobilePositionServiceImpl implements IMobilePositionService {
         redisTemplate.opsForList().leftPushAll(REDIS_MOBILE_POSITION_LIST, mobilePositionList);
     }
 
+    @Override
+    public void addHistory(List<MobilePosition> mobilePositionList) {
+        if (!userSetting.getSavePositionHistory()) {
+            return;
+        }
+        int limitCount = 1000;
+        for (int i = 0; i < mobilePositionList.size(); i += limitCount) {
+            mobilePositionMapper.batchadd(mobilePositionList.subList(i, Math.min(i + limitCount, mobilePositionList.size())));
+        }
+    }
+
     private List<MobilePosition> get(int length) {
         Long size = redisTemplate.opsForList().size(REDIS_MOBILE_POSITION_LIST);
         if (size == null || size == 0) {
@@ -5,6 +5,7 @@ import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.gb28181.bean.CommonGBChannel;
 import com.genersoft.iot.vmp.gb28181.dao.CommonGBChannelMapper;
 import com.genersoft.iot.vmp.gb28181.service.IGbChannelPlayService;
+import com.genersoft.iot.vmp.gb28181.session.ChannelSearchIndex;
 import com.genersoft.iot.vmp.media.bean.MediaInfo;
 import com.genersoft.iot.vmp.media.event.media.MediaDepartureEvent;
 import com.genersoft.iot.vmp.media.service.IMediaServerService;
@@ -46,6 +47,9 @@ public class RecordPlanServiceImpl implements IRecordPlanService {
     @Autowired
     private IMediaServerService mediaServerService;
 
+    @Autowired
+    private ChannelSearchIndex channelSearchIndex;
+
 
 
     /**
@@ -232,6 +236,7 @@ public class RecordPlanServiceImpl implements IRecordPlanService {
         }
         // 清理关联的通道
         channelMapper.removeRecordPlanByPlanId(recordPlan.getId());
+        channelSearchIndex.replaceRecordPlan(recordPlan.getId(), null);
         recordPlanMapper.cleanItems(planId);
         recordPlanMapper.delete(planId);
         // TODO  更新录像队列
@@ -260,6 +265,7 @@ public class RecordPlanServiceImpl implements IRecordPlanService {
         }else {
             channelMapper.addRecordPlan(channelIds, planId);
         }
+        channelSearchIndex.updateRecordPlan(channelIds, planId);
         // 查看当前的待录制列表是否变化,如果变化,则调用录制计划马上开始录制
         execution();
     }
@@ -279,10 +285,14 @@ public class RecordPlanServiceImpl implements IRecordPlanService {
     @Override
     public void linkAll(Integer planId) {
         channelMapper.addRecordPlanForAll(planId);
+        channelSearchIndex.replaceRecordPlan(null, planId);
     }
 
     @Override
     public void cleanAll(Integer planId) {
         channelMapper.removeRecordPlanByPlanId(planId);
+        if (planId != null) {
+            channelSearchIndex.replaceRecordPlan(planId, null);
+        }
     }
 }
@@ -1,5 +1,6 @@
 package com.genersoft.iot.vmp.service.impl;
 
+import com.genersoft.iot.vmp.conf.security.AuthenticationCache;
 import com.genersoft.iot.vmp.service.IUserApiKeyService;
 import com.genersoft.iot.vmp.storager.dao.UserApiKeyMapper;
 import com.genersoft.iot.vmp.storager.dao.dto.UserApiKey;
@@ -22,6 +23,9 @@ public class UserApiKeyServiceImpl implements IUserApiKeyService {
     @Autowired
     private RedisTemplate<Object, Object> redisTemplate;
 
+    @Autowired
+    private AuthenticationCache authenticationCache;
+
     @Override
     public int addApiKey(UserApiKey userApiKey) {
         return userApiKeyMapper.add(userApiKey);
@@ -48,13 +52,17 @@ public class UserApiKeyServiceImpl implements IUserApiKeyService {
     @CacheEvict(cacheNames = "userApiKey", key = "#id")
     @Override
     public int enable(Integer id) {
-        return userApiKeyMapper.enable(id);
+        int result = userApiKeyMapper.enable(id);
+        authenticationCache.invalidateApiKey(id);
+        return result;
     }
 
     @CacheEvict(cacheNames = "userApiKey", key = "#id")
     @Override
     public int disable(Integer id) {
-        return userApiKeyMapper.disable(id);
+        int result = userApiKeyMapper.disable(id);
+        authenticationCache.invalidateApiKey(id);
+        return result;
     }
 
     @CacheEvict(cacheNames = "userApiKey", key = "#id")
@@ -66,13 +74,17 @@ public class UserApiKeyServiceImpl implements IUserApiKeyService {
     @CacheEvict(cacheNames = "userApiKey", key = "#id")
     @Override
     public int delete(Integer id) {
-        return userApiKeyMapper.delete(id);
+        int result = userApiKeyMapper.delete(id);
+        authenticationCache.invalidateApiKey(id);
+        return result;
     }
 
     @CacheEvict(cacheNames = "userApiKey", key = "#id")
     @Override
     public int reset(Integer id, String apiKey) {
-        return userApiKeyMapper.apiKey(id, apiKey);
+        int result = userApiKeyMapper.apiKey(id, apiKey);
+        authenticationCache.invalidateApiKey(id);
+        return result;
     }
 
 }
@@ -1,5 +1,6 @@
 package com.genersoft.iot.vmp.service.impl;
 
+import com.genersoft.iot.vmp.conf.security.AuthenticationCache;
 import com.genersoft.iot.vmp.service.IUserService;
 import com.genersoft.iot.vmp.storager.dao.UserMapper;
 import com.genersoft.iot.vmp.storager.dao.dto.User;
@@ -17,6 +18,9 @@ public class UserServiceImpl implements IUserService {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private AuthenticationCache authenticationCache;
+
     @Override
     public User getUser(String username, String password) {
         return userMapper.select(username, password);
@@ -26,7 +30,9 @@ public class UserServiceImpl implements IUserService {
     public boolean changePassword(int id, String password) {
         User user = userMapper.selectById(id);
         user.setPassword(password);
-        return userMapper.update(user) > 0;
+        boolean result = userMapper.update(user) > 0;
+        authenticationCache.invalidateUser(id);
+        return result;
     }
 
     @Override
@@ -49,7 +55,9 @@ public class UserServiceImpl implements IUserService {
     }
     @Override
     public int deleteUser(int id) {
-        return userMapper.delete(id);
+        int result = userMapper.delete(id);
+        authenticationCache.invalidateUser(id);
+        return result;
     }
 
     @Override
@@ -59,7 +67,9 @@ public class UserServiceImpl implements IUserService {
 
     @Override
     public int updateUsers(User user) {
-        return userMapper.update(user);
+        int result = userMapper.update(user);
+        authenticationCache.invalidateUser(user.getId());
+        return result;
     }
 
 
@@ -92,6 +102,8 @@ public class UserServiceImpl implements IUserService {
 
     @Override
     public int changePushKey(int id, String pushKey) {
-        return userMapper.changePushKey(id,pushKey);
+        int result = userMapper.changePushKey(id,pushKey);
+        authenticationCache.invalidateUser(id);
+        return result;
     }
 }
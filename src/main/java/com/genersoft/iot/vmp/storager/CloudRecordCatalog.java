@@ -0,0 +1,237 @@
+package com.genersoft.iot.vmp.storager;
+
+import com.genersoft.iot.vmp.common.VideoManagerConstants;
+import com.genersoft.iot.vmp.service.bean.CloudRecordItem;
+import com.genersoft.iot.vmp.service.bean.CloudRecordSpan;
+import com.genersoft.iot.vmp.storager.dao.CloudRecordServiceMapper;
+import com.genersoft.iot.vmp.utils.DateUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * 云端录像目录索引
+ * 每个(流媒体节点, app, stream)维护一个按天的位图, 用于日历展示; 每天维护一份合并后的连续时间段, 用于时间轴展示.
+ * 位图按月从数据库懒加载, 之后随录像的添加和删除增量维护; 时间段按天懒加载, 添加时合并, 删除时失效.
+ * 已加载月份与位图在首次加载一天后一起过期, 之后重新从数据库加载, 修正增量维护遗漏导致的不一致
+ */
+@Slf4j
+@Component
+public class CloudRecordCatalog {
+
+    private static final ZoneId ZONE = ZoneId.of(DateUtil.zoneStr);
+
+    /**
+     * 间隔小于此值的两段录像视为连续, 单位：毫秒
+     */
+    private static final long MERGE_GAP = 2000;
+
+    /**
+     * 历史日期的时间段缓存时长
+     */
+    private static final Duration TIMELINE_EXPIRE = Duration.ofDays(1);
+
+    /**
+     * 当天的时间段缓存时长, 限制多节点并发写入时可能出现的不一致
+     */
+    private static final Duration TIMELINE_EXPIRE_TODAY = Duration.ofMinutes(5);
+
+    /**
+     * 日历位图与已加载月份的缓存时长
+     */
+    private static final Duration DAY_EXPIRE = Duration.ofDays(1);
+
+    @Autowired
+    private RedisTemplate<Object, Object> redisTemplate;
+
+    @Autowired
+    private CloudRecordServiceMapper cloudRecordServiceMapper;
+
+    /**
+     * 获取某月存在录像的日期, 返回的位图中第0位为1号
+     */
+    public int getMonthDays(String mediaServerId, String app, String stream, int year, int month) {
+        LocalDate firstDay = LocalDate.of(year, month, 1);
+        String suffix = getSuffix(mediaServerId, app, stream);
+        String monthKey = String.format("%04d-%02d", year, month);
+        String loadedKey = VideoManagerConstants.CLOUD_RECORD_DAY_LOADED + suffix;
+        if (!Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(loadedKey, monthKey))) {
+            loadMonth(mediaServerId, app, stream, firstDay);
+            redisTemplate.opsForSet().add(loadedKey, monthKey);
+            // 只在新建时设置过期时间, 之后加载其他月份不再延长, 保证定期从数据库修正
+            Long expire = redisTemplate.getExpire(loadedKey);
+            if (expire == null || expire < 0) {
+                redisTemplate.expire(loadedKey, DAY_EXPIRE);
+                redisTemplate.expire(VideoManagerConstants.CLOUD_RECORD_DAY + suffix, DAY_EXPIRE);
+            }
+        }
+        int length = firstDay.lengthOfMonth();
+        List<Long> values = redisTemplate.opsForValue().bitField(VideoManagerConstants.CLOUD_RECORD_DAY + suffix,
+                BitFieldSubCommands.create().get(BitFieldSubCommands.BitFieldType.unsigned(length)).valueAt(firstDay.toEpochDay()));
+        if (values == null || values.isEmpty() || values.get(0) == null) {
+            return 0;
+        }
+        // redis位图的高位在前, 转换为第0位表示1号
+        long value = values.get(0);
+        int days = 0;
+        for (int i = 0; i < length; i++) {
+            if ((value >> (length - 1 - i) & 1) == 1) {
+                days |= 1 << i;
+            }
+        }
+        return days;
+    }
+
+    /**
+     * 获取某天合并后的连续录像时间段, 结果已按天截取
+     */
+    @SuppressWarnings("unchecked")
+    public List<CloudRecordSpan> getTimeline(String mediaServerId, String app, String stream, LocalDate date) {
+        String key = getTimelineKey(mediaServerId, app, stream, date);
+        Object value = redisTemplate.opsForValue().get(key);
+        if (value != null) {
+            return (List<CloudRecordSpan>) value;
+        }
+        long dayStart = toTimestamp(date);
+        long dayEnd = toTimestamp(date.plusDays(1));
+        List<CloudRecordSpan> spanList = merge(cloudRecordServiceMapper.queryRecordSpanList(mediaServerId, app, stream, dayStart, dayEnd),
+                dayStart, dayEnd);
+        redisTemplate.opsForValue().setIfAbsent(key, spanList, getTimelineExpire(date));
+        return spanList;
+    }
+
+    /**
+     * 录像入库后更新索引
+     */
+    @SuppressWarnings("unchecked")
+    public void add(CloudRecordItem cloudRecordItem) {
+        if (cloudRecordItem.getMediaServerId() == null || cloudRecordItem.getStartTime() <= 0) {
+            return;
+        }
+        long endTime = Math.max(cloudRecordItem.getStartTime(), cloudRecordItem.getEndTime());
+        String suffix = getSuffix(cloudRecordItem.getMediaServerId(), cloudRecordItem.getApp(), cloudRecordItem.getStream());
+        LocalDate endDate = toDate(endTime);
+        for (LocalDate date = toDate(cloudRecordItem.getStartTime()); !date.isAfter(endDate); date = date.plusDays(1)) {
+            redisTemplate.opsForValue().setBit(VideoManagerConstants.CLOUD_RECORD_DAY + suffix, date.toEpochDay(), true);
+
+            // 时间段只在已缓存时合并, 未缓存的在下次查询时从数据库加载
+            String timelineKey = getTimelineKey(cloudRecordItem.getMediaServerId(), cloudRecordItem.getApp(), cloudRecordItem.getStream(), date);
+            Object value = redisTemplate.opsForValue().get(timelineKey);
+            if (value == null) {
+                continue;
+            }
+            long dayStart = toTimestamp(date);
+            long dayEnd = toTimestamp(date.plusDays(1));
+            List<CloudRecordSpan> spanList = new ArrayList<>((List<CloudRecordSpan>) value);
+            spanList.add(CloudRecordSpan.getInstance(cloudRecordItem.getStartTime(), endTime));
+            redisTemplate.opsForValue().set(timelineKey, merge(spanList, dayStart, dayEnd), getTimelineExpire(date));
+        }
+    }
+
+    /**
+     * 录像从数据库删除后更新索引
+     */
+    public void remove(List<CloudRecordItem> cloudRecordItemList) {
+        // 同一天的多条录像只需要检查一次
+        Map<String, Set<LocalDate>> affectedMap = new HashMap<>();
+        Map<String, CloudRecordItem> sampleMap = new HashMap<>();
+        for (CloudRecordItem cloudRecordItem : cloudRecordItemList) {
+            if (cloudRecordItem.getMediaServerId() == null || cloudRecordItem.getStartTime() <= 0) {
+                continue;
+            }
+            String suffix = getSuffix(cloudRecordItem.getMediaServerId(), cloudRecordItem.getApp(), cloudRecordItem.getStream());
+            sampleMap.putIfAbsent(suffix, cloudRecordItem);
+            Set<LocalDate> dates = affectedMap.computeIfAbsent(suffix, k -> new HashSet<>());
+            LocalDate endDate = toDate(Math.max(cloudRecordItem.getStartTime(), cloudRecordItem.getEndTime()));
+            for (LocalDate date = toDate(cloudRecordItem.getStartTime()); !date.isAfter(endDate); date = date.plusDays(1)) {
+                dates.add(date);
+            }
+        }
+        for (Map.Entry<String, Set<LocalDate>> entry : affectedMap.entrySet()) {
+            CloudRecordItem sample = sampleMap.get(entry.getKey());
+            for (LocalDate date : entry.getValue()) {
+                redisTemplate.delete(getTimelineKey(sample.getMediaServerId(), sample.getApp(), sample.getStream(), date));
+                int count = cloudRecordServiceMapper.countRecord(sample.getMediaServerId(), sample.getApp(), sample.getStream(),
+                        toTimestamp(date), toTimestamp(date.plusDays(1)));
+                if (count == 0) {
+                    redisTemplate.opsForValue().setBit(VideoManagerConstants.CLOUD_RECORD_DAY + entry.getKey(), date.toEpochDay(), false);
+                }
+            }
+        }
+    }
+
+    private void loadMonth(String mediaServerId, String app, String stream, LocalDate firstDay) {
+        LocalDate nextMonth = firstDay.plusMonths(1);
+        List<CloudRecordSpan> spanList = cloudRecordServiceMapper.queryRecordSpanList(mediaServerId, app, stream,
+                toTimestamp(firstDay), toTimestamp(nextMonth));
+        Set<LocalDate> dates = new HashSet<>();
+        for (CloudRecordSpan span : spanList) {
+            LocalDate endDate = toDate(Math.max(span.getStartTime(), span.getEndTime()));
+            for (LocalDate date = toDate(span.getStartTime()); !date.isAfter(endDate); date = date.plusDays(1)) {
+                if (!date.isBefore(firstDay) && date.isBefore(nextMonth)) {
+                    dates.add(date);
+                }
+            }
+        }
+        // 整月写入, 同时清除数据库中已不存在录像的日期
+        int length = firstDay.lengthOfMonth();
+        long value = 0;
+        for (LocalDate date : dates) {
+            value |= 1L << (length - date.getDayOfMonth());
+        }
+        redisTemplate.opsForValue().bitField(VideoManagerConstants.CLOUD_RECORD_DAY + getSuffix(mediaServerId, app, stream),
+                BitFieldSubCommands.create().set(BitFieldSubCommands.BitFieldType.unsigned(length)).valueAt(firstDay.toEpochDay()).to(value));
+        log.debug("[云端录像索引] 加载 {}/{}, 流媒体：{}, 月份：{}, 录像数：{}", app, stream, mediaServerId, firstDay, spanList.size());
+    }
+
+    /**
+     * 按开始时间排序后合并相邻的时间段
+     */
+    private List<CloudRecordSpan> merge(List<CloudRecordSpan> spanList, long dayStart, long dayEnd) {
+        spanList.sort(Comparator.comparingLong(CloudRecordSpan::getStartTime));
+        List<CloudRecordSpan> result = new ArrayList<>();
+        CloudRecordSpan current = null;
+        for (CloudRecordSpan span : spanList) {
+            long start = Math.max(span.getStartTime(), dayStart);
+            long end = Math.min(Math.max(span.getStartTime(), span.getEndTime()), dayEnd);
+            if (start > end) {
+                continue;
+            }
+            if (current != null && start - current.getEndTime() <= MERGE_GAP) {
+                current.setEndTime(Math.max(current.getEndTime(), end));
+            } else {
+                current = CloudRecordSpan.getInstance(start, end);
+                result.add(current);
+            }
+        }
+        return result;
+    }
+
+    private Duration getTimelineExpire(LocalDate date) {
+        return date.isBefore(LocalDate.now(ZONE)) ? TIMELINE_EXPIRE : TIMELINE_EXPIRE_TODAY;
+    }
+
+    private String getSuffix(String mediaServerId, String app, String stream) {
+        return mediaServerId + ":" + app + ":" + stream;
+    }
+
+    private String getTimelineKey(String mediaServerId, String app, String stream, LocalDate date) {
+        return VideoManagerConstants.CLOUD_RECORD_TIMELINE + getSuffix(mediaServerId, app, stream) + ":" + date;
+    }
+
+    private static LocalDate toDate(long timestamp) {
+        return Instant.ofEpochMilli(timestamp).atZone(ZONE).toLocalDate();
+    }
+
+    private static long toTimestamp(LocalDate date) {
+        return date.atStartOfDay(ZONE).toInstant().toEpochMilli();
+    }
+}
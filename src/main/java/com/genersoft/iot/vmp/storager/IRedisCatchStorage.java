@@ -12,11 +12,12 @@ import com.genersoft.iot.vmp.service.bean.MessageForPushChannel;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface IRedisCatchStorage {
 
     /**
-     * 计数器。为cseq进行计数
+     * 计数器。为cseq进行计数, 按号段从redis申请后在本地分配
      *
      * @return
      */
@@ -35,6 +36,12 @@ public interface IRedisCatchStorage {
      */
     void sendStreamChangeMsg(String type, JSONObject jsonObject);
 
+    /**
+     * 批量发送推流生成与推流消失消息, 逐条的消息在同一个管道内发送, 另外发送一条汇总消息
+     * @param mediaInfoList 变化的流
+     */
+    void sendStreamChangeMsg(String type, String mediaServerId, boolean register, List<MediaInfo> mediaInfoList);
+
     /**
      * 发送报警消息
      * @param msg 消息内容
@@ -64,6 +71,16 @@ public interface IRedisCatchStorage {
      */
     void removeStream(String mediaServerId, String type);
 
+    /**
+     * 批量添加流信息到redis
+     */
+    void addStreams(MediaServer mediaServer, String type, List<MediaInfo> mediaInfoList);
+
+    /**
+     * 批量移除流信息从redis
+     */
+    void removeStreams(String mediaServerId, String type, List<MediaInfo> mediaInfoList);
+
     List<MediaInfo> getStreams(String mediaServerId, String pull);
 
     /**
@@ -74,6 +91,16 @@ public interface IRedisCatchStorage {
 
     void removeDevice(String deviceId);
 
+    /**
+     * 批量更新设备缓存
+     */
+    void updateDevices(List<Device> deviceList);
+
+    /**
+     * 批量移除设备缓存
+     */
+    void removeDevices(List<String> deviceIds);
+
     /**
      * 获取Device
      */
@@ -133,6 +160,11 @@ public interface IRedisCatchStorage {
 
     List<StreamAuthorityInfo> getAllStreamAuthorityInfo();
 
+    /**
+     * 批量移除推流的鉴权信息
+     */
+    void removeStreamAuthorityInfos(List<StreamAuthorityInfo> streamAuthorityInfoList);
+
     /**
      * 发送redis消息 查询所有推流设备的状态
      */
@@ -152,6 +184,11 @@ public interface IRedisCatchStorage {
 
     List<Device> getAllDevices();
 
+    /**
+     * 使用HSCAN分批遍历缓存中的设备, 不一次性读取全部设备
+     */
+    void scanDevices(Consumer<Device> consumer);
+
     void removeAllDevice();
 
     void sendDeviceOrChannelStatus(String deviceId, String channelId, boolean online);
@@ -168,6 +205,8 @@ public interface IRedisCatchStorage {
 
     void removePushListItem(String app, String stream, String mediaServerId);
 
+    void removePushListItems(List<MediaInfo> mediaInfoList);
+
     void sendPushStreamClose(MessageForPushChannel messageForPushChannel);
 
     void addWaiteSendRtpItem(SendRtpInfo sendRtpItem, int platformPlayTimeout);
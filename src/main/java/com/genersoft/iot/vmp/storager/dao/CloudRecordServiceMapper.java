@@ -2,7 +2,9 @@ package com.genersoft.iot.vmp.storager.dao;
 
 import com.genersoft.iot.vmp.media.bean.MediaServer;
 import com.genersoft.iot.vmp.service.bean.CloudRecordItem;
+import com.genersoft.iot.vmp.service.bean.CloudRecordSpan;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.util.List;
 import java.util.Set;
@@ -98,9 +100,39 @@ public interface CloudRecordServiceMapper {
     @Select(" <script>" +
             "select *" +
             " from wvp_cloud_record " +
-            " where collect = false and end_time &lt;= #{endTimeStamp} and media_server_id  = #{mediaServerId} " +
+            " where collect = false and media_server_id = #{mediaServerId} " +
+            " <if test= 'endTimeStamp != null '> and end_time &lt;= #{endTimeStamp}</if>" +
+            " <if test= 'lastStartTime != null and lastId != null '>" +
+            " and (start_time &gt; #{lastStartTime} or (start_time = #{lastStartTime} and id &gt; #{lastId}))</if>" +
+            " order by start_time asc, id asc limit #{count}" +
             " </script>")
-    List<CloudRecordItem> queryRecordListForDelete(@Param("endTimeStamp")Long endTimeStamp, String mediaServerId);
+    List<CloudRecordItem> queryRecordListForDelete(@Param("mediaServerId") String mediaServerId, @Param("endTimeStamp") Long endTimeStamp,
+                                                   @Param("lastStartTime") Long lastStartTime, @Param("lastId") Integer lastId,
+                                                   @Param("count") int count);
+
+    @Select(" <script>" +
+            "select *" +
+            " from wvp_cloud_record " +
+            " where media_server_id = #{mediaServerId} and folder = #{folder} and file_path like concat(#{dateFolder}, '%')" +
+            " </script>")
+    List<CloudRecordItem> queryRecordListByDateFolder(@Param("mediaServerId") String mediaServerId, @Param("folder") String folder,
+                                                      @Param("dateFolder") String dateFolder);
+
+    @Select(" <script>" +
+            "select count(1)" +
+            " from wvp_cloud_record " +
+            " where media_server_id = #{mediaServerId} and folder = #{folder} and file_path like concat(#{dateFolder}, '%')" +
+            " and (collect = true <if test= 'endTimeStamp != null '> or end_time &gt; #{endTimeStamp}</if>)" +
+            " </script>")
+    int countRecordForKeep(@Param("mediaServerId") String mediaServerId, @Param("folder") String folder,
+                           @Param("dateFolder") String dateFolder, @Param("endTimeStamp") Long endTimeStamp);
+
+    @Select(" <script>" +
+            "select coalesce(sum(file_size), 0)" +
+            " from wvp_cloud_record " +
+            " where media_server_id = #{mediaServerId} " +
+            " </script>")
+    long sumFileSize(@Param("mediaServerId") String mediaServerId);
 
     @Update(" <script>" +
             "update wvp_cloud_record set collect = #{collect} where id = #{recordId} " +
@@ -160,4 +192,74 @@ public interface CloudRecordServiceMapper {
             " <foreach collection='ids'  item='item'  open='(' separator=',' close=')' > #{item}</foreach>" +
             " </script>")
     List<CloudRecordItem> queryRecordByIds(Set<Integer> ids);
+
+    @Select(" <script>" +
+            "select * " +
+            " from wvp_cloud_record " +
+            " where 1 = 1" +
+            " <if test='query != null'> AND (app LIKE concat('%',#{query},'%') escape '/' OR stream LIKE concat('%',#{query},'%') escape '/' )</if> " +
+            " <if test= 'app != null '> and app=#{app}</if>" +
+            " <if test= 'stream != null '> and stream=#{stream}</if>" +
+            " <if test= 'startTimeStamp != null '> and end_time &gt;= #{startTimeStamp}</if>" +
+            " <if test= 'endTimeStamp != null '> and start_time &lt;= #{endTimeStamp}</if>" +
+            " <if test= 'callId != null '> and call_id = #{callId}</if>" +
+            " <if test= 'mediaServerItemList != null  ' > and media_server_id in " +
+            " <foreach collection='mediaServerItemList'  item='item'  open='(' separator=',' close=')' > #{item.id}</foreach>" +
+            " </if>" +
+            " <if test= 'lastStartTime != null and lastId != null and ascOrder != null and ascOrder == true'>" +
+            " and (start_time &gt; #{lastStartTime} or (start_time = #{lastStartTime} and id &gt; #{lastId}))</if>" +
+            " <if test= 'lastStartTime != null and lastId != null and (ascOrder == null or ascOrder == false)'>" +
+            " and (start_time &lt; #{lastStartTime} or (start_time = #{lastStartTime} and id &lt; #{lastId}))</if>" +
+            " <if test= 'ascOrder != null and ascOrder == true'> order by start_time asc, id asc</if>" +
+            " <if test= 'ascOrder == null or ascOrder == false'> order by start_time desc, id desc</if>" +
+            " limit #{count}" +
+            " </script>")
+    List<CloudRecordItem> getListAfter(@Param("query") String query, @Param("app") String app, @Param("stream") String stream,
+                                       @Param("startTimeStamp")Long startTimeStamp, @Param("endTimeStamp")Long endTimeStamp,
+                                       @Param("callId")String callId, List<MediaServer> mediaServerItemList,
+                                       @Param("lastStartTime") Long lastStartTime, @Param("lastId") Integer lastId,
+                                       @Param("ascOrder") Boolean ascOrder, @Param("count") int count);
+
+    @Select(" <script>" +
+            "select * " +
+            " from wvp_cloud_record " +
+            " where 1 = 1" +
+            " <if test='query != null'> AND (app LIKE concat('%',#{query},'%') escape '/' OR stream LIKE concat('%',#{query},'%') escape '/' )</if> " +
+            " <if test= 'app != null '> and app=#{app}</if>" +
+            " <if test= 'stream != null '> and stream=#{stream}</if>" +
+            " <if test= 'startTimeStamp != null '> and end_time &gt;= #{startTimeStamp}</if>" +
+            " <if test= 'endTimeStamp != null '> and start_time &lt;= #{endTimeStamp}</if>" +
+            " <if test= 'callId != null '> and call_id = #{callId}</if>" +
+            " <if test= 'mediaServerItemList != null  ' > and media_server_id in " +
+            " <foreach collection='mediaServerItemList'  item='item'  open='(' separator=',' close=')' > #{item.id}</foreach>" +
+            " </if>" +
+            " <if test= 'ascOrder != null and ascOrder == true'> order by start_time asc, id asc</if>" +
+            " <if test= 'ascOrder == null or ascOrder == false'> order by start_time desc, id desc</if>" +
+            " </script>")
+    @Options(fetchSize = 1000)
+    Cursor<CloudRecordItem> getListForExport(@Param("query") String query, @Param("app") String app, @Param("stream") String stream,
+                                             @Param("startTimeStamp")Long startTimeStamp, @Param("endTimeStamp")Long endTimeStamp,
+                                             @Param("callId")String callId, List<MediaServer> mediaServerItemList,
+                                             @Param("ascOrder") Boolean ascOrder);
+
+    @Select(" <script>" +
+            "select start_time, end_time" +
+            " from wvp_cloud_record " +
+            " where media_server_id = #{mediaServerId} and app = #{app} and stream = #{stream}" +
+            " and end_time &gt;= #{startTimeStamp} and start_time &lt; #{endTimeStamp}" +
+            " order by start_time asc" +
+            " </script>")
+    List<CloudRecordSpan> queryRecordSpanList(@Param("mediaServerId") String mediaServerId, @Param("app") String app,
+                                              @Param("stream") String stream, @Param("startTimeStamp") long startTimeStamp,
+                                              @Param("endTimeStamp") long endTimeStamp);
+
+    @Select(" <script>" +
+            "select count(1)" +
+            " from wvp_cloud_record " +
+            " where media_server_id = #{mediaServerId} and app = #{app} and stream = #{stream}" +
+            " and end_time &gt;= #{startTimeStamp} and start_time &lt; #{endTimeStamp}" +
+            " </script>")
+    int countRecord(@Param("mediaServerId") String mediaServerId, @Param("app") String app,
+                    @Param("stream") String stream, @Param("startTimeStamp") long startTimeStamp,
+                    @Param("endTimeStamp") long endTimeStamp);
 }
@@ -1,6 +1,7 @@
 package com.genersoft.iot.vmp.storager.impl;
 
 import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.genersoft.iot.vmp.common.ServerInfo;
 import com.genersoft.iot.vmp.common.SystemAllInfo;
@@ -21,12 +22,18 @@ import com.genersoft.iot.vmp.utils.SystemInfoUtils;
 import com.genersoft.iot.vmp.utils.redis.RedisUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @SuppressWarnings("rawtypes")
 @Slf4j
@@ -49,6 +56,25 @@ public class RedisCatchStorageImpl implements IRedisCatchStorage {
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 每次从redis申请的cseq数量
+     */
+    private static final int CSEQ_LEASE_SIZE = 1000;
+
+    /**
+     * 遍历设备时每批从redis读取的数量
+     */
+    private static final int DEVICE_SCAN_COUNT = 500;
+
+    private final AtomicLong cseq = new AtomicLong();
+
+    /**
+     * 当前号段的上限(包含)
+     */
+    private volatile long cseqEnd;
+
+    private final Object cseqLock = new Object();
+
     @Override
     public List<SendRtpInfo> queryAllSendRTPServer() {
         return Collections.emptyList();
@@ -56,20 +82,44 @@ public class RedisCatchStorageImpl implements IRedisCatchStorage {
 
     @Override
     public Long getCSEQ() {
-        String key = VideoManagerConstants.SIP_CSEQ_PREFIX  + userSetting.getServerId();
+        while (true) {
+            // 先读取上限再取号, 取到的号不超过读取时的上限才是当前号段内的号
+            long end = cseqEnd;
+            long result = cseq.incrementAndGet();
+            if (result <= end) {
+                return result;
+            }
+            synchronized (cseqLock) {
+                if (cseq.get() >= cseqEnd) {
+                    leaseCSEQ();
+                }
+            }
+        }
+    }
 
-        Long result =  redisTemplate.opsForValue().increment(key, 1L);
-        if (result != null && result > Integer.MAX_VALUE) {
-            redisTemplate.opsForValue().set(key, 1);
-            result = 1L;
+    /**
+     * 从redis申请一段cseq, 之后在本地分配, 不再每个请求都访问redis
+     * 超出int范围时从1重新开始
+     */
+    private void leaseCSEQ() {
+        String key = VideoManagerConstants.SIP_CSEQ_PREFIX  + userSetting.getServerId();
+        Long end = redisTemplate.opsForValue().increment(key, CSEQ_LEASE_SIZE);
+        if (end == null || end > Integer.MAX_VALUE) {
+            redisTemplate.opsForValue().set(key, CSEQ_LEASE_SIZE);
+            end = (long) CSEQ_LEASE_SIZE;
         }
-        return result;
+        // 先重置计数再更新上限, 保证旧号段中超出上限的号不会被当作新号段的号
+        cseq.set(end - CSEQ_LEASE_SIZE);
+        cseqEnd = end;
     }
 
     @Override
     public void resetAllCSEQ() {
         String key = VideoManagerConstants.SIP_CSEQ_PREFIX  + userSetting.getServerId();
-        redisTemplate.opsForValue().set(key, 1);
+        synchronized (cseqLock) {
+            redisTemplate.opsForValue().set(key, 1);
+            cseqEnd = 0;
+        }
     }
 
 
@@ -98,6 +148,47 @@ public class RedisCatchStorageImpl implements IRedisCatchStorage {
         redisTemplate.convertAndSend(key, jsonObject);
     }
 
+    @Override
+    public void sendStreamChangeMsg(String type, String mediaServerId, boolean register, List<MediaInfo> mediaInfoList) {
+        if (mediaInfoList.isEmpty()) {
+            return;
+        }
+        String key = VideoManagerConstants.WVP_MSG_STREAM_CHANGE_PREFIX + type;
+        JSONArray streams = new JSONArray();
+        List<JSONObject> messageList = new ArrayList<>();
+        for (MediaInfo mediaInfo : mediaInfoList) {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("serverId", userSetting.getServerId());
+            jsonObject.put("app", mediaInfo.getApp());
+            jsonObject.put("stream", mediaInfo.getStream());
+            jsonObject.put("register", register);
+            jsonObject.put("mediaServerId", mediaServerId);
+            messageList.add(jsonObject);
+
+            JSONObject item = new JSONObject();
+            item.put("app", mediaInfo.getApp());
+            item.put("stream", mediaInfo.getStream());
+            streams.add(item);
+        }
+        JSONObject batchMessage = new JSONObject();
+        batchMessage.put("serverId", userSetting.getServerId());
+        batchMessage.put("mediaServerId", mediaServerId);
+        batchMessage.put("register", register);
+        batchMessage.put("streams", streams);
+        String batchKey = VideoManagerConstants.WVP_MSG_STREAM_CHANGE_BATCH_PREFIX + type;
+        log.info("[redis 流变化事件] 批量发送 {}: 流媒体： {}, 数量： {}", key, mediaServerId, mediaInfoList.size());
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                for (JSONObject jsonObject : messageList) {
+                    operations.convertAndSend(key, jsonObject);
+                }
+                operations.convertAndSend(batchKey, batchMessage);
+                return null;
+            }
+        });
+    }
+
     @Override
     public void addStream(MediaServer mediaServerItem, String type, String app, String streamId, MediaInfo mediaInfo) {
         // 查找是否使用了callID
@@ -119,9 +210,48 @@ public class RedisCatchStorageImpl implements IRedisCatchStorage {
     public void removeStream(String mediaServerId, String type) {
         String key = VideoManagerConstants.WVP_SERVER_STREAM_PREFIX + userSetting.getServerId() + "_" + type.toUpperCase() + "_*_*_" + mediaServerId;
         List<Object> streams = RedisUtil.scan(redisTemplate, key);
-        for (Object stream : streams) {
-            redisTemplate.delete(stream);
+        if (!streams.isEmpty()) {
+            redisTemplate.delete(streams);
+        }
+    }
+
+    @Override
+    public void addStreams(MediaServer mediaServer, String type, List<MediaInfo> mediaInfoList) {
+        if (mediaInfoList.isEmpty()) {
+            return;
+        }
+        // 一次取回所有流的鉴权信息, 用于补充callId
+        List<Object> objectKeys = new ArrayList<>();
+        for (MediaInfo mediaInfo : mediaInfoList) {
+            objectKeys.add(mediaInfo.getApp() + "_" + mediaInfo.getStream());
+        }
+        List<Object> authorityList = redisTemplate.opsForHash().multiGet(VideoManagerConstants.MEDIA_STREAM_AUTHORITY + userSetting.getServerId(), objectKeys);
+        Map<Object, Object> valueMap = new HashMap<>();
+        for (int i = 0; i < mediaInfoList.size(); i++) {
+            MediaInfo mediaInfo = mediaInfoList.get(i);
+            Object streamAuthorityInfo = authorityList.get(i);
+            if (streamAuthorityInfo != null) {
+                mediaInfo.setCallId(((StreamAuthorityInfo) streamAuthorityInfo).getCallId());
+            }
+            valueMap.put(getStreamKey(mediaServer.getId(), type, mediaInfo.getApp(), mediaInfo.getStream()), mediaInfo);
+        }
+        redisTemplate.opsForValue().multiSet(valueMap);
+    }
+
+    @Override
+    public void removeStreams(String mediaServerId, String type, List<MediaInfo> mediaInfoList) {
+        if (mediaInfoList.isEmpty()) {
+            return;
         }
+        List<Object> keys = new ArrayList<>();
+        for (MediaInfo mediaInfo : mediaInfoList) {
+            keys.add(getStreamKey(mediaServerId, type, mediaInfo.getApp(), mediaInfo.getStream()));
+        }
+        redisTemplate.delete(keys);
+    }
+
+    private String getStreamKey(String mediaServerId, String type, String app, String streamId) {
+        return VideoManagerConstants.WVP_SERVER_STREAM_PREFIX + userSetting.getServerId() + "_" + type.toUpperCase() + "_"  + app + "_" + streamId + "_" + mediaServerId;
     }
 
     @Override
@@ -129,9 +259,16 @@ public class RedisCatchStorageImpl implements IRedisCatchStorage {
         List<MediaInfo> result = new ArrayList<>();
         String key = VideoManagerConstants.WVP_SERVER_STREAM_PREFIX + userSetting.getServerId() + "_" + type.toUpperCase() + "_*_*_" + mediaServerId;
         List<Object> streams = RedisUtil.scan(redisTemplate, key);
-        for (Object stream : streams) {
-            MediaInfo mediaInfo = (MediaInfo)redisTemplate.opsForValue().get(stream);
-            result.add(mediaInfo);
+        if (streams.isEmpty()) {
+            return result;
+        }
+        List<Object> values = redisTemplate.opsForValue().multiGet(streams);
+        if (values != null) {
+            for (Object value : values) {
+                if (value != null) {
+                    result.add((MediaInfo) value);
+                }
+            }
         }
         return result;
     }
@@ -148,6 +285,28 @@ public class RedisCatchStorageImpl implements IRedisCatchStorage {
         redisTemplate.opsForHash().delete(key, deviceId);
     }
 
+    @Override
+    public void updateDevices(List<Device> deviceList) {
+        if (deviceList.isEmpty()) {
+            return;
+        }
+        String key = VideoManagerConstants.DEVICE_PREFIX;
+        Map<Object, Object> deviceMap = new HashMap<>();
+        for (Device device : deviceList) {
+            deviceMap.put(device.getDeviceId(), device);
+        }
+        redisTemplate.opsForHash().putAll(key, deviceMap);
+    }
+
+    @Override
+    public void removeDevices(List<String> deviceIds) {
+        if (deviceIds.isEmpty()) {
+            return;
+        }
+        String key = VideoManagerConstants.DEVICE_PREFIX;
+        redisTemplate.opsForHash().delete(key, deviceIds.toArray());
+    }
+
     @Override
     public void removeAllDevice() {
         String key = VideoManagerConstants.DEVICE_PREFIX;
@@ -167,6 +326,20 @@ public class RedisCatchStorageImpl implements IRedisCatchStorage {
         return result;
     }
 
+    @Override
+    public void scanDevices(Consumer<Device> consumer) {
+        String key = VideoManagerConstants.DEVICE_PREFIX;
+        ScanOptions scanOptions = ScanOptions.scanOptions().count(DEVICE_SCAN_COUNT).build();
+        try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(key, scanOptions)) {
+            while (cursor.hasNext()) {
+                Object value = cursor.next().getValue();
+                if (Objects.nonNull(value)) {
+                    consumer.accept((Device)value);
+                }
+            }
+        }
+    }
+
     @Override
     public Device getDevice(String deviceId) {
         String key = VideoManagerConstants.DEVICE_PREFIX;
@@ -243,6 +416,20 @@ public class RedisCatchStorageImpl implements IRedisCatchStorage {
     }
 
 
+    @Override
+    public void removeStreamAuthorityInfos(List<StreamAuthorityInfo> streamAuthorityInfoList) {
+        if (streamAuthorityInfoList.isEmpty()) {
+            return;
+        }
+        String key = VideoManagerConstants.MEDIA_STREAM_AUTHORITY + userSetting.getServerId();
+        Object[] objectKeys = new Object[streamAuthorityInfoList.size()];
+        for (int i = 0; i < streamAuthorityInfoList.size(); i++) {
+            StreamAuthorityInfo streamAuthorityInfo = streamAuthorityInfoList.get(i);
+            objectKeys[i] = streamAuthorityInfo.getApp() + "_" + streamAuthorityInfo.getStream();
+        }
+        redisTemplate.opsForHash().delete(key, objectKeys);
+    }
+
     @Override
     public MediaInfo getStreamInfo(String app, String streamId, String mediaServerId) {
         String scanKey = VideoManagerConstants.WVP_SERVER_STREAM_PREFIX  + userSetting.getServerId() + "_*_" + app + "_" + streamId + "_" + mediaServerId;
@@ -476,6 +663,18 @@ public class RedisCatchStorageImpl implements IRedisCatchStorage {
         }
     }
 
+    @Override
+    public void removePushListItems(List<MediaInfo> mediaInfoList) {
+        if (mediaInfoList.isEmpty()) {
+            return;
+        }
+        List<Object> keys = new ArrayList<>();
+        for (MediaInfo mediaInfo : mediaInfoList) {
+            keys.add(VideoManagerConstants.PUSH_STREAM_LIST + mediaInfo.getApp() + "_" + mediaInfo.getStream());
+        }
+        redisTemplate.delete(keys);
+    }
+
     @Override
     public void sendPushStreamClose(MessageForPushChannel msg) {
         String key = VideoManagerConstants.VM_MSG_STREAM_PUSH_CLOSE_REQUESTED;
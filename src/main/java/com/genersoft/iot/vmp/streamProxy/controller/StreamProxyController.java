@@ -13,6 +13,8 @@ import com.genersoft.iot.vmp.streamProxy.bean.StreamProxy;
 import com.genersoft.iot.vmp.streamProxy.bean.StreamProxyParam;
 import com.genersoft.iot.vmp.streamProxy.service.IStreamProxyPlayService;
 import com.genersoft.iot.vmp.streamProxy.service.IStreamProxyService;
+import com.genersoft.iot.vmp.utils.ListExportWriter;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.genersoft.iot.vmp.vmanager.bean.StreamContent;
 import com.genersoft.iot.vmp.vmanager.bean.WVPResult;
@@ -29,6 +31,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Map;
@@ -79,6 +84,54 @@ public class StreamProxyController {
         return streamProxyService.getAll(page, count, query, pulling, mediaServerId);
     }
 
+    @Operation(summary = "游标分页查询流代理", description = "按数据库ID倒序, 不受页码深度影响, 适合数据量较大时连续翻页", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "cursor", description = "上一页返回的游标, 查询第一页时为空")
+    @Parameter(name = "count", description = "每页查询数量", required = true)
+    @Parameter(name = "query", description = "查询内容")
+    @Parameter(name = "pulling", description = "是否正在拉流")
+    @Parameter(name = "mediaServerId", description = "流媒体ID")
+    @GetMapping(value = "/list/cursor")
+    @ResponseBody
+    public CursorPageInfo<StreamProxy> listByCursor(@RequestParam(required = false)String cursor,
+                                                    @RequestParam Integer count,
+                                                    @RequestParam(required = false)String query,
+                                                    @RequestParam(required = false)Boolean pulling,
+                                                    @RequestParam(required = false)String mediaServerId){
+
+        if (ObjectUtils.isEmpty(mediaServerId)) {
+            mediaServerId = null;
+        }
+        if (ObjectUtils.isEmpty(query)) {
+            query = null;
+        }
+        return streamProxyService.getAllByCursor(cursor, count, query, pulling, mediaServerId);
+    }
+
+    @Operation(summary = "导出流代理", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "query", description = "查询内容")
+    @Parameter(name = "pulling", description = "是否正在拉流")
+    @Parameter(name = "mediaServerId", description = "流媒体ID")
+    @Parameter(name = "format", description = "导出格式, csv或者ndjson, 默认csv")
+    @GetMapping(value = "/export")
+    public void export(HttpServletResponse response,
+                       @RequestParam(required = false)String query,
+                       @RequestParam(required = false)Boolean pulling,
+                       @RequestParam(required = false)String mediaServerId,
+                       @RequestParam(required = false)String format){
+
+        if (ObjectUtils.isEmpty(mediaServerId)) {
+            mediaServerId = null;
+        }
+        if (ObjectUtils.isEmpty(query)) {
+            query = null;
+        }
+        try (ListExportWriter writer = ListExportWriter.open(response, "stream_proxy", format)) {
+            streamProxyService.exportList(query, pulling, mediaServerId, writer::write);
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("[导出流代理] 写出失败： {}", e.getMessage());
+        }
+    }
+
     @Operation(summary = "查询流代理", security = @SecurityRequirement(name = JwtUtils.HEADER))
     @Parameter(name = "app", description = "应用名")
     @Parameter(name = "stream", description = "流Id")
@@ -3,6 +3,7 @@ package com.genersoft.iot.vmp.streamProxy.dao;
 import com.genersoft.iot.vmp.streamProxy.bean.StreamProxy;
 import com.genersoft.iot.vmp.streamProxy.dao.provider.StreamProxyProvider;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -42,7 +43,12 @@ public interface StreamProxyMapper {
     int delByAppAndStream(String app, String stream);
 
     @SelectProvider(type = StreamProxyProvider.class, method = "selectAll")
-    List<StreamProxy> selectAll(@Param("query") String query, @Param("pulling") Boolean pulling, @Param("mediaServerId") String mediaServerId);
+    List<StreamProxy> selectAll(@Param("query") String query, @Param("pulling") Boolean pulling, @Param("mediaServerId") String mediaServerId,
+                                @Param("lastId") Integer lastId, @Param("limit") Integer limit);
+
+    @SelectProvider(type = StreamProxyProvider.class, method = "selectAllForExport")
+    @Options(fetchSize = 1000)
+    Cursor<StreamProxy> selectAllForExport(@Param("query") String query, @Param("pulling") Boolean pulling, @Param("mediaServerId") String mediaServerId);
 
     @SelectProvider(type = StreamProxyProvider.class, method = "selectOneByAppAndStream")
     StreamProxy selectOneByAppAndStream(@Param("app") String app, @Param("stream") String stream);
@@ -79,6 +85,15 @@ public interface StreamProxyMapper {
             "WHERE id=#{id}")
     int offline(@Param("id") int id);
 
+    @Update(value = "<script>" +
+            "UPDATE wvp_stream_proxy SET pulling=false WHERE id in (" +
+            "<foreach collection='streamProxyList' index='index' item='item' separator=','> " +
+            "#{item.id}"+
+            "</foreach>" +
+            ")" +
+            "</script>")
+    int offlineByList(@Param("streamProxyList") List<StreamProxy> streamProxyList);
+
     @SelectProvider(type = StreamProxyProvider.class, method = "select")
     StreamProxy select(@Param("id") int id);
 
@@ -31,20 +31,20 @@ public class StreamProxyProvider {
                 params.get("app"), params.get("stream"));
     }
 
-    public String selectAll(Map<String, Object> params ){
+    private StringBuilder getSelectAllSql(Map<String, Object> params ){
         StringBuilder sqlBuild = new StringBuilder();
         sqlBuild.append(getBaseSelectSql());
         sqlBuild.append(" WHERE 1=1 ");
         if (params.get("query") != null) {
             sqlBuild.append(" AND ")
                     .append(" (")
-                    .append(" st.app LIKE ").append("'%").append(params.get("query")).append("%' escape '/'")
+                    .append(" st.app LIKE concat('%',#{query},'%') escape '/'")
                     .append(" OR")
-                    .append(" st.stream LIKE ").append("'%").append(params.get("query")).append("%' escape '/'")
+                    .append(" st.stream LIKE concat('%',#{query},'%') escape '/'")
                     .append(" OR")
-                    .append(" wdc.gb_device_id LIKE ").append("'%").append(params.get("query")).append("%' escape '/'")
+                    .append(" wdc.gb_device_id LIKE concat('%',#{query},'%') escape '/'")
                     .append(" OR")
-                    .append(" wdc.gb_name LIKE ").append("'%").append(params.get("query")).append("%' escape '/'")
+                    .append(" wdc.gb_name LIKE concat('%',#{query},'%') escape '/'")
                     .append(" )")
             ;
         }
@@ -57,9 +57,25 @@ public class StreamProxyProvider {
             }
         }
         if (params.get("mediaServerId") != null) {
-            sqlBuild.append(" AND st.media_server_id='").append(params.get("mediaServerId")).append("'");
+            sqlBuild.append(" AND st.media_server_id=#{mediaServerId}");
+        }
+        return sqlBuild;
+    }
+
+    public String selectAll(Map<String, Object> params ){
+        StringBuilder sqlBuild = getSelectAllSql(params);
+        if (params.get("lastId") != null) {
+            sqlBuild.append(" AND st.id < #{lastId}");
+        }
+        if (params.get("limit") != null) {
+            sqlBuild.append(" order by st.id desc limit #{limit}");
+        }else {
+            sqlBuild.append(" order by st.create_time desc");
         }
-        sqlBuild.append(" order by st.create_time desc");
         return sqlBuild.toString();
     }
+
+    public String selectAllForExport(Map<String, Object> params ){
+        return getSelectAllSql(params).append(" order by st.id").toString();
+    }
 }
@@ -5,10 +5,12 @@ import com.genersoft.iot.vmp.media.bean.MediaServer;
 import com.genersoft.iot.vmp.service.bean.ErrorCallback;
 import com.genersoft.iot.vmp.streamProxy.bean.StreamProxy;
 import com.genersoft.iot.vmp.streamProxy.bean.StreamProxyParam;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ResourceBaseInfo;
 import com.github.pagehelper.PageInfo;
 
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface IStreamProxyService {
 
@@ -26,6 +28,17 @@ public interface IStreamProxyService {
      */
     PageInfo<StreamProxy> getAll(Integer page, Integer count, String query, Boolean pulling,String mediaServerId);
 
+    /**
+     * 游标分页查询拉流代理, 按数据库ID倒序
+     * @param cursor 上一页返回的游标, 第一页为空
+     */
+    CursorPageInfo<StreamProxy> getAllByCursor(String cursor, int count, String query, Boolean pulling, String mediaServerId);
+
+    /**
+     * 逐条读取拉流代理列表用于导出, 不在内存中保存整个列表
+     */
+    void exportList(String query, Boolean pulling, String mediaServerId, Consumer<StreamProxy> consumer);
+
     /**
      * 删除视频代理
      * @param app
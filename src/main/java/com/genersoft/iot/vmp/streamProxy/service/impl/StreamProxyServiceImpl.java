@@ -7,12 +7,14 @@ import com.genersoft.iot.vmp.conf.UserSetting;
 import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.gb28181.bean.CommonGBChannel;
 import com.genersoft.iot.vmp.gb28181.service.IGbChannelService;
+import com.genersoft.iot.vmp.media.bean.MediaInfo;
 import com.genersoft.iot.vmp.media.bean.MediaServer;
 import com.genersoft.iot.vmp.media.event.media.MediaArrivalEvent;
 import com.genersoft.iot.vmp.media.event.media.MediaDepartureEvent;
 import com.genersoft.iot.vmp.media.event.media.MediaNotFoundEvent;
 import com.genersoft.iot.vmp.media.event.mediaServer.MediaServerOfflineEvent;
 import com.genersoft.iot.vmp.media.event.mediaServer.MediaServerOnlineEvent;
+import com.genersoft.iot.vmp.media.event.mediaServer.MediaServerReconcileLimiter;
 import com.genersoft.iot.vmp.media.service.IMediaServerService;
 import com.genersoft.iot.vmp.media.zlm.dto.hook.OriginType;
 import com.genersoft.iot.vmp.service.bean.ErrorCallback;
@@ -23,11 +25,14 @@ import com.genersoft.iot.vmp.streamProxy.dao.StreamProxyMapper;
 import com.genersoft.iot.vmp.streamProxy.service.IStreamProxyPlayService;
 import com.genersoft.iot.vmp.streamProxy.service.IStreamProxyService;
 import com.genersoft.iot.vmp.utils.DateUtil;
+import com.genersoft.iot.vmp.utils.ListCountCache;
+import com.genersoft.iot.vmp.utils.PageCursor;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.genersoft.iot.vmp.vmanager.bean.ResourceBaseInfo;
-import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
@@ -38,10 +43,12 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * 视频代理业务
@@ -50,6 +57,11 @@ import java.util.Map;
 @Service
 public class StreamProxyServiceImpl implements IStreamProxyService {
 
+    /**
+     * 流媒体节点上线对账时每批处理的流数量
+     */
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
     @Autowired
     private StreamProxyMapper streamProxyMapper;
 
@@ -68,6 +80,12 @@ public class StreamProxyServiceImpl implements IStreamProxyService {
     @Autowired
     private IGbChannelService gbChannelService;
 
+    @Autowired
+    private MediaServerReconcileLimiter reconcileLimiter;
+
+    @Autowired
+    private ListCountCache listCountCache;
+
     @Autowired
     DataSourceTransactionManager dataSourceTransactionManager;
 
@@ -121,9 +139,8 @@ public class StreamProxyServiceImpl implements IStreamProxyService {
      */
     @Async("taskExecutor")
     @EventListener
-    @Transactional
     public void onApplicationEvent(MediaServerOnlineEvent event) {
-        zlmServerOnline(event.getMediaServer());
+        reconcileLimiter.run("拉流代理对账", event.getMediaServer().getId(), () -> zlmServerOnline(event.getMediaServer()));
     }
 
     /**
@@ -236,14 +253,45 @@ public class StreamProxyServiceImpl implements IStreamProxyService {
 
     @Override
     public PageInfo<StreamProxy> getAll(Integer page, Integer count, String query, Boolean pulling, String mediaServerId) {
-        PageHelper.startPage(page, count);
         if (query != null) {
             query = query.replaceAll("/", "//")
                     .replaceAll("%", "/%")
                     .replaceAll("_", "/_");
         }
-        List<StreamProxy> all = streamProxyMapper.selectAll(query, pulling, mediaServerId);
-        return new PageInfo<>(all);
+        String finalQuery = query;
+        return listCountCache.page("streamProxy:" + query + ":" + pulling + ":" + mediaServerId, page, count,
+                () -> streamProxyMapper.selectAll(finalQuery, pulling, mediaServerId, null, null));
+    }
+
+    @Override
+    public CursorPageInfo<StreamProxy> getAllByCursor(String cursor, int count, String query, Boolean pulling, String mediaServerId) {
+        count = CursorPageInfo.limitCount(count);
+        Integer lastId = PageCursor.decodeId(cursor);
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        String finalQuery = query;
+        long total = listCountCache.count("streamProxy:" + query + ":" + pulling + ":" + mediaServerId,
+                () -> streamProxyMapper.selectAll(finalQuery, pulling, mediaServerId, null, null));
+        List<StreamProxy> rows = streamProxyMapper.selectAll(query, pulling, mediaServerId, lastId, count + 1);
+        return CursorPageInfo.of(rows, count, total, streamProxy -> PageCursor.encode(streamProxy.getId()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportList(String query, Boolean pulling, String mediaServerId, Consumer<StreamProxy> consumer) {
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        try (Cursor<StreamProxy> cursor = streamProxyMapper.selectAllForExport(query, pulling, mediaServerId)) {
+            cursor.forEach(consumer);
+        } catch (IOException e) {
+            log.error("[导出拉流代理列表] 关闭游标失败", e);
+        }
     }
 
 
@@ -278,7 +326,6 @@ public class StreamProxyServiceImpl implements IStreamProxyService {
     }
 
     @Override
-    @Transactional
     public void zlmServerOnline(MediaServer mediaServer) {
         if (mediaServer == null) {
             return;
@@ -292,62 +339,68 @@ public class StreamProxyServiceImpl implements IStreamProxyService {
         }
         Map<String, StreamProxy> streamProxyMapForDb = new HashMap<>();
         for (StreamProxy streamProxy : streamProxies) {
-            streamProxyMapForDb.put(streamProxy.getApp() + "_" + streamProxy.getStream(), streamProxy);
+            streamProxyMapForDb.put(streamProxy.getApp() + "/" + streamProxy.getStream(), streamProxy);
         }
 
         List<StreamInfo> streamInfoList = mediaServerService.getMediaList(mediaServer, null, null, null);
+        if (streamInfoList == null) {
+            return;
+        }
 
+        List<MediaInfo> mediaInfoListForAdd = new ArrayList<>();
         List<CommonGBChannel> channelListForOnline = new ArrayList<>();
         for (StreamInfo streamInfo : streamInfoList) {
-            String key = streamInfo.getApp() + streamInfo.getStream();
-            StreamProxy streamProxy = streamProxyMapForDb.get(key);
+            if (streamInfo.getOriginType() != OriginType.PULL.ordinal()
+                    && streamInfo.getOriginType() != OriginType.FFMPEG_PULL.ordinal()) {
+                continue;
+            }
+            // 流媒体存在，数据库中不存在的不处理
+            StreamProxy streamProxy = streamProxyMapForDb.remove(streamInfo.getApp() + "/" + streamInfo.getStream());
             if (streamProxy == null) {
-                // 流媒体存在，数据库中不存在
                 continue;
             }
-            if (streamInfo.getOriginType() == OriginType.PULL.ordinal()
-                    || streamInfo.getOriginType() == OriginType.FFMPEG_PULL.ordinal()) {
-                if (streamProxyMapForDb.get(key) != null) {
-                    redisCatchStorage.addStream(mediaServer, "pull", streamInfo.getApp(), streamInfo.getStream(), streamInfo.getMediaInfo());
-                    if ("OFF".equalsIgnoreCase(streamProxy.getGbStatus()) && streamProxy.getGbId() > 0) {
-                        streamProxy.setGbStatus("ON");
-                        channelListForOnline.add(streamProxy.buildCommonGBChannel());
-                    }
-                    streamProxyMapForDb.remove(key);
-                }
+            if (streamInfo.getMediaInfo() != null) {
+                mediaInfoListForAdd.add(streamInfo.getMediaInfo());
+            }
+            if ("OFF".equalsIgnoreCase(streamProxy.getGbStatus()) && streamProxy.getGbId() > 0) {
+                streamProxy.setGbStatus("ON");
+                channelListForOnline.add(streamProxy.buildCommonGBChannel());
             }
         }
-
+        for (int i = 0; i < mediaInfoListForAdd.size(); i += RECONCILE_BATCH_SIZE) {
+            redisCatchStorage.addStreams(mediaServer, "pull", mediaInfoListForAdd.subList(i, Math.min(i + RECONCILE_BATCH_SIZE, mediaInfoListForAdd.size())));
+        }
         if (!channelListForOnline.isEmpty()) {
             gbChannelService.online(channelListForOnline);
         }
+
+        // 数据库中存在，流媒体中已经不存在
         List<CommonGBChannel> channelListForOffline = new ArrayList<>();
         List<StreamProxy> streamProxiesForRemove = new ArrayList<>();
-        if (!streamProxyMapForDb.isEmpty()) {
-            for (StreamProxy streamProxy : streamProxyMapForDb.values()) {
-                if ("ON".equalsIgnoreCase(streamProxy.getGbStatus()) && streamProxy.getGbId() > 0) {
-                    streamProxy.setGbStatus("OFF");
-                    channelListForOffline.add(streamProxy.buildCommonGBChannel());
-                }
-                // 移除开启了无人观看自动移除的流
-                if (streamProxy.getGbDeviceId() == null && streamProxy.isEnableRemoveNoneReader()) {
-                    streamProxiesForRemove.add(streamProxy);
-                    streamProxyMapForDb.remove(streamProxy.getApp() + streamProxy.getStream());
-                }
+        List<StreamProxy> streamProxiesForOffline = new ArrayList<>();
+        for (StreamProxy streamProxy : streamProxyMapForDb.values()) {
+            if ("ON".equalsIgnoreCase(streamProxy.getGbStatus()) && streamProxy.getGbId() > 0) {
+                streamProxy.setGbStatus("OFF");
+                channelListForOffline.add(streamProxy.buildCommonGBChannel());
+            }
+            // 移除开启了无人观看自动移除的流
+            if (streamProxy.getGbDeviceId() == null && streamProxy.isEnableRemoveNoneReader()) {
+                streamProxiesForRemove.add(streamProxy);
+            } else {
+                streamProxiesForOffline.add(streamProxy);
             }
         }
         if (!channelListForOffline.isEmpty()) {
             gbChannelService.offline(channelListForOffline);
         }
-        if (!streamProxiesForRemove.isEmpty()) {
-            streamProxyMapper.deleteByList(streamProxiesForRemove);
+        for (int i = 0; i < streamProxiesForRemove.size(); i += RECONCILE_BATCH_SIZE) {
+            streamProxyMapper.deleteByList(streamProxiesForRemove.subList(i, Math.min(i + RECONCILE_BATCH_SIZE, streamProxiesForRemove.size())));
         }
-
-        if (!streamProxyMapForDb.isEmpty()) {
-            for (StreamProxy streamProxy : streamProxyMapForDb.values()) {
-                streamProxyMapper.offline(streamProxy.getId());
-            }
+        for (int i = 0; i < streamProxiesForOffline.size(); i += RECONCILE_BATCH_SIZE) {
+            streamProxyMapper.offlineByList(streamProxiesForOffline.subList(i, Math.min(i + RECONCILE_BATCH_SIZE, streamProxiesForOffline.size())));
         }
+        log.info("[拉流代理对账] 流媒体： {}, 在线： {}, 离线： {}, 移除： {}", mediaServer.getId(),
+                mediaInfoListForAdd.size(), streamProxiesForOffline.size(), streamProxiesForRemove.size());
     }
 
     @Override
@@ -0,0 +1,42 @@
+package com.genersoft.iot.vmp.streamPush.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 推流信息导入任务
+ */
+@Data
+@Schema(description = "推流信息导入任务")
+public class StreamPushImportTask {
+
+    @Schema(description = "任务ID")
+    private String taskId;
+
+    @Schema(description = "导入的文件名")
+    private String fileName;
+
+    @Schema(description = "状态， 0：进行中， 1：已完成， 2：失败")
+    private volatile int status;
+
+    @Schema(description = "已读取的行数")
+    private volatile int readCount;
+
+    @Schema(description = "已保存的行数")
+    private volatile int successCount;
+
+    @Schema(description = "文件内重复或者数据库中已存在而忽略的行数")
+    private volatile int duplicateCount;
+
+    @Schema(description = "校验失败或者保存失败的行数")
+    private volatile int errorCount;
+
+    @Schema(description = "创建时间")
+    private long createTime;
+
+    @Schema(description = "结束时间")
+    private volatile long endTime;
+
+    @Schema(description = "失败原因")
+    private volatile String msg;
+}
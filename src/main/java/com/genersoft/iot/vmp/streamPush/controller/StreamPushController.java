@@ -1,8 +1,5 @@
 package com.genersoft.iot.vmp.streamPush.controller;
 
-import com.alibaba.excel.EasyExcel;
-import com.alibaba.excel.ExcelReader;
-import com.alibaba.excel.read.metadata.ReadSheet;
 import com.genersoft.iot.vmp.common.enums.ChannelDataType;
 import com.genersoft.iot.vmp.conf.UserSetting;
 import com.genersoft.iot.vmp.conf.exception.ControllerException;
@@ -13,10 +10,12 @@ import com.genersoft.iot.vmp.media.service.IMediaServerService;
 import com.genersoft.iot.vmp.service.IMediaService;
 import com.genersoft.iot.vmp.streamPush.bean.BatchRemoveParam;
 import com.genersoft.iot.vmp.streamPush.bean.StreamPush;
-import com.genersoft.iot.vmp.streamPush.bean.StreamPushExcelDto;
-import com.genersoft.iot.vmp.streamPush.enent.StreamPushUploadFileHandler;
+import com.genersoft.iot.vmp.streamPush.bean.StreamPushImportTask;
+import com.genersoft.iot.vmp.streamPush.service.IStreamPushImportService;
 import com.genersoft.iot.vmp.streamPush.service.IStreamPushPlayService;
 import com.genersoft.iot.vmp.streamPush.service.IStreamPushService;
+import com.genersoft.iot.vmp.utils.ListExportWriter;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.genersoft.iot.vmp.vmanager.bean.StreamContent;
 import com.genersoft.iot.vmp.vmanager.bean.WVPResult;
@@ -36,12 +35,12 @@ import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -57,6 +56,9 @@ public class StreamPushController {
     @Autowired
     private IStreamPushPlayService streamPushPlayService;
 
+    @Autowired
+    private IStreamPushImportService importService;
+
     @Autowired
     private IMediaServerService mediaServerService;
 
@@ -93,6 +95,54 @@ public class StreamPushController {
         return pushList;
     }
 
+    @GetMapping(value = "/list/cursor")
+    @ResponseBody
+    @Operation(summary = "推流列表游标分页查询", description = "按数据库ID倒序, 不受页码深度影响, 适合数据量较大时连续翻页", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "cursor", description = "上一页返回的游标, 查询第一页时为空")
+    @Parameter(name = "count", description = "每页查询数量", required = true)
+    @Parameter(name = "query", description = "查询内容")
+    @Parameter(name = "pushing", description = "是否正在推流")
+    @Parameter(name = "mediaServerId", description = "流媒体ID")
+    public CursorPageInfo<StreamPush> listByCursor(@RequestParam(required = false)String cursor,
+                                                   @RequestParam Integer count,
+                                                   @RequestParam(required = false)String query,
+                                                   @RequestParam(required = false)Boolean pushing,
+                                                   @RequestParam(required = false)String mediaServerId ){
+
+        if (ObjectUtils.isEmpty(query)) {
+            query = null;
+        }
+        if (ObjectUtils.isEmpty(mediaServerId)) {
+            mediaServerId = null;
+        }
+        return streamPushService.getPushListByCursor(cursor, count, query, pushing, mediaServerId);
+    }
+
+    @GetMapping(value = "/export")
+    @Operation(summary = "导出推流列表", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "query", description = "查询内容")
+    @Parameter(name = "pushing", description = "是否正在推流")
+    @Parameter(name = "mediaServerId", description = "流媒体ID")
+    @Parameter(name = "format", description = "导出格式, csv或者ndjson, 默认csv")
+    public void export(HttpServletResponse response,
+                       @RequestParam(required = false)String query,
+                       @RequestParam(required = false)Boolean pushing,
+                       @RequestParam(required = false)String mediaServerId,
+                       @RequestParam(required = false)String format){
+
+        if (ObjectUtils.isEmpty(query)) {
+            query = null;
+        }
+        if (ObjectUtils.isEmpty(mediaServerId)) {
+            mediaServerId = null;
+        }
+        try (ListExportWriter writer = ListExportWriter.open(response, "stream_push", format)) {
+            streamPushService.exportPushList(query, pushing, mediaServerId, writer::write);
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("[导出推流列表] 写出失败： {}", e.getMessage());
+        }
+    }
+
 
     @PostMapping(value = "/remove")
     @ResponseBody
@@ -150,39 +200,35 @@ public class StreamPushController {
             msg.setData(wvpResult);
             resultHolder.invokeAllResult(msg);
         });
-        //获取文件流
-        InputStream inputStream = null;
         try {
-            String name = file.getName();
-            inputStream = file.getInputStream();
-        } catch (IOException e) {
-            log.error("未处理的异常 ", e);
-        }
-        try {
-            //传入参数
-            ExcelReader excelReader = EasyExcel.read(inputStream, StreamPushExcelDto.class,
-                    new StreamPushUploadFileHandler(streamPushService, mediaServerService.getDefaultMediaServer().getId(), (errorStreams, errorGBs)->{
-                        log.info("通道导入成功，存在重复App+Stream为{}个，存在国标ID为{}个", errorStreams.size(), errorGBs.size());
-                        RequestMessage msg = new RequestMessage();
-                        msg.setKey(key);
-                        WVPResult<Map<String, List<String>>> wvpResult = new WVPResult<>();
-                        if (errorStreams.isEmpty() && errorGBs.isEmpty()) {
-                            wvpResult.setCode(0);
-                            wvpResult.setMsg("成功");
-                        }else {
-                            wvpResult.setCode(1);
-                            wvpResult.setMsg("导入成功。但是存在重复数据");
-                            Map<String, List<String>> errorData = new HashMap<>();
-                            errorData.put("gbId", errorGBs);
-                            errorData.put("stream", errorStreams);
-                            wvpResult.setData(errorData);
-                        }
-                        msg.setData(wvpResult);
-                        resultHolder.invokeAllResult(msg);
-                    })).build();
-            ReadSheet readSheet = EasyExcel.readSheet(0).build();
-            excelReader.read(readSheet);
-            excelReader.finish();
+            importService.startImport(file, mediaServerService.getDefaultMediaServer().getId(), (task, errorStreams, errorGBs)->{
+                RequestMessage msg = new RequestMessage();
+                msg.setKey(key);
+                if (task.getStatus() == 2) {
+                    WVPResult<Object> wvpResult = new WVPResult<>();
+                    wvpResult.setCode(-1);
+                    wvpResult.setMsg("通道导入失败: " + task.getMsg());
+                    msg.setData(wvpResult);
+                    resultHolder.invokeAllResult(msg);
+                    return;
+                }
+                log.info("通道导入成功，存在重复App+Stream为{}个，存在国标ID为{}个", errorStreams.size(), errorGBs.size());
+                WVPResult<Map<String, Object>> wvpResult = new WVPResult<>();
+                Map<String, Object> data = new HashMap<>();
+                data.put("taskId", task.getTaskId());
+                if (errorStreams.isEmpty() && errorGBs.isEmpty() && task.getErrorCount() == 0) {
+                    wvpResult.setCode(0);
+                    wvpResult.setMsg("成功");
+                }else {
+                    wvpResult.setCode(1);
+                    wvpResult.setMsg("导入成功。但是存在重复数据");
+                    data.put("gbId", errorGBs);
+                    data.put("stream", errorStreams);
+                }
+                wvpResult.setData(data);
+                msg.setData(wvpResult);
+                resultHolder.invokeAllResult(msg);
+            });
         }catch (Exception e) {
             log.warn("通道导入失败：", e);
             RequestMessage msg = new RequestMessage();
@@ -194,10 +240,24 @@ public class StreamPushController {
             resultHolder.invokeAllResult(msg);
         }
 
-
         return result;
     }
 
+    @GetMapping(value = "/upload/task")
+    @ResponseBody
+    @Operation(summary = "查询导入任务的进度", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "taskId", description = "任务ID", required = true)
+    public StreamPushImportTask getUploadTask(String taskId){
+        return importService.getTask(taskId);
+    }
+
+    @GetMapping(value = "/upload/error-report")
+    @Operation(summary = "下载导入的错误报告", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "taskId", description = "任务ID", required = true)
+    public void downloadUploadErrorReport(String taskId, HttpServletResponse response) throws IOException {
+        importService.downloadErrorReport(taskId, response);
+    }
+
     /**
      * 添加推流信息
      * @param stream 推流信息
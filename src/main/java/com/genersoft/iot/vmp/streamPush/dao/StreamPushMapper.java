@@ -4,6 +4,7 @@ import com.genersoft.iot.vmp.common.enums.ChannelDataType;
 import com.genersoft.iot.vmp.streamPush.bean.StreamPush;
 import com.genersoft.iot.vmp.service.bean.StreamPushItemFromRedis;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -56,9 +57,34 @@ public interface StreamPushMapper {
             " <if test='pushing == true' > AND st.pushing=1</if>" +
             " <if test='pushing == false' > AND st.pushing=0 </if>" +
             " <if test='mediaServerId != null' > AND st.media_server_id=#{mediaServerId} </if>" +
-            " order by st.create_time desc" +
+            " <if test='lastId != null' > AND st.id &lt; #{lastId} </if>" +
+            " <if test='limit == null' > order by st.create_time desc</if>" +
+            " <if test='limit != null' > order by st.id desc limit #{limit}</if>" +
             " </script>"})
-    List<StreamPush> selectAll(@Param("query") String query, @Param("pushing") Boolean pushing, @Param("mediaServerId") String mediaServerId);
+    List<StreamPush> selectAll(@Param("query") String query, @Param("pushing") Boolean pushing, @Param("mediaServerId") String mediaServerId,
+                               @Param("lastId") Integer lastId, @Param("limit") Integer limit);
+
+    @Select(value = {" <script>" +
+            " SELECT " +
+            " st.*, " +
+            " st.id as data_device_id, " +
+            " wdc.*, " +
+            " wdc.id as gb_id" +
+            " from " +
+            " wvp_stream_push st " +
+            " LEFT join wvp_device_channel wdc " +
+            " on wdc.data_type = 2 and st.id = wdc.data_device_id " +
+            " WHERE " +
+            " 1=1 " +
+            " <if test='query != null'> AND (st.app LIKE concat('%',#{query},'%') escape '/' OR st.stream LIKE concat('%',#{query},'%') escape '/' " +
+            " OR wdc.gb_device_id LIKE concat('%',#{query},'%') escape '/' OR wdc.gb_name LIKE concat('%',#{query},'%') escape '/')</if> " +
+            " <if test='pushing == true' > AND st.pushing=1</if>" +
+            " <if test='pushing == false' > AND st.pushing=0 </if>" +
+            " <if test='mediaServerId != null' > AND st.media_server_id=#{mediaServerId} </if>" +
+            " order by st.id" +
+            " </script>"})
+    @Options(fetchSize = 1000)
+    Cursor<StreamPush> selectAllForExport(@Param("query") String query, @Param("pushing") Boolean pushing, @Param("mediaServerId") String mediaServerId);
 
     @Select("SELECT st.*, st.id as data_device_id, wdc.*, wdc.id as gb_id FROM wvp_stream_push st LEFT join wvp_device_channel wdc on  wdc.data_type = 2 and st.id = wdc.data_device_id WHERE st.app=#{app} AND st.stream=#{stream}")
     StreamPush selectByAppAndStream(@Param("app") String app, @Param("stream") String stream);
@@ -97,6 +123,9 @@ public interface StreamPushMapper {
     @Select("SELECT CONCAT(app,stream) from wvp_stream_push")
     List<String> getAllAppAndStream();
 
+    @Select("SELECT CONCAT(app, '/', stream) from wvp_stream_push")
+    List<String> getAllAppStreamKeys();
+
     @Select("select count(1) from wvp_stream_push ")
     int getAllCount();
 
@@ -4,20 +4,36 @@ import com.alibaba.excel.context.AnalysisContext;
 import com.alibaba.excel.event.AnalysisEventListener;
 import com.genersoft.iot.vmp.streamPush.bean.StreamPush;
 import com.genersoft.iot.vmp.streamPush.bean.StreamPushExcelDto;
+import com.genersoft.iot.vmp.streamPush.bean.StreamPushImportTask;
 import com.genersoft.iot.vmp.streamPush.service.IStreamPushService;
 import com.genersoft.iot.vmp.utils.DateUtil;
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.ObjectUtils;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+/**
+ * 推流信息导入, 逐行读取excel, 校验去重后按批次保存
+ * 读取与校验在读取线程中执行, 保存在单独的线程中执行, 两者并行, 等待保存的数据最多一批, 内存占用不随文件大小增长
+ */
+@Slf4j
 public class StreamPushUploadFileHandler extends AnalysisEventListener<StreamPushExcelDto> {
 
     /**
-     * 错误数据的回调，用于将错误数据发送给页面
+     * 每批保存的数量, 每批单独提交事务
      */
-    private final ErrorDataHandler errorDataHandler;
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * 返回给页面的错误数据的最大条数, 完整的错误数据见错误报告文件
+     */
+    private static final int MAX_ERROR_DATA = 1000;
 
     /**
      * 推流的业务类用于存储数据
@@ -29,81 +45,110 @@ public class StreamPushUploadFileHandler extends AnalysisEventListener<StreamPus
      */
     private final String defaultMediaServerId;
 
+    private final StreamPushImportTask task;
+
+    /**
+     * 错误报告, csv格式
+     */
+    private final Writer errorReportWriter;
+
     /**
-     * 用于存储更具APP+Stream过滤后的数据，可以直接存入stream_push表与gb_stream表
+     * 每保存一批数据后的回调, 用于通知页面导入进度
      */
-    private final Map<String, StreamPush> streamPushItemForSave = new HashMap<>();
+    private final Consumer<StreamPushImportTask> progressHandler;
 
     /**
-     * 用于存储APP+Stream->国标ID 的数据结构, 数据一一对应，全局判断APP+Stream->国标ID是否存在不对应
+     * 数据库中已有的APP+Stream
      */
-    private final BiMap<String,String> gBMap = HashBiMap.create();
+    private final Set<String> appStreamInDb;
 
     /**
-     * 用于存储APP+Stream-> 在数据库中的数据
+     * 已经使用的国标ID, 包括数据库中已有的与文件中已读取的
      */
-    private final BiMap<String,String> pushMapInDb = HashBiMap.create();
+    private final Set<String> usedGbIds;
+
+    /**
+     * 文件中已读取的APP+Stream->国标ID, 用于判断同样的APP+Stream是否使用了不同的国标ID
+     */
+    private final Map<String, String> gbIdMap = new HashMap<>();
 
     /**
      * 记录错误的APP+Stream
      */
     private final List<String> errorStreamList = new ArrayList<>();
 
-
     /**
      * 记录错误的国标ID
      */
     private final List<String> errorInfoList = new ArrayList<>();
 
-    /**
-     * 读取数量计数器
-     */
-    private int loadedSize = 0;
+    private final ThreadPoolExecutor saveExecutor;
+
+    private List<ImportRow> rowList = new ArrayList<>(BATCH_SIZE);
 
-    public StreamPushUploadFileHandler(IStreamPushService pushService, String defaultMediaServerId, ErrorDataHandler errorDataHandler) {
+    private static class ImportRow {
+        int rowNum;
+        StreamPush streamPush;
+    }
+
+    public StreamPushUploadFileHandler(IStreamPushService pushService, String defaultMediaServerId, StreamPushImportTask task,
+                                       Set<String> appStreamInDb, Set<String> gbIdsInDb, Writer errorReportWriter,
+                                       Consumer<StreamPushImportTask> progressHandler) {
         this.pushService = pushService;
         this.defaultMediaServerId = defaultMediaServerId;
-        this.errorDataHandler = errorDataHandler;
-        // 获取数据库已有的数据，已经存在的则忽略
-        List<String> allAppAndStreams = pushService.getAllAppAndStream();
-        if (!allAppAndStreams.isEmpty()) {
-            for (String allAppAndStream : allAppAndStreams) {
-                pushMapInDb.put(allAppAndStream, allAppAndStream);
-            }
-        }
+        this.task = task;
+        this.appStreamInDb = appStreamInDb;
+        this.usedGbIds = gbIdsInDb;
+        this.errorReportWriter = errorReportWriter;
+        this.progressHandler = progressHandler;
+        // 队列中只保留一批, 保存跟不上读取时由读取线程直接保存, 以此限制内存中的数据量
+        this.saveExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+                runnable -> new Thread(runnable, "push-import-save"), new ThreadPoolExecutor.CallerRunsPolicy());
+        writeReportLine("行号", "应用名", "流ID", "国标ID", "原因");
     }
 
-    public interface ErrorDataHandler{
-        void handle(List<String> streams, List<String> gbId);
+    public static String getAppStreamKey(String app, String stream) {
+        return app + "/" + stream;
     }
 
     @Override
     public void invoke(StreamPushExcelDto streamPushExcelDto, AnalysisContext analysisContext) {
-        if (ObjectUtils.isEmpty(streamPushExcelDto.getApp())
-                || ObjectUtils.isEmpty(streamPushExcelDto.getStream())
-                || ObjectUtils.isEmpty(streamPushExcelDto.getGbDeviceId())) {
+        int rowNum = analysisContext.readRowHolder().getRowIndex() + 1;
+        task.setReadCount(task.getReadCount() + 1);
+        String app = streamPushExcelDto.getApp() == null ? null : streamPushExcelDto.getApp().trim();
+        String stream = streamPushExcelDto.getStream() == null ? null : streamPushExcelDto.getStream().trim();
+        String gbDeviceId = streamPushExcelDto.getGbDeviceId() == null ? null : streamPushExcelDto.getGbDeviceId().trim();
+        if (ObjectUtils.isEmpty(app) || ObjectUtils.isEmpty(stream) || ObjectUtils.isEmpty(gbDeviceId)) {
+            error(rowNum, app, stream, gbDeviceId, "应用名、流ID与国标ID不可为空");
             return;
         }
-        Integer rowIndex = analysisContext.readRowHolder().getRowIndex();
-
-        if (gBMap.get(streamPushExcelDto.getApp() + streamPushExcelDto.getStream()) == null) {
-            try {
-                gBMap.put(streamPushExcelDto.getApp() + streamPushExcelDto.getStream(), streamPushExcelDto.getGbDeviceId());
-            }catch (IllegalArgumentException e) {
-                errorInfoList.add("行：" + rowIndex + ", " + streamPushExcelDto.getGbDeviceId() + " 国标ID重复使用");
-                return;
-            }
-        }else {
-            if (!gBMap.get(streamPushExcelDto.getApp() + streamPushExcelDto.getStream()).equals(streamPushExcelDto.getGbDeviceId())) {
-                errorInfoList.add("行：" + rowIndex + ", " + streamPushExcelDto.getGbDeviceId() + " 同样的应用名和流ID使用了不同的国标ID");
-                return;
+        String key = getAppStreamKey(app, stream);
+        if (appStreamInDb.contains(key)) {
+            duplicate(rowNum, app, stream, gbDeviceId, "应用名和流ID已存在");
+            addErrorData(errorStreamList, "行：" + rowNum + ", " + app + "/" + stream + " 应用名和流ID已存在");
+            return;
+        }
+        String gbDeviceIdInFile = gbIdMap.get(key);
+        if (gbDeviceIdInFile != null) {
+            if (gbDeviceIdInFile.equals(gbDeviceId)) {
+                duplicate(rowNum, app, stream, gbDeviceId, "文件内重复");
+            } else {
+                error(rowNum, app, stream, gbDeviceId, "同样的应用名和流ID使用了不同的国标ID");
+                addErrorData(errorInfoList, "行：" + rowNum + ", " + gbDeviceId + " 同样的应用名和流ID使用了不同的国标ID");
             }
+            return;
+        }
+        if (!usedGbIds.add(gbDeviceId)) {
+            error(rowNum, app, stream, gbDeviceId, "国标ID重复使用");
+            addErrorData(errorInfoList, "行：" + rowNum + ", " + gbDeviceId + " 国标ID重复使用");
+            return;
         }
+        gbIdMap.put(key, gbDeviceId);
 
         StreamPush streamPush = new StreamPush();
-        streamPush.setApp(streamPushExcelDto.getApp());
-        streamPush.setStream(streamPushExcelDto.getStream());
-        streamPush.setGbDeviceId(streamPushExcelDto.getGbDeviceId());
+        streamPush.setApp(app);
+        streamPush.setStream(stream);
+        streamPush.setGbDeviceId(gbDeviceId);
         streamPush.setGbStatus(streamPushExcelDto.isStatus()?"ON":"OFF");
         streamPush.setCreateTime(DateUtil.getNow());
         streamPush.setMediaServerId(defaultMediaServerId);
@@ -111,30 +156,112 @@ public class StreamPushUploadFileHandler extends AnalysisEventListener<StreamPus
         streamPush.setGbLongitude(streamPushExcelDto.getLongitude());
         streamPush.setGbLatitude(streamPushExcelDto.getLatitude());
         streamPush.setUpdateTime(DateUtil.getNow());
-        streamPushItemForSave.put(streamPush.getApp() + streamPush.getStream(), streamPush);
 
-        loadedSize ++;
-        if (loadedSize > 1000) {
+        ImportRow importRow = new ImportRow();
+        importRow.rowNum = rowNum;
+        importRow.streamPush = streamPush;
+        rowList.add(importRow);
+        if (rowList.size() >= BATCH_SIZE) {
             saveData();
-            streamPushItemForSave.clear();
-            loadedSize = 0;
         }
-
     }
 
     @Override
     public void doAfterAllAnalysed(AnalysisContext analysisContext) {
         // 这里也要保存数据，确保最后遗留的数据也存储到数据库
         saveData();
-        streamPushItemForSave.clear();
-        gBMap.clear();
-        errorDataHandler.handle(errorStreamList, errorInfoList);
+        awaitSaved();
+        gbIdMap.clear();
+    }
+
+    /**
+     * 等待所有数据保存完成, 读取文件异常中断时也需要调用
+     */
+    public void awaitSaved() {
+        saveExecutor.shutdown();
+        try {
+            if (!saveExecutor.awaitTermination(1, TimeUnit.HOURS)) {
+                log.warn("[推流导入] 等待数据保存超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public List<String> getErrorStreamList() {
+        return errorStreamList;
+    }
+
+    public List<String> getErrorInfoList() {
+        return errorInfoList;
     }
 
     private void saveData(){
-        if (!streamPushItemForSave.isEmpty()) {
-            // 向数据库查询是否存在重复的app
-            pushService.batchAdd(new ArrayList<>(streamPushItemForSave.values()));
+        if (rowList.isEmpty()) {
+            return;
+        }
+        List<ImportRow> saveList = rowList;
+        rowList = new ArrayList<>(BATCH_SIZE);
+        saveExecutor.execute(() -> save(saveList));
+    }
+
+    private void save(List<ImportRow> saveList) {
+        List<StreamPush> streamPushList = new ArrayList<>(saveList.size());
+        for (ImportRow importRow : saveList) {
+            streamPushList.add(importRow.streamPush);
+        }
+        try {
+            pushService.batchAdd(streamPushList);
+            synchronized (this) {
+                task.setSuccessCount(task.getSuccessCount() + saveList.size());
+            }
+        } catch (Exception e) {
+            log.error("[推流导入] 保存失败, 行: {}-{}", saveList.get(0).rowNum, saveList.get(saveList.size() - 1).rowNum, e);
+            for (ImportRow importRow : saveList) {
+                StreamPush streamPush = importRow.streamPush;
+                error(importRow.rowNum, streamPush.getApp(), streamPush.getStream(), streamPush.getGbDeviceId(), "保存失败: " + e.getMessage());
+            }
+        }
+        progressHandler.accept(task);
+    }
+
+    private synchronized void error(int rowNum, String app, String stream, String gbDeviceId, String reason) {
+        task.setErrorCount(task.getErrorCount() + 1);
+        writeReportLine(String.valueOf(rowNum), app, stream, gbDeviceId, reason);
+    }
+
+    private synchronized void duplicate(int rowNum, String app, String stream, String gbDeviceId, String reason) {
+        task.setDuplicateCount(task.getDuplicateCount() + 1);
+        writeReportLine(String.valueOf(rowNum), app, stream, gbDeviceId, reason);
+    }
+
+    private void addErrorData(List<String> errorDataList, String errorData) {
+        if (errorDataList.size() < MAX_ERROR_DATA) {
+            errorDataList.add(errorData);
+        }
+    }
+
+    private void writeReportLine(String... values) {
+        try {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    errorReportWriter.write(',');
+                }
+                String value = values[i];
+                if (value == null) {
+                    continue;
+                }
+                if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+                    errorReportWriter.write('"');
+                    errorReportWriter.write(value.replace("\"", "\"\""));
+                    errorReportWriter.write('"');
+                } else {
+                    errorReportWriter.write(value);
+                }
+            }
+            errorReportWriter.write("\r\n");
+        } catch (IOException e) {
+            log.warn("[推流导入] 写入错误报告失败: {}", e.getMessage());
         }
     }
 }
@@ -0,0 +1,42 @@
+package com.genersoft.iot.vmp.streamPush.service;
+
+import com.genersoft.iot.vmp.streamPush.bean.StreamPushImportTask;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 推流信息导入
+ */
+public interface IStreamPushImportService {
+
+    /**
+     * 导入结束后的回调
+     */
+    interface ImportCallback {
+        /**
+         * @param task 导入任务
+         * @param errorStreams 已存在的APP+Stream, 最多1000条
+         * @param errorGbIds 冲突的国标ID, 最多1000条
+         */
+        void run(StreamPushImportTask task, List<String> errorStreams, List<String> errorGbIds);
+    }
+
+    /**
+     * 开始导入, 文件在后台流式读取, 读取进度通过SSE的streamPushImport事件通知
+     * @param mediaServerId 导入的推流使用的流媒体节点
+     */
+    StreamPushImportTask startImport(MultipartFile file, String mediaServerId, ImportCallback callback) throws IOException;
+
+    /**
+     * 查询导入任务
+     */
+    StreamPushImportTask getTask(String taskId);
+
+    /**
+     * 下载错误报告, csv格式, 包含所有未导入的行及原因
+     */
+    void downloadErrorReport(String taskId, HttpServletResponse response) throws IOException;
+}
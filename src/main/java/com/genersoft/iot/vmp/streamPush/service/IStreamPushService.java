@@ -3,12 +3,14 @@ package com.genersoft.iot.vmp.streamPush.service;
 import com.genersoft.iot.vmp.media.bean.MediaServer;
 import com.genersoft.iot.vmp.service.bean.StreamPushItemFromRedis;
 import com.genersoft.iot.vmp.streamPush.bean.StreamPush;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ResourceBaseInfo;
 import com.github.pagehelper.PageInfo;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * @author lin
@@ -20,6 +22,17 @@ public interface IStreamPushService {
      */
     PageInfo<StreamPush> getPushList(Integer page, Integer count, String query, Boolean pushing, String mediaServerId);
 
+    /**
+     * 游标分页查询推流, 按数据库ID倒序
+     * @param cursor 上一页返回的游标, 第一页为空
+     */
+    CursorPageInfo<StreamPush> getPushListByCursor(String cursor, int count, String query, Boolean pushing, String mediaServerId);
+
+    /**
+     * 逐条读取推流列表用于导出, 不在内存中保存整个列表
+     */
+    void exportPushList(String query, Boolean pushing, String mediaServerId, Consumer<StreamPush> consumer);
+
     List<StreamPush> getPushList(String mediaSererId);
 
     StreamPush getPush(String app, String streamId);
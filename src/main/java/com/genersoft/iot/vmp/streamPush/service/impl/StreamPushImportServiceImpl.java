@@ -0,0 +1,211 @@
+package com.genersoft.iot.vmp.streamPush.service.impl;
+
+import com.alibaba.excel.EasyExcel;
+import com.genersoft.iot.vmp.conf.exception.ControllerException;
+import com.genersoft.iot.vmp.gb28181.dao.CommonGBChannelMapper;
+import com.genersoft.iot.vmp.gb28181.session.SseSessionManager;
+import com.genersoft.iot.vmp.streamPush.bean.StreamPushExcelDto;
+import com.genersoft.iot.vmp.streamPush.bean.StreamPushImportTask;
+import com.genersoft.iot.vmp.streamPush.dao.StreamPushMapper;
+import com.genersoft.iot.vmp.streamPush.enent.StreamPushUploadFileHandler;
+import com.genersoft.iot.vmp.streamPush.service.IStreamPushImportService;
+import com.genersoft.iot.vmp.streamPush.service.IStreamPushService;
+import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推流信息导入
+ * 上传的文件先保存为临时文件, 后台逐行读取, 校验与保存并行执行, 进度通过SSE通知页面, 未导入的行写入错误报告
+ */
+@Slf4j
+@Service
+public class StreamPushImportServiceImpl implements IStreamPushImportService {
+
+    private static final String UPLOAD_SUFFIX = ".upload";
+
+    private static final String REPORT_SUFFIX = ".error.csv";
+
+    /**
+     * 已结束的任务保留时长
+     */
+    private static final long TASK_KEEP_TIME = 24 * 60 * 60 * 1000L;
+
+    @Autowired
+    private IStreamPushService streamPushService;
+
+    @Autowired
+    private StreamPushMapper streamPushMapper;
+
+    @Autowired
+    private CommonGBChannelMapper commonGBChannelMapper;
+
+    @Autowired
+    private SseSessionManager sseSessionManager;
+
+    @Autowired
+    private ThreadPoolTaskExecutor taskExecutor;
+
+    private final Map<String, StreamPushImportTask> taskMap = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        // 清理上次运行遗留的文件
+        File[] files = getImportDir().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    log.warn("[推流导入] 清理遗留文件失败: {}", file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized StreamPushImportTask startImport(MultipartFile file, String mediaServerId, ImportCallback callback) throws IOException {
+        for (StreamPushImportTask task : taskMap.values()) {
+            if (task.getStatus() == 0) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "已有导入任务正在执行");
+            }
+        }
+        StreamPushImportTask task = new StreamPushImportTask();
+        task.setTaskId(UUID.randomUUID().toString());
+        task.setFileName(file.getOriginalFilename());
+        task.setCreateTime(System.currentTimeMillis());
+        File uploadFile = getTaskFile(task.getTaskId(), UPLOAD_SUFFIX);
+        file.transferTo(uploadFile);
+        taskMap.put(task.getTaskId(), task);
+        taskExecutor.execute(() -> runImport(task, uploadFile, mediaServerId, callback));
+        return task;
+    }
+
+    private void runImport(StreamPushImportTask task, File uploadFile, String mediaServerId, ImportCallback callback) {
+        long startTime = System.currentTimeMillis();
+        StreamPushUploadFileHandler handler = null;
+        int status = 1;
+        File reportFile = getTaskFile(task.getTaskId(), REPORT_SUFFIX);
+        try (Writer reportWriter = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(reportFile.toPath()), StandardCharsets.UTF_8))) {
+            // 写入BOM, 避免excel打开时中文乱码
+            reportWriter.write('\uFEFF');
+            Set<String> appStreamInDb = new HashSet<>(streamPushMapper.getAllAppStreamKeys());
+            Set<String> gbIdsInDb = new HashSet<>(commonGBChannelMapper.queryAllGbDeviceIds());
+            handler = new StreamPushUploadFileHandler(streamPushService, mediaServerId, task, appStreamInDb, gbIdsInDb,
+                    reportWriter, progressTask -> sseSessionManager.sendForAll("streamPushImport", progressTask.getTaskId(), progressTask, true));
+            try {
+                EasyExcel.read(uploadFile, StreamPushExcelDto.class, handler).sheet(0).doRead();
+            } catch (Exception e) {
+                handler.awaitSaved();
+                log.warn("[推流导入] 导入失败: ", e);
+                task.setMsg(e.getMessage());
+                status = 2;
+            }
+        } catch (Exception e) {
+            log.error("[推流导入] 导入失败: ", e);
+            task.setMsg(e.getMessage());
+            status = 2;
+        } finally {
+            // 错误报告写完关闭后再更新状态, 保证状态结束后下载到的是完整的报告
+            task.setEndTime(System.currentTimeMillis());
+            task.setStatus(status);
+            if (uploadFile.exists() && !uploadFile.delete()) {
+                log.warn("[推流导入] 删除上传文件失败: {}", uploadFile.getAbsolutePath());
+            }
+        }
+        log.info("[推流导入] 结束, 读取: {}, 成功: {}, 重复: {}, 错误: {}, 耗时: {}ms", task.getReadCount(),
+                task.getSuccessCount(), task.getDuplicateCount(), task.getErrorCount(), task.getEndTime() - startTime);
+        sseSessionManager.sendForAll("streamPushImport", task);
+        if (callback != null) {
+            try {
+                if (handler == null) {
+                    callback.run(task, new ArrayList<>(), new ArrayList<>());
+                } else {
+                    callback.run(task, handler.getErrorStreamList(), handler.getErrorInfoList());
+                }
+            } catch (Exception e) {
+                log.error("[推流导入] 回调执行失败: ", e);
+            }
+        }
+    }
+
+    @Override
+    public StreamPushImportTask getTask(String taskId) {
+        StreamPushImportTask task = taskMap.get(taskId);
+        if (task == null) {
+            throw new ControllerException(ErrorCode.ERROR404.getCode(), "任务不存在");
+        }
+        return task;
+    }
+
+    @Override
+    public void downloadErrorReport(String taskId, HttpServletResponse response) throws IOException {
+        StreamPushImportTask task = getTask(taskId);
+        if (task.getStatus() == 0) {
+            throw new ControllerException(ErrorCode.ERROR100.getCode(), "任务尚未完成");
+        }
+        File file = getTaskFile(taskId, REPORT_SUFFIX);
+        if (!file.isFile()) {
+            throw new ControllerException(ErrorCode.ERROR404.getCode(), "文件不存在");
+        }
+        String fileName = task.getFileName() == null ? taskId : task.getFileName();
+        int index = fileName.lastIndexOf('.');
+        if (index > 0) {
+            fileName = fileName.substring(0, index);
+        }
+        response.setContentType("text/csv");
+        response.setHeader("Content-Disposition", "attachment;filename=" + URLEncoder.encode(fileName + "-错误报告.csv", "UTF-8"));
+        response.setHeader("Content-Length", String.valueOf(file.length()));
+        Files.copy(file.toPath(), response.getOutputStream());
+        response.flushBuffer();
+    }
+
+    /**
+     * 定时清理已结束的任务
+     */
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void execute() {
+        long now = System.currentTimeMillis();
+        for (StreamPushImportTask task : taskMap.values()) {
+            if (task.getStatus() != 0 && now - task.getEndTime() > TASK_KEEP_TIME) {
+                taskMap.remove(task.getTaskId());
+                File file = getTaskFile(task.getTaskId(), REPORT_SUFFIX);
+                if (file.exists() && !file.delete()) {
+                    log.warn("[推流导入] 删除错误报告失败: {}", file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    private File getImportDir() {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "wvp-push-import");
+        if (!dir.exists() && !dir.mkdirs()) {
+            log.warn("[推流导入] 创建目录失败: {}", dir.getAbsolutePath());
+        }
+        return dir;
+    }
+
+    private File getTaskFile(String taskId, String suffix) {
+        return new File(getImportDir(), taskId + suffix);
+    }
+}
@@ -12,6 +12,7 @@ import com.genersoft.iot.vmp.media.event.media.MediaArrivalEvent;
 import com.genersoft.iot.vmp.media.event.media.MediaDepartureEvent;
 import com.genersoft.iot.vmp.media.event.mediaServer.MediaServerOfflineEvent;
 import com.genersoft.iot.vmp.media.event.mediaServer.MediaServerOnlineEvent;
+import com.genersoft.iot.vmp.media.event.mediaServer.MediaServerReconcileLimiter;
 import com.genersoft.iot.vmp.media.service.IMediaServerService;
 import com.genersoft.iot.vmp.media.zlm.dto.StreamAuthorityInfo;
 import com.genersoft.iot.vmp.media.zlm.dto.hook.OriginType;
@@ -22,11 +23,14 @@ import com.genersoft.iot.vmp.streamPush.bean.StreamPush;
 import com.genersoft.iot.vmp.streamPush.dao.StreamPushMapper;
 import com.genersoft.iot.vmp.streamPush.service.IStreamPushService;
 import com.genersoft.iot.vmp.utils.DateUtil;
+import com.genersoft.iot.vmp.utils.ListCountCache;
+import com.genersoft.iot.vmp.utils.PageCursor;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.genersoft.iot.vmp.vmanager.bean.ResourceBaseInfo;
-import com.github.pagehelper.PageHelper;
 import com.github.pagehelper.PageInfo;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
@@ -35,7 +39,9 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -60,6 +66,17 @@ public class StreamPushServiceImpl implements IStreamPushService {
     @Autowired
     private IGbChannelService gbChannelService;
 
+    @Autowired
+    private MediaServerReconcileLimiter reconcileLimiter;
+
+    @Autowired
+    private ListCountCache listCountCache;
+
+    /**
+     * 流媒体节点上线对账时每批处理的流数量
+     */
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
     /**
      * 流到来的处理
      */
@@ -157,9 +174,8 @@ public class StreamPushServiceImpl implements IStreamPushService {
      */
     @Async("taskExecutor")
     @EventListener
-    @Transactional
     public void onApplicationEvent(MediaServerOnlineEvent event) {
-        zlmServerOnline(event.getMediaServer());
+        reconcileLimiter.run("推流对账", event.getMediaServer().getId(), () -> zlmServerOnline(event.getMediaServer()));
     }
 
     /**
@@ -174,14 +190,45 @@ public class StreamPushServiceImpl implements IStreamPushService {
 
     @Override
     public PageInfo<StreamPush> getPushList(Integer page, Integer count, String query, Boolean pushing, String mediaServerId) {
-        PageHelper.startPage(page, count);
         if (query != null) {
             query = query.replaceAll("/", "//")
                     .replaceAll("%", "/%")
                     .replaceAll("_", "/_");
         }
-        List<StreamPush> all = streamPushMapper.selectAll(query, pushing, mediaServerId);
-        return new PageInfo<>(all);
+        String finalQuery = query;
+        return listCountCache.page("streamPush:" + query + ":" + pushing + ":" + mediaServerId, page, count,
+                () -> streamPushMapper.selectAll(finalQuery, pushing, mediaServerId, null, null));
+    }
+
+    @Override
+    public CursorPageInfo<StreamPush> getPushListByCursor(String cursor, int count, String query, Boolean pushing, String mediaServerId) {
+        count = CursorPageInfo.limitCount(count);
+        Integer lastId = PageCursor.decodeId(cursor);
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        String finalQuery = query;
+        long total = listCountCache.count("streamPush:" + query + ":" + pushing + ":" + mediaServerId,
+                () -> streamPushMapper.selectAll(finalQuery, pushing, mediaServerId, null, null));
+        List<StreamPush> rows = streamPushMapper.selectAll(query, pushing, mediaServerId, lastId, count + 1);
+        return CursorPageInfo.of(rows, count, total, streamPush -> PageCursor.encode(streamPush.getId()));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportPushList(String query, Boolean pushing, String mediaServerId, Consumer<StreamPush> consumer) {
+        if (query != null) {
+            query = query.replaceAll("/", "//")
+                    .replaceAll("%", "/%")
+                    .replaceAll("_", "/_");
+        }
+        try (Cursor<StreamPush> cursor = streamPushMapper.selectAllForExport(query, pushing, mediaServerId)) {
+            cursor.forEach(consumer);
+        } catch (IOException e) {
+            log.error("[导出推流列表] 关闭游标失败", e);
+        }
     }
 
     @Override
@@ -314,80 +361,91 @@ public class StreamPushServiceImpl implements IStreamPushService {
     }
 
     @Override
-    @Transactional
     public void zlmServerOnline(MediaServer mediaServer) {
         // 同步zlm推流信息
         if (mediaServer == null) {
             return;
         }
-        // 数据库记录
-        List<StreamPush> pushList = getPushList(mediaServer.getId());
-        Map<String, StreamPush> pushItemMap = new HashMap<>();
-        // redis记录
-        List<MediaInfo> mediaInfoList = redisCatchStorage.getStreams(mediaServer.getId(), "PUSH");
-        Map<String, MediaInfo> streamInfoPushItemMap = new HashMap<>();
-        if (!pushList.isEmpty()) {
-            for (StreamPush streamPushItem : pushList) {
-                if (ObjectUtils.isEmpty(streamPushItem.getGbId())) {
-                    pushItemMap.put(streamPushItem.getApp() + streamPushItem.getStream(), streamPushItem);
-                }
-            }
-        }
-        if (!mediaInfoList.isEmpty()) {
-            for (MediaInfo mediaInfo : mediaInfoList) {
-                streamInfoPushItemMap.put(mediaInfo.getApp() + mediaInfo.getStream(), mediaInfo);
-            }
-        }
-        // 获取所有推流鉴权信息，清理过期的
-        List<StreamAuthorityInfo> allStreamAuthorityInfo = redisCatchStorage.getAllStreamAuthorityInfo();
-        Map<String, StreamAuthorityInfo> streamAuthorityInfoInfoMap = new HashMap<>();
-        for (StreamAuthorityInfo streamAuthorityInfo : allStreamAuthorityInfo) {
-            streamAuthorityInfoInfoMap.put(streamAuthorityInfo.getApp() + streamAuthorityInfo.getStream(), streamAuthorityInfo);
-        }
         List<StreamInfo> mediaList = mediaServerService.getMediaList(mediaServer, null, null, null);
         if (mediaList == null) {
             return;
         }
-        List<StreamPush> streamPushItems = handleJSON(mediaList);
-        if (streamPushItems != null) {
-            for (StreamPush streamPushItem : streamPushItems) {
-                pushItemMap.remove(streamPushItem.getApp() + streamPushItem.getStream());
-                streamInfoPushItemMap.remove(streamPushItem.getApp() + streamPushItem.getStream());
-                streamAuthorityInfoInfoMap.remove(streamPushItem.getApp() + streamPushItem.getStream());
+        // 流媒体中实际存在的推流
+        Set<String> onlineKeys = new HashSet<>();
+        for (StreamInfo streamInfo : mediaList) {
+            if (streamInfo.getOriginType() == OriginType.RTSP_PUSH.ordinal()
+                    || streamInfo.getOriginType() == OriginType.RTMP_PUSH.ordinal()
+                    || streamInfo.getOriginType() == OriginType.RTC_PUSH.ordinal() ) {
+                onlineKeys.add(streamInfo.getApp() + "/" + streamInfo.getStream());
             }
         }
-        List<StreamPush> changedStreamPushList = new ArrayList<>(pushItemMap.values());
-        if (!changedStreamPushList.isEmpty()) {
-            for (StreamPush streamPush : changedStreamPushList) {
-                stop(streamPush);
+
+        // 数据库记录, 流媒体中已经不存在的推流标记为停止, 与之前一致只处理未关联国标的推流
+        List<StreamPush> streamPushListForStop = new ArrayList<>();
+        for (StreamPush streamPush : getPushList(mediaServer.getId())) {
+            if (!ObjectUtils.isEmpty(streamPush.getGbId())) {
+                continue;
+            }
+            if (streamPush.isPushing() && !onlineKeys.contains(streamPush.getApp() + "/" + streamPush.getStream())) {
+                streamPushListForStop.add(streamPush);
             }
         }
+        for (int i = 0; i < streamPushListForStop.size(); i += RECONCILE_BATCH_SIZE) {
+            stopForReconcile(streamPushListForStop.subList(i, Math.min(i + RECONCILE_BATCH_SIZE, streamPushListForStop.size())));
+        }
 
-        Collection<MediaInfo> mediaInfos = streamInfoPushItemMap.values();
-        if (!mediaInfos.isEmpty()) {
-            String type = "PUSH";
-            for (MediaInfo mediaInfo : mediaInfos) {
-                JSONObject jsonObject = new JSONObject();
-                jsonObject.put("serverId", userSetting.getServerId());
-                jsonObject.put("app", mediaInfo.getApp());
-                jsonObject.put("stream", mediaInfo.getStream());
-                jsonObject.put("register", false);
-                jsonObject.put("mediaServerId", mediaServer.getId());
-                redisCatchStorage.sendStreamChangeMsg(type, jsonObject);
-                // 移除redis内流的信息
-                redisCatchStorage.removeStream(mediaServer.getId(), "PUSH", mediaInfo.getApp(), mediaInfo.getStream());
-                // 冗余数据，自己系统中自用
-                redisCatchStorage.removePushListItem(mediaInfo.getApp(), mediaInfo.getStream(), mediaServer.getId());
+        // redis记录
+        List<MediaInfo> mediaInfoListForRemove = new ArrayList<>();
+        for (MediaInfo mediaInfo : redisCatchStorage.getStreams(mediaServer.getId(), "PUSH")) {
+            if (!onlineKeys.contains(mediaInfo.getApp() + "/" + mediaInfo.getStream())) {
+                mediaInfoListForRemove.add(mediaInfo);
             }
         }
+        for (int i = 0; i < mediaInfoListForRemove.size(); i += RECONCILE_BATCH_SIZE) {
+            List<MediaInfo> subList = mediaInfoListForRemove.subList(i, Math.min(i + RECONCILE_BATCH_SIZE, mediaInfoListForRemove.size()));
+            // 移除redis内流的信息
+            redisCatchStorage.removeStreams(mediaServer.getId(), "PUSH", subList);
+            // 冗余数据，自己系统中自用
+            redisCatchStorage.removePushListItems(subList);
+            redisCatchStorage.sendStreamChangeMsg("PUSH", mediaServer.getId(), false, subList);
+        }
 
-        Collection<StreamAuthorityInfo> streamAuthorityInfos = streamAuthorityInfoInfoMap.values();
-        if (!streamAuthorityInfos.isEmpty()) {
-            for (StreamAuthorityInfo streamAuthorityInfo : streamAuthorityInfos) {
-                // 移除redis内流的信息
-                redisCatchStorage.removeStreamAuthorityInfo(streamAuthorityInfo.getApp(), streamAuthorityInfo.getStream());
+        // 清理此节点上过期的推流鉴权信息
+        List<StreamAuthorityInfo> streamAuthorityInfoListForRemove = new ArrayList<>();
+        for (StreamAuthorityInfo streamAuthorityInfo : redisCatchStorage.getAllStreamAuthorityInfo()) {
+            if (streamAuthorityInfo.getId() != null && !streamAuthorityInfo.getId().equals(mediaServer.getId())) {
+                continue;
+            }
+            if (!onlineKeys.contains(streamAuthorityInfo.getApp() + "/" + streamAuthorityInfo.getStream())) {
+                streamAuthorityInfoListForRemove.add(streamAuthorityInfo);
             }
         }
+        redisCatchStorage.removeStreamAuthorityInfos(streamAuthorityInfoListForRemove);
+        log.info("[推流对账] 流媒体： {}, 在线推流： {}, 停止推流： {}, 清理缓存： {}, 清理鉴权信息： {}", mediaServer.getId(),
+                onlineKeys.size(), streamPushListForStop.size(), mediaInfoListForRemove.size(), streamAuthorityInfoListForRemove.size());
+    }
+
+    /**
+     * 对账时批量停止推流, 流在流媒体中已经不存在, 不需要再关闭流
+     */
+    private void stopForReconcile(List<StreamPush> streamPushList) {
+        String now = DateUtil.getNow();
+        List<CommonGBChannel> channelListForOffline = new ArrayList<>();
+        for (StreamPush streamPush : streamPushList) {
+            streamPush.setPushing(false);
+            streamPush.setUpdateTime(now);
+            if (userSetting.getUsePushingAsStatus()) {
+                CommonGBChannel commonGBChannel = streamPush.buildCommonGBChannel();
+                if (commonGBChannel != null) {
+                    channelListForOffline.add(commonGBChannel);
+                }
+            }
+            sendRtpServerService.deleteByStream(streamPush.getStream());
+        }
+        streamPushMapper.batchUpdate(streamPushList);
+        if (!channelListForOffline.isEmpty()) {
+            gbChannelService.offline(channelListForOffline);
+        }
     }
 
     @Override
@@ -441,7 +499,7 @@ public class StreamPushServiceImpl implements IStreamPushService {
 
     @Override
     public void allOffline() {
-        List<StreamPush> streamPushList = streamPushMapper.selectAll(null, null, null);
+        List<StreamPush> streamPushList = streamPushMapper.selectAll(null, null, null, null, null);
         if (streamPushList.isEmpty()) {
             return;
         }
@@ -527,27 +585,6 @@ public class StreamPushServiceImpl implements IStreamPushService {
         }
     }
 
-    private List<StreamPush> handleJSON(List<StreamInfo> streamInfoList) {
-        if (streamInfoList == null || streamInfoList.isEmpty()) {
-            return null;
-        }
-        Map<String, StreamPush> result = new HashMap<>();
-        for (StreamInfo streamInfo : streamInfoList) {
-            // 不保存国标推理以及拉流代理的流
-            if (streamInfo.getOriginType() == OriginType.RTSP_PUSH.ordinal()
-                    || streamInfo.getOriginType() == OriginType.RTMP_PUSH.ordinal()
-                    || streamInfo.getOriginType() == OriginType.RTC_PUSH.ordinal() ) {
-                String key = streamInfo.getApp() + "_" + streamInfo.getStream();
-                StreamPush streamPushItem = result.get(key);
-                if (streamPushItem == null) {
-                    streamPushItem = StreamPush.getInstance(streamInfo);
-                    result.put(key, streamPushItem);
-                }
-            }
-        }
-        return new ArrayList<>(result.values());
-    }
-
     @Override
     public void batchUpdate(List<StreamPush> streamPushItemForUpdate) {
         streamPushMapper.batchUpdate(streamPushItemForUpdate);
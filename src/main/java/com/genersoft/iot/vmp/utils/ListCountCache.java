@@ -0,0 +1,85 @@
+package com.genersoft.iot.vmp.utils;
+
+import com.genersoft.iot.vmp.conf.UserSetting;
+import com.github.pagehelper.ISelect;
+import com.github.pagehelper.Page;
+import com.github.pagehelper.PageHelper;
+import com.github.pagehelper.PageInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 列表总数的短时缓存
+ * 游标分页翻页时不再每页都执行一次count, 总数在缓存时间内可能与实际数量略有偏差; 偏移量分页仍然每次精确统计
+ */
+@Component
+public class ListCountCache {
+
+    /**
+     * 缓存的查询条件数量上限, 超出后清空重新统计
+     */
+    private static final int MAX_SIZE = 2000;
+
+    @Autowired
+    private UserSetting userSetting;
+
+    private final Map<String, CountItem> countMap = new ConcurrentHashMap<>();
+
+    private static class CountItem {
+        long total;
+        long expireTime;
+    }
+
+    /**
+     * 获取总数, 缓存中没有或者已过期时执行select统计
+     * @param key 列表名称与查询条件组成的唯一标识
+     */
+    public long count(String key, ISelect select) {
+        long ttl = TimeUnit.SECONDS.toMillis(userSetting.getListCountCacheTtl());
+        if (ttl <= 0) {
+            return PageHelper.count(select);
+        }
+        long now = System.currentTimeMillis();
+        CountItem item = countMap.get(key);
+        if (item != null && item.expireTime > now) {
+            return item.total;
+        }
+        long total = PageHelper.count(select);
+        put(key, total, now + ttl);
+        return total;
+    }
+
+    private void put(String key, long total, long expireTime) {
+        CountItem item = new CountItem();
+        item.total = total;
+        item.expireTime = expireTime;
+        if (countMap.size() >= MAX_SIZE) {
+            countMap.clear();
+        }
+        countMap.put(key, item);
+    }
+
+    /**
+     * 偏移量分页查询, 总数保持精确统计, 统计结果同时放入缓存供游标分页使用
+     */
+    public <T> PageInfo<T> page(String key, int page, int count, ISelect select) {
+        Page<T> result = PageHelper.startPage(page, count);
+        select.doSelect();
+        long ttl = TimeUnit.SECONDS.toMillis(userSetting.getListCountCacheTtl());
+        if (ttl > 0) {
+            put(key, result.getTotal(), System.currentTimeMillis() + ttl);
+        }
+        return new PageInfo<>(result);
+    }
+
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void clearExpired() {
+        long now = System.currentTimeMillis();
+        countMap.values().removeIf(item -> item.expireTime <= now);
+    }
+}
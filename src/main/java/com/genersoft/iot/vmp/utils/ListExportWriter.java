@@ -0,0 +1,111 @@
+package com.genersoft.iot.vmp.utils;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+import com.genersoft.iot.vmp.conf.exception.ControllerException;
+import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 列表导出, 逐行写出到http响应, 不在内存中保存整个列表
+ * 支持csv与ndjson(每行一个json对象)两种格式, csv的表头取第一行数据的字段名
+ */
+public class ListExportWriter implements Closeable {
+
+    public static final String FORMAT_CSV = "csv";
+
+    public static final String FORMAT_NDJSON = "ndjson";
+
+    private final Writer writer;
+
+    private final boolean csv;
+
+    private List<String> header;
+
+    private ListExportWriter(Writer writer, boolean csv) {
+        this.writer = writer;
+        this.csv = csv;
+    }
+
+    /**
+     * @param fileName 下载的文件名, 不含扩展名
+     * @param format csv或者ndjson, 为空时使用csv
+     */
+    public static ListExportWriter open(HttpServletResponse response, String fileName, String format) throws IOException {
+        boolean csv;
+        if (format == null || FORMAT_CSV.equalsIgnoreCase(format)) {
+            csv = true;
+        } else if (FORMAT_NDJSON.equalsIgnoreCase(format)) {
+            csv = false;
+        } else {
+            throw new ControllerException(ErrorCode.ERROR400.getCode(), "不支持的导出格式: " + format);
+        }
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentType(csv ? "text/csv" : "application/x-ndjson");
+        response.setHeader("Content-Disposition", "attachment; filename=" + fileName + (csv ? ".csv" : ".ndjson"));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), 64 * 1024);
+        if (csv) {
+            // 写入BOM, 避免excel打开时中文乱码
+            writer.write('\uFEFF');
+        }
+        return new ListExportWriter(writer, csv);
+    }
+
+    public void write(Object row) {
+        JSONObject jsonObject = JSONObject.from(row, JSONWriter.Feature.WriteNulls);
+        try {
+            if (!csv) {
+                writer.write(jsonObject.toJSONString());
+                writer.write('\n');
+                return;
+            }
+            if (header == null) {
+                header = new ArrayList<>(jsonObject.keySet());
+                writeCsvLine(header);
+            }
+            List<Object> values = new ArrayList<>(header.size());
+            for (String key : header) {
+                values.add(jsonObject.get(key));
+            }
+            writeCsvLine(values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeCsvLine(List<?> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            String text = value.toString();
+            if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(text.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(text);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+    }
+}
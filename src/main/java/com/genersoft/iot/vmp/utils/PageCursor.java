@@ -0,0 +1,74 @@
+package com.genersoft.iot.vmp.utils;
+
+import com.genersoft.iot.vmp.conf.exception.ControllerException;
+import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页的续页标记
+ * 记录上一页最后一条数据的排序键, 以base64url编码后交给前端, 前端原样带回即可查询下一页, 不依赖偏移量
+ */
+public class PageCursor {
+
+    private static final String VERSION = "v1";
+
+    private static final String SEPARATOR = ",";
+
+    public static String encode(Object... keys) {
+        StringBuilder builder = new StringBuilder(VERSION);
+        for (Object key : keys) {
+            builder.append(SEPARATOR).append(key);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析续页标记
+     * @param cursor 续页标记, 为空时表示第一页, 返回null
+     * @param size 排序键的数量
+     */
+    public static String[] decode(String cursor, int size) {
+        if (ObjectUtils.isEmpty(cursor)) {
+            return null;
+        }
+        String[] values;
+        try {
+            values = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+        } catch (IllegalArgumentException e) {
+            throw new ControllerException(ErrorCode.ERROR400.getCode(), "无效的分页游标");
+        }
+        if (values.length != size + 1 || !VERSION.equals(values[0])) {
+            throw new ControllerException(ErrorCode.ERROR400.getCode(), "无效的分页游标");
+        }
+        String[] keys = new String[size];
+        System.arraycopy(values, 1, keys, 0, size);
+        return keys;
+    }
+
+    public static Integer decodeId(String cursor) {
+        String[] keys = decode(cursor, 1);
+        if (keys == null) {
+            return null;
+        }
+        return parseInt(keys[0]);
+    }
+
+    public static Integer parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ControllerException(ErrorCode.ERROR400.getCode(), "无效的分页游标");
+        }
+    }
+
+    public static Long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ControllerException(ErrorCode.ERROR400.getCode(), "无效的分页游标");
+        }
+    }
+}
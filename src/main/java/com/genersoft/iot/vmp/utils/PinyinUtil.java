@@ -0,0 +1,52 @@
+package com.genersoft.iot.vmp.utils;
+
+import java.nio.charset.Charset;
+
+/**
+ * 汉字拼音首字母
+ * 利用GB2312一级汉字按拼音排序的特点, 通过区位码所在的区间得到首字母, 二级汉字以及其他字符原样保留
+ */
+public class PinyinUtil {
+
+    private static final Charset GB2312 = Charset.forName("GB2312");
+
+    /**
+     * 每个首字母在GB2312中的起始区位码
+     */
+    private static final int[] SEC_POS_VALUE = {1601, 1637, 1833, 2078, 2274, 2302, 2433, 2594, 2787, 3106, 3212,
+            3472, 3635, 3722, 3730, 3858, 4027, 4086, 4390, 4558, 4684, 4925, 5249, 5590};
+
+    private static final char[] FIRST_LETTER = {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'j', 'k', 'l',
+            'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'w', 'x', 'y', 'z'};
+
+    public static String getInitials(String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            result.append(getInitial(text.charAt(i)));
+        }
+        return result.toString();
+    }
+
+    private static char getInitial(char c) {
+        if (c < 0x80) {
+            return Character.toLowerCase(c);
+        }
+        byte[] bytes = String.valueOf(c).getBytes(GB2312);
+        if (bytes.length != 2) {
+            return c;
+        }
+        int secPos = ((bytes[0] & 0xff) - 160) * 100 + ((bytes[1] & 0xff) - 160);
+        if (secPos < SEC_POS_VALUE[0] || secPos >= SEC_POS_VALUE[SEC_POS_VALUE.length - 1]) {
+            return c;
+        }
+        for (int i = 0; i < FIRST_LETTER.length; i++) {
+            if (secPos >= SEC_POS_VALUE[i] && secPos < SEC_POS_VALUE[i + 1]) {
+                return FIRST_LETTER[i];
+            }
+        }
+        return c;
+    }
+}
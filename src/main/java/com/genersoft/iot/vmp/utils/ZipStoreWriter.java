@@ -0,0 +1,200 @@
+package com.genersoft.iot.vmp.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * 以STORED(不压缩)方式写出zip文件, 文件内容通过 FileChannel.transferTo 直接写入目标通道, 不经过堆内缓冲,
+ * 需要预先提供文件的CRC32, 偏移或者数量超出限制时自动写出ZIP64结构
+ */
+public class ZipStoreWriter {
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private final WritableByteChannel channel;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private long offset;
+
+    private static class Entry {
+        byte[] name;
+        long crc;
+        long size;
+        long offset;
+        int dosTime;
+    }
+
+    public ZipStoreWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 计算整个压缩包的大小, 用于进度与Content-Length
+     */
+    public static long computeSize(List<String> names, List<Long> sizes) {
+        long total = 0;
+        long centralSize = 0;
+        for (int i = 0; i < names.size(); i++) {
+            int nameLength = names.get(i).getBytes(StandardCharsets.UTF_8).length;
+            boolean zip64 = total >= ZIP64_MAGIC;
+            total += 30 + nameLength + sizes.get(i);
+            centralSize += 46 + nameLength + (zip64 ? 12 : 0);
+        }
+        boolean zip64End = total + centralSize >= ZIP64_MAGIC || names.size() >= ZIP64_MAGIC_COUNT;
+        return total + centralSize + (zip64End ? 56 + 20 : 0) + 22;
+    }
+
+    /**
+     * 写入一个文件, 文件大小不能超过4G
+     */
+    public void putFile(String name, File file, long crc, long lastModified) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            if (size >= ZIP64_MAGIC) {
+                throw new IOException("文件过大: " + file.getAbsolutePath());
+            }
+            Entry entry = new Entry();
+            entry.name = name.getBytes(StandardCharsets.UTF_8);
+            entry.crc = crc;
+            entry.size = size;
+            entry.offset = offset;
+            entry.dosTime = toDosTime(lastModified);
+
+            ByteBuffer header = buffer(30 + entry.name.length);
+            header.putInt(0x04034b50);
+            header.putShort((short) 20);
+            // 文件名使用UTF-8编码
+            header.putShort((short) 0x0800);
+            header.putShort((short) 0);
+            header.putInt(entry.dosTime);
+            header.putInt((int) entry.crc);
+            header.putInt((int) entry.size);
+            header.putInt((int) entry.size);
+            header.putShort((short) entry.name.length);
+            header.putShort((short) 0);
+            header.put(entry.name);
+            write(header);
+
+            long position = 0;
+            while (position < size) {
+                long count = fileChannel.transferTo(position, size - position, channel);
+                if (count <= 0) {
+                    throw new IOException("文件读取不完整: " + file.getAbsolutePath());
+                }
+                position += count;
+            }
+            offset += size;
+            entries.add(entry);
+        }
+    }
+
+    /**
+     * 写出中央目录, 不关闭目标通道
+     */
+    public void finish() throws IOException {
+        long centralOffset = offset;
+        for (Entry entry : entries) {
+            boolean zip64 = entry.offset >= ZIP64_MAGIC;
+            ByteBuffer header = buffer(46 + entry.name.length + (zip64 ? 12 : 0));
+            header.putInt(0x02014b50);
+            header.putShort((short) 45);
+            header.putShort((short) (zip64 ? 45 : 20));
+            header.putShort((short) 0x0800);
+            header.putShort((short) 0);
+            header.putInt(entry.dosTime);
+            header.putInt((int) entry.crc);
+            header.putInt((int) entry.size);
+            header.putInt((int) entry.size);
+            header.putShort((short) entry.name.length);
+            header.putShort((short) (zip64 ? 12 : 0));
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(0);
+            header.putInt((int) (zip64 ? ZIP64_MAGIC : entry.offset));
+            header.put(entry.name);
+            if (zip64) {
+                header.putShort((short) 0x0001);
+                header.putShort((short) 8);
+                header.putLong(entry.offset);
+            }
+            write(header);
+        }
+        long centralSize = offset - centralOffset;
+        boolean zip64End = offset >= ZIP64_MAGIC || entries.size() >= ZIP64_MAGIC_COUNT;
+        if (zip64End) {
+            long zip64EndOffset = offset;
+            ByteBuffer end64 = buffer(56 + 20);
+            end64.putInt(0x06064b50);
+            end64.putLong(44);
+            end64.putShort((short) 45);
+            end64.putShort((short) 45);
+            end64.putInt(0);
+            end64.putInt(0);
+            end64.putLong(entries.size());
+            end64.putLong(entries.size());
+            end64.putLong(centralSize);
+            end64.putLong(centralOffset);
+            end64.putInt(0x07064b50);
+            end64.putInt(0);
+            end64.putLong(zip64EndOffset);
+            end64.putInt(1);
+            write(end64);
+        }
+        ByteBuffer end = buffer(22);
+        end.putInt(0x06054b50);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+        end.putShort((short) Math.min(entries.size(), ZIP64_MAGIC_COUNT));
+        end.putInt((int) Math.min(centralSize, ZIP64_MAGIC));
+        end.putInt((int) Math.min(centralOffset, ZIP64_MAGIC));
+        end.putShort((short) 0);
+        write(end);
+    }
+
+    /**
+     * 已写出的字节数
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    private ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer);
+        }
+    }
+
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+}
@@ -0,0 +1,60 @@
+package com.genersoft.iot.vmp.vmanager.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+import java.util.function.Function;
+
+@Data
+@Schema(description = "游标分页结果")
+public class CursorPageInfo<T> {
+
+    /**
+     * 每页的最大数量
+     */
+    public static final int MAX_COUNT = 1000;
+
+    @Schema(description = "当前页数据")
+    private List<T> list;
+
+    @Schema(description = "当前页的数量")
+    private int size;
+
+    @Schema(description = "总数, 来自短时缓存的统计结果, 可能与实际数量略有偏差")
+    private long total;
+
+    @Schema(description = "下一页的游标, 为空时表示没有更多数据")
+    private String nextCursor;
+
+    public CursorPageInfo() {
+    }
+
+    public CursorPageInfo(List<T> list, long total, String nextCursor) {
+        this.list = list;
+        this.size = list.size();
+        this.total = total;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * 每页数量限制在1到MAX_COUNT之间, 需要在查询之前调用
+     */
+    public static int limitCount(int count) {
+        return Math.min(Math.max(count, 1), MAX_COUNT);
+    }
+
+    /**
+     * 由多查询一条的结果构建分页, 多出的一条只用于判断是否还有下一页
+     * @param rows 按排序键查询的 count + 1 条数据
+     * @param cursorBuilder 由当前页最后一条数据生成下一页的游标
+     */
+    public static <T> CursorPageInfo<T> of(List<T> rows, int count, long total, Function<T, String> cursorBuilder) {
+        count = limitCount(count);
+        if (rows.size() <= count) {
+            return new CursorPageInfo<>(rows, total, null);
+        }
+        List<T> list = rows.subList(0, count);
+        return new CursorPageInfo<>(list, total, cursorBuilder.apply(list.get(count - 1)));
+    }
+}
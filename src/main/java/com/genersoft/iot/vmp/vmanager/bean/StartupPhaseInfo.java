@@ -0,0 +1,27 @@
+package com.genersoft.iot.vmp.vmanager.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * 启动恢复的单个阶段
+ */
+@Data
+@Schema(description = "启动恢复阶段")
+public class StartupPhaseInfo {
+
+    @Schema(description = "阶段名称")
+    private String name;
+
+    @Schema(description = "是否已完成")
+    private boolean finished;
+
+    @Schema(description = "是否出现异常")
+    private boolean failed;
+
+    @Schema(description = "开始时间")
+    private String startTime;
+
+    @Schema(description = "耗时, 单位：毫秒")
+    private long cost;
+}
@@ -0,0 +1,26 @@
+package com.genersoft.iot.vmp.vmanager.bean;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 节点启动状态
+ */
+@Data
+@Schema(description = "节点启动状态")
+public class StartupStatus {
+
+    @Schema(description = "服务ID")
+    private String serverId;
+
+    @Schema(description = "启动恢复是否已全部完成")
+    private boolean ready;
+
+    @Schema(description = "就绪时间")
+    private String readyTime;
+
+    @Schema(description = "启动恢复各阶段")
+    private List<StartupPhaseInfo> phases;
+}
@@ -7,13 +7,20 @@ import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.conf.security.JwtUtils;
 import com.genersoft.iot.vmp.media.bean.MediaServer;
 import com.genersoft.iot.vmp.media.service.IMediaServerService;
+import com.genersoft.iot.vmp.service.ICloudRecordExportService;
+import com.genersoft.iot.vmp.service.ICloudRecordRetentionService;
 import com.genersoft.iot.vmp.service.ICloudRecordService;
+import com.genersoft.iot.vmp.service.bean.CloudRecordExportTask;
 import com.genersoft.iot.vmp.service.bean.CloudRecordItem;
+import com.genersoft.iot.vmp.service.bean.CloudRecordRetentionStatus;
+import com.genersoft.iot.vmp.service.bean.CloudRecordSpan;
 import com.genersoft.iot.vmp.service.bean.DownloadFileInfo;
 import com.genersoft.iot.vmp.service.bean.ErrorCallback;
 import com.genersoft.iot.vmp.service.bean.InviteErrorCode;
 import com.genersoft.iot.vmp.streamPush.bean.BatchRemoveParam;
 import com.genersoft.iot.vmp.utils.DateUtil;
+import com.genersoft.iot.vmp.utils.ListExportWriter;
+import com.genersoft.iot.vmp.vmanager.bean.CursorPageInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.genersoft.iot.vmp.vmanager.bean.StreamContent;
 import com.genersoft.iot.vmp.vmanager.bean.WVPResult;
@@ -31,16 +38,13 @@ import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 @SuppressWarnings("rawtypes")
 @Tag(name = "云端录像接口")
@@ -59,6 +63,12 @@ public class CloudRecordController {
     @Autowired
     private UserSetting userSetting;
 
+    @Autowired
+    private ICloudRecordExportService cloudRecordExportService;
+
+    @Autowired
+    private ICloudRecordRetentionService cloudRecordRetentionService;
+
 
     @ResponseBody
     @GetMapping("/date/list")
@@ -161,6 +171,219 @@ public class CloudRecordController {
         return cloudRecordService.getList(page, count, query, app, stream, startTime, endTime, mediaServers, callId, ascOrder);
     }
 
+    @ResponseBody
+    @GetMapping("/list/cursor")
+    @Operation(summary = "按游标分页查询云端录像, 适用于数据量大时的连续翻页", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "query", description = "检索内容", required = false)
+    @Parameter(name = "app", description = "应用名", required = false)
+    @Parameter(name = "stream", description = "流ID", required = false)
+    @Parameter(name = "count", description = "每页查询数量", required = true)
+    @Parameter(name = "startTime", description = "开始时间(yyyy-MM-dd HH:mm:ss)", required = false)
+    @Parameter(name = "endTime", description = "结束时间(yyyy-MM-dd HH:mm:ss)", required = false)
+    @Parameter(name = "mediaServerId", description = "流媒体ID，置空则查询全部流媒体", required = false)
+    @Parameter(name = "callId", description = "每次录像的唯一标识，置空则查询全部流媒体", required = false)
+    @Parameter(name = "ascOrder", description = "是否升序排序， 升序： true， 降序： false", required = false)
+    @Parameter(name = "lastStartTime", description = "上一页最后一条录像的开始时间(毫秒)，查询首页时置空", required = false)
+    @Parameter(name = "lastId", description = "上一页最后一条录像的ID，查询首页时置空", required = false)
+    public List<CloudRecordItem> getListAfter(@RequestParam(required = false) String query,
+                                              @RequestParam(required = false) String app,
+                                              @RequestParam(required = false) String stream,
+                                              @RequestParam int count,
+                                              @RequestParam(required = false) String startTime,
+                                              @RequestParam(required = false) String endTime,
+                                              @RequestParam(required = false) String mediaServerId,
+                                              @RequestParam(required = false) String callId,
+                                              @RequestParam(required = false) Boolean ascOrder,
+                                              @RequestParam(required = false) Long lastStartTime,
+                                              @RequestParam(required = false) Integer lastId
+
+    ) {
+        List<MediaServer> mediaServers;
+        if (!ObjectUtils.isEmpty(mediaServerId)) {
+            mediaServers = new ArrayList<>();
+            MediaServer mediaServer = mediaServerService.getOne(mediaServerId);
+            if (mediaServer == null) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "未找到流媒体: " + mediaServerId);
+            }
+            mediaServers.add(mediaServer);
+        } else {
+            mediaServers = null;
+        }
+        if (query != null && ObjectUtils.isEmpty(query.trim())) {
+            query = null;
+        }
+        if (app != null && ObjectUtils.isEmpty(app.trim())) {
+            app = null;
+        }
+        if (stream != null && ObjectUtils.isEmpty(stream.trim())) {
+            stream = null;
+        }
+        if (startTime != null && ObjectUtils.isEmpty(startTime.trim())) {
+            startTime = null;
+        }
+        if (endTime != null && ObjectUtils.isEmpty(endTime.trim())) {
+            endTime = null;
+        }
+        if (callId != null && ObjectUtils.isEmpty(callId.trim())) {
+            callId = null;
+        }
+        return cloudRecordService.getListAfter(count, query, app, stream, startTime, endTime, mediaServers, callId,
+                ascOrder, lastStartTime, lastId);
+    }
+
+    @ResponseBody
+    @GetMapping("/list/cursor-page")
+    @Operation(summary = "按游标分页查询云端录像, 返回下一页的游标与总数", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "query", description = "检索内容", required = false)
+    @Parameter(name = "app", description = "应用名", required = false)
+    @Parameter(name = "stream", description = "流ID", required = false)
+    @Parameter(name = "cursor", description = "上一页返回的游标, 查询首页时置空", required = false)
+    @Parameter(name = "count", description = "每页查询数量", required = true)
+    @Parameter(name = "startTime", description = "开始时间(yyyy-MM-dd HH:mm:ss)", required = false)
+    @Parameter(name = "endTime", description = "结束时间(yyyy-MM-dd HH:mm:ss)", required = false)
+    @Parameter(name = "mediaServerId", description = "流媒体ID，置空则查询全部流媒体", required = false)
+    @Parameter(name = "callId", description = "每次录像的唯一标识，置空则查询全部流媒体", required = false)
+    @Parameter(name = "ascOrder", description = "是否升序排序， 升序： true， 降序： false", required = false)
+    public CursorPageInfo<CloudRecordItem> getListByCursor(@RequestParam(required = false) String query,
+                                                           @RequestParam(required = false) String app,
+                                                           @RequestParam(required = false) String stream,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam int count,
+                                                           @RequestParam(required = false) String startTime,
+                                                           @RequestParam(required = false) String endTime,
+                                                           @RequestParam(required = false) String mediaServerId,
+                                                           @RequestParam(required = false) String callId,
+                                                           @RequestParam(required = false) Boolean ascOrder
+    ) {
+        List<MediaServer> mediaServers;
+        if (!ObjectUtils.isEmpty(mediaServerId)) {
+            mediaServers = new ArrayList<>();
+            MediaServer mediaServer = mediaServerService.getOne(mediaServerId);
+            if (mediaServer == null) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "未找到流媒体: " + mediaServerId);
+            }
+            mediaServers.add(mediaServer);
+        } else {
+            mediaServers = null;
+        }
+        if (query != null && ObjectUtils.isEmpty(query.trim())) {
+            query = null;
+        }
+        if (app != null && ObjectUtils.isEmpty(app.trim())) {
+            app = null;
+        }
+        if (stream != null && ObjectUtils.isEmpty(stream.trim())) {
+            stream = null;
+        }
+        if (startTime != null && ObjectUtils.isEmpty(startTime.trim())) {
+            startTime = null;
+        }
+        if (endTime != null && ObjectUtils.isEmpty(endTime.trim())) {
+            endTime = null;
+        }
+        if (callId != null && ObjectUtils.isEmpty(callId.trim())) {
+            callId = null;
+        }
+        return cloudRecordService.getListByCursor(cursor, count, query, app, stream, startTime, endTime, mediaServers,
+                callId, ascOrder);
+    }
+
+    @GetMapping("/export")
+    @Operation(summary = "导出云端录像列表", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "query", description = "检索内容", required = false)
+    @Parameter(name = "app", description = "应用名", required = false)
+    @Parameter(name = "stream", description = "流ID", required = false)
+    @Parameter(name = "startTime", description = "开始时间(yyyy-MM-dd HH:mm:ss)", required = false)
+    @Parameter(name = "endTime", description = "结束时间(yyyy-MM-dd HH:mm:ss)", required = false)
+    @Parameter(name = "mediaServerId", description = "流媒体ID，置空则查询全部流媒体", required = false)
+    @Parameter(name = "callId", description = "每次录像的唯一标识，置空则查询全部流媒体", required = false)
+    @Parameter(name = "ascOrder", description = "是否升序排序， 升序： true， 降序： false", required = false)
+    @Parameter(name = "format", description = "导出格式, csv或者ndjson, 默认csv", required = false)
+    public void exportList(HttpServletResponse response,
+                           @RequestParam(required = false) String query,
+                           @RequestParam(required = false) String app,
+                           @RequestParam(required = false) String stream,
+                           @RequestParam(required = false) String startTime,
+                           @RequestParam(required = false) String endTime,
+                           @RequestParam(required = false) String mediaServerId,
+                           @RequestParam(required = false) String callId,
+                           @RequestParam(required = false) Boolean ascOrder,
+                           @RequestParam(required = false) String format
+    ) {
+        List<MediaServer> mediaServers;
+        if (!ObjectUtils.isEmpty(mediaServerId)) {
+            mediaServers = new ArrayList<>();
+            MediaServer mediaServer = mediaServerService.getOne(mediaServerId);
+            if (mediaServer == null) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "未找到流媒体: " + mediaServerId);
+            }
+            mediaServers.add(mediaServer);
+        } else {
+            mediaServers = null;
+        }
+        if (query != null && ObjectUtils.isEmpty(query.trim())) {
+            query = null;
+        }
+        if (app != null && ObjectUtils.isEmpty(app.trim())) {
+            app = null;
+        }
+        if (stream != null && ObjectUtils.isEmpty(stream.trim())) {
+            stream = null;
+        }
+        if (startTime != null && ObjectUtils.isEmpty(startTime.trim())) {
+            startTime = null;
+        }
+        if (endTime != null && ObjectUtils.isEmpty(endTime.trim())) {
+            endTime = null;
+        }
+        if (callId != null && ObjectUtils.isEmpty(callId.trim())) {
+            callId = null;
+        }
+        try (ListExportWriter writer = ListExportWriter.open(response, "cloud_record", format)) {
+            cloudRecordService.exportList(query, app, stream, startTime, endTime, mediaServers, callId, ascOrder, writer::write);
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("[导出云端录像列表] 写出失败： {}", e.getMessage());
+        }
+    }
+
+    @ResponseBody
+    @GetMapping("/timeline")
+    @Operation(summary = "查询某天合并后的连续录像时间段", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "app", description = "应用名", required = true)
+    @Parameter(name = "stream", description = "流ID", required = true)
+    @Parameter(name = "date", description = "日期(yyyy-MM-dd)", required = true)
+    @Parameter(name = "mediaServerId", description = "流媒体ID，置空则查询全部", required = false)
+    public List<CloudRecordSpan> getTimeline(
+            @RequestParam(required = true) String app,
+            @RequestParam(required = true) String stream,
+            @RequestParam(required = true) String date,
+            @RequestParam(required = false) String mediaServerId
+
+    ) {
+        List<MediaServer> mediaServers;
+        if (!ObjectUtils.isEmpty(mediaServerId)) {
+            mediaServers = new ArrayList<>();
+            MediaServer mediaServer = mediaServerService.getOne(mediaServerId);
+            if (mediaServer == null) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "未找到流媒体: " + mediaServerId);
+            }
+            mediaServers.add(mediaServer);
+        } else {
+            mediaServers = mediaServerService.getAllOnlineList();
+        }
+        if (mediaServers.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return cloudRecordService.getTimeline(app, stream, date, mediaServers);
+    }
+
+    @ResponseBody
+    @GetMapping("/retention/status")
+    @Operation(summary = "查询录像清理进度", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    public List<CloudRecordRetentionStatus> getRetentionStatus() {
+        return cloudRecordRetentionService.getStatusList();
+    }
+
     @ResponseBody
     @GetMapping("/task/add")
     @Operation(summary = "添加合并任务")
@@ -407,36 +630,107 @@ public class CloudRecordController {
         if (callId != null && ObjectUtils.isEmpty(callId.trim())) {
             callId = null;
         }
-        if (stream != null && callId != null) {
-            response.addHeader("Content-Disposition", "attachment;filename=" + stream + "_" + callId + ".zip");
-        }
+        String fileName = (stream != null && callId != null) ? stream + "_" + callId + ".zip" : "record.zip";
         List<CloudRecordItem> cloudRecordItemList = cloudRecordService.getAllList(query, app, stream, startTime, endTime, mediaServers, callId, ids);
         if (ObjectUtils.isEmpty(cloudRecordItemList)) {
             return;
         }
         try {
-            ZipOutputStream zos = new ZipOutputStream(response.getOutputStream());
-            for (CloudRecordItem cloudRecordItem : cloudRecordItemList) {
-                zos.putNextEntry(new ZipEntry(DateUtil.timestampMsToUrlToyyyy_MM_dd_HH_mm_ss((long)cloudRecordItem.getStartTime()) + ".mp4"));
-                File file = new File(cloudRecordItem.getFilePath());
-                if (!file.exists() || file.isDirectory()) {
-                    continue;
-                }
-                FileInputStream fis = new FileInputStream(cloudRecordItem.getFilePath());
-                byte[] buf = new byte[2 * 1024];
-                int len;
-                while ((len = fis.read(buf)) != -1) {
-                    zos.write(buf, 0, len);
-                }
-                zos.closeEntry();
-                fis.close();
-            }
-            zos.close();
+            cloudRecordExportService.writeZip(cloudRecordItemList, fileName, response);
         } catch (IOException e) {
             log.error("[下载指定录像文件的压缩包] 失败： 查询 app->{}, stream->{}, mediaServerId->{}, startTime->{}, endTime->{}, callId->{}", app, stream, mediaServerId, startTime, endTime, callId, e);
         }
     }
 
+    @ResponseBody
+    @GetMapping("/zip/task/add")
+    @Operation(summary = "添加录像打包任务, 适合大量录像文件的导出", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "query", description = "检索内容", required = false)
+    @Parameter(name = "app", description = "应用名", required = false)
+    @Parameter(name = "stream", description = "流ID", required = false)
+    @Parameter(name = "startTime", description = "开始时间(yyyy-MM-dd HH:mm:ss)", required = false)
+    @Parameter(name = "endTime", description = "结束时间(yyyy-MM-dd HH:mm:ss)", required = false)
+    @Parameter(name = "mediaServerId", description = "流媒体ID，置空则查询全部流媒体", required = false)
+    @Parameter(name = "callId", description = "每次录像的唯一标识，置空则查询全部流媒体", required = false)
+    @Parameter(name = "ids", description = "指定的Id", required = false)
+    public String addZipTask(@RequestParam(required = false) String query, @RequestParam(required = false) String app, @RequestParam(required = false) String stream, @RequestParam(required = false) String startTime, @RequestParam(required = false) String endTime, @RequestParam(required = false) String mediaServerId, @RequestParam(required = false) String callId, @RequestParam(required = false) List<Integer> ids) {
+        log.info("[添加录像打包任务] 查询 app->{}, stream->{}, mediaServerId->{}, startTime->{}, endTime->{}, callId->{}", app, stream, mediaServerId, startTime, endTime, callId);
+        List<MediaServer> mediaServers;
+        if (!ObjectUtils.isEmpty(mediaServerId)) {
+            mediaServers = new ArrayList<>();
+            MediaServer mediaServer = mediaServerService.getOne(mediaServerId);
+            if (mediaServer == null) {
+                throw new ControllerException(ErrorCode.ERROR100.getCode(), "未找到流媒体: " + mediaServerId);
+            }
+            mediaServers.add(mediaServer);
+        } else {
+            mediaServers = mediaServerService.getAll();
+        }
+        if (mediaServers.isEmpty()) {
+            throw new ControllerException(ErrorCode.ERROR100.getCode(), "当前无流媒体");
+        }
+        if (query != null && ObjectUtils.isEmpty(query.trim())) {
+            query = null;
+        }
+        if (app != null && ObjectUtils.isEmpty(app.trim())) {
+            app = null;
+        }
+        if (stream != null && ObjectUtils.isEmpty(stream.trim())) {
+            stream = null;
+        }
+        if (startTime != null && ObjectUtils.isEmpty(startTime.trim())) {
+            startTime = null;
+        }
+        if (endTime != null && ObjectUtils.isEmpty(endTime.trim())) {
+            endTime = null;
+        }
+        if (callId != null && ObjectUtils.isEmpty(callId.trim())) {
+            callId = null;
+        }
+        List<CloudRecordItem> cloudRecordItemList = cloudRecordService.getAllList(query, app, stream, startTime, endTime, mediaServers, callId, ids);
+        if (ObjectUtils.isEmpty(cloudRecordItemList)) {
+            throw new ControllerException(ErrorCode.ERROR100.getCode(), "未找到录像文件");
+        }
+        String fileName = (stream != null ? stream : "record") + "_" + DateUtil.timestampMsToUrlToyyyy_MM_dd_HH_mm_ss(System.currentTimeMillis()) + ".zip";
+        return cloudRecordExportService.addTask(cloudRecordItemList, fileName);
+    }
+
+    @ResponseBody
+    @GetMapping("/zip/task/list")
+    @Operation(summary = "查询当前用户的录像打包任务", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    public List<CloudRecordExportTask> queryZipTaskList() {
+        return cloudRecordExportService.getTaskList();
+    }
+
+    @ResponseBody
+    @GetMapping("/zip/task/info")
+    @Operation(summary = "查询录像打包任务进度", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "taskId", description = "任务ID", required = true)
+    public CloudRecordExportTask queryZipTask(@RequestParam String taskId) {
+        return cloudRecordExportService.getTask(taskId);
+    }
+
+    @ResponseBody
+    @DeleteMapping("/zip/task/delete")
+    @Operation(summary = "删除录像打包任务", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    @Parameter(name = "taskId", description = "任务ID", required = true)
+    public void deleteZipTask(@RequestParam String taskId) {
+        cloudRecordExportService.removeTask(taskId);
+    }
+
+    /**
+     * 下载打包完成的压缩包, 支持Range断点续传
+     * @param taskId 任务ID
+     */
+    @GetMapping("/zip/task/download")
+    public void downloadZipTask(HttpServletRequest request, HttpServletResponse response, @RequestParam String taskId) {
+        try {
+            cloudRecordExportService.download(taskId, request, response);
+        } catch (IOException e) {
+            log.error("[下载录像压缩包] 失败： taskId->{}", taskId, e);
+        }
+    }
+
     /**
      *
      * @param query 检索内容
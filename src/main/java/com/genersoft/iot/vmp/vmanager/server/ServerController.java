@@ -5,12 +5,16 @@ import com.alibaba.fastjson2.JSONObject;
 import com.genersoft.iot.vmp.common.SystemAllInfo;
 import com.genersoft.iot.vmp.common.VersionPo;
 import com.genersoft.iot.vmp.conf.SipConfig;
+import com.genersoft.iot.vmp.conf.StartupRecovery;
 import com.genersoft.iot.vmp.conf.UserSetting;
 import com.genersoft.iot.vmp.conf.VersionInfo;
+import com.genersoft.iot.vmp.conf.broadcast.BroadcastClientInfo;
 import com.genersoft.iot.vmp.conf.exception.ControllerException;
 import com.genersoft.iot.vmp.conf.security.JwtUtils;
+import com.genersoft.iot.vmp.conf.webLog.LogChannel;
 import com.genersoft.iot.vmp.gb28181.service.IDeviceChannelService;
 import com.genersoft.iot.vmp.gb28181.service.IDeviceService;
+import com.genersoft.iot.vmp.gb28181.session.SseSessionManager;
 import com.genersoft.iot.vmp.jt1078.config.JT1078Config;
 import com.genersoft.iot.vmp.media.bean.MediaInfo;
 import com.genersoft.iot.vmp.media.bean.MediaServer;
@@ -23,6 +27,7 @@ import com.genersoft.iot.vmp.streamPush.service.IStreamPushService;
 import com.genersoft.iot.vmp.vmanager.bean.ErrorCode;
 import com.genersoft.iot.vmp.vmanager.bean.ResourceBaseInfo;
 import com.genersoft.iot.vmp.vmanager.bean.ResourceInfo;
+import com.genersoft.iot.vmp.vmanager.bean.StartupStatus;
 import com.genersoft.iot.vmp.vmanager.bean.SystemConfigInfo;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -43,6 +48,7 @@ import oshi.hardware.NetworkIF;
 import oshi.software.os.OperatingSystem;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -95,6 +101,12 @@ public class ServerController {
     @Autowired
     private ApplicationEventPublisher applicationEventPublisher;
 
+    @Autowired
+    private SseSessionManager sseSessionManager;
+
+    @Autowired
+    private StartupRecovery startupRecovery;
+
 
     @GetMapping(value = "/media_server/list")
     @ResponseBody
@@ -281,6 +293,33 @@ public class ServerController {
         return result;
     }
 
+    @GetMapping(value = "/health")
+    @ResponseBody
+    @Operation(summary = "节点健康检查, 启动恢复未完成时返回503")
+    public StartupStatus getHealth(HttpServletResponse response) {
+        StartupStatus status = startupRecovery.getHealth();
+        if (!status.isReady()) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        return status;
+    }
+
+    @GetMapping(value = "/startup")
+    @ResponseBody
+    @Operation(summary = "获取启动恢复各阶段的状态", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    public StartupStatus getStartupStatus() {
+        return startupRecovery.getStatus();
+    }
+
+    @GetMapping(value = "/broadcast/clients")
+    @ResponseBody
+    @Operation(summary = "获取SSE与日志推送的客户端状态", security = @SecurityRequirement(name = JwtUtils.HEADER))
+    public List<BroadcastClientInfo> getBroadcastClients() {
+        List<BroadcastClientInfo> result = new ArrayList<>(sseSessionManager.getClientInfoList());
+        result.addAll(LogChannel.getClientInfoList());
+        return result;
+    }
+
     @GetMapping(value = "/info")
     @ResponseBody
     @Operation(summary = "获取系统信息", security = @SecurityRequirement(name = JwtUtils.HEADER))
@@ -0,0 +1,98 @@
+package com.genersoft.iot.vmp.gb28181.bean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+/**
+ * 通道目录内容的哈希与差异比较
+ */
+public class DeviceChannelContentTest {
+
+    @Test
+    public void testHashIsStable() {
+        DeviceChannel channel = buildChannel();
+        String hash = channel.buildContentHash();
+        Assertions.assertEquals(32, hash.length());
+        Assertions.assertEquals(hash, channel.buildContentHash());
+        Assertions.assertEquals(hash, buildChannel().buildContentHash());
+    }
+
+    @Test
+    public void testHashIgnoresNonContentFields() {
+        DeviceChannel channel = buildChannel();
+        String hash = channel.buildContentHash();
+        channel.setId(100);
+        channel.setContentHash("changed");
+        channel.setParentName("parent");
+        Assertions.assertEquals(hash, channel.buildContentHash());
+    }
+
+    @Test
+    public void testHashExcludesStatus() {
+        DeviceChannel channel = buildChannel();
+        String hash = channel.buildContentHash();
+        channel.setStatus("OFF");
+        Assertions.assertEquals(hash, channel.buildContentHash());
+    }
+
+    @Test
+    public void testHashChangesWithContent() {
+        DeviceChannel channel = buildChannel();
+        String hash = channel.buildContentHash();
+        channel.setName("通道2");
+        Assertions.assertNotEquals(hash, channel.buildContentHash());
+
+        channel = buildChannel();
+        channel.setLongitude(116.2);
+        Assertions.assertNotEquals(hash, channel.buildContentHash());
+
+        channel = buildChannel();
+        channel.setAddress(null);
+        Assertions.assertNotEquals(hash, channel.buildContentHash());
+    }
+
+    @Test
+    public void testDiffContent() {
+        DeviceChannel channelInDb = buildChannel();
+        DeviceChannel channel = buildChannel();
+        Assertions.assertTrue(channel.diffContent(channelInDb).isEmpty());
+
+        channel.setName("通道2");
+        channel.setAddress(null);
+        channel.setPtzType(3);
+        Map<String, Object> changed = channel.diffContent(channelInDb);
+        Assertions.assertEquals(3, changed.size());
+        Assertions.assertEquals("通道2", changed.get("name"));
+        Assertions.assertTrue(changed.containsKey("address"));
+        Assertions.assertNull(changed.get("address"));
+        Assertions.assertEquals(3, changed.get("ptz_type"));
+    }
+
+    @Test
+    public void testDiffContentIncludesStatus() {
+        DeviceChannel channelInDb = buildChannel();
+        DeviceChannel channel = buildChannel();
+        channel.setStatus("OFF");
+        Map<String, Object> changed = channel.diffContent(channelInDb);
+        Assertions.assertEquals(1, changed.size());
+        Assertions.assertEquals("OFF", changed.get("status"));
+    }
+
+    private DeviceChannel buildChannel() {
+        DeviceChannel channel = new DeviceChannel();
+        channel.setDeviceId("34020000001310000001");
+        channel.setName("通道1");
+        channel.setManufacturer("Manufacturer");
+        channel.setModel("IPC");
+        channel.setCivilCode("340200");
+        channel.setAddress("Address");
+        channel.setParentId("34020000001320000001");
+        channel.setStatus("ON");
+        channel.setLongitude(116.1);
+        channel.setLatitude(39.9);
+        channel.setPtzType(1);
+        return channel;
+    }
+}
@@ -0,0 +1,160 @@
+package com.genersoft.iot.vmp.gb28181.session;
+
+import com.genersoft.iot.vmp.conf.UserSetting;
+import com.genersoft.iot.vmp.gb28181.bean.RecordItem;
+import com.genersoft.iot.vmp.utils.DateUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 设备端录像时间段缓存的覆盖范围计算与淘汰
+ */
+public class RecordInfoCacheTest {
+
+    private static final String DEVICE_ID = "34020000001320000001";
+
+    private static final String CHANNEL_ID = "34020000001310000001";
+
+    private static final int TTL = 24 * 60 * 60;
+
+    private static final long T0 = DateUtil.yyyy_MM_dd_HH_mm_ssToTimestamp("2024-01-01 00:00:00");
+
+    private UserSetting userSetting;
+
+    private RecordInfoCache recordInfoCache;
+
+    @BeforeEach
+    public void setUp() {
+        userSetting = new UserSetting();
+        userSetting.setRecordInfoCacheTtl(TTL);
+        userSetting.setRecordInfoCacheMaxItems(1000);
+        recordInfoCache = new RecordInfoCache();
+        ReflectionTestUtils.setField(recordInfoCache, "userSetting", userSetting);
+    }
+
+    @Test
+    public void testUncoveredWithoutCache() {
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, CHANNEL_ID, T0, T0 + 100), T0, T0 + 100);
+    }
+
+    @Test
+    public void testUncoveredGapBetweenSpans() {
+        long now = System.currentTimeMillis();
+        merge(CHANNEL_ID, T0, T0 + 100, now);
+        merge(CHANNEL_ID, T0 + 200, T0 + 300, now);
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, CHANNEL_ID, T0, T0 + 400),
+                T0 + 100, T0 + 200, T0 + 300, T0 + 400);
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, CHANNEL_ID, T0 + 50, T0 + 250), T0 + 100, T0 + 200);
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, CHANNEL_ID, T0 + 10, T0 + 90));
+    }
+
+    @Test
+    public void testExpiredSpanIsUncovered() {
+        long now = System.currentTimeMillis();
+        merge(CHANNEL_ID, T0, T0 + 100, now);
+        merge(CHANNEL_ID, T0 + 100, T0 + 200, now - (TTL + 60) * 1000L);
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, CHANNEL_ID, T0, T0 + 300), T0 + 100, T0 + 300);
+    }
+
+    @Test
+    public void testCutSpansKeepsBothSides() {
+        long now = System.currentTimeMillis();
+        // 外层的时间段较早查询, 中间部分重新查询后外层被拆成两段, 两段保留原来的查询时间
+        merge(CHANNEL_ID, T0, T0 + 300, now - TTL / 2 * 1000L);
+        merge(CHANNEL_ID, T0 + 100, T0 + 200, now);
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, CHANNEL_ID, T0, T0 + 300));
+
+        userSetting.setRecordInfoCacheTtl(TTL / 4);
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, CHANNEL_ID, T0, T0 + 300),
+                T0, T0 + 100, T0 + 200, T0 + 300);
+    }
+
+    @Test
+    public void testLiveTailIsNotCovered() {
+        long start = System.currentTimeMillis() / 1000 - 3600;
+        long fetchTime = (start + 1800) * 1000;
+        merge(CHANNEL_ID, start, start + 3600, fetchTime);
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, CHANNEL_ID, start, start + 3600), start + 1800, start + 3600);
+    }
+
+    @Test
+    public void testMergeReplacesOverlappedRecords() {
+        long now = System.currentTimeMillis();
+        merge(CHANNEL_ID, T0, T0 + 300, now, T0, T0 + 50, T0 + 100, T0 + 150, T0 + 250, T0 + 300);
+        merge(CHANNEL_ID, T0 + 100, T0 + 200, now, T0 + 120, T0 + 140);
+        List<RecordItem> recordList = recordInfoCache.get(DEVICE_ID, CHANNEL_ID, T0, T0 + 300);
+        Assertions.assertEquals(3, recordList.size());
+        Assertions.assertEquals(format(T0), recordList.get(0).getStartTime());
+        Assertions.assertEquals(format(T0 + 120), recordList.get(1).getStartTime());
+        Assertions.assertEquals(format(T0 + 250), recordList.get(2).getStartTime());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedChannel() {
+        userSetting.setRecordInfoCacheMaxItems(3);
+        long now = System.currentTimeMillis();
+        merge("channelA", T0, T0 + 300, now, T0, T0 + 100, T0 + 100, T0 + 200);
+        merge("channelB", T0, T0 + 300, now, T0, T0 + 100);
+        // 访问A之后最久未访问的是B
+        recordInfoCache.get(DEVICE_ID, "channelA", T0, T0 + 300);
+        merge("channelC", T0, T0 + 300, now, T0, T0 + 100);
+
+        Assertions.assertEquals(2, recordInfoCache.get(DEVICE_ID, "channelA", T0, T0 + 300).size());
+        Assertions.assertTrue(recordInfoCache.get(DEVICE_ID, "channelB", T0, T0 + 300).isEmpty());
+        Assertions.assertEquals(1, recordInfoCache.get(DEVICE_ID, "channelC", T0, T0 + 300).size());
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, "channelB", T0, T0 + 300), T0, T0 + 300);
+    }
+
+    @Test
+    public void testChannelOverLimitIsNotCached() {
+        userSetting.setRecordInfoCacheMaxItems(3);
+        long now = System.currentTimeMillis();
+        merge("channelA", T0, T0 + 300, now, T0, T0 + 100);
+        merge("channelB", T0, T0 + 400, now, T0, T0 + 100, T0 + 100, T0 + 200, T0 + 200, T0 + 300, T0 + 300, T0 + 400);
+
+        Assertions.assertTrue(recordInfoCache.get(DEVICE_ID, "channelA", T0, T0 + 300).isEmpty());
+        Assertions.assertTrue(recordInfoCache.get(DEVICE_ID, "channelB", T0, T0 + 400).isEmpty());
+        assertRanges(recordInfoCache.getUncovered(DEVICE_ID, "channelB", T0, T0 + 400), T0, T0 + 400);
+    }
+
+    /**
+     * @param times 依次为每条录像的开始与结束时间
+     */
+    private void merge(String channelId, long start, long end, long fetchTime, long... times) {
+        List<RecordItem> recordList = new ArrayList<>();
+        for (int i = 0; i + 1 < times.length; i += 2) {
+            RecordItem recordItem = new RecordItem();
+            recordItem.setStartTime(format(times[i]));
+            recordItem.setEndTime(format(times[i + 1]));
+            recordList.add(recordItem);
+        }
+        recordInfoCache.merge(DEVICE_ID, channelId, format(start), format(end), recordList, fetchTime);
+    }
+
+    /**
+     * @param expected 依次为每个范围的开始与结束时间
+     */
+    private void assertRanges(List<long[]> ranges, long... expected) {
+        List<Long> actual = new ArrayList<>();
+        for (long[] range : ranges) {
+            actual.add(range[0]);
+            actual.add(range[1]);
+        }
+        List<Long> expectedList = new ArrayList<>();
+        for (long time : expected) {
+            expectedList.add(time);
+        }
+        Assertions.assertEquals(expectedList, actual);
+    }
+
+    private static String format(long time) {
+        return DateUtil.timestampTo_yyyy_MM_dd_HH_mm_ss(time);
+    }
+}
@@ -119,6 +119,7 @@ create table IF NOT EXISTS wvp_device_channel
     gps_time                     character varying(50),
     stream_identification        character varying(50),
     channel_type                 int  default 0        not null,
+    content_hash                 character varying(32),
     gb_device_id                 character varying(50),
     gb_name                      character varying(255),
     gb_manufacturer              character varying(255),
@@ -366,7 +367,10 @@ create table IF NOT EXISTS wvp_cloud_record
     file_path       character varying(500),
     collect         bool default false,
     file_size       bigint,
-    time_len        double precision
+    time_len        double precision,
+    index idx_cloud_record_stream_time (app, stream, start_time),
+    index idx_cloud_record_start_time (start_time),
+    index idx_cloud_record_server_time (media_server_id, start_time)
 );
 
 drop table IF EXISTS wvp_user;
@@ -119,6 +119,7 @@ create table IF NOT EXISTS wvp_device_channel
     gps_time                     character varying(50),
     stream_identification        character varying(50),
     channel_type                 int  default 0        not null,
+    content_hash                 character varying(32),
     gb_device_id                 character varying(50),
     gb_name                      character varying(255),
     gb_manufacturer              character varying(255),
@@ -370,6 +371,10 @@ create table IF NOT EXISTS wvp_cloud_record
     time_len        double precision
 );
 
+CREATE INDEX idx_cloud_record_stream_time ON wvp_cloud_record (app, stream, start_time);
+CREATE INDEX idx_cloud_record_start_time ON wvp_cloud_record (start_time);
+CREATE INDEX idx_cloud_record_server_time ON wvp_cloud_record (media_server_id, start_time);
+
 drop table IF EXISTS wvp_user;
 create table IF NOT EXISTS wvp_user
 (
@@ -52,3 +52,44 @@ DROP PROCEDURE wvp_20250708;
 DELIMITER ;
 
 
+/*
+* 云端录像按流和时间检索的索引
+*/
+DELIMITER //
+CREATE PROCEDURE `wvp_cloud_record_index`()
+BEGIN
+    IF NOT EXISTS (SELECT index_name FROM information_schema.statistics
+                   WHERE TABLE_SCHEMA = (SELECT DATABASE()) and  table_name = 'wvp_cloud_record' and index_name = 'idx_cloud_record_stream_time')
+    THEN
+        CREATE INDEX idx_cloud_record_stream_time ON wvp_cloud_record (app, stream, start_time);
+    END IF;
+    IF NOT EXISTS (SELECT index_name FROM information_schema.statistics
+                   WHERE TABLE_SCHEMA = (SELECT DATABASE()) and  table_name = 'wvp_cloud_record' and index_name = 'idx_cloud_record_start_time')
+    THEN
+        CREATE INDEX idx_cloud_record_start_time ON wvp_cloud_record (start_time);
+    END IF;
+    IF NOT EXISTS (SELECT index_name FROM information_schema.statistics
+                   WHERE TABLE_SCHEMA = (SELECT DATABASE()) and  table_name = 'wvp_cloud_record' and index_name = 'idx_cloud_record_server_time')
+    THEN
+        CREATE INDEX idx_cloud_record_server_time ON wvp_cloud_record (media_server_id, start_time);
+    END IF;
+END; //
+call wvp_cloud_record_index();
+DROP PROCEDURE wvp_cloud_record_index;
+DELIMITER ;
+
+/*
+* 通道目录内容的哈希, 目录更新时跳过未变化的通道
+*/
+DELIMITER //
+CREATE PROCEDURE `wvp_device_channel_content_hash`()
+BEGIN
+    IF NOT EXISTS (SELECT column_name FROM information_schema.columns
+                   WHERE TABLE_SCHEMA = (SELECT DATABASE()) and  table_name = 'wvp_device_channel' and column_name = 'content_hash')
+    THEN
+        ALTER TABLE wvp_device_channel ADD content_hash character varying(32);
+    END IF;
+END; //
+call wvp_device_channel_content_hash();
+DROP PROCEDURE wvp_device_channel_content_hash;
+DELIMITER ;
@@ -35,3 +35,9 @@ create table IF NOT EXISTS wvp_jt_channel (
 );
 
 ALTER table wvp_media_server ADD COLUMN IF NOT EXISTS jtt_proxy_port integer;
+
+CREATE INDEX IF NOT EXISTS idx_cloud_record_stream_time ON wvp_cloud_record (app, stream, start_time);
+CREATE INDEX IF NOT EXISTS idx_cloud_record_start_time ON wvp_cloud_record (start_time);
+CREATE INDEX IF NOT EXISTS idx_cloud_record_server_time ON wvp_cloud_record (media_server_id, start_time);
+
+ALTER table wvp_device_channel ADD COLUMN IF NOT EXISTS content_hash character varying(32);